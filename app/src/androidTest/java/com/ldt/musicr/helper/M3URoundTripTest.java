@@ -0,0 +1,145 @@
+package com.ldt.musicr.helper;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.provider.BaseColumns;
+import android.provider.MediaStore;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.ldt.musicr.model.Playlist;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Exports a 20000 entry playlist with {@link M3UWriter}, imports the file into an empty playlist
+ * with {@link M3UReader} and checks that both have the same songs in the same order. Needs a
+ * device with songs and the storage permission, the songs are repeated to fill the playlist.
+ */
+@RunWith(AndroidJUnit4.class)
+public class M3URoundTripTest {
+    private static final String TAG = "M3URoundTripTest";
+
+    private static final int ENTRIES = 20000;
+    private static final long MAX_ROUND_TRIP_MILLIS = 20000;
+
+    /* Same songs as SONG_SELECTION, the only ones the writer exports */
+    private static final String SONG_SELECTION = MediaStore.Audio.AudioColumns.IS_MUSIC + "=1 AND " + MediaStore.Audio.AudioColumns.TITLE + " != ''";
+
+    private Context mContext;
+    private final ArrayList<Integer> mPlaylistIds = new ArrayList<>();
+    private File mFile;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getInstrumentation().getTargetContext();
+    }
+
+    @After
+    public void tearDown() {
+        for (int playlistId : mPlaylistIds) {
+            mContext.getContentResolver().delete(MediaStore.Audio.Playlists.EXTERNAL_CONTENT_URI,
+                    BaseColumns._ID + "=?", new String[]{String.valueOf(playlistId)});
+        }
+        if (mFile != null) //noinspection ResultOfMethodCallIgnored
+            mFile.delete();
+    }
+
+    @Test
+    public void roundTrip() throws Exception {
+        final int[] songIds = readSongIds();
+        assumeTrue("No songs on the device", songIds.length > 0);
+
+        final int[] expected = new int[ENTRIES];
+        for (int i = 0; i < ENTRIES; i++) {
+            expected[i] = songIds[i % songIds.length];
+        }
+        final Playlist source = new Playlist(createPlaylist("m3u_round_trip_source"), "m3u_round_trip_source");
+        fillPlaylist(source.id, expected);
+        final int targetId = createPlaylist("m3u_round_trip_target");
+
+        long start = SystemClock.elapsedRealtime();
+        mFile = M3UWriter.write(mContext, mContext.getCacheDir(), source);
+        final long writeMillis = SystemClock.elapsedRealtime() - start;
+
+        start = SystemClock.elapsedRealtime();
+        M3UReader.Result result = M3UReader.importInto(mContext, mFile, targetId, false);
+        final long readMillis = SystemClock.elapsedRealtime() - start;
+        Log.d(TAG, ENTRIES + " entries: export " + writeMillis + " ms, import " + readMillis + " ms");
+
+        assertEquals(ENTRIES, result.entries);
+        assertEquals(ENTRIES, result.added);
+        assertEquals(0, result.unresolved);
+        assertArrayEquals(expected, readMembers(targetId));
+        assertTrue("Round trip took " + (writeMillis + readMillis) + " ms", writeMillis + readMillis < MAX_ROUND_TRIP_MILLIS);
+    }
+
+    private int[] readSongIds() {
+        try (Cursor cursor = mContext.getContentResolver().query(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI,
+                new String[]{BaseColumns._ID}, SONG_SELECTION, null, null)) {
+            if (cursor == null) return new int[0];
+            int[] ids = new int[cursor.getCount()];
+            int i = 0;
+            while (cursor.moveToNext() && i < ids.length) {
+                ids[i++] = cursor.getInt(0);
+            }
+            return ids;
+        }
+    }
+
+    private int createPlaylist(String name) {
+        final ContentValues values = new ContentValues(1);
+        values.put(MediaStore.Audio.PlaylistsColumns.NAME, name + "_" + System.currentTimeMillis());
+        final Uri uri = mContext.getContentResolver().insert(MediaStore.Audio.Playlists.EXTERNAL_CONTENT_URI, values);
+        assertNotNull(uri);
+        final int playlistId = Integer.parseInt(uri.getLastPathSegment());
+        mPlaylistIds.add(playlistId);
+        return playlistId;
+    }
+
+    private void fillPlaylist(int playlistId, int[] songIds) {
+        final ContentResolver resolver = mContext.getContentResolver();
+        final Uri uri = MediaStore.Audio.Playlists.Members.getContentUri("external", playlistId);
+        for (int offset = 0; offset < songIds.length; offset += 1000) {
+            ContentValues[] values = new ContentValues[Math.min(1000, songIds.length - offset)];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = new ContentValues(2);
+                values[i].put(MediaStore.Audio.Playlists.Members.PLAY_ORDER, offset + i + 1);
+                values[i].put(MediaStore.Audio.Playlists.Members.AUDIO_ID, songIds[offset + i]);
+            }
+            resolver.bulkInsert(uri, values);
+        }
+    }
+
+    private int[] readMembers(int playlistId) {
+        try (Cursor cursor = mContext.getContentResolver().query(MediaStore.Audio.Playlists.Members.getContentUri("external", playlistId),
+                new String[]{MediaStore.Audio.Playlists.Members.AUDIO_ID}, null, null,
+                MediaStore.Audio.Playlists.Members.DEFAULT_SORT_ORDER)) {
+            if (cursor == null) return new int[0];
+            int[] ids = new int[cursor.getCount()];
+            int i = 0;
+            while (cursor.moveToNext() && i < ids.length) {
+                ids[i++] = cursor.getInt(0);
+            }
+            return ids;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.ldt.musicr.ui.widget.bubblepicker.physics
+
+import android.util.Log
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import org.jbox2d.common.Vec2
+import org.jbox2d.dynamics.World
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+import java.util.*
+import kotlin.math.abs
+import kotlin.math.min
+import kotlin.math.sqrt
+
+/**
+ * Headless benchmark of the picker physics: no view or GL surface, each run fills its own world
+ * with bubbles and times the same fixed steps as [PhysicsEngine]. The timings are logged, the
+ * test fails if a body ends up outside of the floor and ceiling borders or past their ends.
+ */
+@RunWith(AndroidJUnit4::class)
+class PhysicsBenchmarkTest {
+    @Test
+    fun stepBubbles() {
+        val builder = StringBuilder()
+        intArrayOf(20, 50, 100, 150, 200).forEach { builder.append(runOnce(it)).append('\n') }
+        Log.d(TAG, builder.toString())
+    }
+
+    private fun runOnce(count: Int): String {
+        val world = World(Vec2(0f, 0f), false)
+        Border(world, Vec2(0f, PhysicsEngine.floorYValue), Border.HORIZONTAL)
+        Border(world, Vec2(0f, -PhysicsEngine.floorYValue), Border.HORIZONTAL)
+
+        // same seed every run, and about the same bubble area whatever the count
+        val rnd = Random(count.toLong())
+        val unit = RADIUS_UNIT * min(1f, sqrt(20f / count))
+        val bodies = ArrayList<CircleBody>(count)
+        for (i in 0 until count) {
+            val x = (rnd.nextFloat() * 2f - 1f) * 2.2f
+            val y = (rnd.nextFloat() - 0.5f) * PhysicsEngine.floorYValue * 2f
+            bodies.add(CircleBody(CircleBody.nextId, world, Vec2(x, y), unit, 1f + rnd.nextFloat()))
+        }
+
+        var totalNanos = 0L
+        var maxNanos = 0L
+        var awakeSteps = 0
+        var restStep = -1
+        for (step in 0 until STEPS) {
+            val start = System.nanoTime()
+            PhysicsEngine.stepBodies(world, bodies, PhysicsEngine.FIXED_STEP)
+            val nanos = System.nanoTime() - start
+
+            if (bodies.all { it.isResting }) {
+                if (restStep == -1) restStep = step
+                continue
+            }
+            awakeSteps++
+            totalNanos += nanos
+            if (nanos > maxNanos) maxNanos = nanos
+        }
+
+        for (body in bodies) {
+            assertTrue("$count bubbles: a body left the world", body.renderX.isFinite() && body.renderY.isFinite())
+            assertTrue("$count bubbles: a body went through a border at y = ${body.renderY}",
+                abs(body.renderY) <= PhysicsEngine.floorYValue + body.renderRadius)
+            assertTrue("$count bubbles: a body went past the end of the borders at x = ${body.renderX}",
+                abs(body.renderX) + body.renderRadius <= Border.HALF_LENGTH)
+        }
+
+        return count.toString() + " bubbles: avg step " + (if (awakeSteps == 0) 0 else totalNanos / awakeSteps / 1000) + " us" +
+                ", max step " + maxNanos / 1000 + " us" +
+                ", " + (if (restStep == -1) "still moving after $STEPS steps" else "at rest after $restStep steps")
+    }
+
+    companion object {
+        private const val TAG = "PhysicsBenchmark"
+
+        private const val STEPS = 600
+        private const val RADIUS_UNIT = 0.125f
+    }
+}
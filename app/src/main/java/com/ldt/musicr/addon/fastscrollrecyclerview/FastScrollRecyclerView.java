@@ -279,6 +279,10 @@ public class FastScrollRecyclerView extends RecyclerView implements RecyclerView
         layoutManager.scrollToPositionWithOffset(spanCount * exactItemPos / mScrollPosState.rowHeight,
                 -(exactItemPos % mScrollPosState.rowHeight));
 
+        if (getAdapter() instanceof SectionIndexedAdapter) {
+            return ((SectionIndexedAdapter) getAdapter()).getSectionIndex().getLabelForFraction(touchFraction);
+        }
+
         if (!(getAdapter() instanceof SectionedAdapter)) {
             return "";
         }
@@ -471,6 +475,15 @@ public class FastScrollRecyclerView extends RecyclerView implements RecyclerView
         String getSectionName(int position);
     }
 
+    /**
+     * Adapters that precompute their sections once per data set, so the popup label is an array
+     * lookup while the thumb is dragged.
+     */
+    public interface SectionIndexedAdapter {
+        @NonNull
+        SectionIndex getSectionIndex();
+    }
+
     /**
      * FastScrollRecyclerView by default assumes that all items in a RecyclerView will have
      * ItemViews with the same heights so that the total height of all views in the RecyclerView
@@ -0,0 +1,143 @@
+package com.ldt.musicr.addon.fastscrollrecyclerview;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Position to section lookup table for the fast scroll popup.
+ * <p>
+ * Built once per list submission, so that dragging the thumb through a long list only reads
+ * arrays: no label is computed and no String is allocated per scroll event.
+ */
+public final class SectionIndex {
+
+    public interface LabelProvider {
+        /**
+         * @return the section label of the item at this position, or null if the item belongs
+         * to the section of the item before it (headers, dims, tiles...)
+         */
+        @Nullable
+        String getLabel(int position);
+    }
+
+    public static final SectionIndex EMPTY = new SectionIndex(new int[0], new String[0], new int[0]);
+
+    /* position -> section id */
+    private final int[] mSectionOfPosition;
+
+    /* section id -> label, each label appears only once */
+    private final String[] mLabels;
+
+    /* section id -> first position of that section */
+    private final int[] mFirstPositionOfSection;
+
+    private SectionIndex(int[] sectionOfPosition, String[] labels, int[] firstPositionOfSection) {
+        mSectionOfPosition = sectionOfPosition;
+        mLabels = labels;
+        mFirstPositionOfSection = firstPositionOfSection;
+    }
+
+    @NonNull
+    public static SectionIndex build(int itemCount, @NonNull LabelProvider provider) {
+        if (itemCount <= 0) return EMPTY;
+
+        int[] sectionOfPosition = new int[itemCount];
+        HashMap<String, Integer> labelToSection = new HashMap<>();
+        ArrayList<String> labels = new ArrayList<>();
+        ArrayList<Integer> firstPositions = new ArrayList<>();
+
+        int current = -1;
+        int leading = 0;
+        for (int i = 0; i < itemCount; i++) {
+            String label = provider.getLabel(i);
+            if (label != null) {
+                Integer section = labelToSection.get(label);
+                if (section == null) {
+                    section = labels.size();
+                    labelToSection.put(label, section);
+                    labels.add(label);
+                    firstPositions.add(i);
+                }
+                current = section;
+            }
+
+            if (current == -1) {
+                // items before the first labeled one take its section, filled in below
+                leading++;
+            } else {
+                sectionOfPosition[i] = current;
+            }
+        }
+
+        if (labels.isEmpty()) {
+            labels.add("");
+            firstPositions.add(0);
+        }
+
+        for (int i = 0; i < leading; i++) {
+            sectionOfPosition[i] = sectionOfPosition[leading < itemCount ? leading : 0];
+        }
+
+        int[] firstPositionOfSection = new int[firstPositions.size()];
+        for (int i = 0; i < firstPositionOfSection.length; i++) {
+            firstPositionOfSection[i] = firstPositions.get(i);
+        }
+        firstPositionOfSection[sectionOfPosition[0]] = 0;
+
+        return new SectionIndex(sectionOfPosition, labels.toArray(new String[0]), firstPositionOfSection);
+    }
+
+    /**
+     * Number of positions covered by this index
+     */
+    public int size() {
+        return mSectionOfPosition.length;
+    }
+
+    public int getSectionCount() {
+        return mLabels.length;
+    }
+
+    public int getSectionId(int position) {
+        if (mSectionOfPosition.length == 0) return -1;
+        if (position < 0) position = 0;
+        else if (position >= mSectionOfPosition.length) position = mSectionOfPosition.length - 1;
+        return mSectionOfPosition[position];
+    }
+
+    @NonNull
+    public String getLabel(int position) {
+        int section = getSectionId(position);
+        return section == -1 ? "" : mLabels[section];
+    }
+
+    @NonNull
+    public String getSectionLabel(int sectionId) {
+        return mLabels[sectionId];
+    }
+
+    public int getFirstPositionOfSection(int sectionId) {
+        return mFirstPositionOfSection[sectionId];
+    }
+
+    /**
+     * Map a thumb position (0..1) to the adapter position under it.
+     */
+    public int getPositionForFraction(float touchFraction) {
+        int count = mSectionOfPosition.length;
+        if (count == 0) return 0;
+        int position = (int) (count * touchFraction);
+        return position >= count ? count - 1 : Math.max(position, 0);
+    }
+
+    /**
+     * Label shown in the popup for a thumb position (0..1).
+     */
+    @NonNull
+    public String getLabelForFraction(float touchFraction) {
+        return getLabel(getPositionForFraction(touchFraction));
+    }
+}
@@ -2,6 +2,8 @@ package com.ldt.musicr.common
 
 import com.ldt.musicr.App
 import com.ldt.musicr.helper.extension.post
+import com.ldt.musicr.interactors.AppExecutors
+import com.ldt.musicr.interactors.TaskLane
 import com.ldt.musicr.loader.medialoader.ArtistLoader
 import com.ldt.musicr.loader.medialoader.PlaylistLoader
 import com.ldt.musicr.loader.medialoader.PlaylistSongLoader
@@ -11,6 +13,7 @@ import com.ldt.musicr.model.Song
 import com.ldt.musicr.model.mp.MPPlaylist
 import com.ldt.musicr.notification.EventKey
 import com.ldt.musicr.notification.MediaKey
+import com.ldt.musicr.util.PreferenceUtil
 import com.ldt.musicr.utils.Utils
 import com.zalo.gitlabmobile.notification.MessageEvent
 import org.greenrobot.eventbus.EventBus
@@ -18,6 +21,7 @@ import org.greenrobot.eventbus.Subscribe
 import org.greenrobot.eventbus.ThreadMode
 import java.util.*
 import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicLong
 
 object MediaManager {
     private val allSongs = Collections.synchronizedList(mutableListOf<Song>())
@@ -49,6 +53,12 @@ object MediaManager {
     private val isLoadedPlaylistsInternal = AtomicBoolean(false)
     private val isLoadedArtistsInternal = AtomicBoolean(false)
 
+    /**
+     * Changes every time the songs are loaded, 0 while they are not
+     */
+    private val songsGenerationInternal = AtomicLong(0)
+
+    @JvmStatic
     fun getSong(id: Int): Song? {
         return mapIdToSong[id]
     }
@@ -64,6 +74,13 @@ object MediaManager {
     val isLoadedMedia: Boolean get() = isLoadedMediaInternal.get()
     val isLoadingMedia: Boolean get() = isLoadingMediaInternal.get()
     val isLoadedSongs: Boolean get() = isLoadedSongsInternal.get()
+
+    /**
+     * Identifies the current load of the songs, also across processes: song ids that are missing
+     * from the same generation they were taken from are songs that no longer exist.
+     */
+    @JvmStatic
+    val songsGeneration: Long get() = songsGenerationInternal.get()
     val isLoadedPlaylists: Boolean get() = isLoadedMediaInternal.get()
     val isLoadedArtists: Boolean get() = isLoadedMediaInternal.get()
 
@@ -80,6 +97,8 @@ object MediaManager {
         isLoadingMediaInternal.set(false)
         isLoadedMediaInternal.set(true)
         EventKey.OnLoadedMedia.post()
+
+        if (PreferenceUtil.getInstance().hiddenSongs()) loadHiddenSongs(songsGenerationInternal.get())
     }
 
     private fun loadAllSongs() {
@@ -89,11 +108,35 @@ object MediaManager {
         allSongs.forEach {
             mapIdToSong[it.id] = it
         }
+        songsGenerationInternal.set(maxOf(System.currentTimeMillis(), songsGenerationInternal.get() + 1))
 
         isLoadedSongsInternal.set(true)
         EventKey.OnLoadedSongs.post()
     }
 
+    /**
+     * Walk the storage for the songs in .nomedia folders on the disk lane, then add them to the
+     * songs of [generation]. The library is loaded without waiting for the walk.
+     */
+    private fun loadHiddenSongs(generation: Long) {
+        AppExecutors.disk().execute(TaskLane.PRIORITY_LOW) {
+            val hiddenSongs = SongLoader.getHiddenSongs(App.getInstance())
+            if (hiddenSongs.isEmpty()) return@execute
+
+            synchronized(allSongs) {
+                // the songs were cleared or loaded again meanwhile
+                if (generation != songsGenerationInternal.get()) return@execute
+                allSongs.addAll(hiddenSongs)
+                hiddenSongs.forEach {
+                    mapIdToSong[it.id] = it
+                }
+                mapIdToPlaylist[MediaKey.PLAYLIST_ID_ALL_SONGS]?.songs?.addAll(hiddenSongs.map { it.id })
+            }
+            EventKey.OnLoadedSongs.post()
+            EventKey.OnLoadedPlaylists.post()
+        }
+    }
+
     private fun loadAllPlaylists() {
         mapIdToPlaylist.clear()
 
@@ -138,6 +181,7 @@ object MediaManager {
 
     @JvmStatic
     fun clearMedia() {
+        songsGenerationInternal.set(0)
         mapIdToSong.clear()
         mapIdToPlaylist.clear()
 
@@ -1,5 +1,6 @@
 package com.ldt.musicr.contract;
 
+import androidx.annotation.Nullable;
 import androidx.recyclerview.widget.RecyclerView;
 
 import java.util.ArrayList;
@@ -10,19 +11,73 @@ public abstract class AbsDataAdapter<VH extends AbsBindAbleHolder, I> extends Re
 
     private final List<I> mData = new ArrayList<>();
 
+    private ListDiffer<I> mDiffer;
+
+    protected final BindStats mBindStats = new BindStats(getClass().getSimpleName());
+
     public final List<I> getData() {
         return mData;
     }
 
+    /**
+     * Replace the data. When the adapter provides an {@link #getItemIdentity() item identity} and
+     * both the old and new data are not empty, the change is diffed in the background and applied
+     * later on the main thread, so only changed rows are rebound.
+     */
     public final void setData(List<I> data) {
-        mData.clear();
+        ListDiffer.ItemIdentity<I> identity = getItemIdentity();
+        if (identity == null) {
+            mData.clear();
+
+            if (data != null) {
+                mData.addAll(data);
+            }
 
-        if (data != null) {
-            mData.addAll(data);
+            onDataSet();
+            notifyDataSetChanged();
+            return;
         }
 
-        onDataSet();
-        notifyDataSetChanged();
+        if (mDiffer == null) {
+            mDiffer = new ListDiffer<>(this, identity, mData);
+        }
+        mDiffer.setPositionOffset(getMediaHolderPosition(0));
+        mDiffer.setPositionPayload(getPositionPayload());
+        mDiffer.setMaxDiffSize(getMaxDiffSize());
+        mDiffer.submit(data, this::onDataSet);
+    }
+
+    /**
+     * @return how to identify items of this adapter across data sets, or null to always rebind
+     * the whole list
+     */
+    @Nullable
+    protected ListDiffer.ItemIdentity<I> getItemIdentity() {
+        return null;
+    }
+
+    /**
+     * @return payload sent to rows whose position changed after a diff, or null if rows do not
+     * depend on their position
+     */
+    @Nullable
+    protected Object getPositionPayload() {
+        return null;
+    }
+
+    /**
+     * @return the size above which the data is replaced at once instead of diffed
+     */
+    protected int getMaxDiffSize() {
+        return Integer.MAX_VALUE;
+    }
+
+    public BindStats getBindStats() {
+        return mBindStats;
+    }
+
+    private void onDataModified() {
+        if (mDiffer != null) mDiffer.onBackingListModified();
     }
 
     @Override
@@ -33,6 +88,7 @@ public abstract class AbsDataAdapter<VH extends AbsBindAbleHolder, I> extends Re
     protected abstract void onDataSet();
 
     public void destroy() {
+        if (mDiffer != null) mDiffer.cancel();
         mData.clear();
     }
 
@@ -44,6 +100,7 @@ public abstract class AbsDataAdapter<VH extends AbsBindAbleHolder, I> extends Re
         if (item != null) {
             int pos = (i < 0) ? 0 : (i >= mData.size()) ? mData.size() : i;
             mData.add(pos, item);
+            onDataModified();
             notifyItemChanged(pos);
         }
     }
@@ -51,12 +108,14 @@ public abstract class AbsDataAdapter<VH extends AbsBindAbleHolder, I> extends Re
     public void addItem(I item) {
         if (item != null) {
             mData.add(item);
+            onDataModified();
             notifyItemChanged(mData.size() - 1);
         }
     }
 
     public void removeSongAt(int i) {
         mData.remove(i);
+        onDataModified();
         notifyItemRemoved(i);
     }
 
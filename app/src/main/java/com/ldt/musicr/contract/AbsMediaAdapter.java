@@ -26,6 +26,7 @@ public abstract class AbsMediaAdapter<VH extends AbsBindAbleHolder, I extends Me
     public static final String PLAY_STATE_CHANGED = "play_state_changed";
     public static final String SONG_PREVIEW_CHANGED = "song_preview_changed";
     public static final String PALETTE_CHANGED = "palette_changed";
+    public static final String POSITION_CHANGED = "position_changed";
 
     public void setName(String name) {
         mName = name;
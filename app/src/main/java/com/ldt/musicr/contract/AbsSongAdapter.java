@@ -71,6 +71,30 @@ public abstract class AbsSongAdapter extends AbsMediaAdapter<AbsBindAbleHolder,
         }
     }
 
+    private static final ListDiffer.ItemIdentity<Song> SONG_IDENTITY = new ListDiffer.ItemIdentity<Song>() {
+        @Override
+        public long getItemId(@NonNull Song item) {
+            return item.id;
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull Song oldItem, @NonNull Song newItem) {
+            return oldItem.equals(newItem);
+        }
+    };
+
+    @Nullable
+    @Override
+    protected ListDiffer.ItemIdentity<Song> getItemIdentity() {
+        return SONG_IDENTITY;
+    }
+
+    @Nullable
+    @Override
+    protected Object getPositionPayload() {
+        return POSITION_CHANGED;
+    }
+
     @Override
     protected void onDataSet() {
 
@@ -169,7 +193,8 @@ public abstract class AbsSongAdapter extends AbsMediaAdapter<AbsBindAbleHolder,
 
     @Override
     public void onBindViewHolder(@NonNull AbsBindAbleHolder holder, int position, @NonNull List<Object> payloads) {
-        if (holder instanceof SongHolder && !payloads.isEmpty())
+        if (holder instanceof SongHolder && !payloads.isEmpty()) {
+            mBindStats.onPartialBind();
             for (Object object : payloads) {
                 Log.d(TAG, "onBindViewHolder: object " + object);
                 if (object instanceof String) {
@@ -187,13 +212,17 @@ public abstract class AbsSongAdapter extends AbsMediaAdapter<AbsBindAbleHolder,
                             Log.d(TAG, mName + " onBindViewHolder: " + PALETTE_CHANGED);
                             ((SongHolder) holder).bindTheme();
                             break;
+                        case POSITION_CHANGED:
+                            ((SongHolder) holder).bindNumber(position);
+                            break;
                         default:
                             super.onBindViewHolder(holder, position, payloads);
                     }
                 } else super.onBindViewHolder(holder, position, payloads);
             }
-        else {
+        } else {
             Log.d(TAG, mName + " onBindViewHolder: " + position + ", " + payloads);
+            mBindStats.onFullBind();
             super.onBindViewHolder(holder, position, payloads);
         }
     }
@@ -271,7 +300,7 @@ public abstract class AbsSongAdapter extends AbsMediaAdapter<AbsBindAbleHolder,
         @Override
         public void bind(Song song) {
             Log.d(TAG, "bind");
-            mNumber.setText("" + (getDataPosition(getAdapterPosition()) + 1));
+            bindNumber(getAdapterPosition());
             mTitle.setText(song.title);
             mDescription.setText(song.artistName);
 
@@ -300,6 +329,11 @@ public abstract class AbsSongAdapter extends AbsMediaAdapter<AbsBindAbleHolder,
             bindPreviewButton(song);
         }
 
+        @SuppressLint("SetTextI18n")
+        void bindNumber(int adapterPosition) {
+            mNumber.setText("" + (getDataPosition(adapterPosition) + 1));
+        }
+
         void bindTheme() {
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
                 ((RippleDrawable) mPanel.getBackground()).setColor(ColorStateList.valueOf(Tool.getBaseColor()));
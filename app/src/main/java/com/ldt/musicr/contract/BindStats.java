@@ -0,0 +1,55 @@
+package com.ldt.musicr.contract;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Counts how often the rows of an adapter are rebound, to check that data and state changes only
+ * redraw the rows they affect.
+ * <p>
+ * A full bind rebinds the whole row, artwork request included. A partial bind only applies a
+ * payload such as a play state or theme change.
+ */
+public class BindStats {
+    private static final String TAG = "BindStats";
+
+    private final String mName;
+    private long mFullBinds = 0;
+    private long mPartialBinds = 0;
+
+    public BindStats(@NonNull String name) {
+        mName = name;
+    }
+
+    public void onFullBind() {
+        mFullBinds++;
+    }
+
+    public void onPartialBind() {
+        mPartialBinds++;
+    }
+
+    public long getFullBinds() {
+        return mFullBinds;
+    }
+
+    public long getPartialBinds() {
+        return mPartialBinds;
+    }
+
+    public void reset() {
+        mFullBinds = 0;
+        mPartialBinds = 0;
+    }
+
+    public void log() {
+        Log.d(TAG, toString());
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return mName + ": full binds " + mFullBinds + ", partial binds " + mPartialBinds;
+    }
+}
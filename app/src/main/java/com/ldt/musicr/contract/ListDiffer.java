@@ -0,0 +1,199 @@
+package com.ldt.musicr.contract;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListUpdateCallback;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.ldt.musicr.interactors.AppExecutors;
+import com.ldt.musicr.interactors.LatestTaskRunner;
+import com.ldt.musicr.interactors.TaskLane;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replaces the data of an adapter with a diff computed on the cpu lane, so that only the rows
+ * which really changed are rebound (and re-request their artwork) instead of the whole list.
+ * <p>
+ * The differ writes into the adapter's own backing list. Any other change to that list must be
+ * reported through {@link #onBackingListModified()}, then a diff in flight falls back to a full
+ * data set change when it lands.
+ */
+public class ListDiffer<I> {
+
+    public interface ItemIdentity<I> {
+        /**
+         * Stable id of the item, e.g. song id
+         */
+        long getItemId(@NonNull I item);
+
+        /**
+         * Whether the row of this item would look the same after rebinding
+         */
+        boolean areContentsTheSame(@NonNull I oldItem, @NonNull I newItem);
+    }
+
+    private final RecyclerView.Adapter<?> mAdapter;
+    private final ItemIdentity<I> mIdentity;
+    private final List<I> mBackingList;
+    private final LatestTaskRunner mRunner;
+
+    private int mPositionOffset = 0;
+
+    private int mMaxDiffSize = Integer.MAX_VALUE;
+
+    @Nullable
+    private Object mPositionPayload = null;
+
+    /* Lowest position touched by an insert, remove or move while dispatching a diff */
+    private int mFirstShiftedPosition = Integer.MAX_VALUE;
+
+    /* Increased on every change of the backing list, to detect diffs computed against stale data */
+    private int mVersion = 0;
+
+    public ListDiffer(@NonNull RecyclerView.Adapter<?> adapter, @NonNull ItemIdentity<I> identity, @NonNull List<I> backingList) {
+        mAdapter = adapter;
+        mIdentity = identity;
+        mBackingList = backingList;
+        mRunner = new LatestTaskRunner("diff-" + adapter.getClass().getSimpleName(), AppExecutors.cpu(), TaskLane.PRIORITY_HIGH);
+    }
+
+    /**
+     * Number of adapter positions before the first item of the backing list (headers...)
+     */
+    public void setPositionOffset(int offset) {
+        mPositionOffset = offset;
+    }
+
+    /**
+     * Lists longer than this are replaced at once instead of diffed: a reshuffled queue of
+     * thousands of songs costs far more to diff than to rebind the few visible rows.
+     */
+    public void setMaxDiffSize(int maxDiffSize) {
+        mMaxDiffSize = maxDiffSize;
+    }
+
+    /**
+     * Rows that display their own position (e.g. track number) need a partial rebind when
+     * rows above them are inserted, removed or moved. If set, this payload is sent to every row
+     * after the first shifted one.
+     */
+    public void setPositionPayload(@Nullable Object payload) {
+        mPositionPayload = payload;
+    }
+
+    /**
+     * Replace the backing list by {@code newData}.
+     *
+     * @param onApplied called on the main thread right after the backing list is replaced and
+     *                  before the adapter is notified
+     */
+    @MainThread
+    public void submit(@Nullable List<I> newData, @Nullable Runnable onApplied) {
+        final List<I> newList = newData == null ? new ArrayList<>() : new ArrayList<>(newData);
+
+        if (mBackingList.isEmpty() || newList.isEmpty()
+                || mBackingList.size() > mMaxDiffSize || newList.size() > mMaxDiffSize) {
+            // nothing to diff against, or too much, apply at once
+            mRunner.cancel();
+            apply(newList, null, onApplied);
+            return;
+        }
+
+        final List<I> oldList = new ArrayList<>(mBackingList);
+        final int version = mVersion;
+        mRunner.submit(token -> DiffUtil.calculateDiff(new Callback(oldList, newList), false), result -> {
+            apply(newList, version == mVersion ? result : null, onApplied);
+        });
+    }
+
+    @MainThread
+    public void onBackingListModified() {
+        mVersion++;
+    }
+
+    public void cancel() {
+        mRunner.cancel();
+    }
+
+    @MainThread
+    private void apply(List<I> newList, @Nullable DiffUtil.DiffResult diff, @Nullable Runnable onApplied) {
+        mVersion++;
+        mBackingList.clear();
+        mBackingList.addAll(newList);
+        if (onApplied != null) onApplied.run();
+
+        if (diff == null) {
+            mAdapter.notifyDataSetChanged();
+            return;
+        }
+
+        mFirstShiftedPosition = Integer.MAX_VALUE;
+        diff.dispatchUpdatesTo(mUpdateCallback);
+        if (mPositionPayload != null && mFirstShiftedPosition < newList.size()) {
+            mAdapter.notifyItemRangeChanged(mFirstShiftedPosition + mPositionOffset, newList.size() - mFirstShiftedPosition, mPositionPayload);
+        }
+    }
+
+    private void onShifted(int position) {
+        if (position < mFirstShiftedPosition) mFirstShiftedPosition = position;
+    }
+
+    private final ListUpdateCallback mUpdateCallback = new ListUpdateCallback() {
+        @Override
+        public void onInserted(int position, int count) {
+            onShifted(position);
+            mAdapter.notifyItemRangeInserted(position + mPositionOffset, count);
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            onShifted(position);
+            mAdapter.notifyItemRangeRemoved(position + mPositionOffset, count);
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            onShifted(Math.min(fromPosition, toPosition));
+            mAdapter.notifyItemMoved(fromPosition + mPositionOffset, toPosition + mPositionOffset);
+        }
+
+        @Override
+        public void onChanged(int position, int count, @Nullable Object payload) {
+            mAdapter.notifyItemRangeChanged(position + mPositionOffset, count, payload);
+        }
+    };
+
+    private class Callback extends DiffUtil.Callback {
+        private final List<I> mOld;
+        private final List<I> mNew;
+
+        Callback(List<I> oldList, List<I> newList) {
+            mOld = oldList;
+            mNew = newList;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return mOld.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return mNew.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return mIdentity.getItemId(mOld.get(oldItemPosition)) == mIdentity.getItemId(mNew.get(newItemPosition));
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            return mIdentity.areContentsTheSame(mOld.get(oldItemPosition), mNew.get(newItemPosition));
+        }
+    }
+}
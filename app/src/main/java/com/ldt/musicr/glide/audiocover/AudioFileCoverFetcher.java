@@ -8,13 +8,7 @@ import com.bumptech.glide.load.DataSource;
 import com.bumptech.glide.load.data.DataFetcher;
 import com.ldt.musicr.util.AudioFileCoverUtils;
 
-
-import org.jaudiotagger.audio.mp3.MP3File;
-import org.jaudiotagger.tag.images.Artwork;
-
 import java.io.ByteArrayInputStream;
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.InputStream;
 
@@ -45,35 +39,6 @@ public class AudioFileCoverFetcher implements DataFetcher<InputStream> {
         }
     }
 
-    private static final String[] FALLBACKS = {"cover.jpg", "album.jpg", "folder.jpg", "cover.png", "album.png", "folder.png"};
-
-    private InputStream fallback(String path) throws FileNotFoundException {
-        // Method 1: use embedded high resolution album art if there is any
-        try {
-            MP3File mp3File = new MP3File(path);
-            if (mp3File.hasID3v2Tag()) {
-                Artwork art = mp3File.getTag().getFirstArtwork();
-                if (art != null) {
-                    byte[] imageData = art.getBinaryData();
-                    return new ByteArrayInputStream(imageData);
-                }
-            }
-        // If there are any exceptions, we ignore them and continue to the other fallback method
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-
-        // Method 2: look for album art in external files
-        File parent = new File(path).getParentFile();
-        for (String fallback : FALLBACKS) {
-            File cover = new File(parent, fallback);
-            if (cover.exists()) {
-                return stream = new FileInputStream(cover);
-            }
-        }
-        return null;
-    }
-
     @Override
     public void cleanup() {
         // already cleaned up in loadData and ByteArrayInputStream will be GC'd
@@ -1,77 +0,0 @@
- 
-/*
- * Copyright (C) 2017 The Android Open Source Project
- *
- * Licensed under the Apache License, Version 2.0 (the "License");
- * you may not use this file except in compliance with the License.
- * You may obtain a copy of the License at
- *
- *      http://www.apache.org/licenses/LICENSE-2.0
- *
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- */
-
-package com.ldt.musicr.helper;
-
-import android.os.Handler;
-import android.os.Looper;
-import androidx.annotation.NonNull;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
-
-/**
- * Global executor pools for the whole application.
- * <p>
- * Grouping tasks like this avoids the effects of task starvation (e.g. disk reads don't wait behind
- * webservice requests).
- */
-public class AppExecutors {
-
-    private static AppExecutors sInstance;
-    public static AppExecutors getInstance() {
-        if(sInstance == null) sInstance = new AppExecutors();
-        return sInstance;
-    }
-
-    private final Executor mDiskIO;
-
-    private final Executor mNetworkIO;
-
-    private final Executor mMainThread;
-
-    private AppExecutors(Executor diskIO, Executor networkIO, Executor mainThread) {
-        this.mDiskIO = diskIO;
-        this.mNetworkIO = networkIO;
-        this.mMainThread = mainThread;
-    }
-
-    public AppExecutors() {
-        this(Executors.newSingleThreadExecutor(), Executors.newFixedThreadPool(25),
-                new MainThreadExecutor());
-    }
-
-    public Executor diskIO() {
-        return mDiskIO;
-    }
-
-    public Executor networkIO() {
-        return mNetworkIO;
-    }
-
-    public Executor mainThread() {
-        return mMainThread;
-    }
-
-    private static class MainThreadExecutor implements Executor {
-        private Handler mainThreadHandler = new Handler(Looper.getMainLooper());
-
-        @Override
-        public void execute(@NonNull Runnable command) {
-            mainThreadHandler.post(command);
-        }
-    }
-}
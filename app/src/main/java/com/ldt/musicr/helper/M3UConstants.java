@@ -2,7 +2,8 @@ package com.ldt.musicr.helper;
 
 public interface M3UConstants {
     String EXTENSION = "m3u";
+    String EXTENSION_UTF8 = "m3u8";
     String HEADER = "#EXTM3U";
     String ENTRY = "#EXTINF:";
     String DURATION_SEPARATOR = ",";
-}
\ No newline at end of file
+}
@@ -0,0 +1,202 @@
+package com.ldt.musicr.helper;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.BaseColumns;
+import android.provider.MediaStore;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.ldt.musicr.util.PlaylistEditSession;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Locale;
+
+/**
+ * Imports M3U and M3U8 playlists into a media store playlist.
+ * <p>
+ * The file is read line by line. Entries are resolved to song ids in batches against a path to id
+ * index of the media store built once per import, and every batch is added to one
+ * {@link PlaylistEditSession}, committed at the end.
+ */
+public class M3UReader implements M3UConstants {
+    private static final int BATCH_SIZE = 1000;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    public static final class Result {
+        /* Entries read from the file */
+        public final int entries;
+        /* Songs added to the playlist */
+        public final int added;
+        /* Entries with no song of the media store */
+        public final int unresolved;
+
+        Result(int entries, int added, int unresolved) {
+            this.entries = entries;
+            this.added = added;
+            this.unresolved = unresolved;
+        }
+    }
+
+    /**
+     * Append the songs of an M3U file to a playlist.
+     *
+     * @param skipDuplicates don't add the songs that are already in the playlist
+     * @throws IOException if the file can't be read or the playlist can't be written
+     */
+    @WorkerThread
+    @NonNull
+    public static Result importInto(@NonNull Context context, @NonNull File file, int playlistId, boolean skipDuplicates) throws IOException {
+        final PathIndex index = PathIndex.load(context);
+        final PlaylistEditSession session = PlaylistEditSession.open(context, playlistId);
+        final String baseDir = file.getAbsoluteFile().getParent();
+
+        int entries = 0;
+        int added = 0;
+        int unresolved = 0;
+        final String[] batch = new String[BATCH_SIZE];
+        final int[] songIds = new int[BATCH_SIZE];
+        int batchSize = 0;
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), Charset.forName("UTF-8")), BUFFER_SIZE)) {
+            String line;
+            boolean first = true;
+            while ((line = reader.readLine()) != null) {
+                // byte order mark
+                if (first && line.length() > 0 && line.charAt(0) == '\uFEFF') line = line.substring(1);
+                first = false;
+
+                line = line.trim();
+                if (line.isEmpty() || line.charAt(0) == '#') continue;
+
+                entries++;
+                batch[batchSize++] = line;
+                if (batchSize == BATCH_SIZE) {
+                    final int resolved = index.resolve(batch, batchSize, baseDir, songIds);
+                    unresolved += batchSize - resolved;
+                    added += session.add(songIds, resolved, skipDuplicates);
+                    batchSize = 0;
+                }
+            }
+        }
+        if (batchSize > 0) {
+            final int resolved = index.resolve(batch, batchSize, baseDir, songIds);
+            unresolved += batchSize - resolved;
+            added += session.add(songIds, resolved, skipDuplicates);
+        }
+
+        if (added > 0 && session.commit() < 0) {
+            throw new IOException("Could not write playlist " + playlistId);
+        }
+        return new Result(entries, added, unresolved);
+    }
+
+    /**
+     * The path of every audio file of the media store, mapped to its id.
+     */
+    private static final class PathIndex {
+        private final HashMap<String, Integer> mIds;
+
+        /* Same index with lower case paths, built on the first miss: playlists written on
+           case-insensitive file systems don't always match the case of the path */
+        @Nullable
+        private HashMap<String, Integer> mIdsIgnoreCase = null;
+
+        private PathIndex(HashMap<String, Integer> ids) {
+            mIds = ids;
+        }
+
+        @NonNull
+        static PathIndex load(@NonNull Context context) {
+            Cursor cursor = null;
+            try {
+                cursor = context.getContentResolver().query(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI,
+                        new String[]{BaseColumns._ID, MediaStore.Audio.AudioColumns.DATA},
+                        null, null, null);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+
+            HashMap<String, Integer> ids = new HashMap<>(cursor == null ? 16 : cursor.getCount() * 2);
+            if (cursor != null) {
+                try {
+                    while (cursor.moveToNext()) {
+                        String path = cursor.getString(1);
+                        if (path != null) ids.put(path, cursor.getInt(0));
+                    }
+                } finally {
+                    cursor.close();
+                }
+            }
+            return new PathIndex(ids);
+        }
+
+        /**
+         * @param songIds receives the ids of the resolved entries, in entry order
+         * @return the number of resolved entries
+         */
+        int resolve(String[] entries, int count, String baseDir, int[] songIds) {
+            int resolved = 0;
+            for (int i = 0; i < count; i++) {
+                String path = toPath(entries[i], baseDir);
+                Integer id = mIds.get(path);
+                if (id == null) {
+                    if (mIdsIgnoreCase == null) mIdsIgnoreCase = lowerCased(mIds);
+                    id = mIdsIgnoreCase.get(path.toLowerCase(Locale.ROOT));
+                }
+                if (id != null) songIds[resolved++] = id;
+            }
+            return resolved;
+        }
+
+        @NonNull
+        private static HashMap<String, Integer> lowerCased(HashMap<String, Integer> ids) {
+            HashMap<String, Integer> lowerCased = new HashMap<>(ids.size() * 2);
+            for (HashMap.Entry<String, Integer> entry : ids.entrySet()) {
+                lowerCased.put(entry.getKey().toLowerCase(Locale.ROOT), entry.getValue());
+            }
+            return lowerCased;
+        }
+
+        /**
+         * Absolute, normalized path of an entry: file URIs are decoded, Windows separators
+         * replaced, and relative entries resolved against the playlist folder.
+         */
+        @NonNull
+        private static String toPath(String entry, String baseDir) {
+            if (entry.startsWith("file://")) {
+                String path = Uri.parse(entry).getPath();
+                if (path != null) entry = path;
+            }
+            entry = entry.replace('\\', '/');
+            if (!entry.startsWith("/") && baseDir != null) entry = baseDir + '/' + entry;
+
+            // drop "." and "..", without touching the file system
+            ArrayList<String> segments = new ArrayList<>();
+            for (String segment : entry.split("/")) {
+                if (segment.isEmpty() || segment.equals(".")) continue;
+                if (segment.equals("..")) {
+                    if (!segments.isEmpty()) segments.remove(segments.size() - 1);
+                } else {
+                    segments.add(segment);
+                }
+            }
+            StringBuilder path = new StringBuilder(entry.length());
+            for (String segment : segments) {
+                path.append('/').append(segment);
+            }
+            return path.toString();
+        }
+    }
+}
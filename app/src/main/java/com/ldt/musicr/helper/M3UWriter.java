@@ -1,6 +1,10 @@
 package com.ldt.musicr.helper;
 
 import android.content.Context;
+import android.database.Cursor;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.ldt.musicr.loader.medialoader.PlaylistSongLoader;
 import com.ldt.musicr.model.AbsCustomPlaylist;
@@ -9,38 +13,91 @@ import com.ldt.musicr.model.Song;
 
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 
+/**
+ * Writes playlists as extended M3U, UTF-8 encoded. A media store playlist is streamed from its
+ * members cursor one entry at a time, it is never loaded as a list of songs.
+ */
 public class M3UWriter implements M3UConstants {
+    private static final int BUFFER_SIZE = 64 * 1024;
 
     public static File write(Context context, File dir, Playlist playlist) throws IOException {
+        return write(context, dir, playlist, EXTENSION);
+    }
+
+    /**
+     * @param extension {@link #EXTENSION} or {@link #EXTENSION_UTF8}, both are written as UTF-8
+     */
+    public static File write(Context context, File dir, Playlist playlist, String extension) throws IOException {
         if (!dir.exists()) //noinspection ResultOfMethodCallIgnored
             dir.mkdirs();
-        File file = new File(dir, playlist.name.concat("." + EXTENSION));
+        File file = new File(dir, playlist.name.concat("." + extension));
 
-        ArrayList<? extends Song> songs;
         if (playlist instanceof AbsCustomPlaylist) {
-            songs = ((AbsCustomPlaylist) playlist).getSongs(context);
-        } else {
-            songs = PlaylistSongLoader.getPlaylistSongList(context, playlist.id);
+            // smart playlists are computed in memory anyway
+            ArrayList<Song> songs = ((AbsCustomPlaylist) playlist).getSongs(context);
+            if (songs.size() > 0) {
+                try (Writer writer = openWriter(file)) {
+                    writer.write(HEADER);
+                    for (Song song : songs) {
+                        writeEntry(writer, song.duration, song.artistName, song.title, song.data);
+                    }
+                }
+            }
+            return file;
         }
 
-        if (songs.size() > 0) {
-            BufferedWriter bw = new BufferedWriter(new FileWriter(file));
-
-            bw.write(HEADER);
-            for (Song song : songs) {
-                bw.newLine();
-                bw.write(ENTRY + song.duration + DURATION_SEPARATOR + song.artistName + " - " + song.title);
-                bw.newLine();
-                bw.write(song.data);
+        Cursor cursor = PlaylistSongLoader.makePlaylistEntryCursor(context, playlist.id);
+        if (cursor == null) return file;
+        try {
+            if (cursor.moveToFirst()) {
+                try (Writer writer = openWriter(file)) {
+                    writer.write(HEADER);
+                    do {
+                        writeEntry(writer, cursor.getLong(0), cursor.getString(1), cursor.getString(2), cursor.getString(3));
+                    } while (cursor.moveToNext());
+                }
             }
+        } finally {
+            cursor.close();
+        }
+        return file;
+    }
 
-            bw.close();
+    @NonNull
+    private static Writer openWriter(File file) throws IOException {
+        FileOutputStream stream = new FileOutputStream(file);
+        try {
+            FileChannel channel = stream.getChannel();
+            return new BufferedWriter(Channels.newWriter(channel, Charset.forName("UTF-8").newEncoder(), BUFFER_SIZE), BUFFER_SIZE);
+        } catch (RuntimeException e) {
+            stream.close();
+            throw e;
         }
+    }
 
-        return file;
+    private static void writeEntry(Writer writer, long duration, String artistName, String title, String data) throws IOException {
+        writer.write('\n');
+        writer.write(ENTRY);
+        writer.write(Long.toString(duration / 1000));
+        writer.write(DURATION_SEPARATOR);
+        writer.write(orEmpty(artistName));
+        writer.write(" - ");
+        writer.write(orEmpty(title));
+        writer.write('\n');
+        writer.write(orEmpty(data));
+    }
+
+    /* A missing tag is written as an empty field, not as "null" */
+    @NonNull
+    private static String orEmpty(@Nullable String value) {
+        return value == null ? "" : value;
     }
 }
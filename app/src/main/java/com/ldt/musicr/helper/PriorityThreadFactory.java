@@ -1,13 +1,22 @@
 package com.ldt.musicr.helper;
 
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import android.os.Process;
 
 public class PriorityThreadFactory implements ThreadFactory {
 
+    private final String mName;
     private final int mThreadPriority;
+    private final AtomicInteger mThreadCount = new AtomicInteger();
 
     public PriorityThreadFactory(int threadPriority) {
+        this("priority", threadPriority);
+    }
+
+    public PriorityThreadFactory(String name, int threadPriority) {
+        mName = name;
         mThreadPriority = threadPriority;
     }
 
@@ -24,7 +33,7 @@ public class PriorityThreadFactory implements ThreadFactory {
                 runnable.run();
             }
         };
-        return new Thread(wrapperRunnable);
+        return new Thread(wrapperRunnable, mName + "-" + mThreadCount.incrementAndGet());
     }
 
-}
\ No newline at end of file
+}
@@ -2,24 +2,38 @@ package com.ldt.musicr.helper;
 
 import androidx.annotation.NonNull;
 
-import com.ldt.musicr.model.Song;
-
-import java.util.Collections;
-import java.util.List;
+import java.util.Random;
 
 /**
  * @author Karim Abou Zeid (kabouzeid)
  */
 public class ShuffleHelper {
+    private static final Random sRandom = new Random();
+
+    /**
+     * Fill {@code order} with a random permutation of the indexes 0..size-1, in place.
+     *
+     * @param first index to put at the head of the permutation, or -1 to shuffle all of them
+     */
+    public static void makeShuffleOrder(@NonNull int[] order, final int size, final int first) {
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        if (size == 0) return;
+
+        int from = 0;
+        if (first >= 0 && first < size) {
+            order[0] = first;
+            order[first] = 0;
+            from = 1;
+        }
 
-    public static void makeShuffleList(@NonNull List<Song> listToShuffle, final int current) {
-        if (listToShuffle.isEmpty()) return;
-        if (current >= 0) {
-            Song song = listToShuffle.remove(current);
-            Collections.shuffle(listToShuffle);
-            listToShuffle.add(0, song);
-        } else {
-            Collections.shuffle(listToShuffle);
+        // Fisher-Yates over the tail
+        for (int i = size - 1; i > from; i--) {
+            int j = from + sRandom.nextInt(i - from + 1);
+            int tmp = order[i];
+            order[i] = order[j];
+            order[j] = tmp;
         }
     }
 }
@@ -2,10 +2,10 @@ package com.ldt.musicr.helper;
 
 import android.graphics.Bitmap;
 
+import com.ldt.musicr.interactors.AppExecutors;
+
 import java.util.ArrayList;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 /**
  * Blur using Java code.
@@ -35,8 +35,7 @@ import java.util.concurrent.Executors;
  */
 public class StackBlur {
 
-    static final int EXECUTOR_THREADS = Runtime.getRuntime().availableProcessors();
-    static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(EXECUTOR_THREADS);
+    static final int EXECUTOR_THREADS = AppExecutors.cpu().getMaxThreads();
 
     private static final short[] stackblur_mul = {
             512, 512, 456, 512, 328, 456, 335, 512, 405, 328, 271, 456, 388, 335, 292, 512,
@@ -91,14 +90,14 @@ public class StackBlur {
         }
 
         try {
-            EXECUTOR.invokeAll(horizontal);
+            AppExecutors.cpu().invokeAll(horizontal);
         } catch (Exception e) {
             e.printStackTrace();
             return null;
         }
 
         try {
-            EXECUTOR.invokeAll(vertical);
+            AppExecutors.cpu().invokeAll(vertical);
         } catch (Exception e) {
             return null;
         }
@@ -3,11 +3,20 @@ package com.ldt.musicr.helper.extension
 import com.ldt.musicr.notification.EventKey
 import com.zalo.gitlabmobile.notification.MessageEvent
 import org.greenrobot.eventbus.EventBus
+import java.util.concurrent.ConcurrentHashMap
+
+/* MessageEvent is immutable, an event without data is posted as the same instance every time */
+private val dataLessEvents = ConcurrentHashMap<EventKey, MessageEvent>()
 
 fun EventKey.post(data: Any? = null, subData: Any? = null, subSubData: Any? = null) {
     postEvent(this, data, subData, subSubData)
 }
 
 fun postEvent(eventKey: EventKey, data: Any? = null, subData: Any? = null, subSubData: Any? = null) {
-    EventBus.getDefault().post(MessageEvent(eventKey, data, subData, subSubData))
-}
\ No newline at end of file
+    val event = if (data == null && subData == null && subSubData == null) {
+        dataLessEvents.getOrPut(eventKey) { MessageEvent(eventKey) }
+    } else {
+        MessageEvent(eventKey, data, subData, subSubData)
+    }
+    EventBus.getDefault().post(event)
+}
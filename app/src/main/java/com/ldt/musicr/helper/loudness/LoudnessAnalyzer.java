@@ -0,0 +1,280 @@
+package com.ldt.musicr.helper.loudness;
+
+import android.content.Context;
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.util.Log;
+import android.util.SparseLongArray;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.ldt.musicr.helper.tag.SongTagService;
+import com.ldt.musicr.interactors.AppExecutors;
+import com.ldt.musicr.interactors.CancellationToken;
+import com.ldt.musicr.interactors.ChargingTaskRunner;
+import com.ldt.musicr.interactors.TaskLane;
+import com.ldt.musicr.loader.medialoader.SongLoader;
+import com.ldt.musicr.model.Song;
+import com.ldt.musicr.model.SongTags;
+import com.ldt.musicr.provider.SongLoudnessStore;
+import com.ldt.musicr.util.PreferenceUtil;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures how loud songs are, so that the player can bring the loud ones down to the same
+ * level, like ReplayGain does.
+ * <p>
+ * A few windows of the song are decoded with {@link MediaCodec} and measured by a
+ * {@link LoudnessMeter}, which averages their power over blocks while ignoring silence and quiet
+ * passages like the gating of EBU R128. A replay gain in the tag of the song is used instead when
+ * there is one. Results are kept in {@link SongLoudnessStore} per version of the file, songs that
+ * cannot be decoded are stored as such so that they are not tried again.
+ * <p>
+ * Songs are only analyzed while the device is charging, one at a time on the decode lane with the
+ * lowest priority, see {@link ChargingTaskRunner}. The player only reads the stored result when a
+ * track starts, see {@link #getTrackGain(Song)}.
+ */
+public final class LoudnessAnalyzer {
+    private static final String TAG = "LoudnessAnalyzer";
+
+    /* The level songs are brought down to, the ReplayGain 2.0 reference */
+    public static final float TARGET_LOUDNESS_DB = -18f;
+
+    /* The player cannot amplify, and a very loud estimate is more likely wrong than right */
+    private static final float MIN_GAIN_DB = -15f;
+
+    /* Songs longer than the windows are measured on that many windows spread over the song */
+    private static final int WINDOWS = 3;
+    private static final long WINDOW_US = 10_000_000;
+
+    private static final long DEQUEUE_TIMEOUT_US = 10_000;
+    /* A decoder that gives nothing for that long after its last input is not waited for */
+    private static final int MAX_EMPTY_DEQUEUES = 100;
+
+    private static LoudnessAnalyzer sInstance = null;
+
+    @NonNull
+    public static synchronized LoudnessAnalyzer getInstance(@NonNull Context context) {
+        if (sInstance == null) {
+            sInstance = new LoudnessAnalyzer(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private final Context mContext;
+    private final ChargingTaskRunner mBackgroundRunner;
+
+    private LoudnessAnalyzer(Context context) {
+        mContext = context;
+        mBackgroundRunner = new ChargingTaskRunner(context, this::startBackgroundRun);
+    }
+
+    /**
+     * The volume to play the song at, read from the stored analysis. A song that was not analyzed
+     * yet is played as is, it is analyzed the next time the device is charging.
+     *
+     * @return a volume multiplier between 0 and 1
+     */
+    @WorkerThread
+    public float getTrackGain(@Nullable Song song) {
+        if (song == null || song.id == -1 || !PreferenceUtil.getInstance(mContext).volumeNormalization()) return 1f;
+
+        float[] loudness = SongLoudnessStore.getInstance(mContext).getLoudness(song.id, song.dateModified);
+        return loudness == null ? 1f : toVolume(loudness[0]);
+    }
+
+    /**
+     * @return the volume multiplier that brings a song of this loudness to
+     * {@link #TARGET_LOUDNESS_DB}, between 0 and 1
+     */
+    static float toVolume(float loudnessDb) {
+        float gainDb = Math.max(MIN_GAIN_DB, TARGET_LOUDNESS_DB - loudnessDb);
+        return gainDb >= 0 ? 1f : (float) Math.pow(10, gainDb / 20);
+    }
+
+    /**
+     * Measure the song, or use the replay gain of its tag, then store the result. A song that
+     * cannot be measured is stored as such.
+     */
+    @WorkerThread
+    private void analyzeNow(@NonNull Song song, @NonNull CancellationToken token) {
+        final SongLoudnessStore store = SongLoudnessStore.getInstance(mContext);
+        final long start = System.currentTimeMillis();
+        float[] result = null;
+        SongTags tags = SongTagService.getInstance().getTags(song.data);
+        if (tags != null && !Float.isNaN(tags.replayGainTrack)) {
+            result = new float[]{TARGET_LOUDNESS_DB - tags.replayGainTrack, 0f};
+        } else {
+            try {
+                result = measure(song.data, token);
+            } catch (CancellationException e) {
+                return;
+            } catch (Exception e) {
+                Log.w(TAG, "Could not decode song " + song.id, e);
+            }
+        }
+
+        if (result == null) {
+            // not tried again until the file is modified
+            store.putUnmeasurable(song.id, song.dateModified);
+            return;
+        }
+        store.putLoudness(song.id, song.dateModified, result[0], result[1]);
+        Log.d(TAG, "Analyzed song " + song.id + " in " + (System.currentTimeMillis() - start) + " ms: "
+                + result[0] + " dB, peak " + result[1] + " dB");
+    }
+
+    /**
+     * Decode up to {@link #WINDOWS} windows of the file and measure them.
+     *
+     * @return the gated loudness and the peak level in dB, or null if the file has no audio or
+     * only silence
+     */
+    @WorkerThread
+    @Nullable
+    private static float[] measure(@NonNull String path, @NonNull CancellationToken token) throws IOException {
+        final MediaExtractor extractor = new MediaExtractor();
+        MediaCodec codec = null;
+        try {
+            extractor.setDataSource(path);
+            MediaFormat format = null;
+            for (int i = 0; i < extractor.getTrackCount() && format == null; i++) {
+                MediaFormat trackFormat = extractor.getTrackFormat(i);
+                String mime = trackFormat.getString(MediaFormat.KEY_MIME);
+                if (mime != null && mime.startsWith("audio/")) {
+                    extractor.selectTrack(i);
+                    format = trackFormat;
+                }
+            }
+            if (format == null) return null;
+
+            codec = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME));
+            codec.configure(format, null, null, 0);
+            codec.start();
+
+            final LoudnessMeter meter = new LoudnessMeter(format.getInteger(MediaFormat.KEY_SAMPLE_RATE),
+                    format.getInteger(MediaFormat.KEY_CHANNEL_COUNT));
+            final long durationUs = format.containsKey(MediaFormat.KEY_DURATION) ? format.getLong(MediaFormat.KEY_DURATION) : 0;
+            if (durationUs <= WINDOWS * WINDOW_US) {
+                decodeWindow(extractor, codec, meter, Long.MAX_VALUE, token);
+            } else {
+                for (int w = 0; w < WINDOWS; w++) {
+                    // windows centered on 1/6, 3/6 and 5/6 of the song
+                    final long startUs = durationUs * (2 * w + 1) / (2 * WINDOWS) - WINDOW_US / 2;
+                    extractor.seekTo(startUs, MediaExtractor.SEEK_TO_CLOSEST_SYNC);
+                    codec.flush();
+                    meter.endWindow();
+                    decodeWindow(extractor, codec, meter, startUs + WINDOW_US, token);
+                }
+            }
+            return meter.measure();
+        } finally {
+            if (codec != null) codec.release();
+            extractor.release();
+        }
+    }
+
+    private static void decodeWindow(@NonNull MediaExtractor extractor, @NonNull MediaCodec codec,
+                                     @NonNull LoudnessMeter meter, long endUs, @NonNull CancellationToken token) {
+        final MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+        short[] samples = new short[0];
+        boolean inputDone = false;
+        int emptyDequeues = 0;
+        while (emptyDequeues < MAX_EMPTY_DEQUEUES) {
+            token.throwIfCancelled();
+            if (!inputDone) {
+                final int inputIndex = codec.dequeueInputBuffer(DEQUEUE_TIMEOUT_US);
+                if (inputIndex >= 0) {
+                    final ByteBuffer input = codec.getInputBuffer(inputIndex);
+                    final int size = input == null ? -1 : extractor.readSampleData(input, 0);
+                    final long timeUs = extractor.getSampleTime();
+                    if (size < 0 || timeUs > endUs) {
+                        codec.queueInputBuffer(inputIndex, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                        inputDone = true;
+                    } else {
+                        codec.queueInputBuffer(inputIndex, 0, size, timeUs, 0);
+                        extractor.advance();
+                    }
+                }
+            }
+
+            final int outputIndex = codec.dequeueOutputBuffer(info, DEQUEUE_TIMEOUT_US);
+            if (outputIndex >= 0) {
+                emptyDequeues = 0;
+                final ByteBuffer output = codec.getOutputBuffer(outputIndex);
+                if (output != null && info.size > 0) {
+                    output.position(info.offset);
+                    output.limit(info.offset + info.size);
+                    final ShortBuffer pcm = output.order(ByteOrder.nativeOrder()).asShortBuffer();
+                    final int count = pcm.remaining();
+                    if (samples.length < count) samples = new short[count];
+                    pcm.get(samples, 0, count);
+                    meter.add(samples, count);
+                }
+                codec.releaseOutputBuffer(outputIndex, false);
+                if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) return;
+            } else if (outputIndex == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                final MediaFormat outputFormat = codec.getOutputFormat();
+                meter.setFormat(outputFormat.getInteger(MediaFormat.KEY_SAMPLE_RATE),
+                        outputFormat.getInteger(MediaFormat.KEY_CHANNEL_COUNT));
+            } else if (inputDone) {
+                emptyDequeues++;
+            }
+        }
+    }
+
+    /**
+     * Analyze the library while the device is charging, until {@link #stopBackgroundAnalysis()}.
+     */
+    @MainThread
+    public void startBackgroundAnalysis() {
+        mBackgroundRunner.start();
+    }
+
+    @MainThread
+    public void stopBackgroundAnalysis() {
+        mBackgroundRunner.stop();
+    }
+
+    private void startBackgroundRun(CancellationToken token) {
+        AppExecutors.disk().execute(TaskLane.PRIORITY_LOW, token, () -> {
+            final ArrayList<Song> songs = findSongsToAnalyze();
+            if (songs.isEmpty() || token.isCancelled()) return;
+            Log.d(TAG, "Analyzing " + songs.size() + " songs in the background");
+
+            // one song at a time, queued again after each one so that other decode tasks go first
+            final AtomicInteger next = new AtomicInteger();
+            AppExecutors.decode().execute(TaskLane.PRIORITY_LOW, token, new Runnable() {
+                @Override
+                public void run() {
+                    int index = next.getAndIncrement();
+                    if (token.isCancelled() || index >= songs.size()) return;
+                    analyzeNow(songs.get(index), token);
+                    AppExecutors.decode().execute(TaskLane.PRIORITY_LOW, token, this);
+                }
+            });
+        });
+    }
+
+    @WorkerThread
+    @NonNull
+    private ArrayList<Song> findSongsToAnalyze() {
+        final SparseLongArray analyzed = SongLoudnessStore.getInstance(mContext).getAnalyzedDates();
+        final ArrayList<Song> songs = new ArrayList<>();
+        for (Song song : SongLoader.getAllSongs(mContext)) {
+            if (analyzed.get(song.id, -1) != song.dateModified) songs.add(song);
+        }
+        return songs;
+    }
+}
@@ -0,0 +1,108 @@
+package com.ldt.musicr.helper.loudness;
+
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * Gated loudness of 16 bit PCM, fed in chunks of interleaved samples.
+ * <p>
+ * The samples are cut in blocks of {@link #BLOCK_MILLIS}, the power of a block is the mean square
+ * of its samples counted as if played on two speakers, so that a full scale sine is at 0 dB like in
+ * EBU R128, but without its K weighting. Blocks below {@link #ABSOLUTE_GATE_DB}, then blocks
+ * {@link #RELATIVE_GATE_DB} below the average of the others are left out of the result.
+ */
+final class LoudnessMeter {
+    static final int BLOCK_MILLIS = 400;
+
+    static final float ABSOLUTE_GATE_DB = -70f;
+    static final float RELATIVE_GATE_DB = -10f;
+
+    private static final double FULL_SCALE_POWER = 32768.0 * 32768.0;
+
+    private int mChannels;
+    private int mBlockFrames;
+
+    /* sum of the squares of the current block, and its number of frames so far */
+    private double mBlockSum = 0;
+    private int mBlockFill = 0;
+
+    private double[] mBlockPowers = new double[64];
+    private int mBlockCount = 0;
+    private int mPeak = 0;
+
+    LoudnessMeter(int sampleRate, int channels) {
+        setFormat(sampleRate, channels);
+    }
+
+    /**
+     * Change the format of the next samples, e.g. when the decoder output format changes.
+     */
+    void setFormat(int sampleRate, int channels) {
+        mChannels = Math.max(1, channels);
+        mBlockFrames = Math.max(1, sampleRate * BLOCK_MILLIS / 1000);
+        endWindow();
+    }
+
+    /**
+     * @param samples interleaved samples of whole frames
+     */
+    void add(short[] samples, int count) {
+        for (int i = 0; i + mChannels <= count; i += mChannels) {
+            for (int c = 0; c < mChannels; c++) {
+                final int sample = samples[i + c];
+                mBlockSum += (double) sample * sample;
+                final int amplitude = Math.abs(sample);
+                if (amplitude > mPeak) mPeak = amplitude;
+            }
+            if (++mBlockFill == mBlockFrames) {
+                addBlock(2 * mBlockSum / ((double) mBlockFrames * mChannels) / FULL_SCALE_POWER);
+                mBlockSum = 0;
+                mBlockFill = 0;
+            }
+        }
+    }
+
+    /**
+     * Drop the incomplete block, the next samples are not contiguous with the previous ones.
+     */
+    void endWindow() {
+        mBlockSum = 0;
+        mBlockFill = 0;
+    }
+
+    private void addBlock(double power) {
+        if (mBlockCount == mBlockPowers.length) {
+            mBlockPowers = Arrays.copyOf(mBlockPowers, mBlockCount * 2);
+        }
+        mBlockPowers[mBlockCount++] = power;
+    }
+
+    /**
+     * @return the gated loudness and the peak level in dB, or null if every block is silent
+     */
+    @Nullable
+    float[] measure() {
+        final double absoluteGate = Math.pow(10, ABSOLUTE_GATE_DB / 10);
+        double power = 0;
+        int counted = 0;
+        for (int i = 0; i < mBlockCount; i++) {
+            if (mBlockPowers[i] > absoluteGate) {
+                power += mBlockPowers[i];
+                counted++;
+            }
+        }
+        if (counted == 0) return null;
+
+        final double relativeGate = power / counted * Math.pow(10, RELATIVE_GATE_DB / 10);
+        double gatedPower = 0;
+        int gated = 0;
+        for (int i = 0; i < mBlockCount; i++) {
+            if (mBlockPowers[i] > absoluteGate && mBlockPowers[i] > relativeGate) {
+                gatedPower += mBlockPowers[i];
+                gated++;
+            }
+        }
+        return new float[]{(float) (10 * Math.log10(gatedPower / gated)), (float) (20 * Math.log10(mPeak / 32768.0))};
+    }
+}
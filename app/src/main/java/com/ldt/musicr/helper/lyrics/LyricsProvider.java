@@ -0,0 +1,262 @@
+package com.ldt.musicr.helper.lyrics;
+
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.ldt.musicr.helper.tag.SongTagService;
+import com.ldt.musicr.interactors.AppExecutors;
+import com.ldt.musicr.interactors.CancellationToken;
+import com.ldt.musicr.interactors.MainThreadUtils;
+import com.ldt.musicr.interactors.TaskLane;
+import com.ldt.musicr.model.Song;
+import com.ldt.musicr.model.SongTags;
+import com.ldt.musicr.model.lyrics.Lyrics;
+import com.ldt.musicr.service.MusicEventDispatcher;
+import com.ldt.musicr.service.MusicPlayerRemote;
+import com.ldt.musicr.service.MusicServiceEventListener;
+import com.ldt.musicr.util.FileUtil;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Finds the lyrics of songs and keeps the last ones parsed, so that showing the lyrics of a song
+ * does not read its tag and list its folder every time.
+ * <p>
+ * Lyrics come from the LYRICS tag, or from a .lrc or .txt file next to the song whose name
+ * contains the song file name or its title. The lyric files of a folder are indexed once and
+ * indexed again only when the folder was modified. Parsed lyrics are kept per song until its file
+ * is modified, and the lyrics of the next song in the queue are read while the current one plays.
+ */
+public final class LyricsProvider implements MusicServiceEventListener {
+    private static final String TAG = "LyricsProvider";
+
+    private static final int MAX_CACHED_LYRICS = 32;
+    private static final int MAX_INDEXED_DIRS = 64;
+
+    public interface Callback {
+        /**
+         * @param lyrics the lyrics of the song, or null if it has none
+         */
+        @MainThread
+        void onLyricsLoaded(@NonNull Song song, @Nullable Lyrics lyrics);
+    }
+
+    private static final class Entry {
+        final long dateModified;
+        @Nullable
+        final Lyrics lyrics;
+
+        Entry(long dateModified, @Nullable Lyrics lyrics) {
+            this.dateModified = dateModified;
+            this.lyrics = lyrics;
+        }
+    }
+
+    /* The lyric files of one folder, by their lower case name without extension */
+    private static final class DirIndex {
+        final long lastModified;
+        final HashMap<String, List<File>> byName = new HashMap<>();
+
+        DirIndex(long lastModified) {
+            this.lastModified = lastModified;
+        }
+    }
+
+    private static LyricsProvider sInstance = null;
+
+    @NonNull
+    public static synchronized LyricsProvider getInstance() {
+        if (sInstance == null) {
+            sInstance = new LyricsProvider();
+            MusicEventDispatcher.getInstance().addListener(sInstance);
+        }
+        return sInstance;
+    }
+
+    /* By song id, an entry is stale when the song file was modified since */
+    private final LruCache<Integer, Entry> mLyrics = new LruCache<>(MAX_CACHED_LYRICS);
+    private final LruCache<String, DirIndex> mDirIndexes = new LruCache<>(MAX_INDEXED_DIRS);
+
+    private int mPrefetchedSongId = -1;
+
+    private LyricsProvider() {
+    }
+
+    /**
+     * @return true if the lyrics of this version of the song were already read, then
+     * {@link #getCached(Song)} returns them
+     */
+    public boolean isCached(@NonNull Song song) {
+        Entry entry = mLyrics.get(song.id);
+        return entry != null && entry.dateModified == song.dateModified;
+    }
+
+    @Nullable
+    public Lyrics getCached(@NonNull Song song) {
+        Entry entry = mLyrics.get(song.id);
+        return entry != null && entry.dateModified == song.dateModified ? entry.lyrics : null;
+    }
+
+    /**
+     * Forget the lyrics read for the song, e.g. after its lyrics tag was written
+     */
+    public void invalidate(@NonNull Song song) {
+        mLyrics.remove(song.id);
+    }
+
+    /**
+     * Read the lyrics of the song on the disk lane. Cached lyrics are returned right away, in this
+     * call. The callback is not called if the token is cancelled first.
+     */
+    @MainThread
+    public void load(@NonNull Song song, @NonNull CancellationToken token, @NonNull Callback callback) {
+        Entry entry = mLyrics.get(song.id);
+        if (entry != null && entry.dateModified == song.dateModified) {
+            callback.onLyricsLoaded(song, entry.lyrics);
+            return;
+        }
+
+        AppExecutors.disk().execute(TaskLane.PRIORITY_IMMEDIATE, token, () -> {
+            if (token.isCancelled()) return;
+            final Lyrics lyrics = loadNow(song);
+            MainThreadUtils.postOnUiThread(() -> {
+                if (!token.isCancelled()) callback.onLyricsLoaded(song, lyrics);
+            });
+        });
+    }
+
+    /**
+     * Read the lyrics of the song, or return the cached ones.
+     */
+    @WorkerThread
+    @Nullable
+    public Lyrics loadNow(@NonNull Song song) {
+        Entry entry = mLyrics.get(song.id);
+        if (entry != null && entry.dateModified == song.dateModified) return entry.lyrics;
+
+        final long start = System.currentTimeMillis();
+        String data = readLyrics(song);
+        Lyrics lyrics = data == null || data.trim().isEmpty() ? null : Lyrics.parse(song, data);
+        mLyrics.put(song.id, new Entry(song.dateModified, lyrics));
+        Log.d(TAG, "Read lyrics of song " + song.id + " in " + (System.currentTimeMillis() - start) + " ms");
+        return lyrics;
+    }
+
+    @Override
+    public void onPlayingMetaChanged() {
+        prefetchNext();
+    }
+
+    @Override
+    public void onServiceConnected() {
+        prefetchNext();
+    }
+
+    private void prefetchNext() {
+        final List<Song> queue = MusicPlayerRemote.getPlayingQueue();
+        final int next = MusicPlayerRemote.getPosition() + 1;
+        if (next <= 0 || next >= queue.size()) return;
+
+        final Song song = queue.get(next);
+        if (song.id == mPrefetchedSongId || isCached(song)) return;
+        mPrefetchedSongId = song.id;
+        AppExecutors.disk().execute(TaskLane.PRIORITY_LOW, () -> loadNow(song));
+    }
+
+    @WorkerThread
+    @Nullable
+    private String readLyrics(@NonNull Song song) {
+        final File file = new File(song.data);
+        final SongTags tags = SongTagService.getInstance().getTags(song.data);
+        String lyrics = tags == null ? null : tags.lyrics;
+        if (lyrics != null && !lyrics.trim().isEmpty() && Lyrics.isSynchronized(lyrics)) return lyrics;
+
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir == null) return lyrics;
+
+        for (File f : findLyricFiles(dir, FileUtil.stripExtension(file.getName()), song.title)) {
+            try {
+                String newLyrics = FileUtil.read(f);
+                if (newLyrics != null && !newLyrics.trim().isEmpty()) {
+                    if (Lyrics.isSynchronized(newLyrics)) return newLyrics;
+                    lyrics = newLyrics;
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+        return lyrics;
+    }
+
+    /**
+     * @return the lyric files of the folder whose name contains the file name or the title,
+     * exact names first
+     */
+    @NonNull
+    private List<File> findLyricFiles(@NonNull File dir, @Nullable String fileName, @Nullable String title) {
+        final DirIndex index = getDirIndex(dir);
+        final ArrayList<File> result = new ArrayList<>();
+        if (index == null || index.byName.isEmpty()) return result;
+
+        final String name = fileName == null || fileName.isEmpty() ? null : fileName.toLowerCase(Locale.ROOT);
+        final String songTitle = title == null || title.isEmpty() ? null : title.toLowerCase(Locale.ROOT);
+
+        addAll(result, index.byName.get(name));
+        addAll(result, index.byName.get(songTitle));
+        for (HashMap.Entry<String, List<File>> entry : index.byName.entrySet()) {
+            String key = entry.getKey();
+            if (key.equals(name) || key.equals(songTitle)) continue;
+            if ((name != null && key.contains(name)) || (songTitle != null && key.contains(songTitle))) {
+                addAll(result, entry.getValue());
+            }
+        }
+        return result;
+    }
+
+    private static void addAll(@NonNull ArrayList<File> result, @Nullable List<File> files) {
+        if (files == null) return;
+        for (File f : files) {
+            if (!result.contains(f)) result.add(f);
+        }
+    }
+
+    @Nullable
+    private DirIndex getDirIndex(@NonNull File dir) {
+        final String path = dir.getPath();
+        final long lastModified = dir.lastModified();
+        if (lastModified == 0) return null;
+
+        DirIndex index = mDirIndexes.get(path);
+        if (index != null && index.lastModified == lastModified) return index;
+
+        index = new DirIndex(lastModified);
+        final String[] names = dir.list();
+        if (names != null) {
+            for (String fileName : names) {
+                int dot = fileName.lastIndexOf('.');
+                if (dot <= 0) continue;
+                String extension = fileName.substring(dot + 1);
+                if (!extension.equalsIgnoreCase("lrc") && !extension.equalsIgnoreCase("txt")) continue;
+
+                String key = fileName.substring(0, dot).toLowerCase(Locale.ROOT);
+                List<File> files = index.byName.get(key);
+                if (files == null) {
+                    files = new ArrayList<>(1);
+                    index.byName.put(key, files);
+                }
+                files.add(new File(dir, fileName));
+            }
+        }
+        mDirIndexes.put(path, index);
+        return index;
+    }
+}
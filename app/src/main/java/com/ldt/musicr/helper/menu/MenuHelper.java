@@ -8,6 +8,7 @@ import android.widget.Toast;
 
 import com.ldt.musicr.App;
 import com.ldt.musicr.R;
+import com.ldt.musicr.helper.M3UReader;
 import com.ldt.musicr.helper.songpreview.SongPreviewController;
 import com.ldt.musicr.model.Artist;
 import com.ldt.musicr.model.Playlist;
@@ -22,6 +23,7 @@ import com.ldt.musicr.ui.widget.WeakContextAsyncTask;
 import com.ldt.musicr.util.MusicUtil;
 import com.ldt.musicr.util.PlaylistsUtil;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
 
@@ -45,6 +47,7 @@ public class MenuHelper {
             R.string.add_to_queue,
             R.string.add_playlist_to_playlist,
             R.string.rename,
+            R.string.import_playlist,
             R.string.divider,
             R.string.delete_from_playlist
     };
@@ -126,6 +129,9 @@ public class MenuHelper {
             case R.string.save_as:
                 new SavePlaylistAsyncTask(activity).execute(playlist);
                 return true;
+            case R.string.import_playlist:
+                new ImportPlaylistAsyncTask(activity).execute(playlist);
+                return true;
         }
         return false;
     }
@@ -156,6 +162,41 @@ public class MenuHelper {
         }
     }
 
+    /**
+     * Bring back the songs of the file the playlist was saved to, or of an M3U8 file with its name.
+     * The file is the playlist's own export, so the songs still in the playlist are not added again.
+     */
+    private static class ImportPlaylistAsyncTask extends WeakContextAsyncTask<Playlist, String, String> {
+        public ImportPlaylistAsyncTask(Context context) {
+            super(context);
+        }
+
+        @Override
+        protected String doInBackground(Playlist... params) {
+            Context context = App.getInstance().getApplicationContext();
+            File file = PlaylistsUtil.findSavedPlaylist(params[0]);
+            if (file == null) {
+                return String.format(context.getString(R.string.failed_to_import_playlist), params[0].name);
+            }
+            try {
+                M3UReader.Result result = PlaylistsUtil.importPlaylist(context, file, params[0].id, true);
+                return String.format(context.getString(R.string.imported_x_songs_from_x), result.added, file);
+            } catch (Exception e) {
+                e.printStackTrace();
+                return String.format(context.getString(R.string.failed_to_import_playlist), e);
+            }
+        }
+
+        @Override
+        protected void onPostExecute(String string) {
+            super.onPostExecute(string);
+            Context context = getContext();
+            if (context != null) {
+                Toast.makeText(context, string, Toast.LENGTH_LONG).show();
+            }
+        }
+    }
+
     public static boolean handleMenuClick(@NonNull AppCompatActivity activity, @NonNull Object object, int string_res_option) {
         if(object instanceof Song) {
             return SongMenuHelper.handleMenuClick(activity,(Song)object,string_res_option);
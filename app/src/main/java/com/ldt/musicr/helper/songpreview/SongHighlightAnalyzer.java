@@ -0,0 +1,274 @@
+package com.ldt.musicr.helper.songpreview;
+
+import android.content.Context;
+import android.util.Log;
+import android.util.SparseLongArray;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.ldt.musicr.interactors.AppExecutors;
+import com.ldt.musicr.interactors.CancellationToken;
+import com.ldt.musicr.interactors.ChargingTaskRunner;
+import com.ldt.musicr.interactors.MainThreadUtils;
+import com.ldt.musicr.interactors.TaskLane;
+import com.ldt.musicr.loader.medialoader.SongLoader;
+import com.ldt.musicr.model.Song;
+import com.ldt.musicr.provider.SongHighlightStore;
+import com.ldt.musicr.ui.widget.soundfile.SoundFile;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Finds the highlight of songs, the loudest part of about twelve seconds that a song preview
+ * plays, and keeps it in {@link SongHighlightStore}.
+ * <p>
+ * A song is scanned once per version of its file: stored highlights are returned straight away,
+ * the other songs are decoded in parallel on the decode lane and each one is returned as soon as
+ * it is ready. While the device is charging, the library songs are analyzed in the background one
+ * at a time on the decode lane with the lowest priority, so that their previews start instantly.
+ */
+public final class SongHighlightAnalyzer {
+    private static final String TAG = "SongHighlightAnalyzer";
+
+    public interface Callback {
+        @MainThread
+        void onHighlightReady(@NonNull PreviewSong song);
+    }
+
+    private static SongHighlightAnalyzer sInstance = null;
+
+    @NonNull
+    public static synchronized SongHighlightAnalyzer getInstance(@NonNull Context context) {
+        if (sInstance == null) {
+            sInstance = new SongHighlightAnalyzer(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private final Context mContext;
+
+    private final ChargingTaskRunner mBackgroundRunner;
+
+    private SongHighlightAnalyzer(Context context) {
+        mContext = context;
+        mBackgroundRunner = new ChargingTaskRunner(context, this::startBackgroundRun);
+    }
+
+    /**
+     * Find the highlights of the songs. The callback gets every song that could be analyzed, those
+     * already stored first and the others in the order their scans finish.
+     */
+    @MainThread
+    public void analyze(@NonNull List<Song> songs, @NonNull CancellationToken token, @NonNull Callback callback) {
+        final ArrayList<Song> list = new ArrayList<>(songs);
+        AppExecutors.disk().execute(TaskLane.PRIORITY_IMMEDIATE, () -> {
+            final SongHighlightStore store = SongHighlightStore.getInstance(mContext);
+            final ArrayList<Song> toScan = new ArrayList<>();
+            for (Song song : list) {
+                if (token.isCancelled()) break;
+                int[] highlight = store.getHighlight(song.id, song.dateModified);
+                if (highlight != null) {
+                    deliver(song, highlight, token, callback);
+                } else {
+                    toScan.add(song);
+                }
+            }
+
+            if (toScan.isEmpty() || token.isCancelled()) return;
+            for (Song song : toScan) {
+                AppExecutors.decode().execute(TaskLane.PRIORITY_HIGH, token, () -> {
+                    int[] highlight = analyzeNow(song);
+                    if (highlight != null) deliver(song, highlight, token, callback);
+                });
+            }
+        });
+    }
+
+    private static void deliver(Song song, int[] highlight, CancellationToken token, Callback callback) {
+        MainThreadUtils.postOnUiThread(() -> {
+            if (!token.isCancelled()) callback.onHighlightReady(new PreviewSong(song, highlight[0], highlight[1]));
+        });
+    }
+
+    /**
+     * Decode the song and find its highlight, then store it.
+     *
+     * @return the play from and play to millis, or null if the song could not be analyzed
+     */
+    @WorkerThread
+    @Nullable
+    public int[] analyzeNow(@NonNull Song song) {
+        final long start = System.currentTimeMillis();
+        final int[] highlight;
+        try {
+            SoundFile soundFile = SoundFile.create(song, null);
+            if (soundFile == null) return null;
+            highlight = findHighlight(soundFile);
+        } catch (Exception e) {
+            return null;
+        }
+        SongHighlightStore.getInstance(mContext).putHighlight(song.id, song.dateModified, highlight[0], highlight[1]);
+        Log.d(TAG, "Analyzed song " + song.id + " in " + (System.currentTimeMillis() - start) + " ms");
+        return highlight;
+    }
+
+    /**
+     * Analyze the library songs that have no stored highlight while the device is charging, until
+     * {@link #stopBackgroundAnalysis()}.
+     */
+    @MainThread
+    public void startBackgroundAnalysis() {
+        mBackgroundRunner.start();
+    }
+
+    @MainThread
+    public void stopBackgroundAnalysis() {
+        mBackgroundRunner.stop();
+    }
+
+    private void startBackgroundRun(CancellationToken token) {
+        AppExecutors.disk().execute(TaskLane.PRIORITY_LOW, token, () -> {
+            final ArrayList<Song> songs = findSongsToAnalyze();
+            if (songs.isEmpty() || token.isCancelled()) return;
+            Log.d(TAG, "Analyzing " + songs.size() + " songs in the background");
+
+            // one song at a time, queued again after each one so that preview requests go first
+            final AtomicInteger next = new AtomicInteger();
+            AppExecutors.decode().execute(TaskLane.PRIORITY_LOW, token, new Runnable() {
+                @Override
+                public void run() {
+                    int index = next.getAndIncrement();
+                    if (token.isCancelled() || index >= songs.size()) return;
+                    final Song song = songs.get(index);
+                    if (SongHighlightStore.getInstance(mContext).getHighlight(song.id, song.dateModified) == null) {
+                        analyzeNow(song);
+                    }
+                    AppExecutors.decode().execute(TaskLane.PRIORITY_LOW, token, this);
+                }
+            });
+        });
+    }
+
+    @WorkerThread
+    @NonNull
+    private ArrayList<Song> findSongsToAnalyze() {
+        final SparseLongArray analyzed = SongHighlightStore.getInstance(mContext).getAnalyzedDates();
+        final ArrayList<Song> songs = new ArrayList<>();
+        for (Song song : SongLoader.getAllSongs(mContext)) {
+            if (analyzed.get(song.id, -1) != song.dateModified) songs.add(song);
+        }
+        return songs;
+    }
+
+    /**
+     * The loudest window of the song, widened to the quietest points around it.
+     *
+     * @return the play from and play to millis
+     */
+    @NonNull
+    static int[] findHighlight(@NonNull SoundFile soundFile) {
+        final int numFrames = soundFile.getNumFrames();
+        final double duration = numFrames * (double) soundFile.getSamplesPerFrame() / soundFile.getSampleRate();
+        final int intDuration = (int) duration;
+        final int[] frameGains = soundFile.getFrameGains();
+
+        // skip the intro and the outro
+        double durationZone;
+        double timeFromZone;
+        if (duration < 40) {
+            durationZone = 40;
+            timeFromZone = 5;
+        } else if (duration < 60) {
+            timeFromZone = 5;
+            durationZone = intDuration - 5 - 5;
+        } else {
+            timeFromZone = 13;
+            durationZone = intDuration - timeFromZone - 8;
+        }
+
+        final int frameFromZone = (int) (numFrames * timeFromZone / duration);
+        int frameToZone = (int) (frameFromZone + durationZone * numFrames / duration);
+        if (frameToZone > numFrames - 1) frameToZone = numFrames - 1;
+        final int zoneFrames = frameToZone - frameFromZone;
+
+        // average the frame gains into pens of about 0.5s
+        durationZone = (zoneFrames / (numFrames + 0f)) * duration;
+        int penCount = (int) Math.floor((zoneFrames / (numFrames + 0f)) * (duration / 0.5f));
+        final int framesPerPen = zoneFrames / penCount;
+        penCount = (int) Math.ceil((zoneFrames + 0f) / framesPerPen);
+        final float penSeconds = (float) (durationZone / penCount);
+
+        final double[] penGains = new double[penCount];
+        int pen = 0;
+        int framesInPen = 0;
+        for (int frame = frameFromZone; frame < frameToZone; frame++) {
+            penGains[pen] += frameGains[frame];
+            framesInPen++;
+            if (frame == frameToZone - 1) {
+                penGains[pen] /= framesInPen;
+            } else if (framesInPen == framesPerPen) {
+                penGains[pen] /= framesPerPen;
+                framesInPen = 0;
+                pen++;
+            }
+        }
+
+        final int windowPens = 24;
+        final int edgePens = 22;
+
+        final int startPen = Math.max(0, findMaxAverage(penGains, penGains.length, windowPens));
+        final int endPen = startPen + windowPens;
+
+        // start and end at the quietest pens close to the window
+        int newStartPen = startPen;
+        double minGain = penGains[startPen];
+        for (int i = startPen <= edgePens ? 0 : startPen - edgePens; i < startPen; i++) {
+            if (penGains[i] < minGain) {
+                minGain = penGains[i];
+                newStartPen = i;
+            }
+        }
+
+        int newEndPen = endPen;
+        minGain = penGains[endPen];
+        for (int i = endPen + 1; i <= endPen + edgePens && i < penGains.length; i++) {
+            if (penGains[i] < minGain) {
+                minGain = penGains[i];
+                newEndPen = i;
+            }
+        }
+
+        return new int[]{
+                (int) (1000 * (timeFromZone + newStartPen * penSeconds)),
+                (int) (1000 * (timeFromZone + newEndPen * penSeconds))
+        };
+    }
+
+    /**
+     * @return the index before the subarray of length {@code k} with the maximum average, or -1
+     * if {@code k} is longer than the array
+     */
+    static int findMaxAverage(double[] arr, int n, int k) {
+        if (k > n) return -1;
+
+        double sum = arr[0];
+        for (int i = 1; i < k; i++)
+            sum += arr[i];
+
+        double maxSum = sum;
+        int maxEnd = k - 1;
+        for (int i = k; i < n; i++) {
+            sum = sum + arr[i] - arr[i - k];
+            if (sum > maxSum) {
+                maxSum = sum;
+                maxEnd = i;
+            }
+        }
+        return maxEnd - k;
+    }
+}
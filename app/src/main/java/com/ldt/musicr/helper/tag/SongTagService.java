@@ -0,0 +1,326 @@
+package com.ldt.musicr.helper.tag;
+
+import android.content.Context;
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.ldt.musicr.App;
+import com.ldt.musicr.model.SongTags;
+import com.ldt.musicr.provider.SongTagStore;
+import com.ldt.musicr.util.AudioFileCoverUtils;
+
+import org.jaudiotagger.audio.AudioFile;
+import org.jaudiotagger.audio.AudioFileIO;
+import org.jaudiotagger.tag.FieldKey;
+import org.jaudiotagger.tag.Tag;
+import org.jaudiotagger.tag.TagField;
+import org.jaudiotagger.tag.TagTextField;
+import org.jaudiotagger.tag.id3.AbstractID3v2Frame;
+import org.jaudiotagger.tag.id3.framebody.FrameBodyTXXX;
+import org.jaudiotagger.tag.images.Artwork;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads the tags of audio files for the whole app, once per version of a file.
+ * <p>
+ * One read of a file gets everything the app uses from its tag: the song fields, the lyrics, where
+ * its artwork is and its replay gain. The result is kept in memory for the last files and in
+ * {@link SongTagStore} until the file is modified, the embedded pictures of the last files read are
+ * kept in memory so that showing one does not parse the file again. Callers asking for a file that is being read
+ * wait for that read instead of starting another one, and only {@link #MAX_CONCURRENT_READS} files
+ * are read at once so that the storage is not seeking between many of them.
+ */
+public final class SongTagService {
+    private static final String TAG = "SongTagService";
+
+    public static final int MAX_CONCURRENT_READS = 2;
+    private static final int MAX_CACHED_TAGS = 64;
+    private static final int MAX_CACHED_ARTWORK_BYTES = 4 * 1024 * 1024;
+
+    private static final String REPLAY_GAIN_TRACK = "replaygain_track_gain";
+    private static final String REPLAY_GAIN_ALBUM = "replaygain_album_gain";
+
+    private static SongTagService sInstance = null;
+
+    @NonNull
+    public static synchronized SongTagService getInstance() {
+        if (sInstance == null) {
+            sInstance = new SongTagService(App.getInstance().getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private final Context mContext;
+
+    private final Semaphore mReadPermits = new Semaphore(MAX_CONCURRENT_READS, true);
+    private final LruCache<String, SongTags> mCache = new LruCache<>(MAX_CACHED_TAGS);
+    private final LruCache<String, CachedArtwork> mArtworkCache = new LruCache<String, CachedArtwork>(MAX_CACHED_ARTWORK_BYTES) {
+        @Override
+        protected int sizeOf(String key, CachedArtwork value) {
+            return value.data.length;
+        }
+    };
+    private final ConcurrentHashMap<String, FutureTask<SongTags>> mReads = new ConcurrentHashMap<>();
+
+    private final AtomicInteger mMemoryHits = new AtomicInteger();
+    private final AtomicInteger mStoreHits = new AtomicInteger();
+    private final AtomicInteger mSharedReads = new AtomicInteger();
+    private final AtomicInteger mFileReads = new AtomicInteger();
+    private final AtomicInteger mArtworkReads = new AtomicInteger();
+
+    /* The embedded picture of a file at its last modification time */
+    private static final class CachedArtwork {
+        final long lastModified;
+        final byte[] data;
+
+        CachedArtwork(long lastModified, byte[] data) {
+            this.lastModified = lastModified;
+            this.data = data;
+        }
+    }
+
+    private SongTagService(Context context) {
+        mContext = context;
+    }
+
+    /**
+     * @return the tags of the file, or null if there is no such file. A file whose tag cannot be
+     * read has empty tags.
+     */
+    @WorkerThread
+    @Nullable
+    public SongTags getTags(@NonNull String path) {
+        final File file = new File(path);
+        final long lastModified = file.lastModified();
+        if (lastModified == 0) return null;
+
+        SongTags tags = mCache.get(path);
+        if (tags != null && tags.lastModified == lastModified) {
+            mMemoryHits.incrementAndGet();
+            return tags;
+        }
+
+        final FutureTask<SongTags> task = new FutureTask<>(() -> load(file, lastModified));
+        FutureTask<SongTags> read = mReads.putIfAbsent(path, task);
+        if (read == null) {
+            read = task;
+            try {
+                task.run();
+            } finally {
+                mReads.remove(path, task);
+            }
+        } else {
+            mSharedReads.incrementAndGet();
+        }
+
+        try {
+            return read.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            Log.w(TAG, "Could not read the tags of " + path, e.getCause());
+            return null;
+        }
+    }
+
+    /**
+     * @return the first picture of the tag, or null if it has none. The file is only parsed again
+     * if its tags came from the store or its picture is no longer in memory.
+     */
+    @WorkerThread
+    @Nullable
+    public byte[] readEmbeddedArtwork(@NonNull String path) {
+        SongTags tags = getTags(path);
+        if (tags == null || !tags.hasEmbeddedArtwork) return null;
+
+        CachedArtwork cached = mArtworkCache.get(path);
+        if (cached != null && cached.lastModified == tags.lastModified) return cached.data;
+
+        mReadPermits.acquireUninterruptibly();
+        try {
+            mArtworkReads.incrementAndGet();
+            Tag tag = AudioFileIO.read(new File(path)).getTag();
+            byte[] data = getArtworkData(tag);
+            if (data != null) mArtworkCache.put(path, new CachedArtwork(tags.lastModified, data));
+            return data;
+        } catch (Exception e) {
+            return null;
+        } finally {
+            mReadPermits.release();
+        }
+    }
+
+    /**
+     * Forget the tags of the file, e.g. after its tag was written in the same second it was read
+     */
+    public void invalidate(@NonNull String path) {
+        mCache.remove(path);
+        mArtworkCache.remove(path);
+        SongTagStore.getInstance(mContext).removeTags(path);
+    }
+
+    @NonNull
+    public String getMetrics() {
+        return "memory hits " + mMemoryHits.get() + ", store hits " + mStoreHits.get()
+                + ", file reads " + mFileReads.get() + ", shared reads " + mSharedReads.get()
+                + ", artwork reads " + mArtworkReads.get();
+    }
+
+    public void dumpMetrics() {
+        Log.d(TAG, getMetrics());
+    }
+
+    @NonNull
+    private SongTags load(@NonNull File file, long lastModified) {
+        final SongTagStore store = SongTagStore.getInstance(mContext);
+        SongTags tags = store.getTags(file.getPath(), lastModified);
+        if (tags != null) {
+            mStoreHits.incrementAndGet();
+        } else {
+            mReadPermits.acquireUninterruptibly();
+            try {
+                tags = read(file, lastModified);
+            } finally {
+                mReadPermits.release();
+            }
+            mFileReads.incrementAndGet();
+            store.putTags(tags);
+        }
+        mCache.put(file.getPath(), tags);
+        return tags;
+    }
+
+    @NonNull
+    private SongTags read(@NonNull File file, long lastModified) {
+        String title = "";
+        String artist = "";
+        String album = "";
+        String genre = "";
+        int year = 0;
+        int track = 0;
+        long duration = 0;
+        String lyrics = null;
+        boolean embeddedArtwork = false;
+        float replayGainTrack = SongTags.NO_REPLAY_GAIN;
+        float replayGainAlbum = SongTags.NO_REPLAY_GAIN;
+
+        try {
+            AudioFile audioFile = AudioFileIO.read(file);
+            duration = audioFile.getAudioHeader().getTrackLength() * 1000L;
+            Tag tag = audioFile.getTag();
+            if (tag != null) {
+                title = getFirst(tag, FieldKey.TITLE);
+                artist = getFirst(tag, FieldKey.ARTIST);
+                album = getFirst(tag, FieldKey.ALBUM);
+                genre = getFirst(tag, FieldKey.GENRE);
+                year = parseLeadingInt(getFirst(tag, FieldKey.YEAR));
+                track = parseLeadingInt(getFirst(tag, FieldKey.TRACK));
+                lyrics = getFirst(tag, FieldKey.LYRICS);
+                if (lyrics.isEmpty()) lyrics = null;
+                byte[] artwork = getArtworkData(tag);
+                embeddedArtwork = artwork != null;
+                if (embeddedArtwork) mArtworkCache.put(file.getPath(), new CachedArtwork(lastModified, artwork));
+
+                // ID3 keeps them in TXXX frames, vorbis comments and MP4 in fields of their own
+                Iterator<TagField> fields = tag.getFields();
+                while (fields.hasNext()) {
+                    TagField field = fields.next();
+                    String name;
+                    String value;
+                    if (field instanceof AbstractID3v2Frame && ((AbstractID3v2Frame) field).getBody() instanceof FrameBodyTXXX) {
+                        FrameBodyTXXX body = (FrameBodyTXXX) ((AbstractID3v2Frame) field).getBody();
+                        name = body.getDescription();
+                        value = body.getText();
+                    } else if (field instanceof TagTextField) {
+                        name = field.getId();
+                        value = ((TagTextField) field).getContent();
+                    } else {
+                        continue;
+                    }
+                    if (name == null) continue;
+
+                    if (endsWithIgnoreCase(name, REPLAY_GAIN_TRACK)) {
+                        replayGainTrack = parseGain(value);
+                    } else if (endsWithIgnoreCase(name, REPLAY_GAIN_ALBUM)) {
+                        replayGainAlbum = parseGain(value);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            // stored with empty tags, it is not read again until it is modified
+        }
+
+        String coverFile = null;
+        if (!embeddedArtwork) {
+            final File parent = file.getParentFile();
+            for (String fallback : AudioFileCoverUtils.FALLBACKS) {
+                File cover = new File(parent, fallback);
+                if (cover.exists()) {
+                    coverFile = cover.getPath();
+                    break;
+                }
+            }
+        }
+
+        return new SongTags(file.getPath(), lastModified, title, artist, album, genre, year, track, duration,
+                lyrics, embeddedArtwork, coverFile, replayGainTrack, replayGainAlbum);
+    }
+
+    @Nullable
+    private static byte[] getArtworkData(@Nullable Tag tag) {
+        Artwork artwork = tag == null ? null : tag.getFirstArtwork();
+        return artwork == null ? null : artwork.getBinaryData();
+    }
+
+    @NonNull
+    private static String getFirst(@NonNull Tag tag, @NonNull FieldKey key) {
+        try {
+            String value = tag.getFirst(key);
+            return value == null ? "" : value;
+        } catch (Exception e) {
+            // not supported by this kind of tag
+            return "";
+        }
+    }
+
+    private static boolean endsWithIgnoreCase(@NonNull String s, @NonNull String suffix) {
+        return s.regionMatches(true, s.length() - suffix.length(), suffix, 0, suffix.length());
+    }
+
+    /**
+     * @return the gain of a "-6.5 dB" like value, or {@link SongTags#NO_REPLAY_GAIN}
+     */
+    private static float parseGain(@Nullable String value) {
+        if (value == null) return SongTags.NO_REPLAY_GAIN;
+        String gain = value.trim();
+        if (endsWithIgnoreCase(gain, "db")) gain = gain.substring(0, gain.length() - 2).trim();
+        try {
+            return Float.parseFloat(gain);
+        } catch (NumberFormatException e) {
+            return SongTags.NO_REPLAY_GAIN;
+        }
+    }
+
+    private static int parseLeadingInt(@Nullable String value) {
+        if (value == null) return 0;
+        int result = 0;
+        for (int i = 0; i < value.length() && i < 9; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') break;
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+}
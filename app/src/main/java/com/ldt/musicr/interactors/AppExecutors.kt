@@ -1,25 +1,86 @@
 package com.ldt.musicr.interactors
 
+import android.os.Process
+import android.util.Log
 import java.util.concurrent.Executor
-import java.util.concurrent.Executors
 
 /**
- * Global executor pools for the whole application.
+ * Global executor lanes for the whole application.
  *
  * Grouping tasks like this avoids the effects of task starvation (e.g. disk reads don't wait behind
- * webservice requests).
+ * webservice requests), while the per-lane bounds keep the total number of threads close to the
+ * number of cores instead of one oversized pool per feature.
  */
 object AppExecutors {
-    private val singleThreadExecutor: Executor by lazy { Executors.newSingleThreadExecutor() }
-    private val defaultExecutor: Executor by lazy { Executors.newFixedThreadPool(24) }
+    private const val TAG = "AppExecutors"
+
+    private val cores = Runtime.getRuntime().availableProcessors().coerceAtLeast(1)
+
+    /* MediaStore queries, databases and file reads: flash storage gains little beyond two readers */
+    private val diskLane: TaskLane by lazy { TaskLane("disk", 2, Process.THREAD_PRIORITY_BACKGROUND) }
+
+    /* Audio and bitmap decoding: heavy on both cpu and io, keep it below the core count */
+    private val decodeLane: TaskLane by lazy { TaskLane("decode", (cores / 2).coerceIn(1, 3), Process.THREAD_PRIORITY_BACKGROUND) }
+
+    /* Mostly blocked on sockets */
+    private val networkLane: TaskLane by lazy { TaskLane("network", 4, Process.THREAD_PRIORITY_BACKGROUND) }
+
+    /* Pure computation such as searching, diffing and blurring */
+    private val cpuLane: TaskLane by lazy { TaskLane("cpu", (cores - 1).coerceAtLeast(2), Process.THREAD_PRIORITY_DEFAULT) }
+
+    /* Ordered work which must not run concurrently with itself */
+    private val singleLane: TaskLane by lazy { TaskLane("single", 1, Process.THREAD_PRIORITY_BACKGROUND) }
+
+    private val mainThreadExecutor = Executor { runnable -> postOnUiThread(runnable) }
+
+    @JvmStatic
+    fun single(): TaskLane {
+        return singleLane
+    }
+
+    @JvmStatic
+    fun disk(): TaskLane {
+        return diskLane
+    }
+
+    @JvmStatic
+    fun decode(): TaskLane {
+        return decodeLane
+    }
+
+    @JvmStatic
+    fun network(): TaskLane {
+        return networkLane
+    }
+
+    @JvmStatic
+    fun cpu(): TaskLane {
+        return cpuLane
+    }
+
+    /**
+     * Mixed disk and computation work that does not fit a more specific lane.
+     */
+    @JvmStatic
+    fun io(): TaskLane {
+        return diskLane
+    }
+
+    @JvmStatic
+    fun mainThread(): Executor {
+        return mainThreadExecutor
+    }
 
     @JvmStatic
-    fun single(): Executor {
-        return singleThreadExecutor
+    fun getMetrics(): List<TaskLane.Metrics> {
+        return listOf(singleLane, diskLane, decodeLane, networkLane, cpuLane).map { it.getMetrics() }
     }
 
+    /**
+     * Write the queue depth and latency of every lane to logcat, for debugging thread starvation.
+     */
     @JvmStatic
-    fun io(): Executor {
-        return defaultExecutor
+    fun dumpMetrics() {
+        getMetrics().forEach { Log.d(TAG, it.toString()) }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,79 @@
+package com.ldt.musicr.interactors
+
+import androidx.annotation.MainThread
+import androidx.lifecycle.Lifecycle
+import androidx.lifecycle.LifecycleEventObserver
+import androidx.lifecycle.LifecycleOwner
+import java.util.concurrent.CancellationException
+import java.util.concurrent.CopyOnWriteArrayList
+
+/**
+ * Cooperative cancellation signal shared between the submitter of a task and the task itself.
+ *
+ * A [TaskLane] drops queued tasks whose token is already cancelled, and long running tasks are
+ * expected to poll [isCancelled] (or call [throwIfCancelled]) at their own checkpoints.
+ */
+open class CancellationToken {
+    @Volatile
+    var isCancelled: Boolean = false
+        private set
+
+    private val callbacks = CopyOnWriteArrayList<Runnable>()
+
+    fun cancel() {
+        if (isCancelled) return
+        isCancelled = true
+        callbacks.forEach { runCatching { it.run() } }
+        callbacks.clear()
+    }
+
+    /**
+     * Run [callback] once when this token is cancelled, or immediately if it is already cancelled.
+     */
+    fun onCancel(callback: Runnable) {
+        if (isCancelled) {
+            callback.run()
+            return
+        }
+        callbacks.add(callback)
+        if (isCancelled && callbacks.remove(callback)) {
+            callback.run()
+        }
+    }
+
+    @Throws(CancellationException::class)
+    fun throwIfCancelled() {
+        if (isCancelled) throw CancellationException()
+    }
+
+    companion object {
+        /**
+         * A token which is never cancelled, for tasks that are not bound to any owner.
+         */
+        @JvmField
+        val NONE = object : CancellationToken() {}
+    }
+}
+
+/**
+ * Create a token that is cancelled when this owner reaches [Lifecycle.Event.ON_DESTROY].
+ *
+ * Use the fragment's viewLifecycleOwner for work that only updates the fragment's views.
+ */
+@MainThread
+fun LifecycleOwner.newCancellationToken(): CancellationToken {
+    val token = CancellationToken()
+    if (lifecycle.currentState == Lifecycle.State.DESTROYED) {
+        token.cancel()
+        return token
+    }
+    lifecycle.addObserver(object : LifecycleEventObserver {
+        override fun onStateChanged(source: LifecycleOwner, event: Lifecycle.Event) {
+            if (event == Lifecycle.Event.ON_DESTROY) {
+                source.lifecycle.removeObserver(this)
+                token.cancel()
+            }
+        }
+    })
+    return token
+}
@@ -0,0 +1,76 @@
+package com.ldt.musicr.interactors
+
+import android.content.BroadcastReceiver
+import android.content.Context
+import android.content.Intent
+import android.content.IntentFilter
+import android.os.BatteryManager
+import androidx.annotation.MainThread
+
+/**
+ * Runs a background job only while the device is charging, such as the analysis of the whole
+ * library. Between [start] and [stop], the job is started when the power is connected, or straight
+ * away if it already is, and its token is cancelled when the power is disconnected.
+ */
+class ChargingTaskRunner(
+    private val context: Context,
+    private val job: Job
+) {
+    fun interface Job {
+        /**
+         * Called on the main thread. Queue the work on a lane and stop it once [token] is cancelled.
+         */
+        @MainThread
+        fun start(token: CancellationToken)
+    }
+
+    private var started = false
+    private var token: CancellationToken? = null
+
+    private val powerReceiver = object : BroadcastReceiver() {
+        override fun onReceive(context: Context, intent: Intent) {
+            if (Intent.ACTION_POWER_CONNECTED == intent.action) {
+                startRun()
+            } else {
+                cancelRun()
+            }
+        }
+    }
+
+    @MainThread
+    fun start() {
+        if (started) return
+        started = true
+
+        val filter = IntentFilter()
+        filter.addAction(Intent.ACTION_POWER_CONNECTED)
+        filter.addAction(Intent.ACTION_POWER_DISCONNECTED)
+        context.registerReceiver(powerReceiver, filter)
+        if (isCharging()) startRun()
+    }
+
+    @MainThread
+    fun stop() {
+        if (!started) return
+        started = false
+        context.unregisterReceiver(powerReceiver)
+        cancelRun()
+    }
+
+    private fun isCharging(): Boolean {
+        val battery = context.registerReceiver(null, IntentFilter(Intent.ACTION_BATTERY_CHANGED))
+        return battery != null && battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0
+    }
+
+    private fun startRun() {
+        if (token != null) return
+        val runToken = CancellationToken()
+        token = runToken
+        job.start(runToken)
+    }
+
+    private fun cancelRun() {
+        token?.cancel()
+        token = null
+    }
+}
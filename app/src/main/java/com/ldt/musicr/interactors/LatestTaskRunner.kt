@@ -0,0 +1,144 @@
+package com.ldt.musicr.interactors
+
+import android.util.Log
+import java.util.concurrent.CancellationException
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicReference
+
+/**
+ * Runs background jobs where only the most recently submitted one matters, such as a search for
+ * the text currently typed or the waveform of the song currently playing.
+ *
+ * Submitting a job cancels the token of the previous one. A superseded job is dropped if it has not
+ * started yet, stops at its next [CancellationToken.throwIfCancelled] checkpoint if it is running,
+ * and its result is never delivered to the main thread.
+ */
+class LatestTaskRunner @JvmOverloads constructor(
+    val name: String,
+    private val lane: TaskLane,
+    private val priority: Int = TaskLane.PRIORITY_NORMAL
+) {
+    fun interface Job<T> {
+        /**
+         * Runs on the lane thread. Return null when there is nothing to deliver.
+         */
+        @Throws(CancellationException::class)
+        fun run(token: CancellationToken): T?
+    }
+
+    fun interface Callback<T> {
+        fun onResult(result: T)
+    }
+
+    private val generation = AtomicLong()
+    private val currentToken = AtomicReference<CancellationToken?>()
+
+    private val submittedCount = AtomicLong()
+    private val skippedCount = AtomicLong()
+    private val abortedCount = AtomicLong()
+    private val staleCount = AtomicLong()
+    private val deliveredCount = AtomicLong()
+    private val abortedNanos = AtomicLong()
+    private val staleNanos = AtomicLong()
+
+    /**
+     * Cancel whichever job is current and run [job] instead. [callback] runs on the main thread,
+     * and only if no newer job was submitted and [cancel] was not called in the meantime.
+     */
+    fun <T> submit(job: Job<T>, callback: Callback<T>?) {
+        val token = CancellationToken()
+        val gen = generation.incrementAndGet()
+        currentToken.getAndSet(token)?.cancel()
+        submittedCount.incrementAndGet()
+
+        lane.execute(priority, Runnable {
+            if (token.isCancelled) {
+                skippedCount.incrementAndGet()
+                return@Runnable
+            }
+
+            val start = System.nanoTime()
+            val result = try {
+                job.run(token)
+            } catch (e: CancellationException) {
+                abortedCount.incrementAndGet()
+                abortedNanos.addAndGet(System.nanoTime() - start)
+                return@Runnable
+            } catch (e: Exception) {
+                Log.w(TAG, "Job of $name failed", e)
+                return@Runnable
+            }
+
+            if (!isLatest(token, gen)) {
+                staleCount.incrementAndGet()
+                staleNanos.addAndGet(System.nanoTime() - start)
+                return@Runnable
+            }
+
+            if (result == null || callback == null) {
+                deliveredCount.incrementAndGet()
+                return@Runnable
+            }
+
+            postOnUiThread {
+                if (isLatest(token, gen)) {
+                    deliveredCount.incrementAndGet()
+                    callback.onResult(result)
+                } else {
+                    staleCount.incrementAndGet()
+                }
+            }
+        })
+    }
+
+    /**
+     * Cancel the current job, if any. Later submissions are unaffected.
+     */
+    fun cancel() {
+        generation.incrementAndGet()
+        currentToken.getAndSet(null)?.cancel()
+    }
+
+    /**
+     * Cancel the current job whenever [token] is cancelled, e.g. a fragment lifecycle token.
+     */
+    fun bindTo(token: CancellationToken) {
+        token.onCancel { cancel() }
+    }
+
+    private fun isLatest(token: CancellationToken, gen: Long): Boolean {
+        return !token.isCancelled && generation.get() == gen
+    }
+
+    fun getMetrics(): Metrics {
+        return Metrics(
+            name,
+            submittedCount.get(),
+            skippedCount.get(),
+            abortedCount.get(),
+            staleCount.get(),
+            deliveredCount.get(),
+            abortedNanos.get() / 1_000_000,
+            staleNanos.get() / 1_000_000
+        )
+    }
+
+    /**
+     * [skipped] jobs never started and [aborted] jobs stopped at a checkpoint: that is the work
+     * avoided. [stale] jobs ran to the end but were thrown away, so [staleMillis] is work wasted.
+     */
+    data class Metrics(
+        val name: String,
+        val submitted: Long,
+        val skipped: Long,
+        val aborted: Long,
+        val stale: Long,
+        val delivered: Long,
+        val abortedMillis: Long,
+        val staleMillis: Long
+    )
+
+    companion object {
+        private const val TAG = "LatestTaskRunner"
+    }
+}
@@ -0,0 +1,166 @@
+package com.ldt.musicr.interactors
+
+import com.ldt.musicr.helper.PriorityThreadFactory
+import java.util.concurrent.AbstractExecutorService
+import java.util.concurrent.PriorityBlockingQueue
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * A bounded pool of worker threads dedicated to one category of work (disk, decode, network, cpu).
+ *
+ * Queued tasks are ordered by priority first and submission order second, so a user-visible
+ * request is never stuck behind a batch of prefetch jobs. Idle workers time out, so a lane that is
+ * not used costs no threads.
+ */
+class TaskLane(
+    val name: String,
+    val maxThreads: Int,
+    threadPriority: Int
+) : AbstractExecutorService() {
+
+    private val sequence = AtomicLong()
+
+    private val submittedCount = AtomicLong()
+    private val completedCount = AtomicLong()
+    private val droppedCount = AtomicLong()
+    private val failedCount = AtomicLong()
+    private val totalWaitNanos = AtomicLong()
+    private val maxWaitNanos = AtomicLong()
+    private val totalRunNanos = AtomicLong()
+
+    private val executor = ThreadPoolExecutor(
+        maxThreads,
+        maxThreads,
+        KEEP_ALIVE_SECONDS,
+        TimeUnit.SECONDS,
+        PriorityBlockingQueue(),
+        PriorityThreadFactory("$name-lane", threadPriority)
+    ).apply { allowCoreThreadTimeOut(true) }
+
+    override fun execute(command: Runnable) {
+        execute(PRIORITY_NORMAL, null, command)
+    }
+
+    fun execute(priority: Int, command: Runnable) {
+        execute(priority, null, command)
+    }
+
+    /**
+     * Queue [command] with the given [priority]. If [token] is cancelled before the command leaves
+     * the queue, the command is dropped without running.
+     */
+    fun execute(priority: Int, token: CancellationToken?, command: Runnable) {
+        submittedCount.incrementAndGet()
+        executor.execute(LaneTask(priority, sequence.getAndIncrement(), token, command))
+    }
+
+    fun getMetrics(): Metrics {
+        val completed = completedCount.get()
+        return Metrics(
+            name = name,
+            maxThreads = maxThreads,
+            activeThreads = executor.activeCount,
+            queueDepth = executor.queue.size,
+            submitted = submittedCount.get(),
+            completed = completed,
+            dropped = droppedCount.get(),
+            failed = failedCount.get(),
+            averageWaitMillis = if (completed == 0L) 0.0 else totalWaitNanos.get() / completed / 1e6,
+            maxWaitMillis = maxWaitNanos.get() / 1e6,
+            averageRunMillis = if (completed == 0L) 0.0 else totalRunNanos.get() / completed / 1e6
+        )
+    }
+
+    fun resetMetrics() {
+        submittedCount.set(0)
+        completedCount.set(0)
+        droppedCount.set(0)
+        failedCount.set(0)
+        totalWaitNanos.set(0)
+        maxWaitNanos.set(0)
+        totalRunNanos.set(0)
+    }
+
+    override fun shutdown() = executor.shutdown()
+
+    override fun shutdownNow(): MutableList<Runnable> = executor.shutdownNow()
+
+    override fun isShutdown(): Boolean = executor.isShutdown
+
+    override fun isTerminated(): Boolean = executor.isTerminated
+
+    override fun awaitTermination(timeout: Long, unit: TimeUnit): Boolean = executor.awaitTermination(timeout, unit)
+
+    private inner class LaneTask(
+        private val priority: Int,
+        private val seq: Long,
+        private val token: CancellationToken?,
+        private val command: Runnable
+    ) : Runnable, Comparable<LaneTask> {
+        private val enqueuedAt = System.nanoTime()
+
+        override fun run() {
+            val startedAt = System.nanoTime()
+            if (token?.isCancelled == true) {
+                droppedCount.incrementAndGet()
+                return
+            }
+
+            val wait = startedAt - enqueuedAt
+            totalWaitNanos.addAndGet(wait)
+            var max = maxWaitNanos.get()
+            while (wait > max && !maxWaitNanos.compareAndSet(max, wait)) {
+                max = maxWaitNanos.get()
+            }
+
+            try {
+                command.run()
+            } catch (e: Throwable) {
+                failedCount.incrementAndGet()
+                throw e
+            } finally {
+                totalRunNanos.addAndGet(System.nanoTime() - startedAt)
+                completedCount.incrementAndGet()
+            }
+        }
+
+        override fun compareTo(other: LaneTask): Int {
+            if (priority != other.priority) return priority.compareTo(other.priority)
+            return seq.compareTo(other.seq)
+        }
+    }
+
+    data class Metrics(
+        val name: String,
+        val maxThreads: Int,
+        val activeThreads: Int,
+        val queueDepth: Int,
+        val submitted: Long,
+        val completed: Long,
+        val dropped: Long,
+        val failed: Long,
+        val averageWaitMillis: Double,
+        val maxWaitMillis: Double,
+        val averageRunMillis: Double
+    ) {
+        override fun toString(): String {
+            return String.format(
+                "%-8s threads %d/%d, queued %d, submitted %d, completed %d, dropped %d, failed %d, wait avg %.1fms max %.1fms, run avg %.1fms",
+                name, activeThreads, maxThreads, queueDepth, submitted, completed, dropped, failed,
+                averageWaitMillis, maxWaitMillis, averageRunMillis
+            )
+        }
+    }
+
+    companion object {
+        /* Lower value runs first */
+        const val PRIORITY_IMMEDIATE = 0
+        const val PRIORITY_HIGH = 1
+        const val PRIORITY_NORMAL = 2
+        const val PRIORITY_LOW = 3
+
+        private const val KEEP_ALIVE_SECONDS = 30L
+    }
+}
@@ -0,0 +1,437 @@
+package com.ldt.musicr.loader.medialoader;
+
+import android.content.Context;
+import android.os.Environment;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.ldt.musicr.helper.tag.SongTagService;
+import com.ldt.musicr.model.Song;
+import com.ldt.musicr.model.SongTags;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Finds the audio files that the media store does not index because they are in a folder with a
+ * .nomedia file, or below one, and reads their tags.
+ * <p>
+ * The tree is walked on a fork/join pool, one task per folder. What was found in every folder is
+ * kept in a cache file with the folder modification time: a folder whose time did not change is
+ * not listed again, only its sub folders are visited. The tags of a file are read once per version
+ * of the file, through {@link SongTagService}.
+ */
+public final class HiddenSongScanner {
+    private static final String TAG = "HiddenSongScanner";
+
+    private static final String NO_MEDIA = ".nomedia";
+
+    private static final int CACHE_VERSION = 1;
+
+    /* Hidden song ids are -2 - hash, -1 is the id of Song.EMPTY_SONG */
+    private static final int ID_HASH_MASK = 0x3fffffff;
+
+    /* Tag reads are mostly blocked on storage, more readers than SongTagService runs at once
+       would only wait for its permits */
+    private static final int TAG_READERS = SongTagService.MAX_CONCURRENT_READS;
+
+    private static final HashSet<String> AUDIO_EXTENSIONS = new HashSet<>(Arrays.asList(
+            "mp3", "m4a", "aac", "flac", "ogg", "oga", "opus", "wav", "wma", "amr", "mka", "ape", "aif", "aiff"));
+
+    private static HiddenSongScanner sInstance = null;
+
+    @NonNull
+    public static synchronized HiddenSongScanner getInstance(@NonNull Context context) {
+        if (sInstance == null) {
+            sInstance = new HiddenSongScanner(Environment.getExternalStorageDirectory(),
+                    new File(context.getApplicationContext().getFilesDir(), "hidden_songs.cache"));
+        }
+        return sInstance;
+    }
+
+    /**
+     * Hidden songs are not in the media store, their ids are negative
+     */
+    public static boolean isHiddenSongId(int songId) {
+        return songId < 0;
+    }
+
+    /**
+     * Reads the tags of a file, null if it cannot
+     */
+    interface TagReader {
+        @Nullable
+        SongTags read(@NonNull String path);
+    }
+
+    private final File mRoot;
+    private final File mCacheFile;
+    private final TagReader mTagReader;
+
+    /* folder path -> its content at its last modification time */
+    @Nullable
+    private Map<String, DirEntry> mDirs = null;
+
+    /* file path -> tags of the file at its last modification time */
+    @Nullable
+    private Map<String, FileEntry> mFiles = null;
+
+    private int mListedDirs;
+    private int mReusedDirs;
+    private int mReadFiles;
+
+    public HiddenSongScanner(@NonNull File root, @NonNull File cacheFile) {
+        this(root, cacheFile, path -> SongTagService.getInstance().getTags(path));
+    }
+
+    HiddenSongScanner(@NonNull File root, @NonNull File cacheFile, @NonNull TagReader tagReader) {
+        mRoot = root;
+        mCacheFile = cacheFile;
+        mTagReader = tagReader;
+    }
+
+    /**
+     * Scan for hidden songs, reusing what did not change since the last scan.
+     */
+    @WorkerThread
+    @NonNull
+    public synchronized ArrayList<Song> scan() {
+        final long start = System.nanoTime();
+        if (mDirs == null || mFiles == null) loadCache();
+
+        final Map<String, DirEntry> oldDirs = mDirs;
+        final ConcurrentHashMap<String, DirEntry> newDirs = new ConcurrentHashMap<>();
+        final ConcurrentLinkedQueue<String> hiddenFiles = new ConcurrentLinkedQueue<>();
+        mListedDirs = 0;
+        mReusedDirs = 0;
+        mReadFiles = 0;
+
+        ForkJoinPool pool = new ForkJoinPool(Math.max(2, Runtime.getRuntime().availableProcessors()));
+        try {
+            pool.invoke(new DirTask(mRoot, true, false, oldDirs, newDirs, hiddenFiles));
+        } finally {
+            pool.shutdown();
+        }
+
+        final ArrayList<String> paths = new ArrayList<>(hiddenFiles);
+        Collections.sort(paths);
+        final Map<String, FileEntry> files = readFiles(paths);
+
+        mDirs = newDirs;
+        mFiles = files;
+        saveCache();
+
+        ArrayList<Song> songs = new ArrayList<>(paths.size());
+        HashSet<Integer> usedIds = new HashSet<>(paths.size() * 2);
+        for (String path : paths) {
+            FileEntry entry = files.get(path);
+            if (entry != null) songs.add(entry.toSong(makeId(path, usedIds)));
+        }
+        Log.d(TAG, "Found " + songs.size() + " hidden songs in " + (System.nanoTime() - start) / 1_000_000 + " ms: "
+                + mListedDirs + " folders listed, " + mReusedDirs + " unchanged, " + mReadFiles + " files read");
+        return songs;
+    }
+
+    /**
+     * Reuse the tags of the unchanged files, read the others in parallel.
+     */
+    @NonNull
+    private Map<String, FileEntry> readFiles(@NonNull List<String> paths) {
+        final Map<String, FileEntry> oldFiles = mFiles;
+        final HashMap<String, FileEntry> files = new HashMap<>(paths.size() * 2);
+        final ArrayList<Callable<FileEntry>> reads = new ArrayList<>();
+        for (String path : paths) {
+            final File file = new File(path);
+            final long lastModified = file.lastModified();
+            final long length = file.length();
+            final FileEntry cached = oldFiles == null ? null : oldFiles.get(path);
+            if (cached != null && cached.lastModified == lastModified && cached.length == length) {
+                files.put(path, cached);
+            } else {
+                reads.add(() -> FileEntry.read(mTagReader, file, lastModified, length));
+            }
+        }
+        if (reads.isEmpty()) return files;
+
+        mReadFiles = reads.size();
+        ExecutorService readers = Executors.newFixedThreadPool(Math.min(TAG_READERS, reads.size()));
+        try {
+            for (Future<FileEntry> future : readers.invokeAll(reads)) {
+                FileEntry entry = future.get();
+                files.put(entry.path, entry);
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Could not read the tags of the hidden songs", e);
+        } finally {
+            readers.shutdown();
+        }
+        return files;
+    }
+
+    private static final class DirTask extends RecursiveAction {
+        private final File mDir;
+        private final boolean mIsRoot;
+        private final boolean mHidden;
+        @Nullable
+        private final Map<String, DirEntry> mOldDirs;
+        private final Map<String, DirEntry> mNewDirs;
+        private final ConcurrentLinkedQueue<String> mHiddenFiles;
+
+        DirTask(File dir, boolean isRoot, boolean hidden, @Nullable Map<String, DirEntry> oldDirs,
+                Map<String, DirEntry> newDirs, ConcurrentLinkedQueue<String> hiddenFiles) {
+            mDir = dir;
+            mIsRoot = isRoot;
+            mHidden = hidden;
+            mOldDirs = oldDirs;
+            mNewDirs = newDirs;
+            mHiddenFiles = hiddenFiles;
+        }
+
+        @Override
+        protected void compute() {
+            final String path = mDir.getPath();
+            final long lastModified = mDir.lastModified();
+            if (lastModified == 0) return;
+
+            DirEntry entry = mOldDirs == null ? null : mOldDirs.get(path);
+            if (entry == null || entry.lastModified != lastModified) {
+                entry = DirEntry.list(mDir, lastModified, mIsRoot);
+                if (entry == null) return;
+            }
+            mNewDirs.put(path, entry);
+
+            final boolean hidden = mHidden || entry.hasNoMedia;
+            if (hidden) {
+                for (String name : entry.audioFiles) {
+                    mHiddenFiles.add(path + File.separatorChar + name);
+                }
+            }
+
+            if (entry.subDirs.length == 0) return;
+            ArrayList<DirTask> tasks = new ArrayList<>(entry.subDirs.length);
+            for (String name : entry.subDirs) {
+                tasks.add(new DirTask(new File(mDir, name), false, hidden, mOldDirs, mNewDirs, mHiddenFiles));
+            }
+            invokeAll(tasks);
+        }
+    }
+
+    /**
+     * What a folder contains, whether it is hidden or not
+     */
+    private static final class DirEntry {
+        final long lastModified;
+        final boolean hasNoMedia;
+        final String[] subDirs;
+        final String[] audioFiles;
+
+        DirEntry(long lastModified, boolean hasNoMedia, String[] subDirs, String[] audioFiles) {
+            this.lastModified = lastModified;
+            this.hasNoMedia = hasNoMedia;
+            this.subDirs = subDirs;
+            this.audioFiles = audioFiles;
+        }
+
+        @Nullable
+        static DirEntry list(File dir, long lastModified, boolean isRoot) {
+            File[] children = dir.listFiles();
+            if (children == null) return null;
+
+            boolean hasNoMedia = false;
+            ArrayList<String> subDirs = new ArrayList<>();
+            ArrayList<String> audioFiles = new ArrayList<>();
+            for (File child : children) {
+                final String name = child.getName();
+                if (child.isDirectory()) {
+                    // hidden folders and the app private folders are not music folders
+                    if (name.startsWith(".") || (isRoot && name.equals("Android"))) continue;
+                    subDirs.add(name);
+                } else if (name.equals(NO_MEDIA)) {
+                    hasNoMedia = true;
+                } else if (isAudioFile(name)) {
+                    audioFiles.add(name);
+                }
+            }
+            return new DirEntry(lastModified, hasNoMedia, subDirs.toArray(new String[0]), audioFiles.toArray(new String[0]));
+        }
+    }
+
+    /**
+     * The id of a hidden song, derived from its path. A path whose id is already used by another
+     * path takes the next free one: the paths are scanned in order so that the same files get the
+     * same ids in every scan.
+     */
+    static int makeId(@NonNull String path, @NonNull Set<Integer> usedIds) {
+        int hash = path.hashCode() & ID_HASH_MASK;
+        while (!usedIds.add(-2 - hash)) {
+            hash = (hash + 1) & ID_HASH_MASK;
+        }
+        return -2 - hash;
+    }
+
+    static boolean isAudioFile(@NonNull String name) {
+        final int dot = name.lastIndexOf('.');
+        return dot > 0 && AUDIO_EXTENSIONS.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * The tags of an audio file
+     */
+    private static final class FileEntry {
+        final String path;
+        final long lastModified;
+        final long length;
+        final String title;
+        final String artist;
+        final String album;
+        final int year;
+        final int track;
+        final long duration;
+
+        FileEntry(String path, long lastModified, long length, String title, String artist, String album, int year, int track, long duration) {
+            this.path = path;
+            this.lastModified = lastModified;
+            this.length = length;
+            this.title = title;
+            this.artist = artist;
+            this.album = album;
+            this.year = year;
+            this.track = track;
+            this.duration = duration;
+        }
+
+        @NonNull
+        static FileEntry read(TagReader tagReader, File file, long lastModified, long length) {
+            // still listed when its tag cannot be read, with its file name as title
+            final SongTags tags = tagReader.read(file.getPath());
+            String title = tags == null ? "" : tags.title;
+            final String artist = tags == null ? "" : tags.artist;
+            final String album = tags == null ? "" : tags.album;
+            final int year = tags == null ? 0 : tags.year;
+            final int track = tags == null ? 0 : tags.track;
+            final long duration = tags == null ? 0 : tags.durationMillis;
+
+            if (title.isEmpty()) {
+                final String name = file.getName();
+                final int dot = name.lastIndexOf('.');
+                title = dot > 0 ? name.substring(0, dot) : name;
+            }
+            return new FileEntry(file.getPath(), lastModified, length, title, artist, album, year, track, duration);
+        }
+
+        @NonNull
+        Song toSong(int id) {
+            return new Song(id, title, track, year, duration, path, lastModified / 1000, -1, album, -1, artist);
+        }
+    }
+
+    private void loadCache() {
+        mDirs = new HashMap<>();
+        mFiles = new HashMap<>();
+        if (!mCacheFile.exists()) return;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(mCacheFile)))) {
+            if (in.readInt() != CACHE_VERSION) return;
+
+            HashMap<String, DirEntry> dirs = new HashMap<>();
+            for (int i = in.readInt(); i > 0; i--) {
+                final String path = in.readUTF();
+                final long lastModified = in.readLong();
+                final boolean hasNoMedia = in.readBoolean();
+                dirs.put(path, new DirEntry(lastModified, hasNoMedia, readNames(in), readNames(in)));
+            }
+
+            HashMap<String, FileEntry> files = new HashMap<>();
+            for (int i = in.readInt(); i > 0; i--) {
+                FileEntry entry = new FileEntry(in.readUTF(), in.readLong(), in.readLong(), in.readUTF(), in.readUTF(), in.readUTF(),
+                        in.readInt(), in.readInt(), in.readLong());
+                files.put(entry.path, entry);
+            }
+            mDirs = dirs;
+            mFiles = files;
+        } catch (IOException e) {
+            Log.w(TAG, "Could not read the scan cache, scanning everything", e);
+        }
+    }
+
+    private void saveCache() {
+        final Map<String, DirEntry> dirs = mDirs;
+        final Map<String, FileEntry> files = mFiles;
+        if (dirs == null || files == null) return;
+
+        final File temp = new File(mCacheFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(CACHE_VERSION);
+            out.writeInt(dirs.size());
+            for (Map.Entry<String, DirEntry> entry : dirs.entrySet()) {
+                final DirEntry dir = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeLong(dir.lastModified);
+                out.writeBoolean(dir.hasNoMedia);
+                writeNames(out, dir.subDirs);
+                writeNames(out, dir.audioFiles);
+            }
+            out.writeInt(files.size());
+            for (FileEntry file : files.values()) {
+                out.writeUTF(file.path);
+                out.writeLong(file.lastModified);
+                out.writeLong(file.length);
+                out.writeUTF(file.title);
+                out.writeUTF(file.artist);
+                out.writeUTF(file.album);
+                out.writeInt(file.year);
+                out.writeInt(file.track);
+                out.writeLong(file.duration);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Could not write the scan cache", e);
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+            return;
+        }
+        //noinspection ResultOfMethodCallIgnored
+        temp.renameTo(mCacheFile);
+    }
+
+    @NonNull
+    private static String[] readNames(DataInputStream in) throws IOException {
+        String[] names = new String[in.readInt()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = in.readUTF();
+        }
+        return names;
+    }
+
+    private static void writeNames(DataOutputStream out, String[] names) throws IOException {
+        out.writeInt(names.length);
+        for (String name : names) {
+            out.writeUTF(name);
+        }
+    }
+}
@@ -17,11 +17,13 @@ public class LastAddedLoader {
 
     @NonNull
     public static ArrayList<Song> getLastAddedSongs(@NonNull Context context) {
-        return SongLoader.getSongs(makeLastAddedCursor(context, null));
+        return SmartPlaylistEngine.getInstance(context).getLastAdded();
     }
 
     @NonNull
     public static ArrayList<Song> getLastAddedSongs(@NonNull Context context, @Nullable String _sortOrder) {
+        // the default order comes from the in-memory library, only a custom one needs a query
+        if (_sortOrder == null) return getLastAddedSongs(context);
         return SongLoader.getSongs(makeLastAddedCursor(context, _sortOrder));
     }
 
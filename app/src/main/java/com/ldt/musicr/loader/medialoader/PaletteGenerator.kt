@@ -4,80 +4,93 @@ import android.content.Context
 import com.ldt.musicr.utils.ArtworkUtils.getBitmapRequestBuilder
 import android.graphics.Bitmap
 import com.ldt.musicr.App
+import com.ldt.musicr.service.MusicEventDispatcher
 import com.ldt.musicr.service.MusicPlayerRemote
 import android.graphics.drawable.BitmapDrawable
 import androidx.core.content.res.ResourcesCompat
 import com.ldt.musicr.R
 import androidx.palette.graphics.Palette
 import com.ldt.musicr.provider.ColorProvider
-import android.content.Intent
 import android.graphics.BitmapFactory
 import android.graphics.Color
+import androidx.annotation.MainThread
+import androidx.annotation.WorkerThread
 import com.ldt.musicr.interactors.AppExecutors
+import com.ldt.musicr.interactors.CancellationToken
+import com.ldt.musicr.interactors.LatestTaskRunner
+import com.ldt.musicr.interactors.TaskLane
 import com.ldt.musicr.util.BitmapEditor
 import com.ldt.musicr.util.Tool
 import java.lang.Exception
 
 class PaletteGenerator {
-    private var isCancelled = false
+    private val runner = LatestTaskRunner("palette", AppExecutors.decode(), TaskLane.PRIORITY_HIGH)
+
     fun cancel() {
-        isCancelled = true
+        runner.cancel()
     }
 
+    /**
+     * Generate the palette of the current song, superseding any generation still in flight.
+     */
     fun run() {
-        AppExecutors.io().execute {
-            runCatching { runInternal() }.onFailure { it.printStackTrace() }
-        }
+        runner.submit({ token -> runInternal(token) }) { result -> apply(result) }
     }
 
-    private fun runInternal() {
+    private class Result(val mostColor: Int, val outColors: IntArray, val outAlphas: FloatArray)
+
+    @WorkerThread
+    private fun runInternal(token: CancellationToken): Result? {
         var bitmap: Bitmap? = null
-        val context: Context = App.getInstance() ?: return
+        val context: Context = App.getInstance() ?: return null
         try {
             val song = MusicPlayerRemote.getCurrentSong()
             bitmap = getBitmapRequestBuilder(context, song).submit().get()
         } catch (e: Exception) {
             e.printStackTrace()
         }
+        token.throwIfCancelled()
 
         if (bitmap == null) {
             val drawable = ResourcesCompat.getDrawable(context.resources, R.drawable.speaker2, context.theme) as? BitmapDrawable
             bitmap = drawable?.bitmap
         }
 
-        bitmap ?: return
+        bitmap ?: return null
 
         val color = getMostColor(bitmap)
-        Tool.setMostCommonColor(color)
-        Tool.setSurfaceColor(color)
+        token.throwIfCancelled()
         val palette = Palette.from(bitmap).generate()
+        token.throwIfCancelled()
         val outColors = IntArray(2)
         val outAlphas = FloatArray(2)
-        val generated = generatedPalette(palette, outColors, outAlphas)
-        if (!isCancelled && generated) {
-
-            // re-assign colors
-            Tool.ColorOne = outColors[0]
-            Tool.ColorTwo = outColors[1]
-            Tool.AlphaOne = outAlphas[0]
-            Tool.AlphaTwo = outAlphas[1]
-
-            // reset color provider
-            ColorProvider.paletteRelatedLM.reset()
-            ColorProvider.darkLightRelatedLM.reset()
-
-            // notify whole application
-            val intent = Intent(PALETTE_CHANGED)
-            intent.putExtra(RESULT, true)
-            intent.putExtra(COLOR_ONE, outColors[0])
-            intent.putExtra(COLOR_TWO, outColors[1])
-            intent.putExtra(ALPHA_ONE, outAlphas[0])
-            intent.putExtra(ALPHA_TWO, outAlphas[1])
-            context.sendBroadcast(intent)
-        }
+        val generated = generatedPalette(palette, color, outColors, outAlphas)
+        return if (generated) Result(color, outColors, outAlphas) else null
+    }
+
+    @MainThread
+    private fun apply(result: Result) {
+        val outColors = result.outColors
+        val outAlphas = result.outAlphas
+
+        Tool.setMostCommonColor(result.mostColor)
+        Tool.setSurfaceColor(result.mostColor)
+
+        // re-assign colors
+        Tool.ColorOne = outColors[0]
+        Tool.ColorTwo = outColors[1]
+        Tool.AlphaOne = outAlphas[0]
+        Tool.AlphaTwo = outAlphas[1]
+
+        // reset color provider
+        ColorProvider.paletteRelatedLM.reset()
+        ColorProvider.darkLightRelatedLM.reset()
+
+        // notify whole application
+        MusicEventDispatcher.getInstance().post(MusicEventDispatcher.PALETTE_CHANGED, result.mostColor.toLong())
     }
 
-    private fun generatedPalette(p: Palette, outColors: IntArray, outAlphas: FloatArray): Boolean {
+    private fun generatedPalette(p: Palette, mostColor: Int, outColors: IntArray, outAlphas: FloatArray): Boolean {
         val palette = IntArray(6)
         // access palette colors here
         val psVibrant = p.vibrantSwatch
@@ -106,7 +119,7 @@ class PaletteGenerator {
             palette[5] = psMutedDark.rgb
         }
         val hsv = FloatArray(3)
-        Color.colorToHSV(Tool.getMostCommonColor(), hsv)
+        Color.colorToHSV(mostColor, hsv)
         //     Log.d(hsv[0] + "|" + hsv[1] + "|" + hsv[2], "ColorMe");
         val alpha7basic = hsv[1]
         val color1: Int
@@ -115,7 +128,7 @@ class PaletteGenerator {
         val alpha2: Float
         if (alpha7basic < 0.5f) //  Đủ đậm thì màu mostCommon sẽ là màu song name, màu basic là màu artist
         {
-            color1 = Tool.getMostCommonColor()
+            color1 = mostColor
             alpha1 = 1f
             color2 = Tool.getBaseColor()
             alpha2 = alpha7basic
@@ -161,13 +174,4 @@ class PaletteGenerator {
         //Bitmap mBlurArtWork = sample;
         return Color.argb(255, averageColorRGB[0], averageColorRGB[1], averageColorRGB[2])
     }
-
-    companion object {
-        const val PALETTE_CHANGED = "com.ldt.musicr.PALETTE_CHANGED"
-        const val COLOR_ONE = "COLOR_ONE"
-        const val COLOR_TWO = "COLOR_TWO"
-        const val ALPHA_ONE = "ALPHA_ONE"
-        const val ALPHA_TWO = "ALPHA_TWO"
-        const val RESULT = "RESULT"
-    }
 }
\ No newline at end of file
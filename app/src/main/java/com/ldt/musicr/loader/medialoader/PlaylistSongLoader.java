@@ -106,4 +106,23 @@ public class PlaylistSongLoader {
             return null;
         }
     }
+
+    /**
+     * Just what an M3U entry needs: duration, artist, title and path, in play order.
+     */
+    public static Cursor makePlaylistEntryCursor(@NonNull final Context context, final int playlistId) {
+        try {
+            return context.getContentResolver().query(
+                    MediaStore.Audio.Playlists.Members.getContentUri("external", playlistId),
+                    new String[]{
+                            AudioColumns.DURATION,// 0
+                            AudioColumns.ARTIST,// 1
+                            AudioColumns.TITLE,// 2
+                            AudioColumns.DATA// 3
+                    }, SongLoader.BASE_SELECTION, null,
+                    MediaStore.Audio.Playlists.Members.DEFAULT_SORT_ORDER);
+        } catch (Exception e) {
+            return null;
+        }
+    }
 }
@@ -0,0 +1,405 @@
+package com.ldt.musicr.loader.medialoader;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.provider.BaseColumns;
+import android.provider.MediaStore;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.ldt.musicr.model.Song;
+import com.ldt.musicr.provider.HistoryStore;
+import com.ldt.musicr.provider.SongPlayCountStore;
+import com.ldt.musicr.service.MusicEventDispatcher;
+import com.ldt.musicr.service.MusicServiceEventListener;
+import com.ldt.musicr.util.PreferenceUtil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Computes the smart playlists (history, top tracks, not recently played, last added) from
+ * primitive id arrays matched against an in-memory snapshot of the library, instead of building
+ * an "_id IN (...)" query or comparing Song lists for every request.
+ * <p>
+ * The library snapshot is loaded once and dropped when the media store or the minimum song
+ * duration changes. The history is kept in memory and updated in place with every entry the
+ * service writes to {@link HistoryStore}, the top tracks ids are read again from their store after
+ * a song change since the play count scores are computed there.
+ */
+public final class SmartPlaylistEngine implements MusicServiceEventListener {
+    private static SmartPlaylistEngine sInstance = null;
+
+    @NonNull
+    public static synchronized SmartPlaylistEngine getInstance(@NonNull Context context) {
+        if (sInstance == null) {
+            sInstance = new SmartPlaylistEngine(context.getApplicationContext());
+            MusicEventDispatcher.getInstance().addListener(sInstance);
+            PreferenceUtil.getInstance(context).registerOnSharedPreferenceChangedListener(sInstance.mPreferenceListener);
+        }
+        return sInstance;
+    }
+
+    private final Context mContext;
+
+    private volatile Library mLibrary = null;
+    private volatile Recents mRecents = null;
+    private volatile long[] mTopIds = null;
+
+    /* Increased on every change, a snapshot loaded meanwhile is used once but not kept */
+    private int mLibraryVersion = 0;
+    private int mRecentsVersion = 0;
+    private int mTopVersion = 0;
+
+    /* Song queries leave out songs shorter than the minimum duration, held here since preferences keep listeners weakly */
+    private final SharedPreferences.OnSharedPreferenceChangeListener mPreferenceListener = (sharedPreferences, key) -> {
+        if (PreferenceUtil.AUDIO_MIN_DURATION.equals(key)) invalidateLibrary();
+    };
+
+    private SmartPlaylistEngine(Context context) {
+        mContext = context;
+    }
+
+    @NonNull
+    public ArrayList<Song> getRecentlyPlayed() {
+        final long cutoff = PreferenceUtil.getInstance(mContext).getRecentlyPlayedCutoffTimeMillis();
+        final Library library = getLibrary();
+        final Recents recents = getRecents();
+
+        ArrayList<Song> songs = new ArrayList<>();
+        ArrayList<Long> missingIds = null;
+        for (int i = 0; i < recents.ids.length && recents.times[i] > cutoff; i++) {
+            Song song = library.find(recents.ids[i]);
+            if (song != null) {
+                songs.add(song);
+            } else {
+                if (missingIds == null) missingIds = new ArrayList<>();
+                missingIds.add(recents.ids[i]);
+            }
+        }
+
+        // clean up the history of songs that no longer exist
+        if (missingIds != null) {
+            for (long id : missingIds) {
+                HistoryStore.getInstance(mContext).removeSongId(id);
+            }
+            removeRecents(missingIds);
+        }
+        return songs;
+    }
+
+    @NonNull
+    public ArrayList<Song> getNotRecentlyPlayed() {
+        final long cutoff = PreferenceUtil.getInstance(mContext).getRecentlyPlayedCutoffTimeMillis();
+        final Library library = getLibrary();
+        final long[] recentIds = getRecents().sortedIdsPlayedAfter(cutoff);
+
+        ArrayList<Song> songs = new ArrayList<>(library.songsByDateAdded.length);
+        for (Song song : library.songsByDateAdded) {
+            if (Arrays.binarySearch(recentIds, song.id) < 0) songs.add(song);
+        }
+        return songs;
+    }
+
+    @NonNull
+    public ArrayList<Song> getTopTracks() {
+        final Library library = getLibrary();
+        final long[] topIds = getTopIds();
+
+        ArrayList<Song> songs = new ArrayList<>(topIds.length);
+        boolean removed = false;
+        for (long id : topIds) {
+            Song song = library.find(id);
+            if (song != null) {
+                songs.add(song);
+            } else {
+                SongPlayCountStore.getInstance(mContext).removeItem(id);
+                removed = true;
+            }
+        }
+        if (removed) invalidateTopTracks();
+        return songs;
+    }
+
+    @NonNull
+    public ArrayList<Song> getLastAdded() {
+        final long cutoff = PreferenceUtil.getInstance(mContext).getLastAddedCutoffTimeSecs();
+        final Library library = getLibrary();
+
+        // newest first
+        ArrayList<Song> songs = new ArrayList<>();
+        for (int i = library.songsByDateAdded.length - 1; i >= 0 && library.dateAdded[i] > cutoff; i--) {
+            songs.add(library.songsByDateAdded[i]);
+        }
+        return songs;
+    }
+
+    public synchronized void invalidateHistory() {
+        mRecentsVersion++;
+        mRecents = null;
+    }
+
+    public synchronized void invalidateTopTracks() {
+        mTopVersion++;
+        mTopIds = null;
+    }
+
+    private synchronized void invalidateLibrary() {
+        mLibraryVersion++;
+        mLibrary = null;
+    }
+
+    /**
+     * Called by the service right after it wrote the history entry of a song, for every song
+     * played: the dispatched META_CHANGED events are coalesced and would miss some of them.
+     *
+     * @param timePlayed the time written to {@link HistoryStore}, -1 if nothing was written
+     */
+    public synchronized void onSongPlayed(long songId, long timePlayed) {
+        // mirror the history entry in memory
+        if (timePlayed != -1) {
+            mRecentsVersion++;
+            if (mRecents != null) mRecents = mRecents.movedToFront(songId, timePlayed);
+        }
+
+        // the previous song may have got its play count bumped
+        mTopVersion++;
+        mTopIds = null;
+    }
+
+    @Override
+    public void onMediaStoreChanged() {
+        invalidateLibrary();
+    }
+
+    @NonNull
+    private Library getLibrary() {
+        Library library = mLibrary;
+        if (library != null) return library;
+
+        int version;
+        synchronized (this) {
+            version = mLibraryVersion;
+        }
+        library = Library.load(mContext);
+        synchronized (this) {
+            if (version == mLibraryVersion) mLibrary = library;
+        }
+        return library;
+    }
+
+    @NonNull
+    private Recents getRecents() {
+        Recents recents = mRecents;
+        if (recents != null) return recents;
+
+        int version;
+        synchronized (this) {
+            version = mRecentsVersion;
+        }
+        recents = Recents.load(mContext);
+        synchronized (this) {
+            if (version == mRecentsVersion) mRecents = recents;
+        }
+        return recents;
+    }
+
+    private synchronized void removeRecents(ArrayList<Long> ids) {
+        if (mRecents == null) return;
+        mRecentsVersion++;
+        Recents recents = mRecents;
+        for (long id : ids) {
+            recents = recents.removed(id);
+        }
+        mRecents = recents;
+    }
+
+    @NonNull
+    private long[] getTopIds() {
+        long[] topIds = mTopIds;
+        if (topIds != null) return topIds;
+
+        int version;
+        synchronized (this) {
+            version = mTopVersion;
+        }
+        topIds = readIds(SongPlayCountStore.getInstance(mContext).getTopPlayedResults(TopAndRecentlyPlayedTracksLoader.NUMBER_OF_TOP_TRACKS),
+                SongPlayCountStore.SongPlayCountColumns.ID);
+        synchronized (this) {
+            if (version == mTopVersion) mTopIds = topIds;
+        }
+        return topIds;
+    }
+
+    @NonNull
+    private static long[] readIds(@Nullable Cursor cursor, String column) {
+        if (cursor == null) return new long[0];
+        try {
+            long[] ids = new long[cursor.getCount()];
+            int index = cursor.getColumnIndex(column);
+            int i = 0;
+            while (cursor.moveToNext()) {
+                ids[i++] = cursor.getLong(index);
+            }
+            return ids;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * The library songs ordered by date added, with an id index for lookups.
+     */
+    private static final class Library {
+        final Song[] songsByDateAdded;
+        final long[] dateAdded;
+
+        /* sorted song ids, and for each the index of the song in songsByDateAdded */
+        final long[] sortedIds;
+        final int[] indexOfSortedId;
+
+        private Library(Song[] songsByDateAdded, long[] dateAdded) {
+            this.songsByDateAdded = songsByDateAdded;
+            this.dateAdded = dateAdded;
+
+            final int count = songsByDateAdded.length;
+            long[] keys = new long[count];
+            for (int i = 0; i < count; i++) {
+                // id in the high bits, index in the low bits: sorting the keys sorts by id
+                keys[i] = ((long) songsByDateAdded[i].id << 32) | i;
+            }
+            Arrays.sort(keys);
+
+            sortedIds = new long[count];
+            indexOfSortedId = new int[count];
+            for (int i = 0; i < count; i++) {
+                sortedIds[i] = keys[i] >> 32;
+                indexOfSortedId[i] = (int) keys[i];
+            }
+        }
+
+        @Nullable
+        Song find(long id) {
+            int i = Arrays.binarySearch(sortedIds, id);
+            return i < 0 ? null : songsByDateAdded[indexOfSortedId[i]];
+        }
+
+        @NonNull
+        static Library load(Context context) {
+            ArrayList<Song> songs = SongLoader.getSongs(SongLoader.makeSongCursor(context, null, null,
+                    MediaStore.Audio.Media.DATE_ADDED + " ASC"));
+            Song[] songsByDateAdded = songs.toArray(new Song[0]);
+
+            // date added of every song, read as two primitive columns
+            long[] dateAdded = new long[songsByDateAdded.length];
+            Cursor cursor = null;
+            try {
+                cursor = context.getContentResolver().query(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI,
+                        new String[]{BaseColumns._ID, MediaStore.Audio.Media.DATE_ADDED},
+                        null, null, BaseColumns._ID + " ASC");
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+
+            if (cursor != null) {
+                long[] ids = new long[cursor.getCount()];
+                long[] dates = new long[ids.length];
+                int i = 0;
+                while (cursor.moveToNext()) {
+                    ids[i] = cursor.getLong(0);
+                    dates[i++] = cursor.getLong(1);
+                }
+                cursor.close();
+
+                for (int j = 0; j < songsByDateAdded.length; j++) {
+                    int found = Arrays.binarySearch(ids, 0, i, songsByDateAdded[j].id);
+                    if (found >= 0) dateAdded[j] = dates[found];
+                }
+            }
+            return new Library(songsByDateAdded, dateAdded);
+        }
+    }
+
+    /**
+     * Played song ids, most recent first, with the time they were played.
+     */
+    private static final class Recents {
+        final long[] ids;
+        final long[] times;
+
+        Recents(long[] ids, long[] times) {
+            this.ids = ids;
+            this.times = times;
+        }
+
+        @NonNull
+        long[] sortedIdsPlayedAfter(long cutoff) {
+            int count = 0;
+            while (count < ids.length && times[count] > cutoff) count++;
+            long[] sorted = Arrays.copyOf(ids, count);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+
+        @NonNull
+        Recents movedToFront(long id, long time) {
+            int index = indexOf(id);
+            int size = index == -1 ? ids.length + 1 : ids.length;
+            long[] newIds = new long[size];
+            long[] newTimes = new long[size];
+            newIds[0] = id;
+            newTimes[0] = time;
+
+            int to = 1;
+            for (int from = 0; from < ids.length; from++) {
+                if (from == index) continue;
+                newIds[to] = ids[from];
+                newTimes[to++] = times[from];
+            }
+            return new Recents(newIds, newTimes);
+        }
+
+        @NonNull
+        Recents removed(long id) {
+            int index = indexOf(id);
+            if (index == -1) return this;
+
+            long[] newIds = new long[ids.length - 1];
+            long[] newTimes = new long[ids.length - 1];
+            System.arraycopy(ids, 0, newIds, 0, index);
+            System.arraycopy(ids, index + 1, newIds, index, ids.length - index - 1);
+            System.arraycopy(times, 0, newTimes, 0, index);
+            System.arraycopy(times, index + 1, newTimes, index, times.length - index - 1);
+            return new Recents(newIds, newTimes);
+        }
+
+        private int indexOf(long id) {
+            for (int i = 0; i < ids.length; i++) {
+                if (ids[i] == id) return i;
+            }
+            return -1;
+        }
+
+        @NonNull
+        static Recents load(Context context) {
+            Cursor cursor = HistoryStore.getInstance(context).queryRecentIds(0);
+            if (cursor == null) return new Recents(new long[0], new long[0]);
+            try {
+                long[] ids = new long[cursor.getCount()];
+                long[] times = new long[ids.length];
+                int idColumn = cursor.getColumnIndex(HistoryStore.RecentStoreColumns.ID);
+                int timeColumn = cursor.getColumnIndex(HistoryStore.RecentStoreColumns.TIME_PLAYED);
+                int i = 0;
+                while (cursor.moveToNext()) {
+                    ids[i] = cursor.getLong(idColumn);
+                    times[i++] = cursor.getLong(timeColumn);
+                }
+                return new Recents(ids, times);
+            } finally {
+                cursor.close();
+            }
+        }
+    }
+}
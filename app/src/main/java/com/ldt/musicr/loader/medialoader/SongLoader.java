@@ -1,38 +1,20 @@
 package com.ldt.musicr.loader.medialoader;
 
-import android.content.ContentResolver;
 import android.content.Context;
 import android.database.Cursor;
-import android.os.Build;
-import android.os.Environment;
 import android.provider.BaseColumns;
 import android.provider.MediaStore;
 import android.provider.MediaStore.Audio.AudioColumns;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import android.util.Log;
-import android.webkit.MimeTypeMap;
-
 import com.ldt.musicr.App;
 import com.ldt.musicr.model.Song;
+import com.ldt.musicr.provider.BlacklistFilter;
 import com.ldt.musicr.provider.BlacklistStore;
 import com.ldt.musicr.util.PreferenceUtil;
 
-import org.jaudiotagger.audio.AudioFile;
-import org.jaudiotagger.audio.AudioFileIO;
-import org.jaudiotagger.tag.FieldKey;
-import org.jaudiotagger.tag.Tag;
-
-import java.io.File;
-import java.io.FilenameFilter;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
-import java.util.stream.Collectors;
 
 /**
  * @author Karim Abou Zeid (kabouzeid)
@@ -40,8 +22,6 @@ import java.util.stream.Collectors;
 public class SongLoader {
     private static final String TAG = "SongLoader";
 
-    protected static final String NO_MEDIA_TAG = ".nomedia";
-
     protected static final String BASE_SELECTION = AudioColumns.IS_MUSIC + "=1" + " AND " + AudioColumns.TITLE + " != ''";
     protected static final String[] BASE_PROJECTION = new String[]{
             BaseColumns._ID,// 0
@@ -57,247 +37,24 @@ public class SongLoader {
             AudioColumns.ARTIST,// 10
     };
 
-    public static ArrayList<Song> getAllSongsIncludeHidden(@NonNull Context context) {
-        ArrayList<Song> list = getAllSongs(context);
-        list.addAll(getHiddenSongs(context));
-        return list;
-    }
-
+    /**
+     * The songs in folders with a .nomedia file, which the media store does not index
+     */
+    @NonNull
     public static ArrayList<Song> getHiddenSongs(@NonNull Context context) {
-        ArrayList<Song> list = new ArrayList<>();
-
-        doSomething(context);
-
-        return list;
-    }
-
-    private static String getFileExtension(String path) {
-        String extension = "";
-
-        try {
-            if (path!=null) {
-                String name = path;
-                extension = name.substring(name.lastIndexOf(".") +1);
-            }
-        } catch (Exception e) {
-            extension = "";
-        }
-        return extension;
-
-    }
-
-    public static long[] doFindAudioWayOne(boolean forceOldWay) {
-        long start = System.nanoTime();
-        ArrayList<File> files = new ArrayList<>();
-        ArrayList<File> noMedias = new ArrayList<>();
-
-        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.O&&!forceOldWay) {
-
-            String root = Environment.getExternalStorageDirectory().getAbsolutePath();
-
-            try {
-                Files.walk(Paths.get(root)).filter(path -> NO_MEDIA_TAG.equals(path.getFileName().toString())).map(Path::toFile).collect(Collectors.toCollection(() -> noMedias));
-            } catch (Exception ignored) {}
-            for (int i = 0, noMediaPathsSize = noMedias.size(); i < noMediaPathsSize; i++) {
-
-                try {
-                    Files.walk(Paths.get(noMedias.get(i).getParent())).filter(path -> Files.isRegularFile(path) && isAudioExtension(path)).map(Path::toFile).collect(Collectors.toCollection(() -> files));
-                } catch (Exception ignored) {
-                }
-            }
-        } else {
-            File root = Environment.getExternalStorageDirectory();
-            getAllNoMediaDirectories(noMedias,root);
-            for (File f :
-                    noMedias) {
-                getAllMp3FileBelow26(files,f);
-            }
-        }
-
-        long end = System.nanoTime();
-
-        for (File file : noMedias) {
-            Log.d(TAG, "find non media " + file.getAbsolutePath());
-        }
-
-        for (File file : files) {
-            Log.d(TAG, "find " + file.getAbsolutePath());
-        }
-
-        return new long[] {files.size(),end-start};
-     }
-
-    private static void getAllMp3FileBelow26(ArrayList<File> list, File directory) {
+        ArrayList<Song> songs = HiddenSongScanner.getInstance(context).scan();
 
-        File[] files = directory.listFiles();
-
-        for (File file : files)
-        {
-            if (file.isFile()&&isAudioExtension(file.getAbsolutePath()))
-            {
-                list.add(file);
-            }
-            else if (file.isDirectory())
-            {
-               getAllMp3FileBelow26(list, file);
-            }
-        }
-    }
-
-    private static void getAllNoMediaDirectories(ArrayList<File> list, File directory) {
-
-        File[] files = directory.listFiles();
-
-        for (File file : files)
-        {
-            if (file.isFile()&&NO_MEDIA_TAG.equals(file.getName()))
-            {
-                File parent = file.getParentFile();
-                list.add(parent);
-                break;
-            }
-            else if (file.isDirectory())
-            {
-                getAllNoMediaDirectories(list, file);
-            }
-        }
-    }
-
-    private static boolean isAudioExtension(Path path) {
-        if(path==null) return false;
-        String mime = MimeTypeMap.getSingleton().getMimeTypeFromExtension(getFileExtension(path.toString()));
-        return mime != null && mime.contains("audio");
-    }
-
-    private static boolean isAudioExtension(String path) {
-        if(path==null) return false;
-        String mime = MimeTypeMap.getSingleton().getMimeTypeFromExtension(getFileExtension(path));
-        return mime != null && mime.contains("audio");
-    }
-
-    public static long[] doFindAudioWayTwo(@NonNull Context context) {
-        long start = System.nanoTime();
-        String root = Environment.getExternalStorageDirectory().getAbsolutePath();
-        ArrayList<Path> audioPaths = new ArrayList<>();
-        List<Path> noMediaPaths = new ArrayList<>();
-
-        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            try {
-                Files.walk(Paths.get(root)).filter(path -> NO_MEDIA_TAG.equals(path.getFileName().toString())).collect(Collectors.toCollection(() -> noMediaPaths));
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-
-            for (int i = 0, noMediaPathsSize = noMediaPaths.size(); i < noMediaPathsSize; i++) {
-                Path parent = noMediaPaths.get(i).getParent();
-                noMediaPaths.set(i, parent);
-            }
-
-                try {
-               Files.walk(Paths.get(root)).filter(path -> !Files.isDirectory(path) && noMediaPaths.contains(path.getParent()) && isAudioExtension(path)).collect(Collectors.toCollection(() -> audioPaths));
-            } catch (Exception ignored) {}
-        }
-        long end = System.nanoTime();
-
-        for (Path path : audioPaths) {
-            Log.d(TAG, "find "+path);
-        }
-
-        return new long[]{audioPaths.size(),end -start};
-    }
-
-    public static void doSomething(@NonNull Context context) {
-        Log.d(TAG, "find way one");
-
-        long[] w1,w2;
-        w1 = doFindAudioWayOne(true);
-        w1 = doFindAudioWayOne(true);
-        Log.d(TAG, "find way two");
-        w2 = doFindAudioWayOne(false);
-
-   /*     w1[1] = 0;
-        for(int i= 0;i<100;i++) {
-           long[] ew1 = doFindAudioWayOne(context);
-           w1[1]+=ew1[1];
-        }
-
-        w1[1]/=100;
-
-        w2[1] = 0;
-        for(int i= 0;i<100;i++) {
-            long[] ew2 = doFindAudioWayTwo(context);
-            w2[1]+=ew2[1];
-        }
-
-        w2[1]/=100;*/
-
-        Log.d(TAG, "way 1 find "+w1[0]+" files in "+w1[1]);
-        Log.d(TAG, "way 2 find "+w2[0]+" files in "+w2[1]);
-
-        if(true) return;
-        String where = MediaStore.Files.FileColumns.MIME_TYPE  +" = 'audio/mpeg'" +// MediaStore.Files.FileColumns.MEDIA_TYPE_NONE + " AND " +
-               // MediaStore.Files.FileColumns.TITLE + " LIKE %"+"50MB"+"%";
-               // MediaStore.Files.FileColumns.
-                " AND " +MediaStore.Files.FileColumns.MEDIA_TYPE +" != " +MediaStore.Files.FileColumns.MEDIA_TYPE_AUDIO +
-                "";
-        Log.d(TAG, "find in: "+MediaStore.Files.getContentUri("external").getPath());
-        Log.d(TAG, "find in:"+ Environment.getExternalStorageDirectory().getAbsolutePath());
-        FilenameFilter filenameFilter = new FilenameFilter() {
-            @Override
-            public boolean accept(File file, String name) {
-                return name.equals(NO_MEDIA_TAG);
-            }
-        };
-        File root = new File(Environment.getExternalStorageDirectory().getAbsolutePath());
-
-        String[] list = root.list (filenameFilter);
-        Log.d(TAG, "find list :"+ Arrays.toString(list));
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            try {
-                //Files.walk(Paths.get(root.getAbsolutePath())).filter(path -> Files.isRegularFile(path)&&"audio/mpeg".equals(MimeTypeMap.getSingleton().getMimeTypeFromExtension(getFileExtension(path)))).forEach(x -> Log.d(TAG, "find file "+x.toAbsolutePath()));
-                Files.walk(Paths.get(root.getAbsolutePath())).filter(path -> NO_MEDIA_TAG.equals(path.getFileName().toString())).forEach(x -> Log.d(TAG, "find file "+x.toAbsolutePath()));
-            } catch (Exception ignored) {}
-        }
-        if(true) return;
-        Log.d(TAG, "find where ["+where+"]");
-        ContentResolver resolver = context.getContentResolver();
-        if(resolver!=null) {
-            Cursor cursor = context.getContentResolver().query(MediaStore.Files.getContentUri("external"),
-                    new String[]{MediaStore.Files.FileColumns.DATA}, where, null, null);
-
-            if(cursor!=null) Log.d(TAG, "find "+cursor.getCount()+" hidden folders");
-            if (cursor != null && cursor.moveToFirst()) {
-                String path;
-                File file;
-                do {
-                    path = cursor.getString(cursor.getColumnIndex(MediaStore.Files.FileColumns.DATA));
-                  //  Log.d(TAG, "find hidden files: \""+path+"\"");
-                    file = new File(path);
-                    if(file.exists()) {
-                        AudioFile audioFile = null;
-
-                        try {
-                            audioFile = AudioFileIO.read(file);
-                        } catch (Exception ignored) {}
-
-                        if(audioFile!=null) {
-                            Tag tag = audioFile.getTag();
-                            if(tag!=null) {
-                              String artist =  tag.getFirst(FieldKey.ARTIST);
-                              String title = tag.getFirst(FieldKey.TITLE);
-                              String album = tag.getFirst(FieldKey.ALBUM);
-                              String genre = tag.getFirst(FieldKey.GENRE);
-                                Log.d(TAG, "find hidden song: title = "+title+", artist = "+artist+", album = "+album+", genre = "+genre);
-                            }
-                        }
-                    }
-                } while (cursor.moveToNext());
-                cursor.close();
+        BlacklistFilter blacklist = BlacklistStore.getInstance(context).getFilter();
+        if (!blacklist.isEmpty()) {
+            ArrayList<Song> allowed = new ArrayList<>(songs.size());
+            for (Song song : songs) {
+                if (!blacklist.isBlacklisted(song.data)) allowed.add(song);
             }
+            songs = allowed;
         }
+        return songs;
     }
 
-    @NonNull
     public static ArrayList<Song> getAllSongs(@NonNull Context context) {
         Cursor cursor = makeSongCursor(context, null, null);
         return getSongs(cursor);
@@ -381,19 +138,10 @@ public class SongLoader {
         }
 
         // Blacklist
-        ArrayList<String> paths = BlacklistStore.getInstance(context).getPaths();
-        if (!paths.isEmpty()) {
-            selection = generateBlacklistSelection(selection, paths.size());
-            selectionValues = addBlacklistSelectionValues(selectionValues, paths);
-
-            Log.d(TAG, "makeSongCursor: selection ["+selection+"]");
-
-            StringBuilder values = new StringBuilder();
-            for (String value :
-                    selectionValues) {
-                values.append("[").append(value).append("], ");
-            }
-            Log.d(TAG, "makeSongCursor: values = "+ values);
+        BlacklistFilter blacklist = BlacklistStore.getInstance(context).getFilter();
+        if (!blacklist.isEmpty()) {
+            selection = blacklist.appendSelection(selection);
+            selectionValues = blacklist.appendSelectionArgs(selectionValues);
         }
 
         try {
@@ -408,23 +156,4 @@ public class SongLoader {
     private static String addMinDurationFilter(String selection) {
         return selection + " AND "+ AudioColumns.DURATION+" > " + App.getInstance().getPreferencesUtility().getMinDuration();
     }
-
-    private static String generateBlacklistSelection(String selection, int pathCount) {
-        StringBuilder newSelection = new StringBuilder(selection != null && !selection.trim().equals("") ? selection + " AND " : "");
-        newSelection.append(AudioColumns.DATA + " NOT LIKE ?");
-        for (int i = 0; i < pathCount - 1; i++) {
-            newSelection.append(" AND " + AudioColumns.DATA + " NOT LIKE ?");
-        }
-        return newSelection.toString();
-    }
-
-    private static String[] addBlacklistSelectionValues(String[] selectionValues, ArrayList<String> paths) {
-        if (selectionValues == null) selectionValues = new String[0];
-        String[] newSelectionValues = new String[selectionValues.length + paths.size()];
-        System.arraycopy(selectionValues, 0, newSelectionValues, 0, selectionValues.length);
-        for (int i = selectionValues.length; i < newSelectionValues.length; i++) {
-            newSelectionValues[i] = paths.get(i - selectionValues.length) + "%";
-        }
-        return newSelectionValues;
-    }
 }
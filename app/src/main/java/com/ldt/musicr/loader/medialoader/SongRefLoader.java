@@ -0,0 +1,75 @@
+package com.ldt.musicr.loader.medialoader;
+
+import android.content.Context;
+import android.provider.MediaStore.Audio.AudioColumns;
+import android.util.SparseArray;
+
+import androidx.annotation.NonNull;
+
+import com.ldt.musicr.common.MediaManager;
+import com.ldt.musicr.model.Song;
+
+/**
+ * Turns song ids back into songs: from the in-memory library of {@link MediaManager} when it is
+ * loaded, the ids it does not have are read from the media store in a few queries.
+ */
+public final class SongRefLoader {
+    /* Ids per query, inlined in the selection like the rowids of the queue store */
+    private static final int IDS_PER_QUERY = 500;
+
+    private SongRefLoader() {
+    }
+
+    /**
+     * Whether a song can be written as its id only. Hidden songs are not in the media store.
+     */
+    public static boolean isRef(@NonNull Song song) {
+        return isRefId(song.id);
+    }
+
+    /**
+     * @param generation the {@link MediaManager#getSongsGeneration()} the ids were taken from, or
+     *                   0 if unknown. Ids missing from that same generation are not looked for.
+     * @return the song of every id, in the same order, null for the songs that no longer exist
+     */
+    @NonNull
+    public static Song[] resolve(@NonNull Context context, @NonNull int[] ids, long generation) {
+        final Song[] songs = new Song[ids.length];
+        final boolean loaded = MediaManager.INSTANCE.isLoadedSongs();
+        final boolean sameGeneration = loaded && generation != 0 && generation == MediaManager.getSongsGeneration();
+
+        int missing = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (loaded) songs[i] = MediaManager.getSong(ids[i]);
+            if (songs[i] == null && isRefId(ids[i])) missing++;
+        }
+        if (missing == 0 || sameGeneration) return songs;
+
+        final int[] missingIndexes = new int[missing];
+        for (int i = 0, m = 0; i < ids.length; i++) {
+            if (songs[i] == null && isRefId(ids[i])) missingIndexes[m++] = i;
+        }
+        for (int from = 0; from < missing; from += IDS_PER_QUERY) {
+            final int to = Math.min(missing, from + IDS_PER_QUERY);
+            final StringBuilder selection = new StringBuilder(AudioColumns._ID).append(" IN (");
+            for (int m = from; m < to; m++) {
+                if (m > from) selection.append(',');
+                selection.append(ids[missingIndexes[m]]);
+            }
+            selection.append(')');
+
+            final SparseArray<Song> found = new SparseArray<>(to - from);
+            for (Song song : SongLoader.getSongs(SongLoader.makeSongCursor(context, selection.toString(), null, null))) {
+                found.put(song.id, song);
+            }
+            for (int m = from; m < to; m++) {
+                songs[missingIndexes[m]] = found.get(ids[missingIndexes[m]]);
+            }
+        }
+        return songs;
+    }
+
+    private static boolean isRefId(int id) {
+        return !HiddenSongScanner.isHiddenSongId(id);
+    }
+}
@@ -4,13 +4,9 @@ import android.os.Parcel;
 import android.os.Parcelable;
 
 import androidx.annotation.NonNull;
-import androidx.annotation.Nullable;
 
 import com.ldt.musicr.model.core.Entity;
 
-import java.util.ArrayList;
-import java.util.List;
-
 /**
  * @author Karim Abou Zeid (kabouzeid)
  */
@@ -29,11 +25,6 @@ public class Song extends Media implements Parcelable, Entity {
     public final int artistId;
     public final String artistName;
 
-    private final String uid;
-    private float searchScore = 0f;
-    private final List<Integer> spanPosArray = new ArrayList<>();
-    private String logMessage = null;
-
     public Song(int id, String title, int trackNumber, int year, long duration, String data, long dateModified, int albumId, String albumName, int artistId, String artistName) {
         this.id = id;
         this.title = title;
@@ -46,7 +37,6 @@ public class Song extends Media implements Parcelable, Entity {
         this.albumName = albumName;
         this.artistId = artistId;
         this.artistName = artistName;
-        this.uid = "song_" + id;
     }
 
     @Override
@@ -138,7 +128,6 @@ public class Song extends Media implements Parcelable, Entity {
         this.albumName = in.readString();
         this.artistId = in.readInt();
         this.artistName = in.readString();
-        this.uid = "song_"+ this.id;
     }
 
     public static final Creator<Song> CREATOR = new Creator<Song>() {
@@ -155,7 +144,7 @@ public class Song extends Media implements Parcelable, Entity {
     @NonNull
     @Override
     public String getUid() {
-        return uid;
+        return "song_" + id;
     }
 
     @NonNull
@@ -163,31 +152,4 @@ public class Song extends Media implements Parcelable, Entity {
     public String getDisplayName() {
         return title;
     }
-
-    @Override
-    public float getSearchScore() {
-        return searchScore;
-    }
-
-    @Override
-    public void setSearchScore(float searchScore) {
-        this.searchScore = searchScore;
-    }
-
-    @Nullable
-    @Override
-    public String getLogMessage() {
-        return logMessage;
-    }
-
-    @Override
-    public void setLogMessage(@Nullable String logMessage) {
-        this.logMessage = logMessage;
-    }
-
-    @NonNull
-    @Override
-    public List<Integer> getSpanPosList() {
-        return spanPosArray;
-    }
 }
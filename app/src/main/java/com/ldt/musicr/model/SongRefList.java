@@ -0,0 +1,124 @@
+package com.ldt.musicr.model;
+
+import android.content.Context;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.util.SparseArray;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.ldt.musicr.common.MediaManager;
+import com.ldt.musicr.loader.medialoader.SongRefLoader;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A list of songs to put in a {@link android.os.Bundle} instead of an {@link ArrayList} of
+ * {@link Song}. Songs of the media store are parceled as their id with the generation of the
+ * library they were taken from, and read back from the library, only hidden songs are parceled
+ * whole. A queue of 10000 songs takes about 40 KB instead of several MB, far below the Binder
+ * transaction limit.
+ */
+public final class SongRefList implements Parcelable {
+    /* The songs as given, or once resolved */
+    @Nullable
+    private ArrayList<Song> mSongs;
+
+    private final long mGeneration;
+    @Nullable
+    private final int[] mIds;
+    /* index in mIds -> song, for the songs that are not written as their id */
+    @Nullable
+    private final SparseArray<Song> mInlineSongs;
+
+    public SongRefList(@NonNull List<Song> songs) {
+        mSongs = new ArrayList<>(songs);
+        mGeneration = 0;
+        mIds = null;
+        mInlineSongs = null;
+    }
+
+    /**
+     * @return the songs, read from the library if this list was parceled. Songs that no longer
+     * exist are left out.
+     */
+    @NonNull
+    public synchronized ArrayList<Song> getSongs(@NonNull Context context) {
+        if (mSongs != null) return mSongs;
+
+        final Song[] songs = SongRefLoader.resolve(context, mIds, mGeneration);
+        final ArrayList<Song> result = new ArrayList<>(songs.length);
+        for (int i = 0; i < songs.length; i++) {
+            Song song = songs[i] != null ? songs[i] : mInlineSongs.get(i);
+            if (song != null) result.add(song);
+        }
+        mSongs = result;
+        return result;
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public synchronized void writeToParcel(Parcel dest, int flags) {
+        if (mSongs == null) {
+            // never resolved, write it back as it was read
+            dest.writeLong(mGeneration);
+            dest.writeIntArray(mIds);
+            dest.writeInt(mInlineSongs.size());
+            for (int i = 0; i < mInlineSongs.size(); i++) {
+                dest.writeInt(mInlineSongs.keyAt(i));
+                mInlineSongs.valueAt(i).writeToParcel(dest, flags);
+            }
+            return;
+        }
+
+        final int size = mSongs.size();
+        final int[] ids = new int[size];
+        int inline = 0;
+        // the generation is only worth something if the library has all the songs
+        long generation = MediaManager.getSongsGeneration();
+        for (int i = 0; i < size; i++) {
+            Song song = mSongs.get(i);
+            ids[i] = song.id;
+            if (!SongRefLoader.isRef(song)) inline++;
+            else if (generation != 0 && MediaManager.getSong(song.id) == null) generation = 0;
+        }
+        dest.writeLong(generation);
+        dest.writeIntArray(ids);
+        dest.writeInt(inline);
+        for (int i = 0; i < size && inline > 0; i++) {
+            Song song = mSongs.get(i);
+            if (SongRefLoader.isRef(song)) continue;
+            dest.writeInt(i);
+            song.writeToParcel(dest, flags);
+            inline--;
+        }
+    }
+
+    private SongRefList(Parcel in) {
+        mSongs = null;
+        mGeneration = in.readLong();
+        mIds = in.createIntArray();
+        final int inline = in.readInt();
+        mInlineSongs = new SparseArray<>(inline);
+        for (int i = 0; i < inline; i++) {
+            int index = in.readInt();
+            mInlineSongs.put(index, Song.CREATOR.createFromParcel(in));
+        }
+    }
+
+    public static final Creator<SongRefList> CREATOR = new Creator<SongRefList>() {
+        public SongRefList createFromParcel(Parcel source) {
+            return new SongRefList(source);
+        }
+
+        public SongRefList[] newArray(int size) {
+            return new SongRefList[size];
+        }
+    };
+}
@@ -0,0 +1,66 @@
+package com.ldt.musicr.model;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * What the app reads from the tag of an audio file, for the version of the file modified at
+ * {@link #lastModified}.
+ */
+public final class SongTags {
+    /* A replay gain the tag does not have */
+    public static final float NO_REPLAY_GAIN = Float.NaN;
+
+    @NonNull
+    public final String path;
+    public final long lastModified;
+
+    @NonNull
+    public final String title;
+    @NonNull
+    public final String artist;
+    @NonNull
+    public final String album;
+    @NonNull
+    public final String genre;
+    public final int year;
+    public final int track;
+    public final long durationMillis;
+
+    @Nullable
+    public final String lyrics;
+
+    /* The tag has a picture, read it with SongTagService.readEmbeddedArtwork */
+    public final boolean hasEmbeddedArtwork;
+    /* A cover image next to the file, when the tag has none */
+    @Nullable
+    public final String coverFile;
+
+    /* In dB, NO_REPLAY_GAIN when the tag has none */
+    public final float replayGainTrack;
+    public final float replayGainAlbum;
+
+    public SongTags(@NonNull String path, long lastModified, @NonNull String title, @NonNull String artist,
+                    @NonNull String album, @NonNull String genre, int year, int track, long durationMillis,
+                    @Nullable String lyrics, boolean hasEmbeddedArtwork, @Nullable String coverFile,
+                    float replayGainTrack, float replayGainAlbum) {
+        this.path = path;
+        this.lastModified = lastModified;
+        this.title = title;
+        this.artist = artist;
+        this.album = album;
+        this.genre = genre;
+        this.year = year;
+        this.track = track;
+        this.durationMillis = durationMillis;
+        this.lyrics = lyrics;
+        this.hasEmbeddedArtwork = hasEmbeddedArtwork;
+        this.coverFile = coverFile;
+        this.replayGainTrack = replayGainTrack;
+        this.replayGainAlbum = replayGainAlbum;
+    }
+
+    public boolean hasReplayGain() {
+        return !Float.isNaN(replayGainTrack) || !Float.isNaN(replayGainAlbum);
+    }
+}
@@ -1,6 +1,6 @@
 package com.ldt.musicr.model.core
 
-interface Entity: Searchable {
+interface Entity {
     /**
      * Unique identifier
      */
@@ -10,4 +10,4 @@ interface Entity: Searchable {
      * Name that displays on user interface
      */
     val displayName: String
-}
\ No newline at end of file
+}
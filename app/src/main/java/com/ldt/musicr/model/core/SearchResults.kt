@@ -0,0 +1,160 @@
+package com.ldt.musicr.model.core
+
+/**
+ * The entities found by a search, best first. Immutable and packed in primitive arrays: hit `i`
+ * is the entity at [getIndex] in the searched list, with its [getScore] and the matched parts of
+ * its display name as pairs of start and end offsets, [getSpan] from [getSpanStart] until
+ * [getSpanEnd].
+ *
+ * Nothing is written into the entities, so any number of searches can run at the same time over
+ * the same shared objects.
+ */
+class SearchResults private constructor(
+    private val indexes: IntArray,
+    private val scores: FloatArray,
+    /* the spans of hit i are spans[spanOffsets[i] until spanOffsets[i + 1]] */
+    private val spanOffsets: IntArray,
+    private val spans: IntArray
+) {
+    val size: Int get() = indexes.size
+
+    fun getIndex(i: Int): Int = indexes[i]
+
+    fun getScore(i: Int): Float = scores[i]
+
+    fun getSpanStart(i: Int): Int = spanOffsets[i]
+
+    fun getSpanEnd(i: Int): Int = spanOffsets[i + 1]
+
+    /**
+     * A start or end offset of a matched part, [j] from [getSpanStart] until [getSpanEnd] of a hit
+     */
+    fun getSpan(j: Int): Int = spans[j]
+
+    /**
+     * Collects hits in any order, [build] sorts them by score. With a [limit], only the best hits
+     * are kept in a bounded heap, the others are dropped as they come.
+     */
+    class Builder(private val limit: Int = Int.MAX_VALUE) {
+        private var indexes = IntArray(16)
+        private var scores = FloatArray(16)
+        private var spans = arrayOfNulls<IntArray>(16)
+        private var count = 0
+
+        /* With a limit, the kept hits as a min heap: the worst one first */
+        private val heap: IntArray? = if (limit < Int.MAX_VALUE) IntArray(maxOf(0, limit)) else null
+
+        val size: Int get() = count
+
+        fun add(index: Int, score: Float, hitSpans: List<Int>) {
+            val slot = slotFor(index, score)
+            if (slot >= 0) put(slot, index, score, IntArray(hitSpans.size) { hitSpans[it] })
+        }
+
+        /**
+         * Add the hits of another builder, e.g. one of another chunk of the same list
+         */
+        fun addAll(other: Builder) {
+            for (i in 0 until other.count) {
+                val slot = slotFor(other.indexes[i], other.scores[i])
+                if (slot >= 0) put(slot, other.indexes[i], other.scores[i], other.spans[i]!!)
+            }
+        }
+
+        /**
+         * @return where to put a hit, or -1 if it is not good enough to be kept
+         */
+        private fun slotFor(index: Int, score: Float): Int {
+            if (limit <= 0) return -1
+            if (heap != null && count == limit) {
+                // full, replace the worst hit if this one is better
+                val worst = heap[0]
+                return if (isBetter(score, index, scores[worst], indexes[worst])) worst else -1
+            }
+            if (count == indexes.size) grow()
+            return count
+        }
+
+        private fun put(slot: Int, index: Int, score: Float, hitSpans: IntArray) {
+            indexes[slot] = index
+            scores[slot] = score
+            spans[slot] = hitSpans
+
+            if (heap == null) {
+                count++
+            } else if (slot == count) {
+                heap[count] = slot
+                siftUp(count++)
+            } else {
+                siftDown(0)
+            }
+        }
+
+        fun build(): SearchResults {
+            // best score first, then in the order of the searched list
+            val order = (0 until count).sortedWith(Comparator { a, b ->
+                if (isBetter(scores[a], indexes[a], scores[b], indexes[b])) -1 else if (a == b) 0 else 1
+            })
+            val sortedIndexes = IntArray(count)
+            val sortedScores = FloatArray(count)
+            val sortedOffsets = IntArray(count + 1)
+            for (i in 0 until count) {
+                sortedOffsets[i + 1] = sortedOffsets[i] + spans[order[i]]!!.size
+            }
+            val sortedSpans = IntArray(sortedOffsets[count])
+            for (i in 0 until count) {
+                val hit = order[i]
+                sortedIndexes[i] = indexes[hit]
+                sortedScores[i] = scores[hit]
+                System.arraycopy(spans[hit]!!, 0, sortedSpans, sortedOffsets[i], spans[hit]!!.size)
+            }
+            return SearchResults(sortedIndexes, sortedScores, sortedOffsets, sortedSpans)
+        }
+
+        private fun grow() {
+            val capacity = minOf(limit, count * 2)
+            indexes = indexes.copyOf(capacity)
+            scores = scores.copyOf(capacity)
+            spans = spans.copyOf(capacity)
+        }
+
+        private fun isBetter(score: Float, index: Int, otherScore: Float, otherIndex: Int): Boolean {
+            return score > otherScore || score == otherScore && index < otherIndex
+        }
+
+        private fun isWorse(slot: Int, otherSlot: Int): Boolean {
+            return isBetter(scores[otherSlot], indexes[otherSlot], scores[slot], indexes[slot])
+        }
+
+        private fun siftUp(position: Int) {
+            val heap = heap!!
+            var child = position
+            while (child > 0) {
+                val parent = (child - 1) / 2
+                if (!isWorse(heap[child], heap[parent])) break
+                heap[child] = heap[parent].also { heap[parent] = heap[child] }
+                child = parent
+            }
+        }
+
+        private fun siftDown(position: Int) {
+            val heap = heap!!
+            var parent = position
+            while (true) {
+                var worst = parent
+                val left = parent * 2 + 1
+                val right = left + 1
+                if (left < count && isWorse(heap[left], heap[worst])) worst = left
+                if (right < count && isWorse(heap[right], heap[worst])) worst = right
+                if (worst == parent) return
+                heap[parent] = heap[worst].also { heap[worst] = heap[parent] }
+                parent = worst
+            }
+        }
+    }
+
+    companion object {
+        @JvmField
+        val EMPTY = SearchResults(IntArray(0), FloatArray(0), IntArray(1), IntArray(0))
+    }
+}
@@ -1,7 +0,0 @@
-package com.ldt.musicr.model.core
-
-interface Searchable {
-    var searchScore: Float
-    var logMessage: String?
-    val spanPosList: MutableList<Int>
-}
\ No newline at end of file
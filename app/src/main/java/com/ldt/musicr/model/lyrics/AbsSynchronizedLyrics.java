@@ -1,29 +1,156 @@
 package com.ldt.musicr.model.lyrics;
 
-import android.util.SparseArray;
+import java.util.Arrays;
 
 public abstract class AbsSynchronizedLyrics extends Lyrics {
     private static final int TIME_OFFSET_MS = 500; // time adjustment to display line before it actually starts
 
-    protected final SparseArray<String> lines = new SparseArray<>();
+    private static final int[] NO_INTS = new int[0];
+    private static final String[] NO_STRINGS = new String[0];
+
+    /* The timed lines, sorted by time once parsed. A line has the words
+     * [lineWordStart, lineWordEnd) of the word arrays, whose times are relative to the first time
+     * of the line, so that a line repeated at several times shares its words */
+    private int lineCount = 0;
+    private int[] lineTimes = NO_INTS;
+    private String[] lineTexts = NO_STRINGS;
+    private int[] lineWordStart = NO_INTS;
+    private int[] lineWordEnd = NO_INTS;
+
+    private int wordCount = 0;
+    private int[] wordDelays = NO_INTS;
+    private int[] wordOffsets = NO_INTS;
+
     protected int offset = 0;
 
-    public String getLine(int time) {
-        time += offset + AbsSynchronizedLyrics.TIME_OFFSET_MS;
+    protected int getWordCount() {
+        return wordCount;
+    }
+
+    /**
+     * Add a word of the next lines.
+     *
+     * @param delay      millis between the first time of its line and the word
+     * @param textOffset index in the line text where the word starts
+     * @return the number of words added so far
+     */
+    protected int addWord(int delay, int textOffset) {
+        if (wordCount == wordDelays.length) {
+            int capacity = Math.max(16, wordCount * 2);
+            wordDelays = Arrays.copyOf(wordDelays, capacity);
+            wordOffsets = Arrays.copyOf(wordOffsets, capacity);
+        }
+        wordDelays[wordCount] = delay;
+        wordOffsets[wordCount] = textOffset;
+        return ++wordCount;
+    }
+
+    /**
+     * Add a timed line, in any order. A line added later replaces one with the same time.
+     */
+    protected void addLine(int time, String text, int wordStart, int wordEnd) {
+        if (lineCount == lineTimes.length) {
+            int capacity = Math.max(16, lineCount * 2);
+            lineTimes = Arrays.copyOf(lineTimes, capacity);
+            lineTexts = Arrays.copyOf(lineTexts, capacity);
+            lineWordStart = Arrays.copyOf(lineWordStart, capacity);
+            lineWordEnd = Arrays.copyOf(lineWordEnd, capacity);
+        }
+        lineTimes[lineCount] = time;
+        lineTexts[lineCount] = text;
+        lineWordStart[lineCount] = wordStart;
+        lineWordEnd[lineCount] = wordEnd;
+        lineCount++;
+    }
 
-        int lastLineTime = lines.keyAt(0);
+    /**
+     * Sort the lines by time, call once all of them are added.
+     */
+    protected void sortLines() {
+        boolean sorted = true;
+        for (int i = 1; i < lineCount && sorted; i++) {
+            sorted = lineTimes[i - 1] < lineTimes[i];
+        }
+        if (sorted) return;
 
-        for (int i = 0; i < lines.size(); i++) {
-            int lineTime = lines.keyAt(i);
+        // sort by time then by insertion order, and keep the last line of each time
+        final long[] keys = new long[lineCount];
+        for (int i = 0; i < lineCount; i++) {
+            keys[i] = ((long) lineTimes[i] << 32) | i;
+        }
+        Arrays.sort(keys);
 
-            if (time >= lineTime) {
-                lastLineTime = lineTime;
-            } else {
-                break;
-            }
+        final int[] times = new int[lineCount];
+        final String[] texts = new String[lineCount];
+        final int[] wordStart = new int[lineCount];
+        final int[] wordEnd = new int[lineCount];
+        int count = 0;
+        for (int k = 0; k < keys.length; k++) {
+            int i = (int) keys[k];
+            if (count > 0 && times[count - 1] == lineTimes[i]) count--;
+            times[count] = lineTimes[i];
+            texts[count] = lineTexts[i];
+            wordStart[count] = lineWordStart[i];
+            wordEnd[count] = lineWordEnd[i];
+            count++;
         }
+        lineTimes = times;
+        lineTexts = texts;
+        lineWordStart = wordStart;
+        lineWordEnd = wordEnd;
+        lineCount = count;
+    }
+
+    public int getLineCount() {
+        parse(false);
+        return lineCount;
+    }
+
+    public int getLineTime(int index) {
+        return lineTimes[index];
+    }
+
+    public String getLineText(int index) {
+        return lineTexts[index];
+    }
+
+    /**
+     * @return the index of the line shown at this time, 0 before the first line and -1 if there is
+     * no line
+     */
+    public int getLineIndex(int time) {
+        parse(false);
+        if (lineCount == 0) return -1;
+        time += offset + AbsSynchronizedLyrics.TIME_OFFSET_MS;
+
+        int index = Arrays.binarySearch(lineTimes, 0, lineCount, time);
+        if (index < 0) index = -index - 2;
+        return Math.max(0, index);
+    }
+
+    public String getLine(int time) {
+        int index = getLineIndex(time);
+        return index == -1 ? null : lineTexts[index];
+    }
+
+    /**
+     * For karaoke lyrics with word times.
+     *
+     * @return how many chars of the line text are sung at this time, the whole line if it has no
+     * word times
+     */
+    public int getSungLength(int lineIndex, int time) {
+        time += offset;
+        final int lineTime = lineTimes[lineIndex];
+        final int start = lineWordStart[lineIndex];
+        final int end = lineWordEnd[lineIndex];
+        final int length = lineTexts[lineIndex].length();
+        if (start == end) return time >= lineTime ? length : 0;
 
-        return lines.get(lastLineTime);
+        int word = start - 1;
+        while (word + 1 < end && lineTime + wordDelays[word + 1] <= time) word++;
+        if (word < start) return 0;
+        return word + 1 < end ? wordOffsets[word + 1] : length;
     }
 
     public boolean isSynchronized() {
@@ -42,12 +169,11 @@ public abstract class AbsSynchronizedLyrics extends Lyrics {
         if (valid) {
             StringBuilder sb = new StringBuilder();
 
-            for (int i = 0; i < lines.size(); i++) {
-                String line = lines.valueAt(i);
-                sb.append(line).append("\r\n");
+            for (int i = 0; i < lineCount; i++) {
+                sb.append(lineTexts[i]).append("\r\n");
             }
 
-            return sb.toString().trim().replaceAll("(\r?\n){3,}", "\r\n\r\n");
+            return collapseBlankLines(sb.toString().trim());
         }
 
         return super.getText();
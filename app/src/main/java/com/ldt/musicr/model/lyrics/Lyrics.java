@@ -22,8 +22,9 @@ public class Lyrics {
     public static Lyrics parse(Song song, String data) {
         for (Class<? extends Lyrics> format : Lyrics.FORMATS) {
             try {
-                Lyrics lyrics = format.newInstance().setData(song, data);
-                if (lyrics.isValid()) return lyrics.parse(false);
+                // one full parse, it tells whether the data is of this format too
+                Lyrics lyrics = format.newInstance().setData(song, data).parse(false);
+                if (lyrics.valid) return lyrics;
             } catch (Exception e) {
                 e.printStackTrace();
             }
@@ -59,7 +60,43 @@ public class Lyrics {
     }
 
     public String getText() {
-        return this.data.trim().replaceAll("(\r?\n){3,}", "\r\n\r\n");
+        return collapseBlankLines(this.data.trim());
+    }
+
+    /**
+     * Replace every run of three or more line breaks with two, like
+     * {@code replaceAll("(\r?\n){3,}", "\r\n\r\n")} without the regex.
+     */
+    protected static String collapseBlankLines(String text) {
+        final int length = text.length();
+        StringBuilder sb = null;
+        int copied = 0;
+        int i = 0;
+        while (i < length) {
+            int runStart = i;
+            int breaks = 0;
+            while (true) {
+                if (i < length && text.charAt(i) == '\n') {
+                    i++;
+                } else if (i + 1 < length && text.charAt(i) == '\r' && text.charAt(i + 1) == '\n') {
+                    i += 2;
+                } else {
+                    break;
+                }
+                breaks++;
+            }
+
+            if (breaks >= 3) {
+                if (sb == null) sb = new StringBuilder(length);
+                sb.append(text, copied, runStart).append("\r\n\r\n");
+                copied = i;
+            } else if (breaks == 0) {
+                i++;
+            }
+        }
+
+        if (sb == null) return text;
+        return sb.append(text, copied, length).toString();
     }
 
     static {
@@ -1,72 +1,163 @@
 package com.ldt.musicr.model.lyrics;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Arrays;
 
+/**
+ * LRC lyrics, with the enhanced LRC word times: {@code [mm:ss.xx]<mm:ss.xx>word <mm:ss.xx>word}.
+ * <p>
+ * The text is scanned once, char by char: a line is the time tags at its start followed by its
+ * text, a line whose first tag is {@code [name:value]} is an attribute, and word times are taken out
+ * of the line text. Only the text of the lines is allocated.
+ */
 class SynchronizedLyricsLRC extends AbsSynchronizedLyrics {
-    private static final Pattern LRC_LINE_PATTERN = Pattern.compile("((?:\\[.*?])+)(.*)");
-    private static final Pattern LRC_TIME_PATTERN = Pattern.compile("\\[(\\d+):(\\d{2}(?:\\.\\d+)?)]");
-    private static final Pattern LRC_ATTRIBUTE_PATTERN = Pattern.compile("\\[(\\D+):(.+)]");
-
-    private static final float LRC_SECONDS_TO_MS_MULTIPLIER = 1000f;
+    private static final int LRC_SECONDS_TO_MS_MULTIPLIER = 1000;
     private static final int LRC_MINUTES_TO_MS_MULTIPLIER = 60000;
 
+    private static final int MAX_MINUTE_DIGITS = 5;
+
     @Override
     public SynchronizedLyricsLRC parse(boolean check) {
         if (this.parsed || this.data == null || this.data.isEmpty()) {
             return this;
         }
 
-        String[] lines = this.data.split("\r?\n");
+        final String data = this.data;
+        final int length = data.length();
+        final StringBuilder text = new StringBuilder();
+        int[] times = new int[4];
 
-        for (String line : lines) {
-            line = line.trim();
-            if (line.isEmpty()) {
-                continue;
-            }
+        int next = 0;
+        while (next < length) {
+            int end = data.indexOf('\n', next);
+            if (end == -1) end = length;
 
-            Matcher attrMatcher = SynchronizedLyricsLRC.LRC_ATTRIBUTE_PATTERN.matcher(line);
-            if (attrMatcher.find()) {
-                try {
-                    String attr = attrMatcher.group(1).toLowerCase().trim();
-                    String value = attrMatcher.group(2).toLowerCase().trim();
-                    switch (attr) {
-                        case "offset":
-                            this.offset = Integer.parseInt(value);
-                            break;
-                    }
-                } catch (Exception ex) {
-                    ex.printStackTrace();
+            // the line, trimmed
+            int start = next;
+            int stop = end;
+            next = end + 1;
+            while (start < stop && data.charAt(start) <= ' ') start++;
+            while (stop > start && data.charAt(stop - 1) <= ' ') stop--;
+            if (start == stop || data.charAt(start) != '[') continue;
+
+            int timeCount = 0;
+            int i = start;
+            while (i < stop && data.charAt(i) == '[') {
+                int close = data.indexOf(']', i + 1);
+                if (close == -1 || close >= stop) break;
+
+                int time = parseTime(data, i + 1, close);
+                if (time != -1) {
+                    if (timeCount == times.length) times = Arrays.copyOf(times, timeCount * 2);
+                    times[timeCount++] = time;
+                } else if (i == start && parseAttribute(data, i + 1, close)) {
+                    timeCount = 0;
+                    break;
                 }
+                i = close + 1;
+            }
+            if (timeCount == 0) continue;
+
+            this.valid = true;
+            if (check) return this;
+
+            // the line text, without its word times
+            final int wordStart = getWordCount();
+            int wordEnd = wordStart;
+            final String lineText;
+            int open = data.indexOf('<', i);
+            if (open == -1 || open >= stop) {
+                lineText = data.substring(i, stop);
             } else {
-                Matcher matcher = SynchronizedLyricsLRC.LRC_LINE_PATTERN.matcher(line);
-                if (matcher.find()) {
-                    String time = matcher.group(1);
-                    String text = matcher.group(2);
-
-                    Matcher timeMatcher = SynchronizedLyricsLRC.LRC_TIME_PATTERN.matcher(time);
-                    while (timeMatcher.find()) {
-                        int m = 0;
-                        float s = 0f;
-                        try {
-                            m = Integer.parseInt(timeMatcher.group(1));
-                            s = Float.parseFloat(timeMatcher.group(2));
-                        } catch (Exception ex) {
-                            ex.printStackTrace();
-                        }
-                        int ms = (int) (s * LRC_SECONDS_TO_MS_MULTIPLIER) + m * LRC_MINUTES_TO_MS_MULTIPLIER;
-
-                        this.valid = true;
-                        if (check) return this;
-
-                        this.lines.append(ms, text);
+                text.setLength(0);
+                int copied = i;
+                while (open != -1 && open < stop) {
+                    int close = data.indexOf('>', open + 1);
+                    if (close == -1 || close >= stop) break;
+
+                    int time = parseTime(data, open + 1, close);
+                    if (time != -1) {
+                        text.append(data, copied, open);
+                        wordEnd = addWord(time - times[0], text.length());
+                        copied = close + 1;
+                        open = data.indexOf('<', copied);
+                    } else {
+                        open = data.indexOf('<', open + 1);
                     }
                 }
+                text.append(data, copied, stop);
+                lineText = text.toString();
+            }
+
+            for (int t = 0; t < timeCount; t++) {
+                addLine(times[t], lineText, wordStart, wordEnd);
             }
         }
 
+        sortLines();
         this.parsed = true;
 
         return this;
     }
+
+    /**
+     * @return the millis of a {@code mm:ss} or {@code mm:ss.xx} time between from and to, or -1
+     * if it is not a time
+     */
+    static int parseTime(String s, int from, int to) {
+        int i = from;
+        int minutes = 0;
+        while (i < to && i - from < MAX_MINUTE_DIGITS && isDigit(s.charAt(i))) {
+            minutes = minutes * 10 + s.charAt(i) - '0';
+            i++;
+        }
+        if (i == from || i >= to || s.charAt(i) != ':') return -1;
+        i++;
+
+        if (i + 2 > to || !isDigit(s.charAt(i)) || !isDigit(s.charAt(i + 1))) return -1;
+        int millis = ((s.charAt(i) - '0') * 10 + s.charAt(i + 1) - '0') * LRC_SECONDS_TO_MS_MULTIPLIER;
+        i += 2;
+
+        if (i < to) {
+            if (s.charAt(i) != '.' || i + 1 == to) return -1;
+            i++;
+            // the fraction of a second, only its first three digits count
+            int scale = LRC_SECONDS_TO_MS_MULTIPLIER / 10;
+            for (; i < to; i++) {
+                char c = s.charAt(i);
+                if (!isDigit(c)) return -1;
+                millis += (c - '0') * scale;
+                scale /= 10;
+            }
+        }
+        return millis + minutes * LRC_MINUTES_TO_MS_MULTIPLIER;
+    }
+
+    /**
+     * @return true if the tag between from and to is an attribute, a name without digits then a
+     * value
+     */
+    private boolean parseAttribute(String s, int from, int to) {
+        int colon = s.indexOf(':', from);
+        if (colon <= from || colon >= to - 1) return false;
+        for (int i = from; i < colon; i++) {
+            if (isDigit(s.charAt(i))) return false;
+        }
+
+        int nameStart = from;
+        int nameEnd = colon;
+        while (nameStart < nameEnd && s.charAt(nameStart) <= ' ') nameStart++;
+        while (nameEnd > nameStart && s.charAt(nameEnd - 1) <= ' ') nameEnd--;
+        if (nameEnd - nameStart == 6 && s.regionMatches(true, nameStart, "offset", 0, 6)) {
+            try {
+                this.offset = Integer.parseInt(s.substring(colon + 1, to).trim());
+            } catch (Exception ex) {
+                ex.printStackTrace();
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
 }
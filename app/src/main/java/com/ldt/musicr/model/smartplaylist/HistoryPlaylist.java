@@ -7,6 +7,7 @@ import androidx.annotation.NonNull;
 
 
 import com.ldt.musicr.R;
+import com.ldt.musicr.loader.medialoader.SmartPlaylistEngine;
 import com.ldt.musicr.loader.medialoader.TopAndRecentlyPlayedTracksLoader;
 import com.ldt.musicr.model.Song;
 import com.ldt.musicr.provider.HistoryStore;
@@ -44,6 +45,7 @@ public class HistoryPlaylist extends AbsSmartPlaylist {
     @Override
     public void clear(@NonNull Context context) {
         HistoryStore.getInstance(context).clear();
+        SmartPlaylistEngine.getInstance(context).invalidateHistory();
     }
 
 
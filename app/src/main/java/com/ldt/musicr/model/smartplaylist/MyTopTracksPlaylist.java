@@ -7,6 +7,7 @@ import androidx.annotation.NonNull;
 
 
 import com.ldt.musicr.R;
+import com.ldt.musicr.loader.medialoader.SmartPlaylistEngine;
 import com.ldt.musicr.loader.medialoader.TopAndRecentlyPlayedTracksLoader;
 import com.ldt.musicr.model.Song;
 import com.ldt.musicr.provider.SongPlayCountStore;
@@ -31,6 +32,7 @@ public class MyTopTracksPlaylist extends AbsSmartPlaylist {
     @Override
     public void clear(@NonNull Context context) {
         SongPlayCountStore.getInstance(context).clear();
+        SmartPlaylistEngine.getInstance(context).invalidateTopTracks();
     }
 
 
@@ -0,0 +1,157 @@
+package com.ldt.musicr.provider;
+
+import android.provider.MediaStore.Audio.AudioColumns;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * The blacklisted folders compiled once, when the blacklist changes, for use by every song query.
+ * <p>
+ * Prefixes are sorted and the ones inside another blacklisted folder are dropped. A path is
+ * matched with a binary search plus a single prefix comparison, and the SQL selection excludes each
+ * prefix with a range ({@code lower(DATA) < p OR lower(DATA) >= p + U+FFFF}) instead of a LIKE
+ * pattern, which also stops '_' and '%' in folder names from acting as wildcards.
+ * <p>
+ * Like the LIKE patterns it replaces, the matching ignores the case of ASCII letters only: the
+ * prefixes are kept in ASCII lower case, the same as SQLite's lower() gives for the paths.
+ */
+public final class BlacklistFilter {
+    private static final String UPPER_BOUND_SUFFIX = "\uffff";
+
+    public static final BlacklistFilter EMPTY = new BlacklistFilter(new String[0]);
+
+    private final String[] mPrefixes;
+    private final String mSelection;
+    private final String[] mSelectionArgs;
+
+    private BlacklistFilter(String[] prefixes) {
+        mPrefixes = prefixes;
+
+        StringBuilder selection = new StringBuilder();
+        mSelectionArgs = new String[prefixes.length * 2];
+        for (int i = 0; i < prefixes.length; i++) {
+            if (i > 0) selection.append(" AND ");
+            selection.append("(lower(").append(AudioColumns.DATA).append(") < ? OR lower(").append(AudioColumns.DATA).append(") >= ?)");
+            mSelectionArgs[2 * i] = prefixes[i];
+            mSelectionArgs[2 * i + 1] = prefixes[i] + UPPER_BOUND_SUFFIX;
+        }
+        mSelection = selection.toString();
+    }
+
+    @NonNull
+    public static BlacklistFilter compile(@NonNull Collection<String> paths) {
+        if (paths.isEmpty()) return EMPTY;
+
+        ArrayList<String> lowerCased = new ArrayList<>(paths.size());
+        for (String path : paths) {
+            if (path != null && !path.isEmpty()) lowerCased.add(toLowerCaseAscii(path));
+        }
+        String[] sorted = lowerCased.toArray(new String[0]);
+        Arrays.sort(sorted);
+
+        ArrayList<String> prefixes = new ArrayList<>(sorted.length);
+        String last = null;
+        for (String path : sorted) {
+            // sorted order puts a folder right before everything inside it
+            if (last != null && path.startsWith(last)) continue;
+            prefixes.add(path);
+            last = path;
+        }
+        return prefixes.isEmpty() ? EMPTY : new BlacklistFilter(prefixes.toArray(new String[0]));
+    }
+
+    public boolean isEmpty() {
+        return mPrefixes.length == 0;
+    }
+
+    /**
+     * Number of prefixes left after dropping the nested ones
+     */
+    public int size() {
+        return mPrefixes.length;
+    }
+
+    public boolean isBlacklisted(@Nullable String path) {
+        if (path == null || mPrefixes.length == 0) return false;
+
+        // the only prefix that can match is the greatest one not after the path
+        int index = Arrays.binarySearch(mPrefixes, path, BlacklistFilter::compareIgnoreAsciiCase);
+        if (index >= 0) return true;
+        index = -index - 2;
+        return index >= 0 && startsWithIgnoreAsciiCase(path, mPrefixes[index]);
+    }
+
+    private static char toLowerCaseAscii(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+
+    @NonNull
+    private static String toLowerCaseAscii(@NonNull String s) {
+        char[] chars = s.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = toLowerCaseAscii(chars[i]);
+        }
+        return new String(chars);
+    }
+
+    /* Order of the ASCII lower case forms, the order of the sorted prefixes */
+    private static int compareIgnoreAsciiCase(@NonNull String a, @NonNull String b) {
+        final int length = Math.min(a.length(), b.length());
+        for (int i = 0; i < length; i++) {
+            final char ca = toLowerCaseAscii(a.charAt(i));
+            final char cb = toLowerCaseAscii(b.charAt(i));
+            if (ca != cb) return ca - cb;
+        }
+        return a.length() - b.length();
+    }
+
+    private static boolean startsWithIgnoreAsciiCase(@NonNull String path, @NonNull String lowerCasePrefix) {
+        if (path.length() < lowerCasePrefix.length()) return false;
+        for (int i = 0; i < lowerCasePrefix.length(); i++) {
+            if (toLowerCaseAscii(path.charAt(i)) != lowerCasePrefix.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Selection excluding the blacklisted folders, empty if there are none
+     */
+    @NonNull
+    public String getSelection() {
+        return mSelection;
+    }
+
+    @NonNull
+    public String[] getSelectionArgs() {
+        return mSelectionArgs.clone();
+    }
+
+    /**
+     * AND the blacklist selection to {@code selection}
+     */
+    @NonNull
+    public String appendSelection(@Nullable String selection) {
+        if (isEmpty()) return selection == null ? "" : selection;
+        if (selection == null || selection.trim().isEmpty()) return mSelection;
+        return selection + " AND " + mSelection;
+    }
+
+    /**
+     * Append the blacklist selection args to {@code selectionArgs}
+     */
+    @Nullable
+    public String[] appendSelectionArgs(@Nullable String[] selectionArgs) {
+        if (isEmpty()) return selectionArgs;
+        if (selectionArgs == null || selectionArgs.length == 0) return mSelectionArgs.clone();
+
+        String[] args = new String[selectionArgs.length + mSelectionArgs.length];
+        System.arraycopy(selectionArgs, 0, args, 0, selectionArgs.length);
+        System.arraycopy(mSelectionArgs, 0, args, selectionArgs.length, mSelectionArgs.length);
+        return args;
+    }
+}
@@ -2,7 +2,6 @@ package com.ldt.musicr.provider;
 
 import android.content.ContentValues;
 import android.content.Context;
-import android.content.Intent;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
@@ -10,12 +9,13 @@ import android.os.Environment;
 import androidx.annotation.NonNull;
 
 
-import com.ldt.musicr.service.MusicService;
+import com.ldt.musicr.service.MusicEventDispatcher;
 import com.ldt.musicr.util.FileUtil;
 import com.ldt.musicr.util.PreferenceUtil;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class BlacklistStore extends SQLiteOpenHelper {
     private static BlacklistStore sInstance = null;
@@ -23,6 +23,11 @@ public class BlacklistStore extends SQLiteOpenHelper {
     private static final int VERSION = 1;
     private Context context;
 
+    /* Bumped whenever a path is added or removed, a filter compiled for an older generation is stale */
+    private final AtomicInteger mGeneration = new AtomicInteger();
+    /* Compiled from the database on first use */
+    private volatile CompiledFilter mFilter = null;
+
     public BlacklistStore(final Context context) {
         super(context, DATABASE_NAME, null, VERSION);
         this.context = context;
@@ -86,6 +91,7 @@ public class BlacklistStore extends SQLiteOpenHelper {
         } finally {
             database.endTransaction();
         }
+        mGeneration.incrementAndGet();
     }
 
     public boolean contains(File file) {
@@ -115,6 +121,7 @@ public class BlacklistStore extends SQLiteOpenHelper {
         database.delete(BlacklistStoreColumns.NAME,
                 BlacklistStoreColumns.PATH + "=?",
                 new String[]{path});
+        mGeneration.incrementAndGet();
 
         notifyMediaStoreChanged();
     }
@@ -122,12 +129,40 @@ public class BlacklistStore extends SQLiteOpenHelper {
     public void clear() {
         final SQLiteDatabase database = getWritableDatabase();
         database.delete(BlacklistStoreColumns.NAME, null, null);
+        mGeneration.incrementAndGet();
 
         notifyMediaStoreChanged();
     }
 
     private void notifyMediaStoreChanged() {
-        context.sendBroadcast(new Intent(MusicService.MEDIA_STORE_CHANGED));
+        MusicEventDispatcher.getInstance().post(MusicEventDispatcher.MEDIA_STORE_CHANGED);
+    }
+
+    /**
+     * The blacklist compiled for song queries. Only reads the database after a change.
+     */
+    @NonNull
+    public BlacklistFilter getFilter() {
+        final int generation = mGeneration.get();
+        final CompiledFilter compiled = mFilter;
+        if (compiled != null && compiled.generation == generation) {
+            return compiled.filter;
+        }
+        // a change made while compiling bumps the generation, so this filter is never served after it
+        final BlacklistFilter filter = BlacklistFilter.compile(getPaths());
+        mFilter = new CompiledFilter(generation, filter);
+        return filter;
+    }
+
+    private static final class CompiledFilter {
+        final int generation;
+        @NonNull
+        final BlacklistFilter filter;
+
+        CompiledFilter(int generation, @NonNull BlacklistFilter filter) {
+            this.generation = generation;
+            this.filter = filter;
+        }
     }
 
     @NonNull
@@ -63,10 +63,14 @@ public class HistoryStore extends SQLiteOpenHelper {
         return sInstance;
     }
 
-    public void addSongId(final long songId) {
+    /**
+     * @return the time the song is recorded as played, or -1 if nothing was written
+     */
+    public long addSongId(final long songId) {
         if (songId == -1) {
-            return;
+            return -1;
         }
+        final long timePlayed = System.currentTimeMillis();
 
         final SQLiteDatabase database = getWritableDatabase();
         database.beginTransaction();
@@ -78,7 +82,7 @@ public class HistoryStore extends SQLiteOpenHelper {
             // add the entry
             final ContentValues values = new ContentValues(2);
             values.put(RecentStoreColumns.ID, songId);
-            values.put(RecentStoreColumns.TIME_PLAYED, System.currentTimeMillis());
+            values.put(RecentStoreColumns.TIME_PLAYED, timePlayed);
             database.insert(RecentStoreColumns.NAME, null, values);
 
             // if our db is too large, delete the extra items
@@ -100,6 +104,7 @@ public class HistoryStore extends SQLiteOpenHelper {
             database.setTransactionSuccessful();
             database.endTransaction();
         }
+        return timePlayed;
     }
 
     public void removeSongId(final long songId) {
@@ -134,7 +139,7 @@ public class HistoryStore extends SQLiteOpenHelper {
         final SQLiteDatabase database = getReadableDatabase();
 
         return database.query(RecentStoreColumns.NAME,
-                new String[]{RecentStoreColumns.ID}, 
+                new String[]{RecentStoreColumns.ID, RecentStoreColumns.TIME_PLAYED},
                 RecentStoreColumns.TIME_PLAYED + ">?",
                 new String[]{String.valueOf(cutoff)}, 
                 null, null,
@@ -18,15 +18,19 @@ package com.ldt.musicr.provider;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.provider.BaseColumns;
+import android.provider.MediaStore;
 import android.provider.MediaStore.Audio.AudioColumns;
+import android.util.SparseArray;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 
-import com.ldt.musicr.loader.medialoader.SongLoader;
+import com.ldt.musicr.loader.medialoader.SongRefLoader;
 import com.ldt.musicr.model.Song;
 
 import java.util.ArrayList;
@@ -35,6 +39,10 @@ import java.util.ArrayList;
  * @author Andrew Neal, modified for Phonograph by Karim Abou Zeid
  *         <p/>
  *         This keeps track of the music playback and history state of the playback service
+ *         <p/>
+ *         Songs of the media store are saved as their id only and read back from the library,
+ *         together with the version of the media store they were saved with: the ids of another
+ *         version of the media store are not the same songs. Hidden songs are saved whole.
  */
 public class MusicPlaybackQueueStore extends SQLiteOpenHelper {
     @Nullable
@@ -42,7 +50,17 @@ public class MusicPlaybackQueueStore extends SQLiteOpenHelper {
     public static final String DATABASE_NAME = "music_playback_state.db";
     public static final String PLAYING_QUEUE_TABLE_NAME = "playing_queue";
     public static final String ORIGINAL_PLAYING_QUEUE_TABLE_NAME = "original_playing_queue";
-    private static final int VERSION = 3;
+    public static final String PLAYING_ORDER_TABLE_NAME = "playing_order";
+    public static final String QUEUE_INFO_TABLE_NAME = "queue_info";
+    public static final String POSITION = "position";
+    public static final String MEDIA_STORE_VERSION = "media_store_version";
+    private static final int VERSION = 5;
+
+    private static final String[] QUEUE_COLUMNS = {BaseColumns._ID, AudioColumns.TITLE, AudioColumns.TRACK,
+            AudioColumns.YEAR, AudioColumns.DURATION, AudioColumns.DATA, AudioColumns.DATE_MODIFIED,
+            AudioColumns.ALBUM_ID, AudioColumns.ALBUM, AudioColumns.ARTIST_ID, AudioColumns.ARTIST};
+
+    private final Context mContext;
 
     /**
      * Constructor of <code>MusicPlaybackState</code>
@@ -51,12 +69,16 @@ public class MusicPlaybackQueueStore extends SQLiteOpenHelper {
      */
     public MusicPlaybackQueueStore(final Context context) {
         super(context, DATABASE_NAME, null, VERSION);
+        mContext = context;
     }
 
     @Override
     public void onCreate(@NonNull final SQLiteDatabase db) {
-        createTable(db, PLAYING_QUEUE_TABLE_NAME);
         createTable(db, ORIGINAL_PLAYING_QUEUE_TABLE_NAME);
+
+        // the shuffled queue is saved as indexes into the original one
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + PLAYING_ORDER_TABLE_NAME + "(" + POSITION + " INT NOT NULL);");
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + QUEUE_INFO_TABLE_NAME + "(" + MEDIA_STORE_VERSION + " STRING);");
     }
 
     private void createTable(@NonNull final SQLiteDatabase db, final String tableName) {
@@ -69,35 +91,36 @@ public class MusicPlaybackQueueStore extends SQLiteOpenHelper {
         builder.append(BaseColumns._ID);
         builder.append(" INT NOT NULL,");
 
+        // the other columns are only set for hidden songs
         builder.append(AudioColumns.TITLE);
-        builder.append(" STRING NOT NULL,");
+        builder.append(" STRING,");
 
         builder.append(AudioColumns.TRACK);
-        builder.append(" INT NOT NULL,");
+        builder.append(" INT,");
 
         builder.append(AudioColumns.YEAR);
-        builder.append(" INT NOT NULL,");
+        builder.append(" INT,");
 
         builder.append(AudioColumns.DURATION);
-        builder.append(" LONG NOT NULL,");
+        builder.append(" LONG,");
 
         builder.append(AudioColumns.DATA);
-        builder.append(" STRING NOT NULL,");
+        builder.append(" STRING,");
 
         builder.append(AudioColumns.DATE_MODIFIED);
-        builder.append(" LONG NOT NULL,");
+        builder.append(" LONG,");
 
         builder.append(AudioColumns.ALBUM_ID);
-        builder.append(" INT NOT NULL,");
+        builder.append(" INT,");
 
         builder.append(AudioColumns.ALBUM);
-        builder.append(" STRING NOT NULL,");
+        builder.append(" STRING,");
 
         builder.append(AudioColumns.ARTIST_ID);
-        builder.append(" INT NOT NULL,");
+        builder.append(" INT,");
 
         builder.append(AudioColumns.ARTIST);
-        builder.append(" STRING NOT NULL);");
+        builder.append(" STRING);");
 
         db.execSQL(builder.toString());
     }
@@ -107,6 +130,8 @@ public class MusicPlaybackQueueStore extends SQLiteOpenHelper {
         // not necessary yet
         db.execSQL("DROP TABLE IF EXISTS " + PLAYING_QUEUE_TABLE_NAME);
         db.execSQL("DROP TABLE IF EXISTS " + ORIGINAL_PLAYING_QUEUE_TABLE_NAME);
+        db.execSQL("DROP TABLE IF EXISTS " + PLAYING_ORDER_TABLE_NAME);
+        db.execSQL("DROP TABLE IF EXISTS " + QUEUE_INFO_TABLE_NAME);
         onCreate(db);
     }
 
@@ -115,6 +140,8 @@ public class MusicPlaybackQueueStore extends SQLiteOpenHelper {
         // If we ever have downgrade, drop the table to be safe
         db.execSQL("DROP TABLE IF EXISTS " + PLAYING_QUEUE_TABLE_NAME);
         db.execSQL("DROP TABLE IF EXISTS " + ORIGINAL_PLAYING_QUEUE_TABLE_NAME);
+        db.execSQL("DROP TABLE IF EXISTS " + PLAYING_ORDER_TABLE_NAME);
+        db.execSQL("DROP TABLE IF EXISTS " + QUEUE_INFO_TABLE_NAME);
         onCreate(db);
     }
 
@@ -130,9 +157,58 @@ public class MusicPlaybackQueueStore extends SQLiteOpenHelper {
         return sInstance;
     }
 
-    public synchronized void saveQueues(@NonNull final ArrayList<Song> playingQueue, @NonNull final ArrayList<Song> originalPlayingQueue) {
-        saveQueue(PLAYING_QUEUE_TABLE_NAME, playingQueue);
+    /**
+     * @param playingOrder the shuffle order as indexes into the original queue, null if the queue
+     *                     is not shuffled
+     */
+    public synchronized void saveQueues(@NonNull final ArrayList<Song> originalPlayingQueue, @Nullable final int[] playingOrder) {
         saveQueue(ORIGINAL_PLAYING_QUEUE_TABLE_NAME, originalPlayingQueue);
+        savePlayingOrder(playingOrder);
+        saveMediaStoreVersion();
+    }
+
+    private synchronized void saveMediaStoreVersion() {
+        final SQLiteDatabase database = getWritableDatabase();
+        database.beginTransaction();
+        try {
+            database.delete(QUEUE_INFO_TABLE_NAME, null, null);
+            ContentValues values = new ContentValues(1);
+            values.put(MEDIA_STORE_VERSION, MediaStore.getVersion(mContext));
+            database.insert(QUEUE_INFO_TABLE_NAME, null, values);
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    private boolean isSameMediaStoreVersion() {
+        Cursor cursor = getReadableDatabase().query(QUEUE_INFO_TABLE_NAME, new String[]{MEDIA_STORE_VERSION},
+                null, null, null, null, null);
+        if (cursor == null) return false;
+        try {
+            return cursor.moveToFirst() && MediaStore.getVersion(mContext).equals(cursor.getString(0));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private synchronized void savePlayingOrder(@Nullable final int[] order) {
+        final SQLiteDatabase database = getWritableDatabase();
+        database.beginTransaction();
+        try {
+            database.delete(PLAYING_ORDER_TABLE_NAME, null, null);
+            if (order != null) {
+                SQLiteStatement insert = database.compileStatement("INSERT INTO " + PLAYING_ORDER_TABLE_NAME + " (" + POSITION + ") VALUES (?)");
+                for (int index : order) {
+                    insert.bindLong(1, index);
+                    insert.executeInsert();
+                }
+                insert.close();
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
     }
 
     /**
@@ -159,9 +235,13 @@ public class MusicPlaybackQueueStore extends SQLiteOpenHelper {
             try {
                 for (int i = position; i < queue.size() && i < position + NUM_PROCESS; i++) {
                     Song song = queue.get(i);
-                    ContentValues values = new ContentValues(4);
+                    ContentValues values = new ContentValues(QUEUE_COLUMNS.length);
 
                     values.put(BaseColumns._ID, song.id);
+                    if (SongRefLoader.isRef(song)) {
+                        database.insert(tableName, null, values);
+                        continue;
+                    }
                     values.put(AudioColumns.TITLE, song.title);
                     values.put(AudioColumns.TRACK, song.trackNumber);
                     values.put(AudioColumns.YEAR, song.year);
@@ -183,20 +263,128 @@ public class MusicPlaybackQueueStore extends SQLiteOpenHelper {
         }
     }
 
+    /**
+     * @return the saved original queue, with null for the songs that no longer exist so that the
+     * saved position and shuffle order still match it
+     */
     @NonNull
-    public ArrayList<Song> getSavedPlayingQueue() {
-        return getQueue(PLAYING_QUEUE_TABLE_NAME);
+    public Song[] getSavedOriginalPlayingQueue() {
+        return getQueue(ORIGINAL_PLAYING_QUEUE_TABLE_NAME);
+    }
+
+    public int getSavedOriginalPlayingQueueSize() {
+        return (int) DatabaseUtils.queryNumEntries(getReadableDatabase(), ORIGINAL_PLAYING_QUEUE_TABLE_NAME);
+    }
+
+    /**
+     * Read only some songs of the saved queue.
+     *
+     * @param indexes indexes into the saved original queue
+     * @return the songs at these indexes, in the same order, or null if some are missing
+     */
+    @Nullable
+    public ArrayList<Song> getSavedOriginalPlayingQueueAt(@NonNull final int[] indexes) {
+        if (indexes.length == 0) return new ArrayList<>();
+
+        // the table is emptied before every save, so the rowid of a song is its index + 1
+        final StringBuilder selection = new StringBuilder("rowid IN (");
+        for (int i = 0; i < indexes.length; i++) {
+            if (i > 0) selection.append(',');
+            selection.append(indexes[i] + 1);
+        }
+        selection.append(')');
+
+        Cursor cursor = getReadableDatabase().query(ORIGINAL_PLAYING_QUEUE_TABLE_NAME, withRowId(),
+                selection.toString(), null, null, null, null);
+        if (cursor == null) return null;
+
+        final SparseArray<Song> songs = new SparseArray<>(indexes.length);
+        try {
+            Song[] rows = readSongs(cursor, 1);
+            cursor.moveToPosition(-1);
+            for (int i = 0; cursor.moveToNext(); i++) {
+                if (rows[i] != null) songs.put(cursor.getInt(0) - 1, rows[i]);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        ArrayList<Song> result = new ArrayList<>(indexes.length);
+        for (int index : indexes) {
+            Song song = songs.get(index);
+            if (song == null) return null;
+            result.add(song);
+        }
+        return result;
+    }
+
+    /**
+     * @return the saved shuffle order, or null if the saved queue is not shuffled
+     */
+    @Nullable
+    public int[] getSavedPlayingOrder() {
+        Cursor cursor = getReadableDatabase().query(PLAYING_ORDER_TABLE_NAME, new String[]{POSITION},
+                null, null, null, null, "rowid");
+        if (cursor == null) return null;
+        try {
+            if (cursor.getCount() == 0) return null;
+            int[] order = new int[cursor.getCount()];
+            int i = 0;
+            while (cursor.moveToNext()) {
+                order[i++] = cursor.getInt(0);
+            }
+            return order;
+        } finally {
+            cursor.close();
+        }
     }
 
     @NonNull
-    public ArrayList<Song> getSavedOriginalPlayingQueue() {
-        return getQueue(ORIGINAL_PLAYING_QUEUE_TABLE_NAME);
+    private Song[] getQueue(@NonNull final String tableName) {
+        Cursor cursor = getReadableDatabase().query(tableName, QUEUE_COLUMNS,
+                null, null, null, null, "rowid");
+        if (cursor == null) return new Song[0];
+        try {
+            return readSongs(cursor, 0);
+        } finally {
+            cursor.close();
+        }
     }
 
     @NonNull
-    private ArrayList<Song> getQueue(@NonNull final String tableName) {
-        Cursor cursor = getReadableDatabase().query(tableName, null,
-                null, null, null, null, null);
-        return SongLoader.getSongs(cursor);
+    private static String[] withRowId() {
+        String[] columns = new String[QUEUE_COLUMNS.length + 1];
+        columns[0] = "rowid";
+        System.arraycopy(QUEUE_COLUMNS, 0, columns, 1, QUEUE_COLUMNS.length);
+        return columns;
+    }
+
+    /**
+     * @param first the index of the {@link #QUEUE_COLUMNS} in the cursor
+     * @return the song of every row, null for the songs that no longer exist
+     */
+    @NonNull
+    private Song[] readSongs(@NonNull final Cursor cursor, final int first) {
+        final Song[] songs = new Song[cursor.getCount()];
+        final int[] ids = new int[songs.length];
+        int refs = 0;
+        for (int i = 0; cursor.moveToNext(); i++) {
+            ids[i] = cursor.getInt(first);
+            if (cursor.isNull(first + 1)) {
+                refs++;
+            } else {
+                songs[i] = new Song(ids[i], cursor.getString(first + 1), cursor.getInt(first + 2),
+                        cursor.getInt(first + 3), cursor.getLong(first + 4), cursor.getString(first + 5),
+                        cursor.getLong(first + 6), cursor.getInt(first + 7), cursor.getString(first + 8),
+                        cursor.getInt(first + 9), cursor.getString(first + 10));
+            }
+        }
+        if (refs == 0 || !isSameMediaStoreVersion()) return songs;
+
+        final Song[] resolved = SongRefLoader.resolve(mContext, ids, 0);
+        for (int i = 0; i < songs.length; i++) {
+            if (songs[i] == null) songs[i] = resolved[i];
+        }
+        return songs;
     }
 }
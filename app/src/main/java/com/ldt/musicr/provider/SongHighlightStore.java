@@ -0,0 +1,114 @@
+package com.ldt.musicr.provider;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.util.SparseLongArray;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * The highlight of every analyzed song, the part a song preview plays. A highlight is only valid
+ * for the version of the file it was found in, so it is stored with the date modified of the song.
+ */
+public class SongHighlightStore extends SQLiteOpenHelper {
+    private static SongHighlightStore sInstance = null;
+    public static final String DATABASE_NAME = "song_highlight.db";
+    private static final int VERSION = 1;
+
+    public SongHighlightStore(final Context context) {
+        super(context, DATABASE_NAME, null, VERSION);
+    }
+
+    @Override
+    public void onCreate(@NonNull final SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + SongHighlightColumns.NAME + " ("
+                + SongHighlightColumns.ID + " INT PRIMARY KEY,"
+                + SongHighlightColumns.DATE_MODIFIED + " LONG NOT NULL,"
+                + SongHighlightColumns.PLAY_FROM + " INT NOT NULL,"
+                + SongHighlightColumns.PLAY_TO + " INT NOT NULL);");
+    }
+
+    @Override
+    public void onUpgrade(@NonNull final SQLiteDatabase db, final int oldVersion, final int newVersion) {
+        db.execSQL("DROP TABLE IF EXISTS " + SongHighlightColumns.NAME);
+        onCreate(db);
+    }
+
+    @Override
+    public void onDowngrade(@NonNull SQLiteDatabase db, int oldVersion, int newVersion) {
+        db.execSQL("DROP TABLE IF EXISTS " + SongHighlightColumns.NAME);
+        onCreate(db);
+    }
+
+    @NonNull
+    public static synchronized SongHighlightStore getInstance(@NonNull final Context context) {
+        if (sInstance == null) {
+            sInstance = new SongHighlightStore(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * @return the play from and play to millis of the song, or null if this version of the song
+     * was not analyzed
+     */
+    @Nullable
+    public int[] getHighlight(final int songId, final long dateModified) {
+        Cursor cursor = getReadableDatabase().query(SongHighlightColumns.NAME,
+                new String[]{SongHighlightColumns.PLAY_FROM, SongHighlightColumns.PLAY_TO},
+                SongHighlightColumns.ID + "=? AND " + SongHighlightColumns.DATE_MODIFIED + "=?",
+                new String[]{String.valueOf(songId), String.valueOf(dateModified)},
+                null, null, null);
+        if (cursor == null) return null;
+        try {
+            return cursor.moveToFirst() ? new int[]{cursor.getInt(0), cursor.getInt(1)} : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void putHighlight(final int songId, final long dateModified, final int playFrom, final int playTo) {
+        ContentValues values = new ContentValues(4);
+        values.put(SongHighlightColumns.ID, songId);
+        values.put(SongHighlightColumns.DATE_MODIFIED, dateModified);
+        values.put(SongHighlightColumns.PLAY_FROM, playFrom);
+        values.put(SongHighlightColumns.PLAY_TO, playTo);
+        getWritableDatabase().insertWithOnConflict(SongHighlightColumns.NAME, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    /**
+     * Date modified of the analyzed version of every song, by song id
+     */
+    @NonNull
+    public SparseLongArray getAnalyzedDates() {
+        SparseLongArray dates = new SparseLongArray();
+        Cursor cursor = getReadableDatabase().query(SongHighlightColumns.NAME,
+                new String[]{SongHighlightColumns.ID, SongHighlightColumns.DATE_MODIFIED},
+                null, null, null, null, null);
+        if (cursor == null) return dates;
+        try {
+            while (cursor.moveToNext()) {
+                dates.put(cursor.getInt(0), cursor.getLong(1));
+            }
+        } finally {
+            cursor.close();
+        }
+        return dates;
+    }
+
+    public interface SongHighlightColumns {
+        String NAME = "song_highlight";
+
+        String ID = "song_id";
+
+        String DATE_MODIFIED = "date_modified";
+
+        String PLAY_FROM = "play_from";
+
+        String PLAY_TO = "play_to";
+    }
+}
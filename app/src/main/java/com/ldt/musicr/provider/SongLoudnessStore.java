@@ -0,0 +1,130 @@
+package com.ldt.musicr.provider;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.util.SparseLongArray;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * The loudness and peak of every analyzed song, in dB. They are only valid for the version of the
+ * file they were measured in, so they are stored with the date modified of the song. Songs that
+ * could not be measured have a row too, without loudness, so that they are not analyzed again.
+ */
+public class SongLoudnessStore extends SQLiteOpenHelper {
+    private static SongLoudnessStore sInstance = null;
+    public static final String DATABASE_NAME = "song_loudness.db";
+    private static final int VERSION = 2;
+
+    public SongLoudnessStore(final Context context) {
+        super(context, DATABASE_NAME, null, VERSION);
+    }
+
+    @Override
+    public void onCreate(@NonNull final SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + SongLoudnessColumns.NAME + " ("
+                + SongLoudnessColumns.ID + " INT PRIMARY KEY,"
+                + SongLoudnessColumns.DATE_MODIFIED + " LONG NOT NULL,"
+                + SongLoudnessColumns.LOUDNESS + " REAL NOT NULL,"
+                + SongLoudnessColumns.PEAK + " REAL NOT NULL,"
+                + SongLoudnessColumns.MEASURED + " INT NOT NULL DEFAULT 1);");
+    }
+
+    @Override
+    public void onUpgrade(@NonNull final SQLiteDatabase db, final int oldVersion, final int newVersion) {
+        db.execSQL("DROP TABLE IF EXISTS " + SongLoudnessColumns.NAME);
+        onCreate(db);
+    }
+
+    @Override
+    public void onDowngrade(@NonNull SQLiteDatabase db, int oldVersion, int newVersion) {
+        db.execSQL("DROP TABLE IF EXISTS " + SongLoudnessColumns.NAME);
+        onCreate(db);
+    }
+
+    @NonNull
+    public static synchronized SongLoudnessStore getInstance(@NonNull final Context context) {
+        if (sInstance == null) {
+            sInstance = new SongLoudnessStore(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * @return the loudness and the peak of the song, or null if this version of the song was not
+     * analyzed or could not be measured
+     */
+    @Nullable
+    public float[] getLoudness(final int songId, final long dateModified) {
+        Cursor cursor = getReadableDatabase().query(SongLoudnessColumns.NAME,
+                new String[]{SongLoudnessColumns.LOUDNESS, SongLoudnessColumns.PEAK},
+                SongLoudnessColumns.ID + "=? AND " + SongLoudnessColumns.DATE_MODIFIED + "=? AND " + SongLoudnessColumns.MEASURED + "=1",
+                new String[]{String.valueOf(songId), String.valueOf(dateModified)},
+                null, null, null);
+        if (cursor == null) return null;
+        try {
+            return cursor.moveToFirst() ? new float[]{cursor.getFloat(0), cursor.getFloat(1)} : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void putLoudness(final int songId, final long dateModified, final float loudness, final float peak) {
+        put(songId, dateModified, loudness, peak, true);
+    }
+
+    /**
+     * Remember that this version of the song could not be measured
+     */
+    public void putUnmeasurable(final int songId, final long dateModified) {
+        put(songId, dateModified, 0f, 0f, false);
+    }
+
+    private void put(final int songId, final long dateModified, final float loudness, final float peak, final boolean measured) {
+        ContentValues values = new ContentValues(5);
+        values.put(SongLoudnessColumns.ID, songId);
+        values.put(SongLoudnessColumns.DATE_MODIFIED, dateModified);
+        values.put(SongLoudnessColumns.LOUDNESS, loudness);
+        values.put(SongLoudnessColumns.PEAK, peak);
+        values.put(SongLoudnessColumns.MEASURED, measured ? 1 : 0);
+        getWritableDatabase().insertWithOnConflict(SongLoudnessColumns.NAME, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    /**
+     * Date modified of the analyzed version of every song, measured or not, by song id
+     */
+    @NonNull
+    public SparseLongArray getAnalyzedDates() {
+        SparseLongArray dates = new SparseLongArray();
+        Cursor cursor = getReadableDatabase().query(SongLoudnessColumns.NAME,
+                new String[]{SongLoudnessColumns.ID, SongLoudnessColumns.DATE_MODIFIED},
+                null, null, null, null, null);
+        if (cursor == null) return dates;
+        try {
+            while (cursor.moveToNext()) {
+                dates.put(cursor.getInt(0), cursor.getLong(1));
+            }
+        } finally {
+            cursor.close();
+        }
+        return dates;
+    }
+
+    public interface SongLoudnessColumns {
+        String NAME = "song_loudness";
+
+        String ID = "song_id";
+
+        String DATE_MODIFIED = "date_modified";
+
+        String LOUDNESS = "loudness";
+
+        String PEAK = "peak";
+
+        String MEASURED = "measured";
+    }
+}
@@ -0,0 +1,150 @@
+package com.ldt.musicr.provider;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.ldt.musicr.model.SongTags;
+
+/**
+ * The tags read from every audio file, by path. Tags are only valid for the version of the file
+ * they were read from, so they are stored with the last modification time of the file.
+ */
+public class SongTagStore extends SQLiteOpenHelper {
+    private static SongTagStore sInstance = null;
+    public static final String DATABASE_NAME = "song_tags.db";
+    private static final int VERSION = 1;
+
+    private static final String[] COLUMNS = {
+            SongTagColumns.PATH, SongTagColumns.LAST_MODIFIED, SongTagColumns.TITLE, SongTagColumns.ARTIST,
+            SongTagColumns.ALBUM, SongTagColumns.GENRE, SongTagColumns.YEAR, SongTagColumns.TRACK,
+            SongTagColumns.DURATION, SongTagColumns.LYRICS, SongTagColumns.EMBEDDED_ARTWORK,
+            SongTagColumns.COVER_FILE, SongTagColumns.REPLAY_GAIN_TRACK, SongTagColumns.REPLAY_GAIN_ALBUM};
+
+    public SongTagStore(final Context context) {
+        super(context, DATABASE_NAME, null, VERSION);
+    }
+
+    @Override
+    public void onCreate(@NonNull final SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + SongTagColumns.NAME + " ("
+                + SongTagColumns.PATH + " TEXT PRIMARY KEY,"
+                + SongTagColumns.LAST_MODIFIED + " LONG NOT NULL,"
+                + SongTagColumns.TITLE + " TEXT NOT NULL,"
+                + SongTagColumns.ARTIST + " TEXT NOT NULL,"
+                + SongTagColumns.ALBUM + " TEXT NOT NULL,"
+                + SongTagColumns.GENRE + " TEXT NOT NULL,"
+                + SongTagColumns.YEAR + " INT NOT NULL,"
+                + SongTagColumns.TRACK + " INT NOT NULL,"
+                + SongTagColumns.DURATION + " LONG NOT NULL,"
+                + SongTagColumns.LYRICS + " TEXT,"
+                + SongTagColumns.EMBEDDED_ARTWORK + " INT NOT NULL,"
+                + SongTagColumns.COVER_FILE + " TEXT,"
+                + SongTagColumns.REPLAY_GAIN_TRACK + " REAL,"
+                + SongTagColumns.REPLAY_GAIN_ALBUM + " REAL);");
+    }
+
+    @Override
+    public void onUpgrade(@NonNull final SQLiteDatabase db, final int oldVersion, final int newVersion) {
+        db.execSQL("DROP TABLE IF EXISTS " + SongTagColumns.NAME);
+        onCreate(db);
+    }
+
+    @Override
+    public void onDowngrade(@NonNull SQLiteDatabase db, int oldVersion, int newVersion) {
+        db.execSQL("DROP TABLE IF EXISTS " + SongTagColumns.NAME);
+        onCreate(db);
+    }
+
+    @NonNull
+    public static synchronized SongTagStore getInstance(@NonNull final Context context) {
+        if (sInstance == null) {
+            sInstance = new SongTagStore(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * @return the tags of the file, or null if this version of the file was not read
+     */
+    @Nullable
+    public SongTags getTags(@NonNull final String path, final long lastModified) {
+        Cursor cursor = getReadableDatabase().query(SongTagColumns.NAME, COLUMNS,
+                SongTagColumns.PATH + "=? AND " + SongTagColumns.LAST_MODIFIED + "=?",
+                new String[]{path, String.valueOf(lastModified)},
+                null, null, null);
+        if (cursor == null) return null;
+        try {
+            if (!cursor.moveToFirst()) return null;
+            return new SongTags(cursor.getString(0), cursor.getLong(1), cursor.getString(2), cursor.getString(3),
+                    cursor.getString(4), cursor.getString(5), cursor.getInt(6), cursor.getInt(7), cursor.getLong(8),
+                    cursor.getString(9), cursor.getInt(10) != 0, cursor.getString(11),
+                    cursor.isNull(12) ? SongTags.NO_REPLAY_GAIN : cursor.getFloat(12),
+                    cursor.isNull(13) ? SongTags.NO_REPLAY_GAIN : cursor.getFloat(13));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void putTags(@NonNull final SongTags tags) {
+        ContentValues values = new ContentValues(COLUMNS.length);
+        values.put(SongTagColumns.PATH, tags.path);
+        values.put(SongTagColumns.LAST_MODIFIED, tags.lastModified);
+        values.put(SongTagColumns.TITLE, tags.title);
+        values.put(SongTagColumns.ARTIST, tags.artist);
+        values.put(SongTagColumns.ALBUM, tags.album);
+        values.put(SongTagColumns.GENRE, tags.genre);
+        values.put(SongTagColumns.YEAR, tags.year);
+        values.put(SongTagColumns.TRACK, tags.track);
+        values.put(SongTagColumns.DURATION, tags.durationMillis);
+        values.put(SongTagColumns.LYRICS, tags.lyrics);
+        values.put(SongTagColumns.EMBEDDED_ARTWORK, tags.hasEmbeddedArtwork ? 1 : 0);
+        values.put(SongTagColumns.COVER_FILE, tags.coverFile);
+        if (Float.isNaN(tags.replayGainTrack)) values.putNull(SongTagColumns.REPLAY_GAIN_TRACK);
+        else values.put(SongTagColumns.REPLAY_GAIN_TRACK, tags.replayGainTrack);
+        if (Float.isNaN(tags.replayGainAlbum)) values.putNull(SongTagColumns.REPLAY_GAIN_ALBUM);
+        else values.put(SongTagColumns.REPLAY_GAIN_ALBUM, tags.replayGainAlbum);
+        getWritableDatabase().insertWithOnConflict(SongTagColumns.NAME, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    public void removeTags(@NonNull final String path) {
+        getWritableDatabase().delete(SongTagColumns.NAME, SongTagColumns.PATH + "=?", new String[]{path});
+    }
+
+    public interface SongTagColumns {
+        String NAME = "song_tags";
+
+        String PATH = "path";
+
+        String LAST_MODIFIED = "last_modified";
+
+        String TITLE = "title";
+
+        String ARTIST = "artist";
+
+        String ALBUM = "album";
+
+        String GENRE = "genre";
+
+        String YEAR = "year";
+
+        String TRACK = "track";
+
+        String DURATION = "duration";
+
+        String LYRICS = "lyrics";
+
+        String EMBEDDED_ARTWORK = "embedded_artwork";
+
+        String COVER_FILE = "cover_file";
+
+        String REPLAY_GAIN_TRACK = "replay_gain_track";
+
+        String REPLAY_GAIN_ALBUM = "replay_gain_album";
+    }
+}
@@ -6,7 +6,11 @@ import android.media.AudioManager;
 import android.media.MediaPlayer;
 import android.media.audiofx.AudioEffect;
 import android.net.Uri;
+import android.os.Debug;
+import android.os.Handler;
+import android.os.Looper;
 import android.os.PowerManager;
+import android.os.SystemClock;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import android.util.Log;
@@ -18,12 +22,28 @@ import com.ldt.musicr.util.PreferenceUtil;
 
 /**
  * @author Andrew Neal, Karim Abou Zeid (kabouzeid)
+ * <p>
+ * The next track is prepared in the background as soon as it is known. With gapless playback it
+ * is handed to {@link MediaPlayer#setNextMediaPlayer} once prepared; with a crossfade duration the
+ * two players overlap instead: the fade is scheduled from the end time of the current track and
+ * the volumes follow equal power curves, all driven by one timer on the playback handler thread.
  */
 public class MultiPlayer implements Playback, MediaPlayer.OnErrorListener, MediaPlayer.OnCompletionListener {
     public static final String TAG = MultiPlayer.class.getSimpleName();
 
+    /* Volume steps of a fade, the curve is computed from the clock at every step */
+    private static final long FADE_TICK_MILLIS = 25;
+
+    /* Fade states */
+    private static final int FADE_NONE = 0;
+    private static final int FADE_SCHEDULED = 1;
+    private static final int FADE_RUNNING = 2;
+
     private MediaPlayer mCurrentMediaPlayer = new MediaPlayer();
     private MediaPlayer mNextMediaPlayer;
+    private boolean mNextPrepared = false;
+    /* Handed to setNextMediaPlayer, it starts by itself */
+    private boolean mNextChained = false;
 
     private Context context;
     @Nullable
@@ -31,11 +51,28 @@ public class MultiPlayer implements Playback, MediaPlayer.OnErrorListener, Media
 
     private boolean mIsInitialized = false;
 
+    private final Handler mHandler;
+    private final Runnable mFadeTimer = this::onFadeTimer;
+    private int mFadeState = FADE_NONE;
+    private long mFadeStartMillis;
+    private long mFadeDurationMillis;
+    private long mFadePausedAtMillis = 0;
+
+    private int mFadeCount = 0;
+    /* Every run of the fade timer, waiting for the fade or stepping the volumes */
+    private long mTimerWakeups = 0;
+    private long mFadeTicks = 0;
+    private long mFadeCpuNanos = 0;
+    private long mFadeWallMillis = 0;
+
     /**
      * Constructor of <code>MultiPlayer</code>
+     *
+     * @param looper the looper of the playback handler thread, which runs the fades
      */
-    public MultiPlayer(final Context context) {
+    public MultiPlayer(final Context context, @NonNull final Looper looper) {
         this.context = context;
+        mHandler = new Handler(looper);
         mCurrentMediaPlayer.setWakeMode(context, PowerManager.PARTIAL_WAKE_LOCK);
     }
 
@@ -46,7 +83,8 @@ public class MultiPlayer implements Playback, MediaPlayer.OnErrorListener, Media
      * ready to play, false otherwise
      */
     @Override
-    public boolean setDataSource(@NonNull final String path) {
+    public synchronized boolean setDataSource(@NonNull final String path) {
+        cancelFade();
         mIsInitialized = false;
         mIsInitialized = setDataSourceImpl(mCurrentMediaPlayer, path);
         if (mIsInitialized) {
@@ -63,6 +101,19 @@ public class MultiPlayer implements Playback, MediaPlayer.OnErrorListener, Media
      * ready to play, false otherwise
      */
     private boolean setDataSourceImpl(@NonNull final MediaPlayer player, @NonNull final String path) {
+        if (!openDataSource(player, path)) {
+            return false;
+        }
+        try {
+            player.prepare();
+        } catch (Exception e) {
+            return false;
+        }
+        onPlayerPrepared(player);
+        return true;
+    }
+
+    private boolean openDataSource(@NonNull final MediaPlayer player, @NonNull final String path) {
         if (context == null) {
             return false;
         }
@@ -75,10 +126,13 @@ public class MultiPlayer implements Playback, MediaPlayer.OnErrorListener, Media
                 player.setDataSource(path);
             }
             player.setAudioStreamType(AudioManager.STREAM_MUSIC);
-            player.prepare();
         } catch (Exception e) {
             return false;
         }
+        return true;
+    }
+
+    private void onPlayerPrepared(@NonNull final MediaPlayer player) {
         player.setOnCompletionListener(this);
         player.setOnErrorListener(this);
         final Intent intent = new Intent(AudioEffect.ACTION_OPEN_AUDIO_EFFECT_CONTROL_SESSION);
@@ -86,7 +140,6 @@ public class MultiPlayer implements Playback, MediaPlayer.OnErrorListener, Media
         intent.putExtra(AudioEffect.EXTRA_PACKAGE_NAME, context.getPackageName());
         intent.putExtra(AudioEffect.EXTRA_CONTENT_TYPE, AudioEffect.CONTENT_TYPE_MUSIC);
         context.sendBroadcast(intent);
-        return true;
     }
 
     /**
@@ -96,10 +149,11 @@ public class MultiPlayer implements Playback, MediaPlayer.OnErrorListener, Media
      *             you want to play
      */
     @Override
-    public void setNextDataSource(@Nullable final String path) {
+    public synchronized void setNextDataSource(@Nullable final String path) {
         if (context == null) {
             return;
         }
+        cancelFade();
         try {
             mCurrentMediaPlayer.setNextMediaPlayer(null);
         } catch (IllegalArgumentException e) {
@@ -113,34 +167,205 @@ public class MultiPlayer implements Playback, MediaPlayer.OnErrorListener, Media
             e.printStackTrace();
             return;
         }
+        releaseNextPlayer();
+        if (path == null) {
+            return;
+        }
+        final PreferenceUtil preferences = PreferenceUtil.getInstance(context);
+        if (preferences.gaplessPlayback() || preferences.crossfadeDuration() > 0) {
+            final MediaPlayer player = new MediaPlayer();
+            player.setWakeMode(context, PowerManager.PARTIAL_WAKE_LOCK);
+            player.setAudioSessionId(getAudioSessionId());
+            if (!openDataSource(player, path)) {
+                player.release();
+                return;
+            }
+            mNextMediaPlayer = player;
+            mNextPrepared = false;
+
+            // prepared in the background, the playback thread does not wait for it
+            player.setOnPreparedListener(mp -> onNextPlayerPrepared(player));
+            player.setOnErrorListener((mp, what, extra) -> {
+                onNextPlayerError(player);
+                return true;
+            });
+            try {
+                player.prepareAsync();
+            } catch (Exception e) {
+                onNextPlayerError(player);
+            }
+        }
+    }
+
+    private synchronized void onNextPlayerPrepared(@NonNull final MediaPlayer player) {
+        if (player != mNextMediaPlayer) return;
+        mNextPrepared = true;
+        onPlayerPrepared(player);
+
+        // a gapless next track starts on its own, at its volume
+        player.setVolume(mLeftVolume * mNextTrackGain, mRightVolume * mNextTrackGain);
+        if (PreferenceUtil.getInstance(context).crossfadeDuration() > 0) {
+            scheduleFade();
+            return;
+        }
+        try {
+            mCurrentMediaPlayer.setNextMediaPlayer(player);
+            mNextChained = true;
+        } catch (@NonNull Exception e) {
+            Log.e(TAG, "setNextDataSource: setNextMediaPlayer()", e);
+            releaseNextPlayer();
+        }
+    }
+
+    private synchronized void onNextPlayerError(@NonNull final MediaPlayer player) {
+        if (player != mNextMediaPlayer) {
+            player.release();
+            return;
+        }
+        releaseNextPlayer();
+    }
+
+    private void releaseNextPlayer() {
         if (mNextMediaPlayer != null) {
             mNextMediaPlayer.release();
             mNextMediaPlayer = null;
         }
-        if (path == null) {
+        mNextPrepared = false;
+        mNextChained = false;
+    }
+
+    /**
+     * Wait for the end of the current track to fade into the next one, or start the fade if the
+     * track already ends within the crossfade duration.
+     */
+    private void scheduleFade() {
+        mHandler.removeCallbacks(mFadeTimer);
+        if (mFadeState == FADE_RUNNING || mNextMediaPlayer == null || !mNextPrepared) return;
+
+        final int crossfade = PreferenceUtil.getInstance(context).crossfadeDuration();
+        if (crossfade <= 0 || !isPlaying()) {
+            mFadeState = FADE_NONE;
             return;
         }
-        if (PreferenceUtil.getInstance(context).gaplessPlayback()) {
-            mNextMediaPlayer = new MediaPlayer();
-            mNextMediaPlayer.setWakeMode(context, PowerManager.PARTIAL_WAKE_LOCK);
-            mNextMediaPlayer.setAudioSessionId(getAudioSessionId());
-            if (setDataSourceImpl(mNextMediaPlayer, path)) {
+        final int remaining = duration() - position();
+        if (remaining <= 0) return;
+
+        mFadeState = FADE_SCHEDULED;
+        mHandler.postDelayed(mFadeTimer, Math.max(0, remaining - crossfade));
+    }
+
+    private synchronized void onFadeTimer() {
+        final long cpuStart = Debug.threadCpuTimeNanos();
+        mTimerWakeups++;
+        try {
+            stepFade();
+        } finally {
+            mFadeCpuNanos += Debug.threadCpuTimeNanos() - cpuStart;
+        }
+    }
+
+    private void stepFade() {
+        if (mFadeState == FADE_SCHEDULED) {
+            // the position may have drifted since the fade was scheduled
+            final int crossfade = PreferenceUtil.getInstance(context).crossfadeDuration();
+            final int remaining = duration() - position();
+            if (remaining > crossfade + FADE_TICK_MILLIS) {
+                mHandler.postDelayed(mFadeTimer, remaining - crossfade);
+                return;
+            }
+            if (mNextMediaPlayer == null || !mNextPrepared || remaining <= 0) {
+                mFadeState = FADE_NONE;
+                return;
+            }
+            try {
+                mNextMediaPlayer.setVolume(0, 0);
+                mNextMediaPlayer.start();
+            } catch (Exception e) {
+                mFadeState = FADE_NONE;
+                releaseNextPlayer();
+                return;
+            }
+            mFadeState = FADE_RUNNING;
+            mFadeStartMillis = SystemClock.uptimeMillis();
+            mFadeDurationMillis = Math.max(FADE_TICK_MILLIS, remaining);
+            mFadeCount++;
+        }
+        if (mFadeState != FADE_RUNNING) return;
+
+        final long now = SystemClock.uptimeMillis();
+        final float progress = Math.min(1f, (now - mFadeStartMillis) / (float) mFadeDurationMillis);
+        mFadeTicks++;
+        if (progress >= 1f) {
+            finishFade();
+        } else {
+            // equal power, the sum of the two stays as loud as one track
+            final float out = (float) Math.cos(progress * Math.PI / 2);
+            final float in = (float) Math.sin(progress * Math.PI / 2);
+            try {
+                mCurrentMediaPlayer.setVolume(mLeftVolume * mTrackGain * out, mRightVolume * mTrackGain * out);
+                mNextMediaPlayer.setVolume(mLeftVolume * mNextTrackGain * in, mRightVolume * mNextTrackGain * in);
+            } catch (Exception ignored) {
+            }
+            mHandler.postAtTime(mFadeTimer, now + FADE_TICK_MILLIS);
+        }
+    }
+
+    /**
+     * The next player becomes the current one, like at the end of a gapless track.
+     */
+    private void finishFade() {
+        mHandler.removeCallbacks(mFadeTimer);
+        mFadeWallMillis += SystemClock.uptimeMillis() - mFadeStartMillis;
+        mFadeState = FADE_NONE;
+
+        mIsInitialized = false;
+        mCurrentMediaPlayer.release();
+        mCurrentMediaPlayer = mNextMediaPlayer;
+        mIsInitialized = true;
+        mNextMediaPlayer = null;
+        mNextPrepared = false;
+        mNextChained = false;
+        mTrackGain = mNextTrackGain;
+        updateVolume();
+        if (callbacks != null)
+            callbacks.onTrackWentToNext();
+    }
+
+    /**
+     * Stop a fade, the next player goes back to its start and waits.
+     */
+    private void cancelFade() {
+        mHandler.removeCallbacks(mFadeTimer);
+        if (mFadeState == FADE_RUNNING) {
+            mFadeWallMillis += SystemClock.uptimeMillis() - mFadeStartMillis;
+            if (mNextMediaPlayer != null) {
                 try {
-                    mCurrentMediaPlayer.setNextMediaPlayer(mNextMediaPlayer);
-                } catch (@NonNull Exception e) {
-                    Log.e(TAG, "setNextDataSource: setNextMediaPlayer()", e);
-                    if (mNextMediaPlayer != null) {
-                        mNextMediaPlayer.release();
-                        mNextMediaPlayer = null;
-                    }
-                }
-            } else {
-                if (mNextMediaPlayer != null) {
-                    mNextMediaPlayer.release();
-                    mNextMediaPlayer = null;
+                    mNextMediaPlayer.pause();
+                    mNextMediaPlayer.seekTo(0);
+                } catch (Exception e) {
+                    releaseNextPlayer();
                 }
             }
+            updateVolume();
         }
+        mFadeState = FADE_NONE;
+        mFadePausedAtMillis = 0;
+    }
+
+    /**
+     * Fade count, timer wakeups and how many of them stepped the volumes, thread CPU time spent in
+     * the timer and wall time spent fading.
+     */
+    @NonNull
+    public synchronized String getFadeMetrics() {
+        return "fades " + mFadeCount + ", timer wakeups " + mTimerWakeups + " (" + mFadeTicks + " volume steps)"
+                + ", cpu " + mFadeCpuNanos / 1000 + " us"
+                + " (" + (mTimerWakeups == 0 ? 0 : mFadeCpuNanos / mTimerWakeups / 1000) + " us per wakeup)"
+                + ", fading " + mFadeWallMillis + " ms wall time";
+    }
+
+    public void dumpFadeMetrics() {
+        Log.d(TAG, getFadeMetrics());
     }
 
     /**
@@ -165,9 +390,18 @@ public class MultiPlayer implements Playback, MediaPlayer.OnErrorListener, Media
      * Starts or resumes playback.
      */
     @Override
-    public boolean start() {
+    public synchronized boolean start() {
         try {
             mCurrentMediaPlayer.start();
+            if (mFadeState == FADE_RUNNING && mFadePausedAtMillis != 0) {
+                // resume the fade where it was paused
+                mNextMediaPlayer.start();
+                mFadeStartMillis += SystemClock.uptimeMillis() - mFadePausedAtMillis;
+                mFadePausedAtMillis = 0;
+                mHandler.post(mFadeTimer);
+            } else {
+                scheduleFade();
+            }
             return true;
         } catch (Exception e) {
             return false;
@@ -178,7 +412,8 @@ public class MultiPlayer implements Playback, MediaPlayer.OnErrorListener, Media
      * Resets the MediaPlayer to its uninitialized state.
      */
     @Override
-    public void stop() {
+    public synchronized void stop() {
+        cancelFade();
         mCurrentMediaPlayer.reset();
         mIsInitialized = false;
     }
@@ -187,21 +422,27 @@ public class MultiPlayer implements Playback, MediaPlayer.OnErrorListener, Media
      * Releases resources associated with this MediaPlayer object.
      */
     @Override
-    public void release() {
+    public synchronized void release() {
         stop();
         mCurrentMediaPlayer.release();
-        if (mNextMediaPlayer != null) {
-            mNextMediaPlayer.release();
-        }
+        releaseNextPlayer();
     }
 
     /**
      * Pauses playback. Call start() to resume.
      */
     @Override
-    public boolean pause() {
+    public synchronized boolean pause() {
         try {
             mCurrentMediaPlayer.pause();
+            if (mFadeState == FADE_RUNNING) {
+                mHandler.removeCallbacks(mFadeTimer);
+                mNextMediaPlayer.pause();
+                mFadePausedAtMillis = SystemClock.uptimeMillis();
+            } else if (mFadeState == FADE_SCHEDULED) {
+                mHandler.removeCallbacks(mFadeTimer);
+                mFadeState = FADE_NONE;
+            }
             return true;
         } catch (Exception e) {
             return false;
@@ -257,9 +498,11 @@ public class MultiPlayer implements Playback, MediaPlayer.OnErrorListener, Media
      * @return The offset in milliseconds from the start to seek to
      */
     @Override
-    public int seek(final int whereto) {
+    public synchronized int seek(final int whereto) {
         try {
+            cancelFade();
             mCurrentMediaPlayer.seekTo(whereto);
+            scheduleFade();
             return whereto;
         } catch (Exception e) {
             return -1;
@@ -269,18 +512,36 @@ public class MultiPlayer implements Playback, MediaPlayer.OnErrorListener, Media
     private float mLeftVolume = 1f;
     private float mRightVolume = 1f;
 
+    /* Set once per track, the players apply them for free while playing */
+    private float mTrackGain = 1f;
+    private float mNextTrackGain = 1f;
+
     @Override
-    public boolean setVolume(final float l, final float r) {
+    public synchronized boolean setVolume(final float l, final float r) {
         try {
-            mCurrentMediaPlayer.setVolume(l, r);
             mLeftVolume = l;
             mRightVolume = r;
+            // while fading the next step of the fade applies them
+            if (mFadeState == FADE_RUNNING) return true;
+            mCurrentMediaPlayer.setVolume(l * mTrackGain, r * mTrackGain);
+            if (mNextMediaPlayer != null) mNextMediaPlayer.setVolume(l * mNextTrackGain, r * mNextTrackGain);
             return true;
         } catch (Exception e) {
             return false;
         }
     }
 
+    @Override
+    public void setTrackGain(final float gain) {
+        mTrackGain = gain;
+        updateVolume();
+    }
+
+    @Override
+    public void setNextTrackGain(final float gain) {
+        mNextTrackGain = gain;
+    }
+
     public void updateVolume() {
         setVolume(mLeftVolume, mRightVolume);
     }
@@ -314,7 +575,8 @@ public class MultiPlayer implements Playback, MediaPlayer.OnErrorListener, Media
      * {@inheritDoc}
      */
     @Override
-    public boolean onError(final MediaPlayer mp, final int what, final int extra) {
+    public synchronized boolean onError(final MediaPlayer mp, final int what, final int extra) {
+        cancelFade();
         mIsInitialized = false;
         mCurrentMediaPlayer.release();
         mCurrentMediaPlayer = new MediaPlayer();
@@ -330,13 +592,19 @@ public class MultiPlayer implements Playback, MediaPlayer.OnErrorListener, Media
      * {@inheritDoc}
      */
     @Override
-    public void onCompletion(final MediaPlayer mp) {
-        if (mp == mCurrentMediaPlayer && mNextMediaPlayer != null) {
+    public synchronized void onCompletion(final MediaPlayer mp) {
+        if (mp == mCurrentMediaPlayer && mFadeState == FADE_RUNNING) {
+            // the track ended before the last step of the fade
+            finishFade();
+        } else if (mp == mCurrentMediaPlayer && mNextMediaPlayer != null && mNextChained) {
             mIsInitialized = false;
             mCurrentMediaPlayer.release();
             mCurrentMediaPlayer = mNextMediaPlayer;
             mIsInitialized = true;
             mNextMediaPlayer = null;
+            mNextPrepared = false;
+            mNextChained = false;
+            mTrackGain = mNextTrackGain;
             if (callbacks != null)
                 callbacks.onTrackWentToNext();
         } else {
@@ -0,0 +1,268 @@
+package com.ldt.musicr.service;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.view.Choreographer;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * In-process fan-out of music service state changes to the UI, replacing the internal
+ * broadcasts of {@link MusicService}. Public sticky broadcasts are still sent by the service for
+ * other apps (scrobblers, lyrics apps...).
+ * <p>
+ * Events are bit flags. Posting an event from any thread only sets its bit, and all the pending
+ * events are dispatched together on the next frame, so a burst such as shuffle + queue changed +
+ * meta changed reaches each listener at most once per event per frame. Each event keeps its
+ * latest primitive payload, which listeners can read with {@link #getPayload(int)} instead of
+ * unpacking an Intent.
+ * <p>
+ * Listeners are held in a copy-on-write array: dispatching iterates a snapshot without locking
+ * or allocating, and a listener may add or remove listeners while being called.
+ */
+public final class MusicEventDispatcher {
+    private static final String TAG = "MusicEventDispatcher";
+
+    public static final int MEDIA_STORE_CHANGED = 1;
+    public static final int QUEUE_CHANGED = 1 << 1;
+    public static final int META_CHANGED = 1 << 2;
+    public static final int PLAY_STATE_CHANGED = 1 << 3;
+    public static final int REPEAT_MODE_CHANGED = 1 << 4;
+    public static final int SHUFFLE_MODE_CHANGED = 1 << 5;
+    public static final int PALETTE_CHANGED = 1 << 6;
+
+    /* Events are dispatched in this order, which is their bit order */
+    private static final int EVENT_COUNT = 7;
+
+    private static final String[] EVENT_NAMES = {
+            "media_store", "queue", "meta", "play_state", "repeat_mode", "shuffle_mode", "palette"
+    };
+
+    private static final MusicServiceEventListener[] NO_LISTENERS = new MusicServiceEventListener[0];
+
+    private static final MusicEventDispatcher sInstance = new MusicEventDispatcher();
+
+    public static MusicEventDispatcher getInstance() {
+        return sInstance;
+    }
+
+    private final Object mListenerLock = new Object();
+    private volatile MusicServiceEventListener[] mListeners = NO_LISTENERS;
+
+    private final AtomicInteger mPendingEvents = new AtomicInteger();
+    private final AtomicLongArray mPayloads = new AtomicLongArray(EVENT_COUNT);
+
+    /* Time of the first post of each pending event, 0 if not pending */
+    private final AtomicLongArray mFirstPostNanos = new AtomicLongArray(EVENT_COUNT);
+
+    private final AtomicLongArray mPostedCount = new AtomicLongArray(EVENT_COUNT);
+    private final AtomicLongArray mDispatchedCount = new AtomicLongArray(EVENT_COUNT);
+    private final AtomicLongArray mTotalLatencyNanos = new AtomicLongArray(EVENT_COUNT);
+    private final AtomicLongArray mMaxLatencyNanos = new AtomicLongArray(EVENT_COUNT);
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private final Choreographer.FrameCallback mFrameCallback = frameTimeNanos -> dispatchPending();
+
+    private final Runnable mScheduleFrame = () -> Choreographer.getInstance().postFrameCallback(mFrameCallback);
+
+    private MusicEventDispatcher() {
+    }
+
+    public void addListener(@NonNull MusicServiceEventListener listener) {
+        addListener(listener, false);
+    }
+
+    /**
+     * @param first the listener is called before the ones already added
+     */
+    public void addListener(@NonNull MusicServiceEventListener listener, boolean first) {
+        synchronized (mListenerLock) {
+            MusicServiceEventListener[] old = mListeners;
+            for (MusicServiceEventListener l : old) {
+                if (l == listener) return;
+            }
+
+            MusicServiceEventListener[] listeners = new MusicServiceEventListener[old.length + 1];
+            if (first) {
+                listeners[0] = listener;
+                System.arraycopy(old, 0, listeners, 1, old.length);
+            } else {
+                System.arraycopy(old, 0, listeners, 0, old.length);
+                listeners[old.length] = listener;
+            }
+            mListeners = listeners;
+        }
+    }
+
+    public void removeListener(@NonNull MusicServiceEventListener listener) {
+        synchronized (mListenerLock) {
+            MusicServiceEventListener[] old = mListeners;
+            int index = -1;
+            for (int i = 0; i < old.length; i++) {
+                if (old[i] == listener) {
+                    index = i;
+                    break;
+                }
+            }
+            if (index == -1) return;
+
+            if (old.length == 1) {
+                mListeners = NO_LISTENERS;
+                return;
+            }
+
+            MusicServiceEventListener[] listeners = new MusicServiceEventListener[old.length - 1];
+            System.arraycopy(old, 0, listeners, 0, index);
+            System.arraycopy(old, index + 1, listeners, index, old.length - index - 1);
+            mListeners = listeners;
+        }
+    }
+
+    /**
+     * Post one or more events (bit flags) without payload. Safe to call from any thread.
+     */
+    public void post(int events) {
+        final long now = System.nanoTime();
+        for (int i = 0; i < EVENT_COUNT; i++) {
+            if ((events & (1 << i)) != 0) {
+                mPostedCount.incrementAndGet(i);
+                mFirstPostNanos.compareAndSet(i, 0, now);
+            }
+        }
+
+        int pending;
+        do {
+            pending = mPendingEvents.get();
+        } while (!mPendingEvents.compareAndSet(pending, pending | events));
+
+        if (pending == 0) {
+            // the first pending event schedules the dispatch, the others ride along
+            if (Looper.myLooper() == Looper.getMainLooper()) mScheduleFrame.run();
+            else mMainHandler.post(mScheduleFrame);
+        }
+    }
+
+    /**
+     * Post a single event with its payload, e.g. the playing flag of {@link #PLAY_STATE_CHANGED}.
+     * A newer payload of the same event replaces the older one if both land in the same frame.
+     */
+    public void post(int event, long payload) {
+        mPayloads.set(indexOf(event), payload);
+        post(event);
+    }
+
+    /**
+     * Latest payload posted with this event, 0 if none
+     */
+    public long getPayload(int event) {
+        return mPayloads.get(indexOf(event));
+    }
+
+    @MainThread
+    private void dispatchPending() {
+        final int events = mPendingEvents.getAndSet(0);
+        if (events == 0) return;
+
+        final MusicServiceEventListener[] listeners = mListeners;
+        for (int i = 0; i < EVENT_COUNT; i++) {
+            if ((events & (1 << i)) == 0) continue;
+
+            final long postedAt = mFirstPostNanos.getAndSet(i, 0);
+            for (MusicServiceEventListener listener : listeners) {
+                dispatch(listener, i);
+            }
+
+            if (postedAt != 0) {
+                long latency = System.nanoTime() - postedAt;
+                mDispatchedCount.incrementAndGet(i);
+                mTotalLatencyNanos.addAndGet(i, latency);
+                if (latency > mMaxLatencyNanos.get(i)) mMaxLatencyNanos.set(i, latency);
+            }
+        }
+    }
+
+    private static void dispatch(MusicServiceEventListener listener, int index) {
+        switch (1 << index) {
+            case MEDIA_STORE_CHANGED:
+                listener.onMediaStoreChanged();
+                break;
+            case QUEUE_CHANGED:
+                listener.onQueueChanged();
+                break;
+            case META_CHANGED:
+                listener.onPlayingMetaChanged();
+                break;
+            case PLAY_STATE_CHANGED:
+                listener.onPlayStateChanged();
+                break;
+            case REPEAT_MODE_CHANGED:
+                listener.onRepeatModeChanged();
+                break;
+            case SHUFFLE_MODE_CHANGED:
+                listener.onShuffleModeChanged();
+                break;
+            case PALETTE_CHANGED:
+                listener.onPaletteChanged();
+                break;
+        }
+    }
+
+    private static int indexOf(int event) {
+        int index = Integer.numberOfTrailingZeros(event);
+        if (index >= EVENT_COUNT || event != (1 << index)) {
+            throw new IllegalArgumentException("Not a single event: " + event);
+        }
+        return index;
+    }
+
+    /**
+     * Map the internal action of {@link MusicService} to its event, 0 if there is none.
+     */
+    public static int eventOf(@NonNull String action) {
+        switch (action) {
+            case MusicService.MEDIA_STORE_CHANGED:
+                return MEDIA_STORE_CHANGED;
+            case MusicService.QUEUE_CHANGED:
+                return QUEUE_CHANGED;
+            case MusicService.META_CHANGED:
+                return META_CHANGED;
+            case MusicService.PLAY_STATE_CHANGED:
+                return PLAY_STATE_CHANGED;
+            case MusicService.REPEAT_MODE_CHANGED:
+                return REPEAT_MODE_CHANGED;
+            case MusicService.SHUFFLE_MODE_CHANGED:
+                return SHUFFLE_MODE_CHANGED;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Posted counts more than dispatched counts are the events coalesced away. Latency is measured
+     * from the first post of an event to the end of its dispatch to all listeners.
+     */
+    @NonNull
+    public String getMetrics() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < EVENT_COUNT; i++) {
+            long dispatched = mDispatchedCount.get(i);
+            builder.append(EVENT_NAMES[i])
+                    .append(": posted ").append(mPostedCount.get(i))
+                    .append(", dispatched ").append(dispatched)
+                    .append(", avg latency ").append(dispatched == 0 ? 0 : mTotalLatencyNanos.get(i) / dispatched / 1000).append(" us")
+                    .append(", max latency ").append(mMaxLatencyNanos.get(i) / 1000).append(" us")
+                    .append('\n');
+        }
+        return builder.toString();
+    }
+
+    public void dumpMetrics() {
+        Log.d(TAG, getMetrics());
+    }
+}
@@ -238,7 +238,10 @@ public class MusicPlayerRemote {
         return -1;
     }
 
-    public static ArrayList<Song> getPlayingQueue() {
+    /**
+     * Live read-only view of the playing queue, copy it to keep a snapshot
+     */
+    public static List<Song> getPlayingQueue() {
         if (musicService != null) {
             return musicService.getPlayingQueue();
         }
@@ -268,7 +271,9 @@ public class MusicPlayerRemote {
 
     public static int seekTo(int millis) {
         if (musicService != null) {
-            return musicService.seek(millis);
+            int position = musicService.seek(millis);
+            PlaybackClock.getInstance().resync();
+            return position;
         }
         return -1;
     }
@@ -377,6 +382,29 @@ public class MusicPlayerRemote {
         return false;
     }
 
+    /**
+     * Remove every occurrence of these songs from the queue at once.
+     */
+    public static boolean removeFromQueue(@NonNull int[] songIds) {
+        if (musicService != null) {
+            musicService.removeSongs(songIds);
+            return true;
+        }
+        return false;
+    }
+
+    public static void holdMediaStoreRefresh() {
+        if (musicService != null) {
+            musicService.holdMediaStoreRefresh();
+        }
+    }
+
+    public static void releaseMediaStoreRefresh() {
+        if (musicService != null) {
+            musicService.releaseMediaStoreRefresh();
+        }
+    }
+
     public static boolean removeFromQueue(int position) {
         if (musicService != null && position >= 0 && position < getPlayingQueue().size()) {
             musicService.removeSong(position);
@@ -24,6 +24,7 @@ import android.os.Looper;
 import android.os.Message;
 import android.os.PowerManager;
 import android.os.Process;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
 import android.provider.MediaStore;
 import androidx.annotation.NonNull;
@@ -31,6 +32,7 @@ import androidx.annotation.Nullable;
 import android.support.v4.media.MediaMetadataCompat;
 import android.support.v4.media.session.MediaSessionCompat;
 import android.support.v4.media.session.PlaybackStateCompat;
+import android.util.Log;
 import android.widget.Toast;
 
 import com.bumptech.glide.Glide;
@@ -39,6 +41,7 @@ import com.bumptech.glide.RequestBuilder;
 import com.bumptech.glide.request.target.SimpleTarget;
 import com.bumptech.glide.request.transition.Transition;
 import com.ldt.musicr.App;
+import com.ldt.musicr.BuildConfig;
 import com.ldt.musicr.R;
 import com.ldt.musicr.appwidgets.AppWidgetBig;
 import com.ldt.musicr.appwidgets.AppWidgetCard;
@@ -46,9 +49,13 @@ import com.ldt.musicr.appwidgets.AppWidgetClassic;
 import com.ldt.musicr.appwidgets.AppWidgetSmall;
 import com.ldt.musicr.glide.BlurTransformation;
 import com.ldt.musicr.glide.SongGlideRequest;
-import com.ldt.musicr.helper.ShuffleHelper;
 import com.ldt.musicr.helper.StopWatch;
+import com.ldt.musicr.helper.loudness.LoudnessAnalyzer;
+import com.ldt.musicr.interactors.AppExecutors;
+import com.ldt.musicr.interactors.TaskLane;
+import com.ldt.musicr.loader.medialoader.HiddenSongScanner;
 import com.ldt.musicr.loader.medialoader.PlaylistSongLoader;
+import com.ldt.musicr.loader.medialoader.SmartPlaylistEngine;
 import com.ldt.musicr.model.AbsCustomPlaylist;
 import com.ldt.musicr.model.Playlist;
 import com.ldt.musicr.model.Song;
@@ -65,6 +72,7 @@ import com.ldt.musicr.util.Util;
 
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Random;
 
@@ -72,6 +80,7 @@ import java.util.Random;
  * @author Karim Abou Zeid (kabouzeid), Andrew Neal
  */
 public class MusicService extends Service implements SharedPreferences.OnSharedPreferenceChangeListener, Playback.PlaybackCallbacks {
+    private static final String TAG = "MusicService";
 
     public static final String PACKAGE_NAME = "com.ldt.musicr";
     public static final String MUSIC_PACKAGE_NAME = "com.android.music";
@@ -118,6 +127,12 @@ public class MusicService extends Service implements SharedPreferences.OnSharedP
     private static final int UNDUCK = 8;
     public static final int RESTORE_QUEUES = 9;
     public static final int CHANGE_VOLUME = 10;
+    private static final int RESTORE_REST_OF_QUEUE = 11;
+    private static final int APPLY_TRACK_GAIN = 12;
+
+    /* Saved songs restored around the saved position before the rest of the queue */
+    private static final int RESTORE_WINDOW_BEFORE = 5;
+    private static final int RESTORE_WINDOW_AFTER = 25;
 
     public static final int SHUFFLE_MODE_NONE = 0;
     public static final int SHUFFLE_MODE_SHUFFLE = 1;
@@ -142,13 +157,18 @@ public class MusicService extends Service implements SharedPreferences.OnSharedP
     private AppWidgetCard appWidgetCard = AppWidgetCard.getInstance();
 
     private Playback playback;
-    private ArrayList<Song> playingQueue = new ArrayList<>();
-    private ArrayList<Song> originalPlayingQueue = new ArrayList<>();
+    private final PlayingQueue playingQueue = new PlayingQueue();
     private int position = -1;
     private int nextPosition = -1;
     private int shuffleMode;
     private int repeatMode;
     private boolean queuesRestored;
+    /* Set while only a window of the saved queue is restored */
+    @Nullable
+    private volatile PendingQueueRestore pendingQueueRestore;
+    private long restoreStartNanos;
+    private long resumeLatencyMillis = -1;
+    private long queueRestoreMillis = -1;
     private boolean pausedByTransientLossOfFocus;
     private PlayingNotification playingNotification;
     private AudioManager audioManager;
@@ -184,6 +204,8 @@ public class MusicService extends Service implements SharedPreferences.OnSharedP
     private Handler uiThreadHandler;
 
     private static String getTrackUri(@NonNull Song song) {
+        // hidden songs are not in the media store, play their file
+        if (HiddenSongScanner.isHiddenSongId(song.id)) return song.data;
         return MusicUtil.getSongFileUri(song.id).toString();
     }
 
@@ -199,7 +221,7 @@ public class MusicService extends Service implements SharedPreferences.OnSharedP
         musicPlayerHandlerThread.start();
         playerHandler = new PlaybackHandler(this, musicPlayerHandlerThread.getLooper());
 
-        playback = new MultiPlayer(this);
+        playback = new MultiPlayer(this, musicPlayerHandlerThread.getLooper());
         notifyVolumePrefChanged();
         playback.setCallbacks(this);
 
@@ -213,6 +235,7 @@ public class MusicService extends Service implements SharedPreferences.OnSharedP
         uiThreadHandler = new Handler();
 
         registerReceiver(widgetIntentReceiver, new IntentFilter(APP_WIDGET_UPDATE));
+        LoudnessAnalyzer.getInstance(this).startBackgroundAnalysis();
 
         initNotification();
 
@@ -361,6 +384,7 @@ public class MusicService extends Service implements SharedPreferences.OnSharedP
     @Override
     public void onDestroy() {
         unregisterReceiver(widgetIntentReceiver);
+        LoudnessAnalyzer.getInstance(this).stopBackgroundAnalysis();
         if (becomingNoisyReceiverRegistered) {
             unregisterReceiver(becomingNoisyReceiver);
             becomingNoisyReceiverRegistered = false;
@@ -405,11 +429,13 @@ public class MusicService extends Service implements SharedPreferences.OnSharedP
     }
 
     private void saveQueuesImpl() {
-        MusicPlaybackQueueStore.getInstance(this).saveQueues(playingQueue, originalPlayingQueue);
+        // the saved queue is still the full one, the queue is only its window
+        if (pendingQueueRestore != null) return;
+        MusicPlaybackQueueStore.getInstance(this).saveQueues(playingQueue.getOriginalSongs(), playingQueue.getShuffleOrder());
     }
 
     private void savePosition() {
-        PreferenceManager.getDefaultSharedPreferences(this).edit().putInt(SAVED_POSITION, getPosition()).apply();
+        PreferenceManager.getDefaultSharedPreferences(this).edit().putInt(SAVED_POSITION, getPositionInSavedQueue()).apply();
     }
 
     private void savePositionInTrack() {
@@ -433,22 +459,45 @@ public class MusicService extends Service implements SharedPreferences.OnSharedP
         handleAndSendChangeInternal(SHUFFLE_MODE_CHANGED);
         handleAndSendChangeInternal(REPEAT_MODE_CHANGED);
 
+        restoreStartNanos = SystemClock.elapsedRealtimeNanos();
         playerHandler.removeMessages(RESTORE_QUEUES);
         playerHandler.sendEmptyMessage(RESTORE_QUEUES);
     }
 
+    /**
+     * Restore the saved queue and position. A long queue is restored in two steps: first the
+     * songs around the saved position, so that the current song and the media session come up
+     * right away, then the whole queue read on the disk lane replaces them.
+     */
     private synchronized void restoreQueuesAndPositionIfNecessary() {
         if (!queuesRestored && playingQueue.isEmpty()) {
-            ArrayList<Song> restoredQueue = MusicPlaybackQueueStore.getInstance(this).getSavedPlayingQueue();
-            ArrayList<Song> restoredOriginalQueue = MusicPlaybackQueueStore.getInstance(this).getSavedOriginalPlayingQueue();
+            final MusicPlaybackQueueStore store = MusicPlaybackQueueStore.getInstance(this);
+            final int savedSize = store.getSavedOriginalPlayingQueueSize();
+            int[] restoredOrder = shuffleMode == SHUFFLE_MODE_SHUFFLE ? store.getSavedPlayingOrder() : null;
+            if (restoredOrder != null && restoredOrder.length != savedSize) restoredOrder = null;
             int restoredPosition = PreferenceManager.getDefaultSharedPreferences(this).getInt(SAVED_POSITION, -1);
             int restoredPositionInTrack = PreferenceManager.getDefaultSharedPreferences(this).getInt(SAVED_POSITION_IN_TRACK, -1);
 
-            if (restoredQueue.size() > 0 && restoredQueue.size() == restoredOriginalQueue.size() && restoredPosition != -1) {
-                this.originalPlayingQueue = restoredOriginalQueue;
-                this.playingQueue = restoredQueue;
+            if (savedSize > 0 && restoredPosition != -1 && restoredPosition < savedSize) {
+                final int windowStart = Math.max(0, restoredPosition - RESTORE_WINDOW_BEFORE);
+                final int windowEnd = Math.min(savedSize, restoredPosition + RESTORE_WINDOW_AFTER);
+                ArrayList<Song> window = null;
+                if (windowEnd - windowStart < savedSize) {
+                    int[] indexes = new int[windowEnd - windowStart];
+                    for (int i = 0; i < indexes.length; i++) {
+                        indexes[i] = restoredOrder != null ? restoredOrder[windowStart + i] : windowStart + i;
+                    }
+                    window = store.getSavedOriginalPlayingQueueAt(indexes);
+                }
 
-                position = restoredPosition;
+                if (window != null) {
+                    // the window is in playing order
+                    playingQueue.restore(window, null);
+                    position = restoredPosition - windowStart;
+                    pendingQueueRestore = new PendingQueueRestore(windowStart, restoredOrder);
+                } else {
+                    position = playingQueue.restore(store.getSavedOriginalPlayingQueue(), restoredOrder, restoredPosition);
+                }
                 openCurrent();
                 prepareNext();
 
@@ -457,11 +506,74 @@ public class MusicService extends Service implements SharedPreferences.OnSharedP
                 notHandledMetaChangedForCurrentTrack = true;
                 sendChangeInternal(META_CHANGED);
                 sendChangeInternal(QUEUE_CHANGED);
+
+                resumeLatencyMillis = (SystemClock.elapsedRealtimeNanos() - restoreStartNanos) / 1_000_000;
+                Log.d(TAG, "Resumed " + (window != null ? window.size() : savedSize) + " of " + savedSize + " songs in " + resumeLatencyMillis + " ms");
+
+                if (pendingQueueRestore != null) {
+                    AppExecutors.disk().execute(TaskLane.PRIORITY_HIGH, () -> {
+                        Song[] savedOriginal = store.getSavedOriginalPlayingQueue();
+                        playerHandler.obtainMessage(RESTORE_REST_OF_QUEUE, savedOriginal).sendToTarget();
+                    });
+                } else {
+                    queueRestoreMillis = resumeLatencyMillis;
+                }
             }
         }
         queuesRestored = true;
     }
 
+    /**
+     * Replace the restored window by the whole saved queue, keeping the playing song.
+     *
+     * @param savedOriginal the saved original queue, or null to read it now
+     */
+    private synchronized void finishQueueRestore(@Nullable Song[] savedOriginal) {
+        final PendingQueueRestore pending = pendingQueueRestore;
+        if (pending == null) return;
+        if (savedOriginal == null) savedOriginal = MusicPlaybackQueueStore.getInstance(this).getSavedOriginalPlayingQueue();
+
+        final int windowPosition = getPosition();
+        // songs of the saved queue that no longer exist are left out, the position follows
+        final int restoredPosition = playingQueue.restore(savedOriginal, pending.order,
+                windowPosition >= 0 ? pending.windowStart + windowPosition : 0);
+        pendingQueueRestore = null;
+        if (windowPosition >= 0) position = restoredPosition;
+        prepareNext();
+        sendChangeInternal(QUEUE_CHANGED);
+
+        queueRestoreMillis = (SystemClock.elapsedRealtimeNanos() - restoreStartNanos) / 1_000_000;
+        Log.d(TAG, "Restored the queue of " + playingQueue.size() + " songs in " + queueRestoreMillis + " ms");
+    }
+
+    /**
+     * Queue edits need the whole queue: finish a pending restore first, reading the rest of the
+     * queue on the calling thread if it did not arrive yet.
+     */
+    private void ensureQueueRestored() {
+        if (pendingQueueRestore != null) finishQueueRestore(null);
+    }
+
+    private synchronized int getPositionInSavedQueue() {
+        final PendingQueueRestore pending = pendingQueueRestore;
+        final int position = getPosition();
+        return pending == null || position < 0 ? position : pending.windowStart + position;
+    }
+
+    /**
+     * Time from the service start to the saved song being ready, or -1 if nothing was restored
+     */
+    public long getResumeLatencyMillis() {
+        return resumeLatencyMillis;
+    }
+
+    /**
+     * Time from the service start to the whole saved queue being restored, or -1
+     */
+    public long getQueueRestoreMillis() {
+        return queueRestoreMillis;
+    }
+
     private void quit() {
         pause();
         playingNotification.stop();
@@ -484,6 +596,9 @@ public class MusicService extends Service implements SharedPreferences.OnSharedP
         } else {
             queueSaveHandlerThread.quit();
         }
+        if (BuildConfig.DEBUG && playback instanceof MultiPlayer) {
+            ((MultiPlayer) playback).dumpFadeMetrics();
+        }
         playback.release();
         playback = null;
         mediaSession.release();
@@ -515,13 +630,24 @@ public class MusicService extends Service implements SharedPreferences.OnSharedP
     private boolean openCurrent() {
         synchronized (this) {
             try {
-                return playback.setDataSource(getTrackUri(getCurrentSong()));
+                final Song song = getCurrentSong();
+                final boolean prepared = playback.setDataSource(getTrackUri(song));
+                if (prepared) playback.setTrackGain(LoudnessAnalyzer.getInstance(this).getTrackGain(song));
+                return prepared;
             } catch (Exception e) {
                 return false;
             }
         }
     }
 
+    private void applyTrackGain() {
+        synchronized (this) {
+            final LoudnessAnalyzer analyzer = LoudnessAnalyzer.getInstance(this);
+            playback.setTrackGain(analyzer.getTrackGain(getCurrentSong()));
+        }
+        prepareNext();
+    }
+
     private void prepareNext() {
         playerHandler.removeMessages(PREPARE_NEXT);
         playerHandler.obtainMessage(PREPARE_NEXT).sendToTarget();
@@ -531,7 +657,9 @@ public class MusicService extends Service implements SharedPreferences.OnSharedP
         synchronized (this) {
             try {
                 int nextPosition = getNextPosition(false);
-                playback.setNextDataSource(getTrackUri(getSongAt(nextPosition)));
+                final Song nextSong = getSongAt(nextPosition);
+                playback.setNextTrackGain(LoudnessAnalyzer.getInstance(this).getTrackGain(nextSong));
+                playback.setNextDataSource(getTrackUri(nextSong));
                 this.nextPosition = nextPosition;
                 return true;
             } catch (Exception e) {
@@ -688,8 +816,11 @@ public class MusicService extends Service implements SharedPreferences.OnSharedP
         return getPosition() == getPlayingQueue().size() - 1;
     }
 
-    public ArrayList<Song> getPlayingQueue() {
-        return playingQueue;
+    /**
+     * Live read-only view of the queue in playing order
+     */
+    public List<Song> getPlayingQueue() {
+        return playingQueue.asList();
     }
 
     public int getRepeatMode() {
@@ -713,14 +844,15 @@ public class MusicService extends Service implements SharedPreferences.OnSharedP
 
     public void openQueue(@Nullable final List<Song> playingQueue, final int startPosition, final boolean startPlaying) {
         if (playingQueue != null && !playingQueue.isEmpty() && startPosition >= 0 && startPosition < playingQueue.size()) {
+            // the saved queue is replaced, no need to restore the rest of it
+            pendingQueueRestore = null;
+
             // it is important to copy the playing queue here first as we might add/remove songs later
-            originalPlayingQueue = new ArrayList<>(playingQueue);
-            this.playingQueue = new ArrayList<>(originalPlayingQueue);
+            this.playingQueue.set(playingQueue);
 
             int position = startPosition;
             if (shuffleMode == SHUFFLE_MODE_SHUFFLE) {
-                ShuffleHelper.makeShuffleList(this.playingQueue, startPosition);
-                position = 0;
+                position = this.playingQueue.shuffle(startPosition);
             }
             if (startPlaying) {
                 playSongAt(position);
@@ -732,36 +864,32 @@ public class MusicService extends Service implements SharedPreferences.OnSharedP
     }
 
     public void addSong(int position, Song song) {
-        playingQueue.add(position, song);
-        originalPlayingQueue.add(position, song);
+        ensureQueueRestored();
+        playingQueue.add(position, Collections.singletonList(song));
         notifyChange(QUEUE_CHANGED);
     }
 
     public void addSong(Song song) {
-        playingQueue.add(song);
-        originalPlayingQueue.add(song);
+        ensureQueueRestored();
+        playingQueue.add(Collections.singletonList(song));
         notifyChange(QUEUE_CHANGED);
     }
 
     public void addSongs(int position, List<Song> songs) {
-        playingQueue.addAll(position, songs);
-        originalPlayingQueue.addAll(position, songs);
+        ensureQueueRestored();
+        playingQueue.add(position, songs);
         notifyChange(QUEUE_CHANGED);
     }
 
     public void addSongs(List<Song> songs) {
-        playingQueue.addAll(songs);
-        originalPlayingQueue.addAll(songs);
+        ensureQueueRestored();
+        playingQueue.add(songs);
         notifyChange(QUEUE_CHANGED);
     }
 
     public void removeSong(int position) {
-        if (getShuffleMode() == SHUFFLE_MODE_NONE) {
-            playingQueue.remove(position);
-            originalPlayingQueue.remove(position);
-        } else {
-            originalPlayingQueue.remove(playingQueue.remove(position));
-        }
+        ensureQueueRestored();
+        playingQueue.remove(position);
 
         rePosition(position);
 
@@ -769,20 +897,53 @@ public class MusicService extends Service implements SharedPreferences.OnSharedP
     }
 
     public void removeSong(@NonNull Song song) {
-        for (int i = 0; i < playingQueue.size(); i++) {
-            if (playingQueue.get(i).id == song.id) {
-                playingQueue.remove(i);
-                rePosition(i);
-            }
+        ensureQueueRestored();
+        // positions come in descending order, so each one is still valid when handled
+        for (int removedPosition : playingQueue.removeSongId(song.id)) {
+            rePosition(removedPosition);
         }
-        for (int i = 0; i < originalPlayingQueue.size(); i++) {
-            if (originalPlayingQueue.get(i).id == song.id) {
-                originalPlayingQueue.remove(i);
-            }
+        notifyChange(QUEUE_CHANGED);
+    }
+
+    /**
+     * Remove every occurrence of these songs with one pass over the queue and one
+     * {@link #QUEUE_CHANGED}, e.g. when the songs are deleted.
+     */
+    public void removeSongs(@NonNull int[] songIds) {
+        ensureQueueRestored();
+        final int currentPosition = getPosition();
+        final int[] removed = playingQueue.removeSongIds(songIds);
+        if (removed.length == 0) return;
+
+        int removedBefore = 0;
+        boolean currentRemoved = false;
+        for (int removedPosition : removed) {
+            if (removedPosition < currentPosition) removedBefore++;
+            else if (removedPosition == currentPosition) currentRemoved = true;
+        }
+
+        final int newPosition = currentPosition - removedBefore;
+        if (currentRemoved) {
+            // the first song after it that stayed takes its place
+            setPosition(newPosition < playingQueue.size() ? newPosition : newPosition - 1);
+        } else {
+            position = newPosition;
         }
         notifyChange(QUEUE_CHANGED);
     }
 
+    /**
+     * Don't refresh on media store changes until {@link #releaseMediaStoreRefresh()}, then refresh
+     * once if something changed meanwhile. Calls can be nested.
+     */
+    public void holdMediaStoreRefresh() {
+        mediaStoreObserver.hold();
+    }
+
+    public void releaseMediaStoreRefresh() {
+        mediaStoreObserver.release();
+    }
+
     private void rePosition(int deletedPosition) {
         int currentPosition = getPosition();
         if (deletedPosition < currentPosition) {
@@ -797,14 +958,10 @@ public class MusicService extends Service implements SharedPreferences.OnSharedP
     }
 
     public void moveSong(int from, int to) {
+        ensureQueueRestored();
         if (from == to) return;
         final int currentPosition = getPosition();
-        Song songToMove = playingQueue.remove(from);
-        playingQueue.add(to, songToMove);
-        if (getShuffleMode() == SHUFFLE_MODE_NONE) {
-            Song tmpSong = originalPlayingQueue.remove(from);
-            originalPlayingQueue.add(to, tmpSong);
-        }
+        playingQueue.move(from, to);
         if (from > currentPosition && to <= currentPosition) {
             position = currentPosition + 1;
         } else if (from < currentPosition && to >= currentPosition) {
@@ -816,8 +973,8 @@ public class MusicService extends Service implements SharedPreferences.OnSharedP
     }
 
     public void clearQueue() {
+        pendingQueueRestore = null;
         playingQueue.clear();
-        originalPlayingQueue.clear();
 
         setPosition(-1);
         notifyChange(QUEUE_CHANGED);
@@ -1032,23 +1189,15 @@ public class MusicService extends Service implements SharedPreferences.OnSharedP
         PreferenceManager.getDefaultSharedPreferences(this).edit()
                 .putInt(SAVED_SHUFFLE_MODE, shuffleMode)
                 .apply();
+        ensureQueueRestored();
         switch (shuffleMode) {
             case SHUFFLE_MODE_SHUFFLE:
                 this.shuffleMode = shuffleMode;
-                ShuffleHelper.makeShuffleList(this.getPlayingQueue(), getPosition());
-                position = 0;
+                position = playingQueue.shuffle(getPosition());
                 break;
             case SHUFFLE_MODE_NONE:
                 this.shuffleMode = shuffleMode;
-                int currentSongId = getCurrentSong().id;
-                playingQueue = new ArrayList<>(originalPlayingQueue);
-                int newPosition = 0;
-                for (Song song : getPlayingQueue()) {
-                    if (song.id == currentSongId) {
-                        newPosition = getPlayingQueue().indexOf(song);
-                    }
-                }
-                position = newPosition;
+                position = playingQueue.unshuffle(getPosition());
                 break;
         }
         handleAndSendChangeInternal(SHUFFLE_MODE_CHANGED);
@@ -1088,13 +1237,41 @@ public class MusicService extends Service implements SharedPreferences.OnSharedP
     }
 
     private void sendChangeInternal(final String what) {
-        sendBroadcast(new Intent(what));
+        postInternalEvent(what);
         appWidgetBig.notifyChange(this, what);
         appWidgetClassic.notifyChange(this, what);
         appWidgetSmall.notifyChange(this, what);
         appWidgetCard.notifyChange(this, what);
     }
 
+    /**
+     * In-app listeners are notified through {@link MusicEventDispatcher}, with a primitive payload
+     * instead of an Intent. Only {@link #sendPublicIntent(String)} broadcasts to other apps.
+     */
+    private void postInternalEvent(@NonNull final String what) {
+        final MusicEventDispatcher dispatcher = MusicEventDispatcher.getInstance();
+        switch (what) {
+            case PLAY_STATE_CHANGED:
+                dispatcher.post(MusicEventDispatcher.PLAY_STATE_CHANGED, isPlaying() ? 1 : 0);
+                break;
+            case META_CHANGED:
+                dispatcher.post(MusicEventDispatcher.META_CHANGED, getCurrentSong().id);
+                break;
+            case QUEUE_CHANGED:
+                dispatcher.post(MusicEventDispatcher.QUEUE_CHANGED, playingQueue.size());
+                break;
+            case REPEAT_MODE_CHANGED:
+                dispatcher.post(MusicEventDispatcher.REPEAT_MODE_CHANGED, getRepeatMode());
+                break;
+            case SHUFFLE_MODE_CHANGED:
+                dispatcher.post(MusicEventDispatcher.SHUFFLE_MODE_CHANGED, getShuffleMode());
+                break;
+            default:
+                int event = MusicEventDispatcher.eventOf(what);
+                if (event != 0) dispatcher.post(event);
+        }
+    }
+
     private static final long MEDIA_SESSION_ACTIONS = PlaybackStateCompat.ACTION_PLAY
             | PlaybackStateCompat.ACTION_PAUSE
             | PlaybackStateCompat.ACTION_PLAY_PAUSE
@@ -1120,10 +1297,11 @@ public class MusicService extends Service implements SharedPreferences.OnSharedP
                 savePosition();
                 savePositionInTrack();
                 final Song currentSong = getCurrentSong();
-                HistoryStore.getInstance(this).addSongId(currentSong.id);
+                final long timePlayed = HistoryStore.getInstance(this).addSongId(currentSong.id);
                 if (songPlayCountHelper.shouldBumpPlayCount()) {
                     SongPlayCountStore.getInstance(this).bumpPlayCount(songPlayCountHelper.getSong().id);
                 }
+                SmartPlaylistEngine.getInstance(this).onSongPlayed(currentSong.id, timePlayed);
                 songPlayCountHelper.notifySongChanged(currentSong);
                 break;
             case QUEUE_CHANGED:
@@ -1160,12 +1338,17 @@ public class MusicService extends Service implements SharedPreferences.OnSharedP
     public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
         switch (key) {
             case PreferenceUtil.GAPLESS_PLAYBACK:
-                if (sharedPreferences.getBoolean(key, false)) {
+            case PreferenceUtil.CROSSFADE_DURATION:
+                if (sharedPreferences.getBoolean(PreferenceUtil.GAPLESS_PLAYBACK, false)
+                        || sharedPreferences.getInt(PreferenceUtil.CROSSFADE_DURATION, 0) > 0) {
                     prepareNext();
                 } else {
                     playback.setNextDataSource(null);
                 }
                 break;
+            case PreferenceUtil.VOLUME_NORMALIZATION:
+                playerHandler.sendEmptyMessage(APPLY_TRACK_GAIN);
+                break;
             case PreferenceUtil.ALBUM_ART_ON_LOCKSCREEN:
             case PreferenceUtil.BLURRED_ALBUM_ART:
                 updateMediaSessionMetaData();
@@ -1298,6 +1481,14 @@ public class MusicService extends Service implements SharedPreferences.OnSharedP
                     service.restoreQueuesAndPositionIfNecessary();
                     break;
 
+                case RESTORE_REST_OF_QUEUE:
+                    service.finishQueueRestore((Song[]) msg.obj);
+                    break;
+
+                case APPLY_TRACK_GAIN:
+                    service.applyTrackGain();
+                    break;
+
                 case FOCUS_CHANGE:
                     switch (msg.arg1) {
                         case AudioManager.AUDIOFOCUS_GAIN:
@@ -1380,8 +1571,33 @@ public class MusicService extends Service implements SharedPreferences.OnSharedP
             mHandler = handler;
         }
 
+        private int mHoldCount = 0;
+        private boolean mChangedWhileHeld = false;
+
         @Override
         public void onChange(boolean selfChange) {
+            synchronized (this) {
+                if (mHoldCount > 0) {
+                    mChangedWhileHeld = true;
+                    return;
+                }
+            }
+            scheduleRefresh();
+        }
+
+        synchronized void hold() {
+            mHoldCount++;
+        }
+
+        void release() {
+            synchronized (this) {
+                if (mHoldCount == 0 || --mHoldCount > 0 || !mChangedWhileHeld) return;
+                mChangedWhileHeld = false;
+            }
+            scheduleRefresh();
+        }
+
+        private void scheduleRefresh() {
             // if a change is detected, remove any scheduled callback
             // then post a new one. This is intended to prevent closely
             // spaced events from generating multiple refresh calls
@@ -1449,4 +1665,17 @@ public class MusicService extends Service implements SharedPreferences.OnSharedP
             }
         }
     }
+
+    private static final class PendingQueueRestore {
+        /* Position in the saved queue of the first restored song */
+        final int windowStart;
+        /* The saved shuffle order, null if not shuffled */
+        @Nullable
+        final int[] order;
+
+        PendingQueueRestore(int windowStart, @Nullable int[] order) {
+            this.windowStart = windowStart;
+            this.order = order;
+        }
+    }
 }
@@ -0,0 +1,229 @@
+package com.ldt.musicr.service;
+
+import android.util.Log;
+import android.view.Choreographer;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+
+/**
+ * One playback clock for every view that shows the playing position, instead of each of them
+ * polling {@link MusicPlayerRemote#getSongProgressMillis()} with its own Handler.
+ * <p>
+ * While a song plays and someone listens, the clock ticks once per vsync through the
+ * Choreographer. The player is only read every {@link #RESAMPLE_INTERVAL_NANOS}, and after a
+ * play state change, a new song or a seek; in between the position is extrapolated from the frame
+ * time. When playback is paused or the last listener goes away, the clock dispatches a final tick
+ * and stops posting frames.
+ * <p>
+ * The intervals between the frames it ran are counted in 120 Hz vsync periods, see
+ * {@link #getFrameHistogram()}.
+ */
+public final class PlaybackClock implements MusicServiceEventListener {
+    private static final String TAG = "PlaybackClock";
+
+    private static final long RESAMPLE_INTERVAL_NANOS = 500_000_000L;
+
+    private static final long VSYNC_120_HZ_NANOS = 1_000_000_000L / 120;
+
+    /* Buckets of the frame histogram: 1, 2, ... and FRAME_BUCKETS or more vsync periods */
+    public static final int FRAME_BUCKETS = 8;
+
+    public interface Listener {
+        /**
+         * @param positionMillis the playing position at the time of the frame
+         */
+        @MainThread
+        void onPlaybackTick(long positionMillis, long durationMillis);
+    }
+
+    private static final Listener[] NO_LISTENERS = new Listener[0];
+
+    private static PlaybackClock sInstance = null;
+
+    @MainThread
+    @NonNull
+    public static PlaybackClock getInstance() {
+        if (sInstance == null) {
+            sInstance = new PlaybackClock();
+            MusicEventDispatcher.getInstance().addListener(sInstance);
+        }
+        return sInstance;
+    }
+
+    /* Copied on write: a listener may remove itself while being ticked */
+    private Listener[] mListeners = NO_LISTENERS;
+
+    private boolean mFramePosted = false;
+    private boolean mNeedsSample = true;
+
+    private boolean mPlaying = false;
+    private long mSamplePositionMillis = 0;
+    private long mSampleDurationMillis = 0;
+    private long mSampleFrameNanos = 0;
+
+    /* 0 when the previous frame did not tick, the interval is not a frame interval then */
+    private long mLastFrameNanos = 0;
+
+    private final long[] mFrameHistogram = new long[FRAME_BUCKETS];
+    private long mTickCount = 0;
+    private long mSampleCount = 0;
+
+    private final Choreographer.FrameCallback mFrameCallback = this::doFrame;
+
+    private PlaybackClock() {
+    }
+
+    /**
+     * Start ticking the listener on the next frame. Register when the view shows the position,
+     * unregister when it is paused or hidden.
+     */
+    @MainThread
+    public void addListener(@NonNull Listener listener) {
+        for (Listener l : mListeners) {
+            if (l == listener) return;
+        }
+        Listener[] listeners = new Listener[mListeners.length + 1];
+        System.arraycopy(mListeners, 0, listeners, 0, mListeners.length);
+        listeners[mListeners.length] = listener;
+        mListeners = listeners;
+
+        // the new listener gets a fresh position even while paused
+        resync();
+    }
+
+    @MainThread
+    public void removeListener(@NonNull Listener listener) {
+        int index = -1;
+        for (int i = 0; i < mListeners.length; i++) {
+            if (mListeners[i] == listener) {
+                index = i;
+                break;
+            }
+        }
+        if (index == -1) return;
+
+        if (mListeners.length == 1) {
+            mListeners = NO_LISTENERS;
+            stop();
+            return;
+        }
+        Listener[] listeners = new Listener[mListeners.length - 1];
+        System.arraycopy(mListeners, 0, listeners, 0, index);
+        System.arraycopy(mListeners, index + 1, listeners, index, mListeners.length - index - 1);
+        mListeners = listeners;
+    }
+
+    /**
+     * Read the player again on the next frame, e.g. after a seek
+     */
+    @MainThread
+    public void resync() {
+        mNeedsSample = true;
+        postFrame();
+    }
+
+    @Override
+    public void onServiceConnected() {
+        resync();
+    }
+
+    @Override
+    public void onPlayingMetaChanged() {
+        resync();
+    }
+
+    @Override
+    public void onPlayStateChanged() {
+        resync();
+    }
+
+    private void postFrame() {
+        if (mFramePosted || mListeners.length == 0) return;
+        mFramePosted = true;
+        Choreographer.getInstance().postFrameCallback(mFrameCallback);
+    }
+
+    private void stop() {
+        if (mFramePosted) {
+            Choreographer.getInstance().removeFrameCallback(mFrameCallback);
+            mFramePosted = false;
+        }
+        mLastFrameNanos = 0;
+    }
+
+    private void doFrame(long frameTimeNanos) {
+        mFramePosted = false;
+        final Listener[] listeners = mListeners;
+        if (listeners.length == 0) return;
+
+        recordFrame(frameTimeNanos);
+        if (mNeedsSample || frameTimeNanos - mSampleFrameNanos >= RESAMPLE_INTERVAL_NANOS) {
+            sample(frameTimeNanos);
+        }
+
+        long position = mSamplePositionMillis;
+        if (mPlaying) {
+            position += (frameTimeNanos - mSampleFrameNanos) / 1_000_000;
+            if (mSampleDurationMillis > 0 && position > mSampleDurationMillis) position = mSampleDurationMillis;
+        }
+
+        mTickCount++;
+        for (Listener listener : listeners) {
+            listener.onPlaybackTick(position, mSampleDurationMillis);
+        }
+
+        if (mPlaying) {
+            postFrame();
+        } else {
+            mLastFrameNanos = 0;
+        }
+    }
+
+    private void sample(long frameTimeNanos) {
+        mPlaying = MusicPlayerRemote.isPlaying();
+        mSamplePositionMillis = MusicPlayerRemote.getSongProgressMillis();
+        mSampleDurationMillis = MusicPlayerRemote.getSongDurationMillis();
+        mSampleFrameNanos = frameTimeNanos;
+        mNeedsSample = false;
+        mSampleCount++;
+    }
+
+    private void recordFrame(long frameTimeNanos) {
+        if (mLastFrameNanos != 0) {
+            int periods = (int) ((frameTimeNanos - mLastFrameNanos + VSYNC_120_HZ_NANOS / 2) / VSYNC_120_HZ_NANOS);
+            if (periods < 1) periods = 1;
+            else if (periods > FRAME_BUCKETS) periods = FRAME_BUCKETS;
+            mFrameHistogram[periods - 1]++;
+        }
+        mLastFrameNanos = frameTimeNanos;
+    }
+
+    /**
+     * Intervals between two consecutive ticks, in 120 Hz vsync periods: index 0 counts the
+     * intervals of one period, index {@link #FRAME_BUCKETS} - 1 those of that many or more. On a
+     * 120 Hz display every count past index 0 is a dropped frame, on a 60 Hz one past index 1.
+     */
+    @NonNull
+    public long[] getFrameHistogram() {
+        return mFrameHistogram.clone();
+    }
+
+    @NonNull
+    public String getMetrics() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("ticks ").append(mTickCount)
+                .append(", player reads ").append(mSampleCount)
+                .append(", listeners ").append(mListeners.length)
+                .append('\n')
+                .append("frame intervals (120 Hz vsyncs):");
+        for (int i = 0; i < FRAME_BUCKETS; i++) {
+            builder.append(' ').append(i + 1).append(i == FRAME_BUCKETS - 1 ? "+: " : ": ").append(mFrameHistogram[i]);
+        }
+        return builder.toString();
+    }
+
+    public void dumpMetrics() {
+        Log.d(TAG, getMetrics());
+    }
+}
@@ -0,0 +1,320 @@
+package com.ldt.musicr.service;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.ldt.musicr.helper.ShuffleHelper;
+import com.ldt.musicr.model.Song;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * The playing queue of {@link MusicService}.
+ * <p>
+ * Songs are stored once, in their original order. The shuffled order is an int[] permutation of
+ * indexes into that list, so shuffling never copies or shifts Song references, and turning shuffle
+ * off only drops the permutation. Positions given to and returned by this class are always
+ * positions in the playing order.
+ */
+public final class PlayingQueue {
+    private final ArrayList<Song> mOriginal = new ArrayList<>();
+
+    /* playing position -> index in mOriginal, only meaningful when shuffled */
+    private int[] mOrder = new int[0];
+    private boolean mShuffled = false;
+
+    private final List<Song> mView = new View();
+
+    /**
+     * Live, read-only view of the queue in playing order. The same instance is returned every
+     * time, it reflects later changes of the queue.
+     */
+    @NonNull
+    public List<Song> asList() {
+        return mView;
+    }
+
+    public synchronized int size() {
+        return mOriginal.size();
+    }
+
+    public synchronized boolean isEmpty() {
+        return mOriginal.isEmpty();
+    }
+
+    @NonNull
+    public synchronized Song get(int position) {
+        return mOriginal.get(mShuffled ? mOrder[position] : position);
+    }
+
+    public synchronized boolean isShuffled() {
+        return mShuffled;
+    }
+
+    /**
+     * Replace the queue by {@code songs}, unshuffled.
+     */
+    public synchronized void set(@NonNull Collection<Song> songs) {
+        // the songs may be our own view
+        if (songs == mView) songs = new ArrayList<>(songs);
+        mOriginal.clear();
+        mOriginal.addAll(songs);
+        mShuffled = false;
+    }
+
+    /**
+     * Replace the queue by a saved one.
+     *
+     * @param order the saved shuffle order, or null if the queue was not shuffled. It is ignored
+     *              if it is not a permutation of the queue indexes.
+     */
+    public synchronized void restore(@NonNull Collection<Song> original, @Nullable int[] order) {
+        set(original);
+        if (order != null && isPermutation(order, mOriginal.size())) {
+            mOrder = order;
+            mShuffled = true;
+        }
+    }
+
+    /**
+     * Replace the queue by a saved one of which some songs may no longer exist. They are left out
+     * of the queue and of the shuffle order, so that the saved order and position still point at
+     * the same songs.
+     *
+     * @param original the saved original queue, null for the songs that no longer exist
+     * @param order    the saved shuffle order, or null if the queue was not shuffled. It is
+     *                 ignored if it is not a permutation of the saved indexes.
+     * @param position the saved position, in playing order
+     * @return the position of the same song, or of the next one that still exists, or of the last
+     * song if none does. -1 if the queue is empty.
+     */
+    public synchronized int restore(@NonNull Song[] original, @Nullable int[] order, int position) {
+        // saved index -> index in the restored queue, -1 for the songs left out
+        final int[] indexes = new int[original.length];
+        final ArrayList<Song> songs = new ArrayList<>(original.length);
+        for (int i = 0; i < original.length; i++) {
+            indexes[i] = original[i] == null ? -1 : songs.size();
+            if (original[i] != null) songs.add(original[i]);
+        }
+
+        int newPosition = 0;
+        int[] newOrder = null;
+        if (order != null && isPermutation(order, original.length)) {
+            newOrder = new int[songs.size()];
+            int size = 0;
+            for (int i = 0; i < order.length; i++) {
+                final int index = indexes[order[i]];
+                if (index < 0) continue;
+                if (i < position) newPosition++;
+                newOrder[size++] = index;
+            }
+        } else {
+            for (int i = 0; i < position && i < original.length; i++) {
+                if (indexes[i] >= 0) newPosition++;
+            }
+        }
+
+        restore(songs, newOrder);
+        return Math.min(newPosition, songs.size() - 1);
+    }
+
+    /**
+     * Shuffle the queue, keeping the song at {@code position} at the head.
+     *
+     * @return the new position of that song, 0
+     */
+    public synchronized int shuffle(int position) {
+        final int size = mOriginal.size();
+        final int first = position >= 0 && position < size ? toOriginalIndex(position) : -1;
+        if (mOrder.length < size) mOrder = new int[size];
+        ShuffleHelper.makeShuffleOrder(mOrder, size, first);
+        mShuffled = true;
+        return 0;
+    }
+
+    /**
+     * Go back to the original order.
+     *
+     * @return the new position of the song at {@code position}
+     */
+    public synchronized int unshuffle(int position) {
+        final int newPosition = position >= 0 && position < mOriginal.size() ? toOriginalIndex(position) : 0;
+        mShuffled = false;
+        return newPosition;
+    }
+
+    public synchronized void add(int position, @NonNull Collection<Song> songs) {
+        final int count = songs.size();
+        if (count == 0) return;
+        final int size = mOriginal.size();
+        if (position > size) position = size;
+
+        // the songs take the same index in the original order as in the playing order
+        final int originalIndex = position;
+        mOriginal.addAll(originalIndex, songs);
+        if (!mShuffled) return;
+
+        int[] order = mOrder.length >= size + count ? mOrder : Arrays.copyOf(mOrder, Math.max(size + count, size * 3 / 2));
+        for (int i = 0; i < size; i++) {
+            if (order[i] >= originalIndex) order[i] += count;
+        }
+        System.arraycopy(order, position, order, position + count, size - position);
+        for (int i = 0; i < count; i++) {
+            order[position + i] = originalIndex + i;
+        }
+        mOrder = order;
+    }
+
+    public synchronized void add(@NonNull Collection<Song> songs) {
+        add(mOriginal.size(), songs);
+    }
+
+    @NonNull
+    public synchronized Song remove(int position) {
+        if (!mShuffled) return mOriginal.remove(position);
+
+        final int size = mOriginal.size();
+        final int originalIndex = mOrder[position];
+        System.arraycopy(mOrder, position + 1, mOrder, position, size - position - 1);
+        for (int i = 0; i < size - 1; i++) {
+            if (mOrder[i] > originalIndex) mOrder[i]--;
+        }
+        return mOriginal.remove(originalIndex);
+    }
+
+    /**
+     * Remove every occurrence of the song with this id.
+     *
+     * @return the removed positions, in descending order
+     */
+    @NonNull
+    public synchronized int[] removeSongId(int songId) {
+        int[] removed = new int[0];
+        for (int position = mOriginal.size() - 1; position >= 0; position--) {
+            if (get(position).id == songId) {
+                remove(position);
+                removed = Arrays.copyOf(removed, removed.length + 1);
+                removed[removed.length - 1] = position;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Remove every occurrence of the songs with these ids, in one pass over the queue.
+     *
+     * @return the removed positions, in descending order
+     */
+    @NonNull
+    public synchronized int[] removeSongIds(@NonNull int[] songIds) {
+        final int size = mOriginal.size();
+        if (songIds.length == 0 || size == 0) return new int[0];
+        final int[] sortedIds = songIds.clone();
+        Arrays.sort(sortedIds);
+
+        // original index -> index once the songs are removed, or -1 if removed
+        final int[] newIndex = new int[size];
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            final Song song = mOriginal.get(i);
+            if (Arrays.binarySearch(sortedIds, song.id) >= 0) {
+                newIndex[i] = -1;
+            } else {
+                mOriginal.set(kept, song);
+                newIndex[i] = kept++;
+            }
+        }
+        if (kept == size) return new int[0];
+        mOriginal.subList(kept, size).clear();
+
+        final int[] removed = new int[size - kept];
+        int count = removed.length;
+        if (!mShuffled) {
+            for (int i = 0; i < size; i++) {
+                if (newIndex[i] == -1) removed[--count] = i;
+            }
+            return removed;
+        }
+
+        int to = 0;
+        for (int position = 0; position < size; position++) {
+            final int index = newIndex[mOrder[position]];
+            if (index == -1) {
+                removed[--count] = position;
+            } else {
+                mOrder[to++] = index;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Move a song in the playing order. When shuffled, the original order is left as is.
+     */
+    public synchronized void move(int from, int to) {
+        if (from == to) return;
+        if (!mShuffled) {
+            mOriginal.add(to, mOriginal.remove(from));
+            return;
+        }
+
+        final int moved = mOrder[from];
+        if (from < to) {
+            System.arraycopy(mOrder, from + 1, mOrder, from, to - from);
+        } else {
+            System.arraycopy(mOrder, to, mOrder, to + 1, from - to);
+        }
+        mOrder[to] = moved;
+    }
+
+    public synchronized void clear() {
+        mOriginal.clear();
+    }
+
+    /**
+     * Copy of the songs in their original order, for saving the queue
+     */
+    @NonNull
+    public synchronized ArrayList<Song> getOriginalSongs() {
+        return new ArrayList<>(mOriginal);
+    }
+
+    /**
+     * Copy of the shuffle order, for saving the queue, or null if not shuffled
+     */
+    @Nullable
+    public synchronized int[] getShuffleOrder() {
+        return mShuffled ? Arrays.copyOf(mOrder, mOriginal.size()) : null;
+    }
+
+    private int toOriginalIndex(int position) {
+        return mShuffled ? mOrder[position] : position;
+    }
+
+    private static boolean isPermutation(@NonNull int[] order, int size) {
+        if (order.length != size) return false;
+        boolean[] seen = new boolean[size];
+        for (int index : order) {
+            if (index < 0 || index >= size || seen[index]) return false;
+            seen[index] = true;
+        }
+        return true;
+    }
+
+    private final class View extends AbstractList<Song> implements RandomAccess {
+        @Override
+        public Song get(int index) {
+            return PlayingQueue.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return PlayingQueue.this.size();
+        }
+    }
+}
@@ -35,6 +35,16 @@ public interface Playback {
 
     boolean setVolume(float l, float r);
 
+    /**
+     * @param gain volume multiplier of the current track, applied on top of {@link #setVolume}
+     */
+    void setTrackGain(float gain);
+
+    /**
+     * @param gain volume multiplier of the track set by the next {@link #setNextDataSource}
+     */
+    void setNextTrackGain(float gain);
+
     boolean setAudioSessionId(int sessionId);
 
     int getAudioSessionId();
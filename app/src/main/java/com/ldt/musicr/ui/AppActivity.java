@@ -34,6 +34,7 @@ import android.widget.LinearLayout;
 import android.widget.Toast;
 
 import com.ldt.musicr.App;
+import com.ldt.musicr.BuildConfig;
 import com.ldt.musicr.R;
 import com.ldt.musicr.common.AppConfig;
 import com.ldt.musicr.service.MusicPlayerRemote;
@@ -43,6 +44,7 @@ import com.ldt.musicr.ui.nowplaying.NowPlayingLayerFragment;
 import com.ldt.musicr.ui.playingqueue.PlayingQueueLayerFragment;
 import com.ldt.musicr.ui.maintab.BackStackController;
 import com.ldt.musicr.util.NavigationUtil;
+import com.ldt.musicr.util.PreferenceUtil;
 import com.facebook.ads.*;
 
 public class AppActivity extends MusicServiceActivity {
@@ -320,6 +322,19 @@ public class AppActivity extends MusicServiceActivity {
     @Override
     protected void onResume() {
         super.onResume();
+        if (BuildConfig.DEBUG) {
+            // preference reads per frame while the app is in the foreground, logged on pause
+            PreferenceUtil.getInstance(this).startReadTracing();
+        }
+    }
+
+    @Override
+    protected void onPause() {
+        if (BuildConfig.DEBUG) {
+            PreferenceUtil.getInstance(this).stopReadTracing();
+            PreferenceUtil.getInstance(this).dumpReadMetrics();
+        }
+        super.onPause();
     }
 
     @Override
@@ -1,11 +1,8 @@
 package com.ldt.musicr.ui;
 
 import android.annotation.TargetApi;
-import android.content.BroadcastReceiver;
 import android.content.ComponentName;
 import android.content.Context;
-import android.content.Intent;
-import android.content.IntentFilter;
 import android.content.ServiceConnection;
 import android.content.res.Configuration;
 import android.content.res.Resources;
@@ -18,16 +15,14 @@ import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 
 import com.ldt.musicr.helper.LocaleHelper;
+import com.ldt.musicr.helper.songpreview.SongHighlightAnalyzer;
 import com.ldt.musicr.helper.songpreview.SongPreviewController;
 import com.ldt.musicr.loader.medialoader.PaletteGenerator;
 import com.ldt.musicr.notification.GlobalEventBusMusicEventListener;
+import com.ldt.musicr.service.MusicEventDispatcher;
 import com.ldt.musicr.service.MusicPlayerRemote;
 import com.ldt.musicr.service.MusicServiceEventListener;
 
-import com.ldt.musicr.service.MusicService;
-
-import java.lang.ref.WeakReference;
-import java.util.ArrayList;
 import java.util.Locale;
 
 /**
@@ -36,11 +31,13 @@ import java.util.Locale;
  */
 
 public abstract class MusicServiceActivity extends AppCompatActivity implements MusicServiceEventListener {
-    private final ArrayList<MusicServiceEventListener> mMusicServiceEventListeners = new ArrayList<>();
+    private static final MusicServiceEventListener[] NO_LISTENERS = new MusicServiceEventListener[0];
+
+    /* Copy-on-write: replaced on add or remove, so fan-out iterates a stable array without allocating */
+    private MusicServiceEventListener[] mMusicServiceEventListeners = NO_LISTENERS;
 
     private MusicPlayerRemote.ServiceToken serviceToken;
-    private MusicStateReceiver musicStateReceiver;
-    private boolean receiverRegistered;
+    private boolean dispatcherRegistered;
 
     private SongPreviewController mSongPreviewController = null;
 
@@ -68,6 +65,7 @@ public abstract class MusicServiceActivity extends AppCompatActivity implements
             mSongPreviewController = SongPreviewController.getInstance();
         }
         addMusicServiceEventListener(mSongPreviewController);
+        SongHighlightAnalyzer.getInstance(this).startBackgroundAnalysis();
     }
 
     /**
@@ -84,15 +82,15 @@ public abstract class MusicServiceActivity extends AppCompatActivity implements
 
     @Override
     protected void onDestroy() {
-        if(mPaletteGenerator !=null) mPaletteGenerator.cancel();
-        mPaletteGenerator = null;
+        mPaletteGenerator.cancel();
 
         if(mSongPreviewController != null) mSongPreviewController.destroy();
+        SongHighlightAnalyzer.getInstance(this).stopBackgroundAnalysis();
 
         MusicPlayerRemote.unbindFromService(serviceToken);
-        if (receiverRegistered) {
-            unregisterReceiver(musicStateReceiver);
-            receiverRegistered = false;
+        if (dispatcherRegistered) {
+            MusicEventDispatcher.getInstance().removeListener(this);
+            dispatcherRegistered = false;
         }
 
         removeAllMusicServiceEventListener();
@@ -101,36 +99,41 @@ public abstract class MusicServiceActivity extends AppCompatActivity implements
 
     public void addMusicServiceEventListener(final MusicServiceEventListener listener) {
         if (listener != null) {
-            mMusicServiceEventListeners.add(listener);
+            addListenerAt(listener, mMusicServiceEventListeners.length);
         }
     }
 
     public void removeMusicServiceEventListener(final MusicServiceEventListener listener) {
-        if (listener != null) {
-            mMusicServiceEventListeners.remove(listener);
+        if (listener == null) return;
+        final MusicServiceEventListener[] old = mMusicServiceEventListeners;
+        for (int i = 0; i < old.length; i++) {
+            if (old[i] == listener) {
+                MusicServiceEventListener[] listeners = new MusicServiceEventListener[old.length - 1];
+                System.arraycopy(old, 0, listeners, 0, i);
+                System.arraycopy(old, i + 1, listeners, i, old.length - i - 1);
+                mMusicServiceEventListeners = listeners;
+                return;
+            }
         }
     }
     public void removeAllMusicServiceEventListener() {
-        mMusicServiceEventListeners.clear();
+        mMusicServiceEventListeners = NO_LISTENERS;
+    }
+
+    private void addListenerAt(@NonNull final MusicServiceEventListener listener, int index) {
+        final MusicServiceEventListener[] old = mMusicServiceEventListeners;
+        MusicServiceEventListener[] listeners = new MusicServiceEventListener[old.length + 1];
+        System.arraycopy(old, 0, listeners, 0, index);
+        listeners[index] = listener;
+        System.arraycopy(old, index, listeners, index + 1, old.length - index);
+        mMusicServiceEventListeners = listeners;
     }
 
     @Override
     public void onServiceConnected() {
-        if (!receiverRegistered) {
-            musicStateReceiver = new MusicStateReceiver(this);
-
-            final IntentFilter filter = new IntentFilter();
-            filter.addAction(MusicService.PLAY_STATE_CHANGED);
-            filter.addAction(MusicService.SHUFFLE_MODE_CHANGED);
-            filter.addAction(MusicService.REPEAT_MODE_CHANGED);
-            filter.addAction(MusicService.META_CHANGED);
-            filter.addAction(MusicService.QUEUE_CHANGED);
-            filter.addAction(MusicService.MEDIA_STORE_CHANGED);
-            filter.addAction(PaletteGenerator.PALETTE_CHANGED);
-
-            registerReceiver(musicStateReceiver, filter);
-
-            receiverRegistered = true;
+        if (!dispatcherRegistered) {
+            MusicEventDispatcher.getInstance().addListener(this);
+            dispatcherRegistered = true;
         }
 
         for (MusicServiceEventListener listener : mMusicServiceEventListeners) {
@@ -142,9 +145,9 @@ public abstract class MusicServiceActivity extends AppCompatActivity implements
 
     @Override
     public void onServiceDisconnected() {
-        if (receiverRegistered) {
-            unregisterReceiver(musicStateReceiver);
-            receiverRegistered = false;
+        if (dispatcherRegistered) {
+            MusicEventDispatcher.getInstance().removeListener(this);
+            dispatcherRegistered = false;
         }
 
         for (MusicServiceEventListener listener : mMusicServiceEventListeners) {
@@ -154,7 +157,7 @@ public abstract class MusicServiceActivity extends AppCompatActivity implements
         }
     }
 
-    PaletteGenerator mPaletteGenerator = null;
+    private final PaletteGenerator mPaletteGenerator = new PaletteGenerator();
 
     @Override
     public void onPlayingMetaChanged() {
@@ -167,10 +170,6 @@ public abstract class MusicServiceActivity extends AppCompatActivity implements
     }
 
     public void refreshPalette() {
-        if(mPaletteGenerator != null) {
-            mPaletteGenerator.cancel();
-        }
-        mPaletteGenerator = new PaletteGenerator();
         mPaletteGenerator.run();
     }
 
@@ -228,56 +227,13 @@ public abstract class MusicServiceActivity extends AppCompatActivity implements
         }
     }
 
-    private static final class MusicStateReceiver extends BroadcastReceiver {
-
-        private final WeakReference<MusicServiceActivity> reference;
-
-        public MusicStateReceiver(final MusicServiceActivity activity) {
-            reference = new WeakReference<>(activity);
-        }
-
-        @Override
-        public void onReceive(final Context context, @NonNull final Intent intent) {
-            final String action = intent.getAction();
-            MusicServiceActivity activity = reference.get();
-            if (activity != null&&action!=null) {
-                switch (action) {
-                    case MusicService.META_CHANGED:
-                        activity.onPlayingMetaChanged();
-                        break;
-                    case MusicService.QUEUE_CHANGED:
-                        activity.onQueueChanged();
-                        break;
-                    case MusicService.PLAY_STATE_CHANGED:
-                        activity.onPlayStateChanged();
-                        break;
-                    case MusicService.REPEAT_MODE_CHANGED:
-                        activity.onRepeatModeChanged();
-                        break;
-                    case MusicService.SHUFFLE_MODE_CHANGED:
-                        activity.onShuffleModeChanged();
-                        break;
-                    case MusicService.MEDIA_STORE_CHANGED:
-                        activity.onMediaStoreChanged();
-                        break;
-                    case PaletteGenerator.PALETTE_CHANGED:
-                        activity.onPaletteChanged();
-                }
-            }
-        }
-    }
-
-
     public void addMusicServiceEventListener(final MusicServiceEventListener listener, boolean firstIndex) {
         if (listener == this) {
             throw new UnsupportedOperationException("Override the method, don't add a listener");
         }
 
         if (listener != null) {
-            if(firstIndex)
-                mMusicServiceEventListeners.add(0,listener);
-            else
-                mMusicServiceEventListeners.add(listener);
+            addListenerAt(listener, firstIndex ? 0 : mMusicServiceEventListeners.length);
         }
     }
 
@@ -11,6 +11,7 @@ import com.ldt.musicr.R;
 import com.ldt.musicr.loader.medialoader.PlaylistLoader;
 import com.ldt.musicr.model.Playlist;
 import com.ldt.musicr.model.Song;
+import com.ldt.musicr.model.SongRefList;
 import com.ldt.musicr.util.PlaylistsUtil;
 
 import java.util.ArrayList;
@@ -30,7 +31,7 @@ public class AddToPlaylistDialog extends DialogFragment {
     public static AddToPlaylistDialog create(ArrayList<Song> songs) {
         AddToPlaylistDialog dialog = new AddToPlaylistDialog();
         Bundle args = new Bundle();
-        args.putParcelableArrayList("songs", songs);
+        args.putParcelable("songs", new SongRefList(songs));
         dialog.setArguments(args);
         return dialog;
     }
@@ -48,9 +49,9 @@ public class AddToPlaylistDialog extends DialogFragment {
                 .title(R.string.add_playlist_title)
                 .items(playlistNames)
                 .itemsCallback((materialDialog, view, i, charSequence) -> {
-                    //noinspection unchecked
-                    final ArrayList<Song> songs = getArguments().getParcelableArrayList("songs");
-                    if (songs == null) return;
+                    final SongRefList refs = getArguments().getParcelable("songs");
+                    if (refs == null) return;
+                    final ArrayList<Song> songs = refs.getSongs(getActivity());
                     if (i == 0) {
                         materialDialog.dismiss();
                         CreatePlaylistDialog.create(songs).show(getActivity().getSupportFragmentManager(), "ADD_TO_PLAYLIST");
@@ -12,6 +12,7 @@ import com.afollestad.materialdialogs.MaterialDialog;
 
 import com.ldt.musicr.R;
 import com.ldt.musicr.model.Song;
+import com.ldt.musicr.model.SongRefList;
 import com.ldt.musicr.util.PlaylistsUtil;
 
 import java.util.ArrayList;
@@ -42,7 +43,7 @@ public class CreatePlaylistDialog extends DialogFragment {
     public static CreatePlaylistDialog create(ArrayList<Song> songs) {
         CreatePlaylistDialog dialog = new CreatePlaylistDialog();
         Bundle args = new Bundle();
-        args.putParcelableArrayList(SONGS, songs);
+        args.putParcelable(SONGS, songs == null ? null : new SongRefList(songs));
         dialog.setArguments(args);
         return dialog;
     }
@@ -66,7 +67,8 @@ public class CreatePlaylistDialog extends DialogFragment {
                             final int playlistId = PlaylistsUtil.createPlaylist(getActivity(), name);
                             if (getActivity() != null) {
                                 //noinspection unchecked
-                                ArrayList<Song> songs = getArguments().getParcelableArrayList(SONGS);
+                                SongRefList refs = getArguments().getParcelable(SONGS);
+                                ArrayList<Song> songs = refs == null ? null : refs.getSongs(getActivity());
                                 if (songs != null && !songs.isEmpty()) {
                                     PlaylistsUtil.addToPlaylist(getActivity(), songs, playlistId, true);
                                 }
@@ -9,6 +9,7 @@ import android.text.Html;
 import com.afollestad.materialdialogs.MaterialDialog;
 import com.ldt.musicr.R;
 import com.ldt.musicr.model.Song;
+import com.ldt.musicr.model.SongRefList;
 import com.ldt.musicr.util.MusicUtil;
 
 import java.util.ArrayList;
@@ -29,7 +30,7 @@ public class DeleteSongsDialog extends DialogFragment {
     public static DeleteSongsDialog create(ArrayList<Song> songs) {
         DeleteSongsDialog dialog = new DeleteSongsDialog();
         Bundle args = new Bundle();
-        args.putParcelableArrayList("songs", songs);
+        args.putParcelable("songs", new SongRefList(songs));
         dialog.setArguments(args);
         return dialog;
     }
@@ -37,11 +38,11 @@ public class DeleteSongsDialog extends DialogFragment {
     @NonNull
     @Override
     public Dialog onCreateDialog(Bundle savedInstanceState) {
-        //noinspection unchecked
-        final ArrayList<Song> songs = getArguments().getParcelableArrayList("songs");
+        final SongRefList refs = getArguments().getParcelable("songs");
+        final ArrayList<Song> songs = refs.getSongs(getActivity());
         int title;
         CharSequence content;
-        if (songs.size() > 1) {
+        if (songs.size() != 1) {
             title = R.string.delete_songs_title;
             content = Html.fromHtml(getString(R.string.delete_x_songs, songs.size()));
         } else {
@@ -14,6 +14,7 @@ import android.view.View;
 import android.view.ViewGroup;
 
 import com.ldt.musicr.App;
+import com.ldt.musicr.helper.tag.SongTagService;
 import com.ldt.musicr.loader.medialoader.SongLoader;
 import com.ldt.musicr.ui.widget.UpdateToastMediaScannerCompletionListener;
 import com.ldt.musicr.ui.widget.dialog.LoadingScreenDialog;
@@ -218,6 +219,7 @@ public class WriteTagDialog extends LoadingScreenDialog {
                         }
 
                         audioFile.commit();
+                        SongTagService.getInstance().invalidate(filePath);
                     } catch (@NonNull Exception e) {
                         e.printStackTrace();
                         mMessage = e.getMessage();
@@ -20,6 +20,8 @@ import android.widget.Toast;
 
 import com.ldt.musicr.R;
 import com.ldt.musicr.common.AppConfig;
+import com.ldt.musicr.helper.lyrics.LyricsProvider;
+import com.ldt.musicr.interactors.CancellationToken;
 import com.ldt.musicr.model.Song;
 import com.ldt.musicr.notification.EventKey;
 import com.ldt.musicr.service.MusicPlayerRemote;
@@ -27,7 +29,6 @@ import com.ldt.musicr.service.MusicServiceEventListener;
 import com.ldt.musicr.ui.MusicServiceActivity;
 import com.ldt.musicr.ui.base.FloatingViewFragment;
 import com.ldt.musicr.ui.dialog.WriteTagDialog;
-import com.ldt.musicr.util.MusicUtil;
 import com.ldt.musicr.util.Tool;
 import com.ldt.musicr.util.Util;
 import com.ldt.musicr.utils.ArtworkUtils;
@@ -174,6 +175,10 @@ public class LyricFragment extends FloatingViewFragment implements MusicServiceE
 
     @Override
     public void onDestroyView() {
+        if(mLyricToken != null) {
+            mLyricToken.cancel();
+            mLyricToken = null;
+        }
         if(getActivity() instanceof MusicServiceActivity)
             ((MusicServiceActivity)getActivity()).removeMusicServiceEventListener(this);
         super.onDestroyView();
@@ -183,13 +188,30 @@ public class LyricFragment extends FloatingViewFragment implements MusicServiceE
     @BindView(R.id.description) TextView mDescription;
     @BindView(R.id.image)
     ImageView mImageView;
+    @Nullable
+    private CancellationToken mLyricToken = null;
+
     private void updateLyric() {
         if(mSong == null) {
             Log.d(TAG, "updateLyric: Song is null");
             return;
         }
 
-        mLyricString = MusicUtil.getLyrics(mSong);
+        mTitle.setText(mSong.title);
+        mDescription.setText(mSong.artistName);
+        ArtworkUtils.getBitmapRequestBuilder(mImageView.getContext(), mSong).placeholder(R.drawable.music_style).error(R.drawable.music_style).into(mImageView);
+
+        if(mLyricToken != null) mLyricToken.cancel();
+        final CancellationToken token = new CancellationToken();
+        mLyricToken = token;
+        LyricsProvider.getInstance().load(mSong, token, (song, lyrics) -> {
+            if(mLyricToken == token) mLyricToken = null;
+            showLyric(lyrics == null ? null : lyrics.data);
+        });
+    }
+
+    private void showLyric(@Nullable String lyric) {
+        mLyricString = lyric;
         if(mLyricString==null || mLyricString.isEmpty()) {
             mLyricString = "This song has no lyric.";
         }
@@ -201,11 +223,8 @@ public class LyricFragment extends FloatingViewFragment implements MusicServiceE
         } else {
             mLyricContent.setText(mLyricString);
         }
-
-        mTitle.setText(mSong.title);
-        mDescription.setText(mSong.artistName);
-        ArtworkUtils.getBitmapRequestBuilder(mImageView.getContext(), mSong).placeholder(R.drawable.music_style).error(R.drawable.music_style).into(mImageView);
     }
+
     private void setClipboard(Context context, String text) {
         ClipboardManager clipboard = (ClipboardManager) context.getSystemService(Context.CLIPBOARD_SERVICE);
         ClipData clip = ClipData.newPlainText("Copied Text", text);
@@ -215,7 +234,7 @@ public class LyricFragment extends FloatingViewFragment implements MusicServiceE
     @OnClick(R.id.copy)
     void copy() {
         if(getContext() !=null) {
-            setClipboard(getContext(), MusicUtil.getLyrics(mSong));
+            setClipboard(getContext(), mLyricString);
             Toast.makeText(getContext(),"Copied",Toast.LENGTH_SHORT).show();
         }
     }
@@ -316,6 +335,7 @@ public class LyricFragment extends FloatingViewFragment implements MusicServiceE
         mEditConstraintRoot.setVisibility(View.INVISIBLE);
         mLyricConstraintRoot.setVisibility(View.VISIBLE);
 
+        if(mEditingSong != null) LyricsProvider.getInstance().invalidate(mEditingSong);
         updateLyric();
     }
 
@@ -8,6 +8,8 @@ import android.text.TextWatcher
 import android.view.GestureDetector
 import android.view.MotionEvent
 import android.view.View
+import androidx.annotation.MainThread
+import androidx.annotation.WorkerThread
 import androidx.interpolator.view.animation.FastOutSlowInInterpolator
 import androidx.recyclerview.widget.LinearLayoutManager
 import androidx.recyclerview.widget.RecyclerView
@@ -18,8 +20,11 @@ import com.ldt.musicr.common.MediaManager
 import com.ldt.musicr.helper.extension.post
 import com.ldt.musicr.helper.songpreview.SongPreviewController
 import com.ldt.musicr.interactors.AppExecutors
+import com.ldt.musicr.interactors.CancellationToken
+import com.ldt.musicr.interactors.LatestTaskRunner
+import com.ldt.musicr.interactors.TaskLane
+import com.ldt.musicr.interactors.newCancellationToken
 import com.ldt.musicr.interactors.postDelayedOnUiThread
-import com.ldt.musicr.interactors.runOnUiThread
 import com.ldt.musicr.model.Song
 import com.ldt.musicr.model.item.DataItem
 import com.ldt.musicr.notification.EventKey
@@ -46,8 +51,11 @@ class SearchFragment: FloatingViewFragment(R.layout.screen_search_floating) {
 
     private val adapter: MediaAdapter = MediaAdapter()
 
+    private val searchRunner = LatestTaskRunner("search", AppExecutors.cpu(), TaskLane.PRIORITY_IMMEDIATE)
+
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)
+        searchRunner.bindTo(newCancellationToken())
         SongPreviewController.getInstance().addSongPreviewListener(adapter)
     }
 
@@ -164,70 +172,79 @@ class SearchFragment: FloatingViewFragment(R.layout.screen_search_floating) {
     }
 
     private fun search(text: String) {
-        AppExecutors.io().execute {
-            val keyword = text.replace("\n\r", " ").replace('\n', ' ').replace('\r', ' ').trim()
-
-            val result = mutableListOf<DataItem>()
+        searchRunner.submit({ token -> searchInternal(text, token) }) { result ->
+            submitList(result)
+        }
+    }
 
-            if(keyword.isBlank()) {
-                if(AppConfig.isShowEmptyViewInLibrarySongTab) {
-                    result.add(DataItem.Empty.NoResult)
-                }
-                submitList(result)
-                return@execute
-            }
+    @WorkerThread
+    private fun searchInternal(text: String, token: CancellationToken): List<DataItem>? {
+        val keyword = text.replace("\n\r", " ").replace('\n', ' ').replace('\r', ' ').trim()
 
-            if(!MediaManager.isLoadedSongs) {
-                // fetch later
-                return@execute
-            }
+        val result = mutableListOf<DataItem>()
 
-            val playlist = MediaManager.getPlaylist(MediaKey.PLAYLIST_ID_ALL_SONGS) ?: run {
-                if(AppConfig.isShowEmptyViewInLibrarySongTab) {
-                    result.add(DataItem.Empty.Error)
-                }
-                submitList(result)
-                return@execute
+        if(keyword.isBlank()) {
+            if(AppConfig.isShowEmptyViewInLibrarySongTab) {
+                result.add(DataItem.Empty.NoResult)
             }
+            return result
+        }
 
-            val songs = mutableListOf<DataItem.SongItem>()
-            val srcTopHitSongs = mutableListOf<Song>()
+        if(!MediaManager.isLoadedSongs) {
+            // fetch later
+            return null
+        }
 
-            playlist.songs.forEach { songId ->
-                MediaManager.getSong(songId)?.also { song ->
-                    srcTopHitSongs.add(song)
-                }
+        val playlist = MediaManager.getPlaylist(MediaKey.PLAYLIST_ID_ALL_SONGS) ?: run {
+            if(AppConfig.isShowEmptyViewInLibrarySongTab) {
+                result.add(DataItem.Empty.Error)
             }
+            return result
+        }
 
-            val desTopHitSongs = mutableListOf<Song>()
-            SearchUtils.filterTopHitEntities(srcTopHitSongs, desTopHitSongs, keyword, 0)
-            desTopHitSongs.sortByDescending { it.searchScore }
+        val songs = mutableListOf<DataItem.SongItem>()
+        val srcTopHitSongs = mutableListOf<Song>()
 
-            desTopHitSongs.forEach { song ->
-                songs.add(DataItem.SongItem(DataItem.FLAG_DIM, song, songs.size, playlist.id, name = ViewUtils.getHighlightedText(song.title, song.spanPosList, ColorProvider.baseColorL45, ViewUtils.MEDIUM)))
+        playlist.songs.forEach { songId ->
+            MediaManager.getSong(songId)?.also { song ->
+                srcTopHitSongs.add(song)
             }
+        }
 
-            result.addAll(songs)
+        token.throwIfCancelled()
+        val topHits = SearchUtils.filterTopHitEntities(srcTopHitSongs, keyword, 0, token = token)
+        token.throwIfCancelled()
 
-            // Add Sorting Tile
-            if(AppConfig.isShowSortingTileInLibrarySongTab && songs.isNotEmpty()) {
-                result.add(0, DataItem.SortingTile)
-            }
+        for (i in 0 until topHits.size) {
+            if(i % CHECKPOINT_INTERVAL == 0) token.throwIfCancelled()
+            val song = srcTopHitSongs[topHits.getIndex(i)]
+            val name = ViewUtils.getHighlightedText(song.title, topHits, i, ColorProvider.baseColorL45, ViewUtils.MEDIUM)
+            songs.add(DataItem.SongItem(DataItem.FLAG_DIM, song, songs.size, playlist.id, name = name))
+        }
 
-            if(result.isNotEmpty()) {
-                result.add(0, DataItem.Dim.TopGradientDim)
-                result.add(DataItem.Dim.BottomGradientDim)
-            }
+        result.addAll(songs)
 
-            submitList(result)
+        // Add Sorting Tile
+        if(AppConfig.isShowSortingTileInLibrarySongTab && songs.isNotEmpty()) {
+            result.add(0, DataItem.SortingTile)
         }
+
+        if(result.isNotEmpty()) {
+            result.add(0, DataItem.Dim.TopGradientDim)
+            result.add(DataItem.Dim.BottomGradientDim)
+        }
+
+        return result
     }
 
+    @MainThread
     private fun submitList(data: List<DataItem>) {
-        runOnUiThread {
-            if(isAdded && !isRemoving) {
-                adapter.submitList(data)
-            }
+        if(isAdded && !isRemoving) {
+            adapter.submitList(data)
         }
     }
+
+    companion object {
+        private const val CHECKPOINT_INTERVAL = 256
+    }
 }
\ No newline at end of file
@@ -219,7 +219,7 @@ class BackStackController : CardLayerFragment(), OnPageChangeListener {
     override fun onPageScrollStateChanged(i: Int) {}
 
     private fun updateBackImage() {
-        AppExecutors.io().execute {
+        AppExecutors.disk().execute {
             val isUseArtistImageAsBackground = App.getInstance().preferencesUtility.isUsingArtistImageAsBackground
             val currentSong = if(isUseArtistImageAsBackground) MusicPlayerRemote.getCurrentSong() else null
             val artist = currentSong?.let { MediaManager.getArtist(it.artistId) }
@@ -65,7 +65,7 @@ public class FeatureLinearHolder {
 
     public void setSuggestedPlaylists(List<Playlist> list) {
         mPlaylistMiniAdapter.bind(list);
-        if (mPlaylistMiniAdapter.getItemCount() != 0) mPlayListFrame.setVisibility(View.VISIBLE);
+        if (list != null && !list.isEmpty()) mPlayListFrame.setVisibility(View.VISIBLE);
         else mPlayListFrame.setVisibility(View.GONE);
     }
 
@@ -119,7 +119,8 @@ public class FeatureLinearHolder {
         public void bind(List<Playlist> playlists) {
 
             mPlaylistAdapter.setData(playlists);
-            mCount.setText(String.format("%d", mPlaylistAdapter.getItemCount()));
+            // the adapter diffs in the background, its count is still the previous one
+            mCount.setText(String.format("%d", playlists == null ? 0 : playlists.size()));
         }
 
         public void notifyDataSetChanged() {
@@ -21,6 +21,7 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 
+import com.ldt.musicr.contract.ListDiffer;
 import com.ldt.musicr.loader.medialoader.TopAndRecentlyPlayedTracksLoader;
 import com.ldt.musicr.model.PlaylistSong;
 import com.ldt.musicr.util.PlaylistArtworkGenerator;
@@ -60,29 +61,40 @@ public class FeaturePlaylistAdapter extends RecyclerView.Adapter<FeaturePlaylist
         void onClickPlaylist(Playlist playlist, @Nullable Bitmap bitmap);
     }
 
+    public static final ListDiffer.ItemIdentity<Playlist> PLAYLIST_IDENTITY = new ListDiffer.ItemIdentity<Playlist>() {
+        @Override
+        public long getItemId(@NotNull Playlist item) {
+            return item.id;
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NotNull Playlist oldItem, @NotNull Playlist newItem) {
+            return oldItem.equals(newItem);
+        }
+    };
+
+    private final ListDiffer<Playlist> mDiffer = new ListDiffer<>(this, PLAYLIST_IDENTITY, mPlaylistData);
+
     public FeaturePlaylistAdapter(Context mContext, boolean showAuto) {
         this.mContext = mContext;
         this.showAuto = showAuto;
     }
 
     public void unBindAdapter() {
+        mDiffer.cancel();
         mListener = null;
         mContext = null;
     }
 
     public void setData(List<Playlist> data) {
-        mPlaylistData.clear();
-        if (data != null) {
-            mPlaylistData.addAll(data);
-            notifyDataSetChanged();
-
-        }
+        mDiffer.submit(data, null);
     }
 
     public void addData(ArrayList<Playlist> data) {
         if (data != null) {
             int posBefore = mPlaylistData.size();
             mPlaylistData.addAll(data);
+            mDiffer.onBackingListModified();
             notifyItemRangeInserted(posBefore, data.size());
         }
     }
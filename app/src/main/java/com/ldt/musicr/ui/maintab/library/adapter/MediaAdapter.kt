@@ -5,10 +5,14 @@ import android.view.LayoutInflater
 import android.view.ViewGroup
 import androidx.annotation.MainThread
 import androidx.recyclerview.widget.RecyclerView
+import com.ldt.musicr.addon.fastscrollrecyclerview.SectionIndex
 import com.ldt.musicr.common.AppConfig
+import com.ldt.musicr.contract.BindStats
+import com.ldt.musicr.contract.ListDiffer
 import com.ldt.musicr.helper.songpreview.PreviewSong
 import com.ldt.musicr.helper.songpreview.SongPreviewListener
 import com.ldt.musicr.interactors.AppExecutors
+import com.ldt.musicr.interactors.TaskLane
 import com.ldt.musicr.interactors.postOnUiThread
 import com.ldt.musicr.model.item.DataItem
 import com.ldt.musicr.notification.Action
@@ -17,12 +21,14 @@ import com.ldt.musicr.notification.PayLoadKey
 import com.ldt.musicr.notification.ViewTypeKey
 import com.ldt.musicr.service.MusicPlayerRemote
 import com.ldt.musicr.ui.maintab.library.viewholder.*
+import com.ldt.musicr.util.MusicUtil
+import com.simplecityapps.recyclerview_fastscroll.views.FastScrollRecyclerView
 import java.lang.IllegalArgumentException
 
 /**
  * Ghost Adapter that binds not only media item but also media view control
  */
-open class MediaAdapter: AbsListAdapter<DataItem, RecyclerView.ViewHolder>(), SongPreviewListener, ActionResponder {
+open class MediaAdapter: AbsListAdapter<DataItem, RecyclerView.ViewHolder>(), SongPreviewListener, ActionResponder, FastScrollRecyclerView.SectionedAdapter {
     var actionResponder: ActionResponder? = null
     var previewingSong: PreviewSong? = null
 
@@ -73,8 +79,10 @@ open class MediaAdapter: AbsListAdapter<DataItem, RecyclerView.ViewHolder>(), So
     override fun onBindViewHolder(holder: RecyclerView.ViewHolder, position: Int, payloads: MutableList<Any>) {
         if (payloads.isEmpty()) {
             // flow bind full
+            bindStats.onFullBind()
             super.onBindViewHolder(holder, position, payloads)
         } else {
+            bindStats.onPartialBind()
             payloads.forEach {
                 when (it) {
                     PayLoadKey.CHANGE_PLAYING_STATE -> {
@@ -129,7 +137,7 @@ open class MediaAdapter: AbsListAdapter<DataItem, RecyclerView.ViewHolder>(), So
             return
         }
 
-        AppExecutors.io().execute {
+        AppExecutors.cpu().execute(TaskLane.PRIORITY_HIGH) {
             val playingIdNew = MusicPlayerRemote.getCurrentSong().id
             val playingStateNew = MusicPlayerRemote.isPlaying()
 
@@ -150,6 +158,19 @@ open class MediaAdapter: AbsListAdapter<DataItem, RecyclerView.ViewHolder>(), So
         }
     }
 
+    override fun getItemIdentity(): ListDiffer.ItemIdentity<DataItem> = DataItemIdentity
+
+    override fun onListSubmitted() {
+        // tiles and dims have no label and join the section of the song next to them
+        sectionIndex = SectionIndex.build(itemCount) { position ->
+            (currentList[position] as? DataItem.SongItem)?.let { MusicUtil.getSectionName(it.song.title) }
+        }
+    }
+
+    override fun getSectionName(position: Int): String {
+        return sectionIndex.getLabel(position)
+    }
+
     fun onThemeChanged() {
         if(itemCount != 0) {
             notifyItemRangeChanged(0, itemCount, PayLoadKey.CHANGE_THEME)
@@ -157,17 +178,81 @@ open class MediaAdapter: AbsListAdapter<DataItem, RecyclerView.ViewHolder>(), So
     }
 }
 
+private object DataItemIdentity : ListDiffer.ItemIdentity<DataItem> {
+    private const val PLAYLIST_ID_BASE = 1L shl 40
+
+    override fun getItemId(item: DataItem): Long {
+        return when (item) {
+            is DataItem.SongItem -> item.song.id.toLong()
+            is DataItem.PlaylistItem -> PLAYLIST_ID_BASE + item.playlist.id
+            DataItem.SortingTile -> -1L
+            DataItem.Dim.TopGradientDim -> -2L
+            DataItem.Dim.BottomGradientDim -> -3L
+            DataItem.Empty.Error -> -4L
+            DataItem.Empty.NoResult -> -5L
+            is DataItem.FeatureSectionTile -> -6L
+        }
+    }
+
+    override fun areContentsTheSame(oldItem: DataItem, newItem: DataItem): Boolean {
+        return when (oldItem) {
+            is DataItem.SongItem -> newItem is DataItem.SongItem &&
+                    oldItem.song == newItem.song &&
+                    oldItem.flags == newItem.flags &&
+                    oldItem.positionInData == newItem.positionInData &&
+                    isSameText(oldItem.name, newItem.name) &&
+                    isSameText(oldItem.subName, newItem.subName)
+            is DataItem.PlaylistItem -> newItem is DataItem.PlaylistItem &&
+                    oldItem.playlist === newItem.playlist &&
+                    isSameText(oldItem.name, newItem.name)
+            else -> oldItem === newItem
+        }
+    }
+
+    /**
+     * Spanned texts (e.g. search highlights) are rebuilt for every list, compare them by instance
+     */
+    private fun isSameText(old: CharSequence, new: CharSequence): Boolean {
+        return old === new || (old is String && new is String && old == new)
+    }
+}
+
 abstract class AbsListAdapter<T, V> : RecyclerView.Adapter<V>() where V : RecyclerView.ViewHolder {
     val currentList = mutableListOf<T>()
+    var sectionIndex: SectionIndex = SectionIndex.EMPTY
+        protected set
+    val bindStats = BindStats(javaClass.simpleName)
+    private var differ: ListDiffer<T>? = null
+
     fun getItem(position: Int): T = currentList[position]
     override fun getItemCount(): Int = currentList.size
 
+    /**
+     * Replace the list. With an [getItemIdentity] the change is diffed in the background and only
+     * the changed rows are rebound.
+     */
     @SuppressLint("NotifyDataSetChanged")
     @MainThread
     fun submitList(list: List<T>) {
-        currentList.clear()
-        currentList.addAll(list)
+        val identity = getItemIdentity()
+        if (identity == null) {
+            currentList.clear()
+            currentList.addAll(list)
+            onListSubmitted()
+
+            notifyDataSetChanged()
+            return
+        }
 
-        notifyDataSetChanged()
+        val differ = differ ?: ListDiffer(this, identity, currentList).also { differ = it }
+        differ.submit(list) { onListSubmitted() }
     }
+
+    protected open fun getItemIdentity(): ListDiffer.ItemIdentity<T>? = null
+
+    /**
+     * Called after [currentList] is replaced, before the change is notified
+     */
+    @MainThread
+    protected open fun onListSubmitted() {}
 }
\ No newline at end of file
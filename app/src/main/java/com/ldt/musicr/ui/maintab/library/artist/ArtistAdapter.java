@@ -24,8 +24,10 @@ import com.bumptech.glide.load.engine.GlideException;
 import com.bumptech.glide.request.RequestListener;
 import com.bumptech.glide.request.target.Target;
 import com.ldt.musicr.R;
+import com.ldt.musicr.addon.fastscrollrecyclerview.SectionIndex;
 import com.ldt.musicr.contract.AbsBindAbleHolder;
 import com.ldt.musicr.contract.AbsMediaAdapter;
+import com.ldt.musicr.contract.ListDiffer;
 import com.ldt.musicr.glide.ArtistGlideRequest;
 import com.ldt.musicr.glide.GlideApp;
 import com.ldt.musicr.helper.menu.MenuHelper;
@@ -33,6 +35,7 @@ import com.ldt.musicr.loader.medialoader.GenreLoader;
 import com.ldt.musicr.model.Artist;
 import com.ldt.musicr.model.Genre;
 import com.ldt.musicr.ui.bottomsheet.OptionBottomSheet;
+import com.ldt.musicr.util.MusicUtil;
 import com.ldt.musicr.util.PhonographColorUtil;
 import com.simplecityapps.recyclerview_fastscroll.views.FastScrollRecyclerView;
 
@@ -76,9 +79,38 @@ public class ArtistAdapter extends AbsMediaAdapter<AbsBindAbleHolder, Artist> im
     }
 
 
+    private SectionIndex mSectionIndex = SectionIndex.EMPTY;
+
+    private static final ListDiffer.ItemIdentity<Artist> ARTIST_IDENTITY = new ListDiffer.ItemIdentity<Artist>() {
+        @Override
+        public long getItemId(@NonNull Artist item) {
+            return item.getId();
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull Artist oldItem, @NonNull Artist newItem) {
+            return oldItem.getAlbumCount() == newItem.getAlbumCount()
+                    && oldItem.getSongCount() == newItem.getSongCount()
+                    && oldItem.getName().equals(newItem.getName());
+        }
+    };
+
+    @Nullable
+    @Override
+    protected ListDiffer.ItemIdentity<Artist> getItemIdentity() {
+        return ARTIST_IDENTITY;
+    }
+
+    /* Artist id -> genres, kept across data sets so rows left untouched by a diff keep their genres */
+    private final HashMap<Integer, ArrayList<Genre>> mGenreCache = new HashMap<>();
+
     @Override
     protected void onDataSet() {
         mGenres = new ArrayList[getData().size()];
+        for (int i = 0; i < mGenres.length; i++) {
+            mGenres[i] = mGenreCache.get(getData().get(i).getId());
+        }
+        mSectionIndex = SectionIndex.build(getItemCount(), position -> MusicUtil.getSectionName(getData().get(getDataPosition(position)).getName()));
     }
 
     private void clearAndCancelAllTask() {
@@ -100,6 +132,7 @@ public class ArtistAdapter extends AbsMediaAdapter<AbsBindAbleHolder, Artist> im
         if (itemPos >= 0 && itemPos < getData().size()) {
             if (artist.equals(getData().get(itemPos)) && mGenres[itemPos] == null) {
                 mGenres[itemPos] = genres;
+                mGenreCache.put(artist.getId(), genres);
                 notifyItemChanged(itemPos, GENRE_UPDATE);
             }
         }
@@ -145,9 +178,7 @@ public class ArtistAdapter extends AbsMediaAdapter<AbsBindAbleHolder, Artist> im
     @NonNull
     @Override
     public String getSectionName(int i) {
-        if (getData().get(getDataPosition(i)).getName().isEmpty())
-            return "";
-        return getData().get(getDataPosition(i)).getName().substring(0, 1);
+        return mSectionIndex.getLabel(i);
     }
 
     class ItemHolder extends AbsMediaHolder {
@@ -320,10 +351,13 @@ public class ArtistAdapter extends AbsMediaAdapter<AbsBindAbleHolder, Artist> im
     @Override
     public void onBindViewHolder(@NonNull AbsBindAbleHolder holder, int position, @NonNull List<Object> payloads) {
         if (!payloads.isEmpty() && holder instanceof ItemHolder) {
+            mBindStats.onPartialBind();
             if ((payloads.get(0)).equals(GENRE_UPDATE) && position < mGenres.length)
                 ((ItemHolder) holder).bindGenre(mGenres[position]);
-        } else
+        } else {
+            mBindStats.onFullBind();
             super.onBindViewHolder(holder, position, payloads);
+        }
     }
 
     private static final String GENRE_UPDATE = "genre_update";
@@ -19,6 +19,7 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 
+import com.ldt.musicr.contract.ListDiffer;
 import com.ldt.musicr.loader.medialoader.TopAndRecentlyPlayedTracksLoader;
 import com.ldt.musicr.ui.maintab.feature.FeaturePlaylistAdapter;
 import com.ldt.musicr.util.PlaylistArtworkGenerator;
@@ -46,6 +47,7 @@ public class PlaylistChildAdapter extends RecyclerView.Adapter<PlaylistChildAdap
     private static final String TAG = "PlaylistAdapter";
     public ArrayList<Playlist> mPlaylistData = new ArrayList<>();
     public FeaturePlaylistAdapter.PlaylistClickListener mListener;
+    private final ListDiffer<Playlist> mDiffer = new ListDiffer<>(this, FeaturePlaylistAdapter.PLAYLIST_IDENTITY, mPlaylistData);
 
     public void init(Context context) {
         mContext = context;
@@ -70,23 +72,20 @@ public class PlaylistChildAdapter extends RecyclerView.Adapter<PlaylistChildAdap
     }
 
     public void unBindAdapter() {
+        mDiffer.cancel();
         mListener = null;
         mContext = null;
     }
     public void setData(List<Playlist> data) {
-        Log.d(TAG, "setData: count = " + data.size());
-        mPlaylistData.clear();
-        if(data!=null) {
-            mPlaylistData.addAll(data);
-            notifyDataSetChanged();
-
-        }
+        Log.d(TAG, "setData: count = " + (data == null ? 0 : data.size()));
+        mDiffer.submit(data, null);
     }
 
     public void addData(ArrayList<Playlist> data) {
         if(data!=null) {
             int posBefore = mPlaylistData.size();
             mPlaylistData.addAll(data);
+            mDiffer.onBackingListModified();
             notifyItemRangeInserted(posBefore,data.size());
         }
     }
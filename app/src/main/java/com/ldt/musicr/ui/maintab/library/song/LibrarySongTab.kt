@@ -21,6 +21,9 @@ import com.ldt.musicr.common.AppConfig
 import com.ldt.musicr.common.MediaManager
 import com.ldt.musicr.helper.songpreview.SongPreviewController
 import com.ldt.musicr.interactors.AppExecutors
+import com.ldt.musicr.interactors.CancellationToken
+import com.ldt.musicr.interactors.TaskLane
+import com.ldt.musicr.interactors.newCancellationToken
 import com.ldt.musicr.interactors.runOnUiThread
 import com.ldt.musicr.model.item.DataItem
 import com.ldt.musicr.notification.Action
@@ -55,6 +58,8 @@ class LibrarySongTab : Fragment(R.layout.screen_songs_tab), SortOrderChangedList
 
     private val adapter: MediaAdapter = MediaAdapter()
 
+    private var lifecycleToken: CancellationToken = CancellationToken.NONE
+
     private fun refresh() {
         refreshView.animate().rotationBy(360f).setInterpolator(InterpolatorUtil.getInterpolator(6)).duration = 650
         refreshView.postDelayed({ /*adapter.randomize()*/ }, 300)
@@ -88,6 +93,7 @@ class LibrarySongTab : Fragment(R.layout.screen_songs_tab), SortOrderChangedList
 
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)
+        lifecycleToken = newCancellationToken()
         adapter.actionResponder = this
         SongPreviewController.getInstance().addSongPreviewListener(adapter)
     }
@@ -115,7 +121,7 @@ class LibrarySongTab : Fragment(R.layout.screen_songs_tab), SortOrderChangedList
     }
 
     private fun refreshData() {
-        AppExecutors.io().execute {
+        AppExecutors.cpu().execute(TaskLane.PRIORITY_HIGH, lifecycleToken) {
 
             if(!MediaManager.isLoadedPlaylists) {
                 // fetch later
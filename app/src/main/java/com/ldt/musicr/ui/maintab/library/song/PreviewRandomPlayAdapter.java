@@ -8,6 +8,7 @@ import android.view.View;
 import android.view.ViewGroup;
 
 import com.ldt.musicr.R;
+import com.ldt.musicr.contract.BindStats;
 import com.ldt.musicr.model.Song;
 
 import com.ldt.musicr.service.MusicPlayerRemote;
@@ -15,6 +16,7 @@ import com.ldt.musicr.utils.ArtworkUtils;
 import com.makeramen.roundedimageview.RoundedImageView;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Random;
 
 public class PreviewRandomPlayAdapter extends RecyclerView.Adapter<PreviewRandomPlayAdapter.ItemHolder> {
@@ -24,7 +26,16 @@ public class PreviewRandomPlayAdapter extends RecyclerView.Adapter<PreviewRandom
     private final Random mRandom = new Random();
     private long[] songIDs;
 
-    public PreviewRandomPlayAdapter() { }
+    private final BindStats mBindStats = new BindStats("PreviewRandomPlayAdapter");
+
+    public PreviewRandomPlayAdapter() {
+        // rows keep their holder (and loaded artwork) across data changes
+        setHasStableIds(true);
+    }
+
+    public BindStats getBindStats() {
+        return mBindStats;
+    }
 
     public void shuffle() {
         final Handler handler = new Handler();
@@ -49,10 +60,42 @@ public class PreviewRandomPlayAdapter extends RecyclerView.Adapter<PreviewRandom
     }
 
     public void setData(ArrayList<Song> songs) {
+        if (songs != null && updateInPlace(songs)) return;
+
         mBackUp.clear();
         if(songs!=null) mBackUp.addAll(songs);
         randomize();
     }
+
+    /**
+     * If the new data holds exactly the same songs, keep the current random order and only
+     * rebind the songs whose metadata changed.
+     *
+     * @return false if the set of songs is different and a new random order is needed
+     */
+    private boolean updateInPlace(ArrayList<Song> songs) {
+        if (mBackUp.isEmpty() || songs.size() != mBackUp.size()) return false;
+
+        HashMap<Integer, Song> newSongs = new HashMap<>(songs.size() * 2);
+        for (Song song : songs) {
+            newSongs.put(song.id, song);
+        }
+        if (newSongs.size() != mData.size()) return false;
+        for (Song song : mData) {
+            if (!newSongs.containsKey(song.id)) return false;
+        }
+
+        mBackUp.clear();
+        mBackUp.addAll(songs);
+        for (int i = 0; i < mData.size(); i++) {
+            Song newSong = newSongs.get(mData.get(i).id);
+            if (!newSong.equals(mData.get(i))) {
+                mData.set(i, newSong);
+                if (i < getItemCount()) notifyItemChanged(i);
+            }
+        }
+        return true;
+    }
     public void randomize() {
         ArrayList<Song> songs = new ArrayList<>(mBackUp);
         mData.clear();
@@ -87,9 +130,15 @@ public class PreviewRandomPlayAdapter extends RecyclerView.Adapter<PreviewRandom
 
     @Override
     public void onBindViewHolder(@NonNull ItemHolder itemHolder, int i) {
+        mBindStats.onFullBind();
         itemHolder.bind(mData.get(i));
     }
 
+    @Override
+    public long getItemId(int position) {
+        return mData.get(position).id;
+    }
+
     @Override
     public int getItemCount() {
         return  Math.max(0,mData.size() - 1);
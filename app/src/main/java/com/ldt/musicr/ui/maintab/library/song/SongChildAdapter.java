@@ -13,6 +13,7 @@ import android.view.ViewGroup;
 import android.widget.TextView;
 
 import com.ldt.musicr.R;
+import com.ldt.musicr.addon.fastscrollrecyclerview.SectionIndex;
 import com.ldt.musicr.contract.AbsBindAbleHolder;
 import com.ldt.musicr.contract.AbsSongAdapter;
 
@@ -20,6 +21,7 @@ import com.ldt.musicr.helper.menu.SongMenuHelper;
 import com.ldt.musicr.service.MusicPlayerRemote;
 import com.ldt.musicr.ui.bottomsheet.OptionBottomSheet;
 import com.ldt.musicr.ui.bottomsheet.SortOrderBottomSheet;
+import com.ldt.musicr.util.MusicUtil;
 import com.simplecityapps.recyclerview_fastscroll.views.FastScrollRecyclerView;
 
 import org.jetbrains.annotations.NotNull;
@@ -27,6 +29,7 @@ import java.util.Random;
 
 public class SongChildAdapter extends AbsSongAdapter
         implements FastScrollRecyclerView.SectionedAdapter,
+        com.ldt.musicr.addon.fastscrollrecyclerview.FastScrollRecyclerView.SectionIndexedAdapter,
         FastScrollRecyclerView.MeasurableAdapter,
         SortOrderBottomSheet.SortOrderChangedListener {
 
@@ -39,12 +42,30 @@ public class SongChildAdapter extends AbsSongAdapter
     public int mRandomItem = 0;
     private Random mRandom = new Random();
 
+    private SectionIndex mSectionIndex = SectionIndex.EMPTY;
+
     @Override
     protected void onDataSet() {
         super.onDataSet();
+        mSectionIndex = buildSectionIndex();
         randomize();
     }
 
+    private SectionIndex buildSectionIndex() {
+        // the sort tile at position 0 takes the section of the first song
+        return SectionIndex.build(getItemCount(), position -> position == 0 ? null : MusicUtil.getSectionName(getData().get(getDataPosition(position)).title));
+    }
+
+    @NonNull
+    @Override
+    public SectionIndex getSectionIndex() {
+        if (mSectionIndex.size() != getItemCount()) {
+            // items were inserted or removed one by one since the last data set
+            mSectionIndex = buildSectionIndex();
+        }
+        return mSectionIndex;
+    }
+
     public void destroy() {
         removeCallBack();
         removeOrderListener();
@@ -169,10 +190,7 @@ public class SongChildAdapter extends AbsSongAdapter
     @NonNull
     @Override
     public String getSectionName(int position) {
-        if(position==0) return "A";
-        if(getData().get(position-1).title.isEmpty())
-        return "A";
-        return getData().get(position-1).title.substring(0,1);
+        return getSectionIndex().getLabel(position);
     }
 
     public int getViewTypeHeight(RecyclerView recyclerView, @Nullable RecyclerView.ViewHolder viewHolder, int viewType) {
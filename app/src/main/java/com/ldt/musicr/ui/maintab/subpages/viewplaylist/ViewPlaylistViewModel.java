@@ -7,7 +7,7 @@ import androidx.lifecycle.MutableLiveData;
 
 import com.ldt.musicr.App;
 import com.ldt.musicr.R;
-import com.ldt.musicr.helper.AppExecutors;
+import com.ldt.musicr.interactors.AppExecutors;
 import com.ldt.musicr.helper.Reliable;
 import com.ldt.musicr.helper.ReliableEvent;
 import com.ldt.musicr.model.Playlist;
@@ -38,7 +38,7 @@ public class ViewPlaylistViewModel extends MPViewModel {
     private final MutableLiveData<ReliableEvent<State>> mStateLiveData = new MutableLiveData<>();
 
     public void refreshData() {
-        AppExecutors.getInstance().diskIO().execute(() -> {
+        AppExecutors.disk().execute(() -> {
             ReliableEvent<State> event = mStateLiveData.getValue();
             final State state = event != null ? event.getReliable().getData() : null;
 
@@ -37,6 +37,7 @@ import com.ldt.musicr.helper.menu.SongMenuHelper;
 import com.ldt.musicr.loader.medialoader.SongLoader;
 import com.ldt.musicr.service.MusicPlayerRemote;
 import com.ldt.musicr.service.MusicServiceEventListener;
+import com.ldt.musicr.service.PlaybackClock;
 import com.ldt.musicr.ui.AppActivity;
 import com.ldt.musicr.ui.CardLayerController;
 import com.ldt.musicr.ui.MusicServiceActivity;
@@ -209,7 +210,6 @@ public class NowPlayingLayerFragment extends CardLayerFragment implements MusicS
     public void onPlayStateChanged() {
         Log.d(TAG, "onPlayStateChanged");
         updatePlayPauseState();
-        mVisualSeekBar.postDelayed(mUpdateProgress, 10);
     }
 
     @Override
@@ -486,7 +486,6 @@ public class NowPlayingLayerFragment extends CardLayerFragment implements MusicS
             Log.d(TAG, "ignore visualize " + path);
         }
 
-        mVisualSeekBar.postDelayed(mUpdateProgress, 10);
         if (getActivity() instanceof MusicServiceActivity)
             ((MusicServiceActivity) getActivity()).refreshPalette();
     }
@@ -572,17 +571,13 @@ public class NowPlayingLayerFragment extends CardLayerFragment implements MusicS
     @Override
     public void onPause() {
         super.onPause();
-        fragmentPaused = true;
+        PlaybackClock.getInstance().removeListener(mProgressListener);
     }
 
     @Override
     public void onResume() {
         super.onResume();
-
-        fragmentPaused = false;
-        if (mVisualSeekBar != null) {
-            mVisualSeekBar.postDelayed(mUpdateProgress, 10);
-        }
+        PlaybackClock.getInstance().addListener(mProgressListener);
     }
 
     ////////////////////////////////
@@ -590,30 +585,14 @@ public class NowPlayingLayerFragment extends CardLayerFragment implements MusicS
     ////////////////////////////////
 
     private boolean isTouchedVisualSeekbar = false;
-    private int overflowcounter = 0;
-    boolean fragmentPaused = false;
-    // seekbar
-    public Runnable mUpdateProgress = new Runnable() {
-        @Override
-        public void run() {
-            long position = MusicPlayerRemote.getSongProgressMillis();
 
-            if (!isTouchedVisualSeekbar)
-                setTextTime(position, MusicPlayerRemote.getSongDurationMillis());
+    // seekbar, ticked once per frame while playing
+    private final PlaybackClock.Listener mProgressListener = (position, duration) -> {
+        if (!isTouchedVisualSeekbar)
+            setTextTime(position, duration);
 
-            if (mVisualSeekBar != null) {
-                mVisualSeekBar.setProgress((int) position);
-                //TODO: Set elapsedTime
-            }
-            overflowcounter--;
-            if (MusicPlayerRemote.isPlaying()) {
-                //TODO: ???
-                int delay = (int) (150 - (position) % 100);
-                if (overflowcounter < 0 && !fragmentPaused) {
-                    overflowcounter++;
-                    mVisualSeekBar.postDelayed(mUpdateProgress, delay);
-                }
-            }
+        if (mVisualSeekBar != null) {
+            mVisualSeekBar.setProgress((int) position);
         }
     };
 
@@ -643,7 +622,15 @@ public class NowPlayingLayerFragment extends CardLayerFragment implements MusicS
         setTextTime(seekingValue, MusicPlayerRemote.getSongDurationMillis());
     }
 
+    private long mTextTimeSecond = -1;
+    private long mTextTimeDuration = -1;
+
     private void setTextTime(long pos, long duration) {
+        // the clock ticks every frame, the text only changes every second
+        if (pos / 1000 == mTextTimeSecond && duration == mTextTimeDuration && mTimeTextIsSync == (mConstraintRoot.getProgress() != 0)) return;
+        mTextTimeSecond = pos / 1000;
+        mTextTimeDuration = duration;
+
         int minute = (int) (pos / 1000 / 60);
         int second = (int) (pos / 1000 - minute * 60);
         int dur_minute = (int) (duration / 1000 / 60);
@@ -15,6 +15,14 @@ import org.jetbrains.annotations.NotNull;
 public class PlayingQueueAdapter extends AbsSongAdapter {
     private static final String TAG = "PlayingQueueAdapter";
 
+    /* a shuffled queue reorders every row, diffing a big one costs more than a full rebind */
+    private static final int MAX_DIFF_SIZE = 2000;
+
+    @Override
+    protected int getMaxDiffSize() {
+        return MAX_DIFF_SIZE;
+    }
+
     @Override
     protected void onMenuItemClick(int positionInData) {
         OptionBottomSheet
@@ -4,7 +4,10 @@ import androidx.annotation.NonNull;
 import androidx.annotation.WorkerThread;
 
 import com.ldt.musicr.interactors.AppExecutors;
+import com.ldt.musicr.interactors.CancellationToken;
+import com.ldt.musicr.interactors.LatestTaskRunner;
 import com.ldt.musicr.interactors.MainThreadUtils;
+import com.ldt.musicr.interactors.TaskLane;
 import com.ldt.musicr.model.Song;
 
 import java.io.FileNotFoundException;
@@ -12,6 +15,13 @@ import java.io.FileNotFoundException;
 class VisualSeekBarParser implements ProgressListener {
     private final AudioVisualSeekBar mSeekBar;
 
+    /* A new song supersedes the file being parsed, a new view size supersedes the visual data being computed */
+    private final LatestTaskRunner mFileRunner = new LatestTaskRunner("seek-bar-file", AppExecutors.decode(), TaskLane.PRIORITY_HIGH);
+    private final LatestTaskRunner mVisualRunner = new LatestTaskRunner("seek-bar-visual", AppExecutors.cpu(), TaskLane.PRIORITY_HIGH);
+
+    /* Token of the file parse in progress, checked by the decoder through reportProgress */
+    private volatile CancellationToken mParseToken = CancellationToken.NONE;
+
     /* Parser response message: use to check the result */
     private String mMessage = "";
 
@@ -54,7 +64,10 @@ class VisualSeekBarParser implements ProgressListener {
         if (newW != mViewWidth || newH != mViewHeight) {
             mViewWidth = newW;
             mViewHeight = newH;
-            AppExecutors.io().execute(this::parseVisualData);
+            mVisualRunner.submit(token -> {
+                parseVisualData();
+                return null;
+            }, null);
         }
     }
 
@@ -70,26 +83,43 @@ class VisualSeekBarParser implements ProgressListener {
      * @param song
      */
     void parse(Song song) {
-        AppExecutors.io().execute(() -> {
-                    mMessage = "";
-                    /* notify the seek bar that parser is starting to parse a file */
-                    MainThreadUtils.postOnUiThread(mSeekBar::startParsingFile);
-                    try {
-                        mSoundFile = com.ldt.musicr.ui.widget.soundfile.SoundFile.create(song, this);
-                        //Thread.sleep(2500);
-                    } catch (FileNotFoundException e) {
-                        mMessage = "File is not found";
-                    } catch (Exception e) {
-                        mMessage = "Could not parse the audio";
-                    }
-
-                    if (mMessage.isEmpty())
-                        parse();
-
-                    /* notify the seek bar that parsing process had finish */
-                    MainThreadUtils.postOnUiThread(mSeekBar::finishParsingFile);
-                }
-        );
+        mFileRunner.submit(token -> {
+            mParseToken = token;
+            /* notify the seek bar that parser is starting to parse a file */
+            MainThreadUtils.postOnUiThread(mSeekBar::startParsingFile);
+            com.ldt.musicr.ui.widget.soundfile.SoundFile soundFile = null;
+            String message = "";
+            try {
+                soundFile = com.ldt.musicr.ui.widget.soundfile.SoundFile.create(song, this);
+                //Thread.sleep(2500);
+            } catch (FileNotFoundException e) {
+                message = "File is not found";
+            } catch (Exception e) {
+                message = "Could not parse the audio";
+            }
+
+            /* the decoder stops early once a newer song is submitted */
+            token.throwIfCancelled();
+            publish(token, soundFile, message);
+            return Boolean.TRUE;
+        }, result -> {
+            /* notify the seek bar that parsing process had finish */
+            mSeekBar.finishParsingFile();
+        });
+    }
+
+    /**
+     * The only place a parsed file replaces the previous one. The token is checked again under the
+     * lock so that a decode superseded after its last checkpoint never overwrites a newer song,
+     * and the lock orders these writes with {@link #parseVisualData()} on the cpu lane.
+     */
+    @WorkerThread
+    private synchronized void publish(CancellationToken token, com.ldt.musicr.ui.widget.soundfile.SoundFile soundFile, String message) {
+        token.throwIfCancelled();
+        mSoundFile = soundFile;
+        mMessage = message;
+        if (mMessage.isEmpty())
+            parse();
     }
 
     @WorkerThread
@@ -118,7 +148,7 @@ class VisualSeekBarParser implements ProgressListener {
     }
 
     @WorkerThread
-    private void parseVisualData() {
+    private synchronized void parseVisualData() {
         if (!isSoundFileDataAvailable()) return;
         if (!isViewSizeAvailable()) return;
 
@@ -259,6 +289,7 @@ class VisualSeekBarParser implements ProgressListener {
 
     @Override
     public boolean reportProgress(double fractionComplete) {
+        if (mParseToken.isCancelled()) return false;
         return mSeekBar.updateParsingProgress(fractionComplete);
     }
 }
@@ -19,6 +19,15 @@ fun FloatBuffer.passToShader(programId: Int, name: String) {
     }
 }
 
+/**
+ * Point an attribute at interleaved vertex data, [stride] and [offset] are in floats
+ */
+fun FloatBuffer.passToShader(location: Int, size: Int, stride: Int, offset: Int) {
+    position(offset)
+    glVertexAttribPointer(location, size, GL_FLOAT, false, stride * FLOAT_SIZE, this)
+    glEnableVertexAttribArray(location)
+}
+
 fun FloatArray.toFloatBuffer() = ByteBuffer
         .allocateDirect(size * FLOAT_SIZE)
         .order(ByteOrder.nativeOrder())
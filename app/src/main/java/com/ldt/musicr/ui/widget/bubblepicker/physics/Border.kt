@@ -8,6 +8,9 @@ class Border(world: World, var position: Vec2, var direction: Int) {
     companion object {
         const val HORIZONTAL: Int = 0
         const val VERTICAL: Int = 1
+
+        /* A border is an edge from -HALF_LENGTH to HALF_LENGTH along its direction */
+        const val HALF_LENGTH = 100f
     }
 
     var itemBody: Body
@@ -24,9 +27,9 @@ class Border(world: World, var position: Vec2, var direction: Int) {
         shape.apply {
             if (direction == HORIZONTAL) {
 
-                setAsEdge(Vec2(-100f, position.y), Vec2(100f, position.y))
+                setAsEdge(Vec2(-HALF_LENGTH, position.y), Vec2(HALF_LENGTH, position.y))
             } else {
-                setAsEdge(Vec2(position.x, -100f), Vec2(position.x, 100f))
+                setAsEdge(Vec2(position.x, -HALF_LENGTH), Vec2(position.x, HALF_LENGTH))
             }
         }
     }
@@ -1,6 +1,5 @@
 package com.ldt.musicr.ui.widget.bubblepicker.physics
 
-import android.util.Log
 import android.view.animation.Interpolator
 import android.view.animation.OvershootInterpolator
 import com.ldt.musicr.ui.widget.bubblepicker.sqr
@@ -43,6 +42,10 @@ class CircleBody(val id: Int, val world: World, var position: Vec2, var sizePerU
         const val DURATION_HIDE = 1.65f
         const val DURATION_ENHANCE = 0.35f
         const val ENHANCE_VALUE = 1.25f
+
+        /* A body slower than this for REST_STEPS steps in a row is put to sleep */
+        private const val REST_VELOCITY_SQ = 0.0004f
+        private const val REST_STEPS = 30
         val nextId : Int
          get() = count++
 
@@ -146,8 +149,60 @@ class CircleBody(val id: Int, val world: World, var position: Vec2, var sizePerU
             }
         }
 
-        applyGravityEffect(deltaInSecond)
-        Log.d("CircleBody","Circle "+id+" with sizeUnit = "+sizeUnit+", radius = "+ currentRadius+", state = "+ stateName(state)+", pos = ("+physicalBody.position.x+", "+physicalBody.position.y+")")
+        if (!isResting) applyGravityEffect(deltaInSecond)
+    }
+
+    private var restSteps = 0
+
+    /**
+     * True while the body sleeps: it is not animating and has not moved for a while.
+     */
+    val isResting : Boolean
+        get() = restSteps >= REST_STEPS
+
+    /**
+     * Called after each world step to decide if the body can sleep
+     */
+    fun updateRestState() {
+        if (isBusy || state == STATE_JUST_CREATE) {
+            restSteps = 0
+            return
+        }
+
+        // a sleeping body touched by an awake one is woken by the world
+        if (isResting && physicalBody.isAwake) restSteps = 0
+
+        val velocity = physicalBody.linearVelocity
+        if (velocity.x * velocity.x + velocity.y * velocity.y < REST_VELOCITY_SQ) restSteps++ else restSteps = 0
+        if (isResting) physicalBody.isAwake = false
+    }
+
+    fun wake() {
+        restSteps = 0
+        physicalBody.isAwake = true
+    }
+
+    // Render state: the position and radius after the last two steps, read by the renderer
+    var previousX = position.x
+        private set
+    var previousY = position.y
+        private set
+    var previousRadius = 0f
+        private set
+    var renderX = position.x
+        private set
+    var renderY = position.y
+        private set
+    var renderRadius = 0f
+        private set
+
+    fun saveRenderState() {
+        previousX = renderX
+        previousY = renderY
+        previousRadius = renderRadius
+        renderX = physicalBody.position.x
+        renderY = physicalBody.position.y
+        renderRadius = currentRadius
     }
 
     private fun applyGravityEffect(deltaInSecond: Float) {
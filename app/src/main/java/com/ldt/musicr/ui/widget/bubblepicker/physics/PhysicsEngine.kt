@@ -7,16 +7,27 @@ import org.jbox2d.dynamics.Body
 import org.jbox2d.dynamics.World
 import java.util.*
 import kotlin.collections.ArrayList
-import kotlin.math.abs
 
+/**
+ * The physics of the picker run on their own thread, at a fixed time step, instead of on the GL
+ * thread with the wall-clock delta of the last frame. After each step the position and radius of
+ * every body are copied to its render state, the renderer draws between the last two states using
+ * [interpolationAlpha].
+ *
+ * Bodies that stopped moving are put to sleep, and once all of them sleep the thread waits until
+ * something [wake]s it: a touch, a tap, a new or removed circle.
+ */
 object PhysicsEngine {
     // World that handles everything
     private var world = World(Vec2(0f,0f),false)
-    val step = 0.0005f // for a loop
-    val forceDelta : Float
-    get() {
-        return step*200f*60f/ deltaInSecond
-    }
+
+    const val FIXED_STEP = 1f / 60f
+    private const val FIXED_STEP_NANOS = 1_000_000_000L / 60
+    private const val VELOCITY_ITERATIONS = 8
+    private const val POSITION_ITERATIONS = 3
+
+    /* Steps run at once to catch up after a stall, older ones are dropped */
+    private const val MAX_CATCH_UP_STEPS = 4
 
     var selectedCircleBodies : ArrayList<CircleBody> = ArrayList()
     var maxSelectedCount: Int? = null
@@ -74,10 +85,8 @@ object PhysicsEngine {
     }
 
     private fun updateCircleBodies() {
-        synchronized(circleBodies) {
-            circleBodies.forEach { circleBody ->
-                circleBody.updateSizePerUnitValue(currentUnitValue)
-            }
+        circleBodies.forEach { circleBody ->
+            circleBody.updateSizePerUnitValue(currentUnitValue)
         }
     }
 
@@ -92,6 +101,7 @@ object PhysicsEngine {
 
     fun interpolate(start: Float, end: Float, f: Float) = start + f * (end - start)
 
+    @Synchronized
     fun onRadiusUnitChanged(value : Float) {
         currentUnitValue = value
         // update borders
@@ -99,9 +109,11 @@ object PhysicsEngine {
             updateBorders()
             // update circle bodies
             updateCircleBodies()
+            wake()
         }
     }
 
+    @Synchronized
     fun onViewPortSizeChanged(width : Float, height : Float, radiusUnitValue  : Float) {
 
         scaleX = if(width < height) height/width else 1f
@@ -110,76 +122,183 @@ object PhysicsEngine {
         onRadiusUnitChanged(radiusUnitValue)
     }
 
+    /**
+     * Run one fixed step of the world. Called on the physics thread with the engine lock held.
+     *
+     * @return true if every body sleeps and the thread can wait
+     */
+    private fun stepWorld(): Boolean {
+        if (!isUnitAvailable || circleBodies.isEmpty()) return true
+
+        val iterator = circleBodies.iterator()
+        while(iterator.hasNext()) {
+            val item = iterator.next()
+            if(item.isDeath()) {
+                item.destroy()
+                iterator.remove()
+                Log.d("PhysicEngine","remove circle "+ item.id)
+            }
+        }
+
+        stepBodies(world, circleBodies, FIXED_STEP)
+        lastStepNanos = System.nanoTime()
+        return !isOnTouch && circleBodies.all { it.isResting }
+    }
+
+    /**
+     * Step the bodies and their world once, then record their render state. Shared with the
+     * benchmark, which steps its own world.
+     */
+    internal fun stepBodies(world: World, bodies: List<CircleBody>, deltaInSecond: Float) {
+        bodies.forEach {
+            it.step(deltaInSecond)
+        }
+        world.step(deltaInSecond, VELOCITY_ITERATIONS, POSITION_ITERATIONS)
+        bodies.forEach {
+            it.updateRestState()
+            it.saveRenderState()
+        }
+    }
+
+    private var lastStepNanos = 0L
+    private var isSleeping = true
+    private var stepThread: Thread? = null
+
+    /**
+     * How far the current time is between the last two steps, from 0 to 1. Read with the engine
+     * lock held, together with the render state of the bodies.
+     */
+    val interpolationAlpha: Float
+        get() {
+            if (isSleeping) return 1f
+            val alpha = (System.nanoTime() - lastStepNanos).toFloat() / FIXED_STEP_NANOS
+            return if (alpha < 0f) 0f else if (alpha > 1f) 1f else alpha
+        }
+
+    /**
+     * Start the physics thread, if it is not running yet.
+     */
     @Synchronized
-    fun onFrameUpdated() : Boolean {
-        recordValue()
+    fun start() {
+        if (stepThread != null) return
+        stepThread = Thread(this::runSteps, "BubblePickerPhysics").apply {
+            priority = Thread.NORM_PRIORITY + 1
+            start()
+        }
+        wake()
+    }
 
-        if (isUnitAvailable && circleBodies.isNotEmpty()) {
+    /**
+     * Stop the physics thread. The world is kept, [start] resumes it.
+     */
+    @Synchronized
+    fun stop() {
+        stepThread?.interrupt()
+        stepThread = null
+        (this as java.lang.Object).notifyAll()
+    }
 
-            val iterator = circleBodies.iterator()
-            while(iterator.hasNext()) {
-                val item = iterator.next()
-                if(item.isDeath()) {
-                    item.destroy()
-                    iterator.remove()
-                    Log.d("PhysicEngine","remove circle "+ item.id)
-                }
-            }
+    /**
+     * Resume stepping after every body fell asleep.
+     */
+    @Synchronized
+    fun wake() {
+        circleBodies.forEach { it.wake() }
+        if (isSleeping) {
+            isSleeping = false
+            lastStepNanos = System.nanoTime()
+            (this as java.lang.Object).notifyAll()
+        }
+    }
 
-            circleBodies.forEach {
-                it.step(deltaInSecond)
+    private fun runSteps() {
+        val thread = Thread.currentThread()
+        var nextStepNanos = System.nanoTime()
+        try {
+            while (true) {
+                synchronized(this) {
+                    while (stepThread === thread && isSleeping) {
+                        (this as java.lang.Object).wait()
+                        nextStepNanos = System.nanoTime()
+                    }
+                    if (stepThread !== thread) return
+
+                    val now = System.nanoTime()
+                    if (now - nextStepNanos > MAX_CATCH_UP_STEPS * FIXED_STEP_NANOS) {
+                        // stalled, don't try to simulate the lost time
+                        nextStepNanos = now - MAX_CATCH_UP_STEPS * FIXED_STEP_NANOS
+                    }
+                    while (nextStepNanos <= now && !isSleeping) {
+                        isSleeping = stepWorld()
+                        nextStepNanos += FIXED_STEP_NANOS
+                    }
+                }
+                val waitNanos = nextStepNanos - System.nanoTime()
+                if (waitNanos > 0) Thread.sleep(waitNanos / 1_000_000, (waitNanos % 1_000_000).toInt())
             }
-            world.step(deltaInSecond, 11, 11)
-
-            return true
+        } catch (e: InterruptedException) {
+            // stopped
         }
-        return false
     }
+
     private val rnd = Random()
 
     /**
      * Call to create new circle shape
      */
+    @Synchronized
     fun createCircle(pickerItem : PickerItem) : CircleBody {
         val x = if (rnd.nextBoolean()) -PhysicsEngine.startX else PhysicsEngine.startX
         val y = if (rnd.nextBoolean()) - 0.5f / scaleY else 0.5f / scaleY
         return CircleBody(CircleBody.nextId,world, Vec2(x,y), currentUnitValue,pickerItem.radiusUnit)
     }
 
+    @Synchronized
     fun addCircle(circleBody: CircleBody) {
         circleBodies.add(circleBody)
+        wake()
     }
 
     /**
      *  Call to create multiple circle shapes
      */
+    @Synchronized
     fun addCircles(circles : List<CircleBody>) {
         circleBodies.addAll(circles)
+        wake()
     }
 
+    @Synchronized
     fun removeCircle(position : Int) {
         if(!circleBodies[position].isDeath())
         circleBodies[position].runMotion(CircleBody.STATE_MOTION_HIDE, CircleBody.STATE_DEATH)
+        wake()
     }
 
+    @Synchronized
     fun removeCircles(itemPos : List<CircleBody>) {
         itemPos.forEach {
             if(!it.isDeath())
             it.runMotion(CircleBody.STATE_MOTION_HIDE,CircleBody.STATE_DEATH)
         }
+        wake()
     }
 
+    @Synchronized
     fun orderToRemoveAllCircles() {
         circleBodies.forEach{
             if(!it.isBusy&&!it.isDeath())
             it.runMotion(CircleBody.STATE_MOTION_HIDE, CircleBody.STATE_DEATH)
         }
+        wake()
     }
 
+    @Synchronized
     fun destroyBody(body : Body) {
         world.destroyBody(body)
     }
 
+    @Synchronized
     fun onTap(item: CircleBody): Boolean {
         if(item.isBusy) return false
         if(!selectedCircleBodies.contains(item)) {
@@ -189,48 +308,28 @@ object PhysicsEngine {
             item.runMotion(CircleBody.STATE_MOTION_ENHANCE_REVERSE, CircleBody.STATE_NO_MOTION)
             selectedCircleBodies.remove(item)
         }
+        wake()
         return true
     }
 
-    private var firstTime = true
-    private var startTime: Long = 0
-    private var deltaInMilli: Long = 0
-    private var deltaInSecond: Float = 0f
-    private var totalRunningTime: Long = 0
-    private var frames: Long = 0
-    private val FRAME_INTERVAL = 1000f / 60
-
-    private fun recordValue() {
-        if(firstTime) {
-            frames = 0
-            deltaInMilli = 0
-            totalRunningTime = 0
-            startTime = System.currentTimeMillis()
-            firstTime = false
-        } else {
-            val current = System.currentTimeMillis()
-            deltaInMilli = current - startTime - totalRunningTime
-
-            totalRunningTime += deltaInMilli
-            frames++
-        }
-        deltaInSecond = deltaInMilli/1000f
-        Log.i("Engine","delta = "+ deltaInMilli+", circle size = "+ circleBodies.size)
-    }
-
+    @Synchronized
     fun swipe(x: Float, y: Float) {
         if (Math.abs(gravityPoint.x) < 2) gravityPoint.x += -x
         if (Math.abs(gravityPoint.y) < 0.5f / scaleY) gravityPoint.y += y
        // increasedGravity = standardIncreasedGravity * Math.abs(x * 13) * Math.abs(y * 13)
        // touchGravityValue = 650f * abs(x * 13) * abs(y * 13)
         isOnTouch = true
+        wake()
     }
 
+    @Synchronized
     fun onTouchEnd() {
         gravityPoint.setZero()
         isOnTouch = false
+        wake()
     }
 
+    @Synchronized
     fun deleteDeathCircle(circleBody: CircleBody) {
         if(circleBodies.remove(circleBody)) {
             circleBody.destroy()
@@ -94,6 +94,11 @@ class BubblePicker : GLTextureView {
         return true
     }
 
+    override fun onDetachedFromWindow() {
+        renderer.onDetached()
+        super.onDetachedFromWindow()
+    }
+
     private fun onTouchRelease() = postDelayed({ renderer.onTouchEnd() }, 0)
 
     private fun isClick(event: MotionEvent) = Math.abs(event.x - startX) < 20 && Math.abs(event.y - startY) < 20
@@ -5,27 +5,30 @@ package com.ldt.musicr.ui.widget.bubblepicker.rendering
  */
 object BubbleShader {
 
-    const val U_MATRIX = "u_Matrix"
     const val U_BACKGROUND = "u_Background"
-    const val U_TEXT = "u_Text"
-    const val U_VISIBILITY = "u_Visibility"
+    const val U_TEXTURE = "u_Texture"
 
+    // positions are already in clip space, all the bubbles are drawn in one batch
     const val A_POSITION = "a_Position"
+    // coordinates in the texture atlas
     const val A_UV = "a_UV"
+    // coordinates in the bubble quad, for the circle mask
+    const val A_LOCAL = "a_Local"
 
     // language=GLSL
     const val vertexShader = """
-        uniform mat4 u_Matrix;
-
         attribute vec4 a_Position;
         attribute vec2 a_UV;
+        attribute vec2 a_Local;
 
         varying vec2 v_UV;
+        varying vec2 v_Local;
 
         void main()
         {
-            gl_Position = u_Matrix * a_Position;
+            gl_Position = a_Position;
             v_UV = a_UV;
+            v_Local = a_Local;
         }
     """
 
@@ -35,16 +38,15 @@ object BubbleShader {
 
         uniform vec4 u_Background;
         uniform sampler2D u_Texture;
-        uniform int u_Visibility;
 
         varying vec2 v_UV;
+        varying vec2 v_Local;
 
         void main()
         {
-            float distance = distance(vec2(0.5, 0.5), v_UV);
-            gl_FragColor = u_Visibility > 0 ?
-                mix(texture2D(u_Texture, v_UV), u_Background, smoothstep(0.49, 0.5, distance)) : vec4(0);
+            float distance = distance(vec2(0.5, 0.5), v_Local);
+            gl_FragColor = mix(texture2D(u_Texture, v_UV), u_Background, smoothstep(0.49, 0.5, distance));
         }
     """
 
-}
\ No newline at end of file
+}
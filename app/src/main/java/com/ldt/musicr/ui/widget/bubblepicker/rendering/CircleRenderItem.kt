@@ -3,45 +3,31 @@ package com.ldt.musicr.ui.widget.bubblepicker.rendering
 
 import android.graphics.*
 import android.graphics.drawable.BitmapDrawable
-import android.opengl.GLES20
-import android.opengl.GLES20.*
-import android.opengl.Matrix
 import android.text.Layout
 import android.text.StaticLayout
 import android.text.TextPaint
 import com.ldt.musicr.ui.widget.bubblepicker.model.BubbleGradient
 import com.ldt.musicr.ui.widget.bubblepicker.model.PickerItem
 import com.ldt.musicr.ui.widget.bubblepicker.physics.CircleBody
-import com.ldt.musicr.ui.widget.bubblepicker.rendering.BubbleShader.U_MATRIX
-import com.ldt.musicr.ui.widget.bubblepicker.toTexture
-import org.jbox2d.common.Vec2
 
 /**
  * Created by irinagalata on 1/19/17.
  */
 data class CircleRenderItem(val pickerItem: PickerItem, val circleBody: CircleBody) {
 
+    // from the render state, the physics thread may be stepping the body
     val x: Float
-        get() = circleBody.physicalBody.position.x
+        get() = circleBody.renderX
 
     val y: Float
-        get() = circleBody.physicalBody.position.y
+        get() = circleBody.renderY
 
     val radius: Float
-        get() = circleBody.currentRadius
+        get() = circleBody.renderRadius
 
-    val initialPosition: Vec2
-        get() = circleBody.position
-
-    val currentPosition: Vec2
-        get() = circleBody.physicalBody.position
-
-    private val isVisible : Boolean
+    val isVisible : Boolean
         get() = circleBody.isVisible
-    private var texture: Int = 0
-    private var imageTexture: Int = 0
-    private val currentTexture: Int
-        get() = if (circleBody.isEnhanced()) imageTexture else texture
+
     companion object {
         var bitmapSize = 64f
 
@@ -69,33 +55,14 @@ data class CircleRenderItem(val pickerItem: PickerItem, val circleBody: CircleBo
             }
         }
 
-    fun drawItself(programId: Int, index: Int, scaleX: Float, scaleY: Float) {
-        glActiveTexture(GL_TEXTURE)
-        glBindTexture(GL_TEXTURE_2D, currentTexture)
-        glUniform1i(glGetUniformLocation(programId, BubbleShader.U_TEXT), 0)
-        glUniform1i(glGetUniformLocation(programId, BubbleShader.U_VISIBILITY), if (isVisible) 1 else -1)
-        glUniformMatrix4fv(glGetUniformLocation(programId, U_MATRIX), 1, false, calculateMatrix(scaleX, scaleY), 0)
-        glDrawArrays(GL_TRIANGLE_STRIP, index * 4, 4)
-    }
-
-    fun bindTextures(textureIds: IntArray, index: Int) {
-        texture = bindTexture(textureIds, index * 2, false)
-        imageTexture = bindTexture(textureIds, index * 2 + 1, true)
-    }
-
-    private fun createBitmap(isSelected: Boolean): Bitmap {
-        var bitmap = Bitmap.createBitmap(bitmapSize.toInt(), bitmapSize.toInt(), Bitmap.Config.ARGB_8888)
-        val bitmapConfig: Bitmap.Config = bitmap.config ?: Bitmap.Config.ARGB_8888
-        bitmap = bitmap.copy(bitmapConfig, true)
-
-        val canvas = Canvas(bitmap)
-
+    /**
+     * Draw the bubble bitmap at the origin of [canvas], which is [bitmapSize] wide
+     */
+    fun drawInto(canvas: Canvas, isSelected: Boolean) {
         if (isSelected) drawImage(canvas)
         drawBackground(canvas, isSelected)
         drawIcon(canvas)
         drawText(canvas)
-
-        return bitmap
     }
 
     private fun drawBackground(canvas: Canvas, withImage: Boolean) {
@@ -172,20 +139,4 @@ data class CircleRenderItem(val pickerItem: PickerItem, val circleBody: CircleBo
             it.draw(canvas)
         }
     }
-
-
-
-    private fun bindTexture(textureIds: IntArray, index: Int, withImage: Boolean): Int {
-        glGenTextures(1, textureIds, index)
-        val bitmap = createBitmap(withImage)
-                bitmap.toTexture(textureIds[index])
-        return textureIds[index]
-    }
-
-    private fun calculateMatrix(scaleX: Float, scaleY: Float) = FloatArray(16).apply {
-        Matrix.setIdentityM(this, 0)
-        Matrix.translateM(this, 0, currentPosition.x * scaleX - initialPosition.x,
-                currentPosition.y * scaleY - initialPosition.y, 0f)
-    }
-
-}
\ No newline at end of file
+}
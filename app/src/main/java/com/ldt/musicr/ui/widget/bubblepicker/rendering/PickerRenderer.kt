@@ -8,17 +8,22 @@ import com.ldt.musicr.ui.widget.GLTextureView
 import com.ldt.musicr.ui.widget.bubblepicker.*
 import com.ldt.musicr.ui.widget.bubblepicker.model.Color
 import com.ldt.musicr.ui.widget.bubblepicker.model.PickerItem
+import com.ldt.musicr.ui.widget.bubblepicker.physics.CircleBody
 import com.ldt.musicr.ui.widget.bubblepicker.physics.PhysicsEngine
 import com.ldt.musicr.ui.widget.bubblepicker.physics.PhysicsEngine.scaleX
 import com.ldt.musicr.ui.widget.bubblepicker.physics.PhysicsEngine.scaleY
+import com.ldt.musicr.ui.widget.bubblepicker.rendering.BubbleShader.A_LOCAL
 import com.ldt.musicr.ui.widget.bubblepicker.rendering.BubbleShader.A_POSITION
 import com.ldt.musicr.ui.widget.bubblepicker.rendering.BubbleShader.A_UV
 import com.ldt.musicr.ui.widget.bubblepicker.rendering.BubbleShader.U_BACKGROUND
+import com.ldt.musicr.ui.widget.bubblepicker.rendering.BubbleShader.U_TEXTURE
 import com.ldt.musicr.ui.widget.bubblepicker.rendering.BubbleShader.fragmentShader
 import com.ldt.musicr.ui.widget.bubblepicker.rendering.BubbleShader.vertexShader
 import org.jbox2d.common.Vec2
-import java.lang.Exception
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
 import java.nio.FloatBuffer
+import java.nio.ShortBuffer
 import javax.microedition.khronos.egl.EGLConfig
 import javax.microedition.khronos.opengles.GL10
 import kotlin.collections.ArrayList
@@ -28,9 +33,23 @@ inline val <reified T> T.TAG: String
     get() = T::class.java.simpleName
 
 class PickerRenderer(val glView: View) : GLTextureView.Renderer {
+    companion object {
+        // x, y, atlas u, v, quad u, v
+        private const val VERTEX_STRIDE = 6
+        private const val QUAD_VERTICES = 4
+        private const val QUAD_INDICES = 6
+    }
+
     override fun onSurfaceDestroyed(gl: GL10?) {
     }
 
+    /**
+     * The view left its window, stop the physics thread until the surface is created again
+     */
+    fun onDetached() {
+        PhysicsEngine.stop()
+    }
+
     var backgroundColor: Color? = null
     var maxSelectedCount: Int? = null
         set(value) {
@@ -71,29 +90,49 @@ class PickerRenderer(val glView: View) : GLTextureView.Renderer {
         if(adapter!=null) {
             val count = (adapter as Adapter).itemCount
             if (count != 0) {
+                val bodies = ArrayList<CircleBody>(count)
                 synchronized(renderCircles) {
                     for (i in 0 until count) {
                         val picker = PickerItem()
                         adapter?.onBindItem(picker, true, i)
-                        renderCircles.add(CircleRenderItem(picker,PhysicsEngine.createCircle(picker)))
+                        val body = PhysicsEngine.createCircle(picker)
+                        renderCircles.add(CircleRenderItem(picker, body))
+                        bodies.add(body)
                     }
                 }
-                renderCircles.forEachIndexed { index, circleRenderItem -> PhysicsEngine.addCircle(circleRenderItem.circleBody) }
+                // only the new bodies, the old ones are still in the world until they die
+                PhysicsEngine.addCircles(bodies)
             }
         }
     }
 
     private var programId = 0
+    private var positionLocation = 0
+    private var uvLocation = 0
+    private var localLocation = 0
+    private var backgroundLocation = 0
+    private var textureLocation = 0
+
+    private var atlas: TextureAtlas? = null
+    private var isAtlasDirty : Boolean = true
+
+    // one quad per bubble, written every frame and drawn in a single call
+    private var quadCapacity = 0
+    private var vertices = FloatArray(0)
     private var verticesBuffer: FloatBuffer? = null
-    private var uvBuffer: FloatBuffer? = null
-    private var vertices: FloatArray? = null
-    private var textureVertices: FloatArray? = null
-    private var textureIds: IntArray? = null
+    private var indicesBuffer: ShortBuffer? = null
+    private val cellBounds = FloatArray(4)
 
     override fun onSurfaceCreated(gl: GL10?, config: EGLConfig?) {
         glClearColor(backgroundColor?.red ?: 1f, backgroundColor?.green ?: 1f,
                 backgroundColor?.blue ?: 1f, backgroundColor?.alpha ?: 0f)
         enableTransparency()
+
+        // textures of a previous context are gone with it
+        atlas?.release(false)
+        atlas = TextureAtlas(CircleRenderItem.bitmapSize.toInt())
+        isAtlasDirty = true
+        PhysicsEngine.start()
     }
     var width: Float = 1f
     var height: Float = 1f
@@ -105,100 +144,113 @@ class PickerRenderer(val glView: View) : GLTextureView.Renderer {
        this.width = width.toFloat()
         this.height = height.toFloat()
         PhysicsEngine.onViewPortSizeChanged(this.width, this.height, adapter?.getCircleRadiusUnit(this.width,this.height) ?: 0.125f)
-        recreateTextures()
     }
 
     @Synchronized
     override fun onDrawFrame(gl: GL10?) {
-        val iterator = renderCircles.iterator()
-        while(iterator.hasNext()) {
-            val item = iterator.next()
-            if(item.circleBody.isDeath()) {
-                iterator.remove()
-                shouldRecreateTexture = true
-                Log.d("PickerRenderer","remove circle "+ item.circleBody.id)
+        synchronized(renderCircles) {
+            val iterator = renderCircles.iterator()
+            while (iterator.hasNext()) {
+                val item = iterator.next()
+                if (item.circleBody.isDeath()) {
+                    iterator.remove()
+                    isAtlasDirty = true
+                    Log.d("PickerRenderer", "remove circle " + item.circleBody.id)
+                }
             }
-        }
-
-
-        PhysicsEngine.onFrameUpdated()
-        if(shouldRecreateTexture) recreateTextures()
-        calculateVertices()
-        drawFrame()
-        Log.d("PickerRenderer","current size = "+ renderCircles.size+", textureIDs size = "+ textureIds?.size)
 
+            if (isAtlasDirty) {
+                atlas?.update(renderCircles)
+                ensureQuadCapacity(renderCircles.size)
+                isAtlasDirty = false
+            }
+            drawFrame(calculateVertices())
+        }
     }
 
-    @Synchronized
-    fun deleteTexture(textureIds: IntArray, index: Int) {
-        glDeleteTextures(1,textureIds,index*2)
-        glDeleteTextures(1,textureIds,index*2 + 1)
+    private fun ensureQuadCapacity(count: Int) {
+        if (count <= quadCapacity) return
+        quadCapacity = Math.max(count, quadCapacity * 3 / 2)
+        vertices = FloatArray(quadCapacity * QUAD_VERTICES * VERTEX_STRIDE)
+        verticesBuffer = vertices.toFloatBuffer()
+
+        val indices = ShortArray(quadCapacity * QUAD_INDICES)
+        for (i in 0 until quadCapacity) {
+            val vertex = i * QUAD_VERTICES
+            indices[i * QUAD_INDICES] = vertex.toShort()
+            indices[i * QUAD_INDICES + 1] = (vertex + 1).toShort()
+            indices[i * QUAD_INDICES + 2] = (vertex + 2).toShort()
+            indices[i * QUAD_INDICES + 3] = (vertex + 2).toShort()
+            indices[i * QUAD_INDICES + 4] = (vertex + 1).toShort()
+            indices[i * QUAD_INDICES + 5] = (vertex + 3).toShort()
+        }
+        indicesBuffer = ByteBuffer.allocateDirect(indices.size * 2)
+                .order(ByteOrder.nativeOrder())
+                .asShortBuffer().put(indices)
     }
 
-    @Synchronized
-     private fun recreateTextures() {
-        // delete all textures
-        if(textureIds!=null && (textureIds as IntArray).size == renderCircles.size *2) {
-            (textureIds as IntArray).forEachIndexed { index, i ->
-                try {
-                deleteTexture((textureIds as IntArray),index) }
-                catch (e : Exception) {}
+    /**
+     * Write the quads of the visible bubbles, between the last two physics steps
+     *
+     * @return the number of quads
+     */
+    private fun calculateVertices(): Int {
+        val atlas = atlas ?: return 0
+        var count = 0
+        synchronized(PhysicsEngine) {
+            val alpha = PhysicsEngine.interpolationAlpha
+            renderCircles.forEach { item ->
+                val body = item.circleBody
+                if (count >= quadCapacity || !item.isVisible
+                        || !atlas.getCellBounds(item, body.isEnhanced(), cellBounds)) return@forEach
+
+                val x = PhysicsEngine.interpolate(body.previousX, body.renderX, alpha) * scaleX
+                val y = PhysicsEngine.interpolate(body.previousY, body.renderY, alpha) * scaleY
+                val radius = PhysicsEngine.interpolate(body.previousRadius, body.renderRadius, alpha)
+                putQuad(count++, x, y, radius * scaleX, radius * scaleY)
             }
         }
-        textureIds = null
-
-        // create new textures if any
-
-        if(renderCircles.isNotEmpty()) {
-            textureIds = IntArray(renderCircles.size * 2)
-            recreateArrays()
+        verticesBuffer?.apply {
+            position(0)
+            put(vertices, 0, count * QUAD_VERTICES * VERTEX_STRIDE)
         }
-        shouldRecreateTexture = false
-    }
-
-    private fun recreateArrays() {
-        vertices = FloatArray(renderCircles.size * 8)
-        textureVertices = FloatArray(renderCircles.size * 8)
-        renderCircles.forEachIndexed { i, item -> recreateTextureItem(item, i) }
-        verticesBuffer = vertices?.toFloatBuffer()
-        uvBuffer = textureVertices?.toFloatBuffer()
+        return count
     }
 
-    private fun recreateTextureItem(item: CircleRenderItem, index: Int) {
-        initializeVertices(item, index)
-        textureVertices?.passTextureVertices(index)
-        item.bindTextures(textureIds ?: IntArray(0), index)
-    }
-
-    private fun calculateVertices() {
-        if(renderCircles.isNotEmpty()) {
-            renderCircles.forEachIndexed { i, item -> initializeVertices(item, i) }
-            vertices?.forEachIndexed { i, float -> verticesBuffer?.put(i, float) }
-        }
+    private fun putQuad(index: Int, x: Float, y: Float, radiusX: Float, radiusY: Float) {
+        val (u0, v0, u1, v1) = cellBounds
+        var i = index * QUAD_VERTICES * VERTEX_STRIDE
+        i = putVertex(i, x - radiusX, y + radiusY, u0, v0, 0f, 0f)
+        i = putVertex(i, x - radiusX, y - radiusY, u0, v1, 0f, 1f)
+        i = putVertex(i, x + radiusX, y + radiusY, u1, v0, 1f, 0f)
+        putVertex(i, x + radiusX, y - radiusY, u1, v1, 1f, 1f)
     }
 
-    private fun initializeVertices(body: CircleRenderItem, index: Int) {
-        val radius = body.radius
-        val radiusX = radius * scaleX
-        val radiusY = radius * scaleY
-
-        body.initialPosition.apply {
-            vertices?.put(8 * index, floatArrayOf(x - radiusX, y + radiusY, x - radiusX, y - radiusY,
-                    x + radiusX, y + radiusY, x + radiusX, y - radiusY))
-        }
+    private fun putVertex(i: Int, x: Float, y: Float, u: Float, v: Float, localU: Float, localV: Float): Int {
+        vertices[i] = x
+        vertices[i + 1] = y
+        vertices[i + 2] = u
+        vertices[i + 3] = v
+        vertices[i + 4] = localU
+        vertices[i + 5] = localV
+        return i + VERTEX_STRIDE
     }
 
-    private fun drawFrame() {
-
+    private fun drawFrame(quadCount: Int) {
         glClear(GL_COLOR_BUFFER_BIT)
-        glUniform4f(glGetUniformLocation(programId, U_BACKGROUND), 1f, 1f, 1f, 0f)
-        verticesBuffer?.passToShader(programId, A_POSITION)
-        uvBuffer?.passToShader(programId, A_UV)
-
-        synchronized(renderCircles) {
-            renderCircles.forEachIndexed { i, circle ->
-                circle.drawItself(programId, i, PhysicsEngine.scaleX, PhysicsEngine.scaleY)
-            }
+        if (quadCount == 0) return
+
+        glUniform4f(backgroundLocation, 1f, 1f, 1f, 0f)
+        glUniform1i(textureLocation, 0)
+        atlas?.bind()
+        verticesBuffer?.apply {
+            passToShader(positionLocation, 2, VERTEX_STRIDE, 0)
+            passToShader(uvLocation, 2, VERTEX_STRIDE, 2)
+            passToShader(localLocation, 2, VERTEX_STRIDE, 4)
+        }
+        indicesBuffer?.let {
+            it.position(0)
+            glDrawElements(GL_TRIANGLES, quadCount * QUAD_INDICES, GL_UNSIGNED_SHORT, it)
         }
     }
 
@@ -211,6 +263,11 @@ class PickerRenderer(val glView: View) : GLTextureView.Renderer {
     private fun attachShaders() {
         programId = createProgram(createShader(GL_VERTEX_SHADER, vertexShader), createShader(GL_FRAGMENT_SHADER, fragmentShader))
         glUseProgram(programId)
+        positionLocation = glGetAttribLocation(programId, A_POSITION)
+        uvLocation = glGetAttribLocation(programId, A_UV)
+        localLocation = glGetAttribLocation(programId, A_LOCAL)
+        backgroundLocation = glGetUniformLocation(programId, U_BACKGROUND)
+        textureLocation = glGetUniformLocation(programId, U_TEXTURE)
     }
 
     private fun createProgram(vertexShader: Int, fragmentShader: Int) = glCreateProgram().apply {
@@ -271,9 +328,8 @@ class PickerRenderer(val glView: View) : GLTextureView.Renderer {
     fun notifyDataSetChanged() {
         orderToRemoveAllItem()
         addAllItems()
-        shouldRecreateTexture = true
+        isAtlasDirty = true
     }
-    private var shouldRecreateTexture : Boolean = true
 
     @Synchronized
     fun notifyItemChanged(i: Int) {
@@ -0,0 +1,137 @@
+package com.ldt.musicr.ui.widget.bubblepicker.rendering
+
+import android.graphics.Bitmap
+import android.graphics.Canvas
+import android.graphics.Color
+import android.opengl.GLES20.*
+import android.opengl.GLUtils
+import java.util.*
+
+/**
+ * A single GL texture holding the bitmaps of every bubble, so the picker binds one texture and
+ * draws all of its bubbles in one call. Each item owns two cells side by side, its normal bitmap
+ * and the one shown while it is selected.
+ *
+ * Cells are drawn once when an item shows up, through one reused cell bitmap, and handed back
+ * when it goes away. The texture only grows, and redraws everything, when the items outgrow it.
+ * Must be used on the GL thread that created it.
+ */
+internal class TextureAtlas(private val cellSize: Int) {
+    companion object {
+        private const val COLUMNS = 32
+        private const val ITEMS_PER_ROW = COLUMNS / 2
+        private const val MIN_ROWS = 2
+    }
+
+    var textureId = 0
+        private set
+
+    private var rows = 0
+    private val capacity: Int
+        get() = rows * ITEMS_PER_ROW
+
+    private val width: Int
+        get() = COLUMNS * cellSize
+    private val height: Int
+        get() = rows * cellSize
+
+    private var slots = IdentityHashMap<CircleRenderItem, Int>()
+    private var used = BooleanArray(0)
+
+    private val cellBitmap = Bitmap.createBitmap(cellSize, cellSize, Bitmap.Config.ARGB_8888)
+    private val cellCanvas = Canvas(cellBitmap)
+
+    /**
+     * Give cells to the new items and take them back from the ones no longer in [items]
+     */
+    fun update(items: List<CircleRenderItem>) {
+        if (textureId == 0 || items.size > capacity) allocate(items.size)
+
+        val old = slots
+        slots = IdentityHashMap(items.size)
+        Arrays.fill(used, false)
+        items.forEach { item ->
+            old[item]?.let {
+                slots[item] = it
+                used[it] = true
+            }
+        }
+
+        var next = 0
+        items.forEach { item ->
+            if (!slots.containsKey(item)) {
+                while (used[next]) next++
+                used[next] = true
+                slots[item] = next
+                drawCell(item, next, false)
+                drawCell(item, next, true)
+            }
+        }
+    }
+
+    /**
+     * Write the texture coordinates u0, v0, u1, v1 of the item bitmap into [out]
+     *
+     * @return false if the item has no cell
+     */
+    fun getCellBounds(item: CircleRenderItem, isSelected: Boolean, out: FloatArray): Boolean {
+        val slot = slots[item] ?: return false
+        val column = (slot % ITEMS_PER_ROW) * 2 + if (isSelected) 1 else 0
+        val row = slot / ITEMS_PER_ROW
+
+        // half a texel inside the cell, linear filtering must not pick up the neighbours
+        out[0] = (column * cellSize + 0.5f) / width
+        out[1] = (row * cellSize + 0.5f) / height
+        out[2] = ((column + 1) * cellSize - 0.5f) / width
+        out[3] = ((row + 1) * cellSize - 0.5f) / height
+        return true
+    }
+
+    fun bind() {
+        glActiveTexture(GL_TEXTURE0)
+        glBindTexture(GL_TEXTURE_2D, textureId)
+    }
+
+    /**
+     * Free the texture and the cell bitmap. Pass false when the GL context is already gone.
+     */
+    fun release(deleteTexture: Boolean) {
+        if (deleteTexture && textureId != 0) glDeleteTextures(1, intArrayOf(textureId), 0)
+        textureId = 0
+        cellBitmap.recycle()
+    }
+
+    private fun allocate(itemCount: Int) {
+        if (textureId != 0) glDeleteTextures(1, intArrayOf(textureId), 0)
+
+        // room for half as many items again before growing
+        rows = Math.max(MIN_ROWS, (itemCount * 3 / 2 + ITEMS_PER_ROW - 1) / ITEMS_PER_ROW)
+        slots = IdentityHashMap()
+        used = BooleanArray(capacity)
+
+        val ids = IntArray(1)
+        glGenTextures(1, ids, 0)
+        textureId = ids[0]
+        glBindTexture(GL_TEXTURE_2D, textureId)
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR)
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR)
+        // the atlas size is not a power of two
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE)
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE)
+        glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, width, height, 0, GL_RGBA, GL_UNSIGNED_BYTE, null)
+        glBindTexture(GL_TEXTURE_2D, 0)
+    }
+
+    private fun drawCell(item: CircleRenderItem, slot: Int, isSelected: Boolean) {
+        cellBitmap.eraseColor(Color.TRANSPARENT)
+        cellCanvas.save()
+        item.drawInto(cellCanvas, isSelected)
+        cellCanvas.restore()
+
+        val column = (slot % ITEMS_PER_ROW) * 2 + if (isSelected) 1 else 0
+        val row = slot / ITEMS_PER_ROW
+        glBindTexture(GL_TEXTURE_2D, textureId)
+        GLUtils.texSubImage2D(GL_TEXTURE_2D, 0, column * cellSize, row * cellSize, cellBitmap)
+        glBindTexture(GL_TEXTURE_2D, 0)
+    }
+}
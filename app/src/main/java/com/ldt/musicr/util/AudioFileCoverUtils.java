@@ -1,10 +1,7 @@
 package com.ldt.musicr.util;
 
-import org.jaudiotagger.audio.exceptions.InvalidAudioFrameException;
-import org.jaudiotagger.audio.exceptions.ReadOnlyFileException;
-import org.jaudiotagger.audio.mp3.MP3File;
-import org.jaudiotagger.tag.TagException;
-import org.jaudiotagger.tag.images.Artwork;
+import com.ldt.musicr.helper.tag.SongTagService;
+import com.ldt.musicr.model.SongTags;
 
 import java.io.*;
 
@@ -16,20 +13,23 @@ public class AudioFileCoverUtils {
 
   public static InputStream fallback(String path) throws FileNotFoundException {
     // Method 1: use embedded high resolution album art if there is any
-    try {
-      MP3File mp3File = new MP3File(path);
-      if (mp3File.hasID3v2Tag()) {
-        Artwork art = mp3File.getTag().getFirstArtwork();
-        if (art != null) {
-          byte[] imageData = art.getBinaryData();
-          return new ByteArrayInputStream(imageData);
-        }
+    final SongTagService tagService = SongTagService.getInstance();
+    final SongTags tags = tagService.getTags(path);
+    if (tags != null && tags.hasEmbeddedArtwork) {
+      byte[] imageData = tagService.readEmbeddedArtwork(path);
+      if (imageData != null) {
+        return new ByteArrayInputStream(imageData);
+      }
+    }
+
+    // Method 2: look for album art in external files, the tag service already looked for them
+    if (tags != null && tags.coverFile != null) {
+      File cover = new File(tags.coverFile);
+      if (cover.exists()) {
+        return new FileInputStream(cover);
       }
-      // If there are any exceptions, we ignore them and continue to the other fallback method
-    } catch (ReadOnlyFileException | InvalidAudioFrameException | TagException | IOException ignored) {
     }
 
-    // Method 2: look for album art in external files
     final File parent = new File(path).getParentFile();
     for (String fallback : FALLBACKS) {
       File cover = new File(parent, fallback);
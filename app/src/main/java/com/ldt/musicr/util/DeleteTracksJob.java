@@ -0,0 +1,148 @@
+package com.ldt.musicr.util;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.BaseColumns;
+import android.provider.MediaStore;
+import android.util.Log;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.ldt.musicr.interactors.AppExecutors;
+import com.ldt.musicr.interactors.TaskLane;
+import com.ldt.musicr.model.Song;
+import com.ldt.musicr.service.MusicPlayerRemote;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Deletes songs from the queue, the media store and the storage as one job.
+ * <p>
+ * The songs leave the playing queue in one pass with a single queue change, their media store
+ * rows are deleted by a single statement and their files are deleted in parallel on the disk lane.
+ * The service does not refresh on the media store changes this causes until the job is done, it
+ * then refreshes once.
+ */
+public final class DeleteTracksJob {
+    private static final String TAG = "DeleteTracksJob";
+
+    public interface Listener {
+        /**
+         * @param deleted files handled so far, deleted or not
+         */
+        @MainThread
+        void onProgress(int deleted, int total);
+
+        /**
+         * @param failed files that could not be deleted
+         */
+        @MainThread
+        void onFinished(int total, int failed);
+    }
+
+    private final Context mContext;
+    private final int[] mSongIds;
+    @Nullable
+    private final Listener mListener;
+
+    private final AtomicInteger mHandled = new AtomicInteger();
+    private final AtomicInteger mFailed = new AtomicInteger();
+    private final AtomicInteger mPendingChunks = new AtomicInteger();
+
+    public DeleteTracksJob(@NonNull Context context, @NonNull List<Song> songs, @Nullable Listener listener) {
+        mContext = context.getApplicationContext();
+        mSongIds = new int[songs.size()];
+        for (int i = 0; i < mSongIds.length; i++) {
+            mSongIds[i] = songs.get(i).id;
+        }
+        mListener = listener;
+    }
+
+    @MainThread
+    public void start() {
+        if (mSongIds.length == 0) {
+            if (mListener != null) mListener.onFinished(0, 0);
+            return;
+        }
+
+        MusicPlayerRemote.removeFromQueue(mSongIds);
+        MusicPlayerRemote.holdMediaStoreRefresh();
+        AppExecutors.disk().execute(TaskLane.PRIORITY_HIGH, this::deleteRows);
+    }
+
+    private void deleteRows() {
+        final StringBuilder selection = new StringBuilder(BaseColumns._ID + " IN (");
+        for (int i = 0; i < mSongIds.length; i++) {
+            if (i > 0) selection.append(',');
+            selection.append(mSongIds[i]);
+        }
+        selection.append(')');
+
+        // the paths have to be read before the rows go away
+        final ArrayList<String> paths = new ArrayList<>(mSongIds.length);
+        try {
+            Cursor cursor = mContext.getContentResolver().query(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI,
+                    new String[]{MediaStore.MediaColumns.DATA}, selection.toString(), null, null);
+            if (cursor != null) {
+                while (cursor.moveToNext()) {
+                    paths.add(cursor.getString(0));
+                }
+                cursor.close();
+            }
+            mContext.getContentResolver().delete(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI,
+                    selection.toString(), null);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        if (paths.isEmpty()) {
+            finish(0);
+            return;
+        }
+
+        // one chunk per disk lane thread
+        final TaskLane lane = AppExecutors.disk();
+        final int chunks = Math.min(lane.getMaxThreads(), paths.size());
+        final int total = paths.size();
+        mPendingChunks.set(chunks);
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            final int from = total * chunk / chunks;
+            final int to = total * (chunk + 1) / chunks;
+            lane.execute(TaskLane.PRIORITY_HIGH, () -> deleteFiles(paths.subList(from, to), total));
+        }
+    }
+
+    private void deleteFiles(List<String> paths, int total) {
+        for (String path : paths) {
+            try { // File.delete can throw a security exception
+                if (path == null || !new File(path).delete()) {
+                    Log.e(TAG, "Failed to delete file " + path);
+                    mFailed.incrementAndGet();
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+                mFailed.incrementAndGet();
+            }
+
+            final int handled = mHandled.incrementAndGet();
+            if (mListener != null) {
+                AppExecutors.mainThread().execute(() -> mListener.onProgress(handled, total));
+            }
+        }
+        if (mPendingChunks.decrementAndGet() == 0) finish(total);
+    }
+
+    private void finish(int total) {
+        mContext.getContentResolver().notifyChange(Uri.parse("content://media"), null);
+        AppExecutors.mainThread().execute(() -> {
+            MusicPlayerRemote.releaseMediaStoreRefresh();
+            if (mListener != null) mListener.onFinished(total, mFailed.get());
+        });
+    }
+}
@@ -13,12 +13,14 @@ import android.provider.MediaStore;
 import android.provider.Settings;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
 import androidx.core.content.FileProvider;
 import android.text.TextUtils;
 import android.util.Log;
 import android.widget.Toast;
 
 import com.ldt.musicr.R;
+import com.ldt.musicr.helper.lyrics.LyricsProvider;
 import com.ldt.musicr.loader.medialoader.LastAddedLoader;
 import com.ldt.musicr.loader.medialoader.PlaylistLoader;
 import com.ldt.musicr.loader.medialoader.PlaylistSongLoader;
@@ -29,18 +31,13 @@ import com.ldt.musicr.model.Artist;
 import com.ldt.musicr.model.Genre;
 import com.ldt.musicr.model.Playlist;
 import com.ldt.musicr.model.Song;
-import com.ldt.musicr.model.lyrics.AbsSynchronizedLyrics;
+import com.ldt.musicr.model.lyrics.Lyrics;
 import com.ldt.musicr.service.MusicPlayerRemote;
 
-
-import org.jaudiotagger.audio.AudioFileIO;
-import org.jaudiotagger.tag.FieldKey;
-
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
-import java.util.regex.Pattern;
 
 /**
  * @author Karim Abou Zeid (kabouzeid)
@@ -268,67 +265,17 @@ public class MusicUtil {
     }
 
     public static void deleteTracks(@NonNull final Context context, @NonNull final List<Song> songs) {
-        final String[] projection = new String[]{
-                BaseColumns._ID, MediaStore.MediaColumns.DATA
-        };
-        final StringBuilder selection = new StringBuilder();
-        selection.append(BaseColumns._ID + " IN (");
-        for (int i = 0; i < songs.size(); i++) {
-            selection.append(songs.get(i).id);
-            if (i < songs.size() - 1) {
-                selection.append(",");
+        final Context appContext = context.getApplicationContext();
+        new DeleteTracksJob(context, songs, new DeleteTracksJob.Listener() {
+            @Override
+            public void onProgress(int deleted, int total) {
             }
-        }
-        selection.append(")");
-
-        try {
-            final Cursor cursor = context.getContentResolver().query(
-                    MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, projection, selection.toString(),
-                    null, null);
-            if (cursor != null) {
-                // Step 1: Remove selected tracks from the current playlist, as well
-                // as from the album art cache
-                cursor.moveToFirst();
-                while (!cursor.isAfterLast()) {
-                    final int id = cursor.getInt(0);
-                    final Song song = SongLoader.getSong(context, id);
-                    MusicPlayerRemote.removeFromQueue(song);
-                    cursor.moveToNext();
-                }
 
-                // Step 2: Remove selected tracks from the database
-                context.getContentResolver().delete(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI,
-                        selection.toString(), null);
-
-                // Step 3: Remove files from card
-                cursor.moveToFirst();
-                while (!cursor.isAfterLast()) {
-                    final String name = cursor.getString(1);
-                    try { // File.delete can throw a security exception
-                        final File f = new File(name);
-                        if (!f.delete()) {
-                            // I'm not sure if we'd ever get here (deletion would
-                            // have to fail, but no exception thrown)
-                            Log.e("MusicUtils", "Failed to delete file " + name);
-                        }
-                        cursor.moveToNext();
-                    } catch (@NonNull final SecurityException e) {
-                        e.printStackTrace();
-                        cursor.moveToNext();
-                    } catch (NullPointerException e) {
-                        e.printStackTrace();
-                        Log.e("MusicUtils", "Failed to find file " + name);
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
-                }
-                cursor.close();
+            @Override
+            public void onFinished(int total, int failed) {
+                Toast.makeText(appContext, appContext.getString(R.string.deleted_x_songs, songs.size()), Toast.LENGTH_SHORT).show();
             }
-            context.getContentResolver().notifyChange(Uri.parse("content://media"), null);
-            Toast.makeText(context, context.getString(R.string.deleted_x_songs, songs.size()), Toast.LENGTH_SHORT).show();
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        }).start();
     }
 
     public static boolean isFavoritePlaylist(@NonNull final Context context, @NonNull final Playlist playlist) {
@@ -368,69 +315,46 @@ public class MusicUtil {
         return artistName.equals("unknown") || artistName.equals("<unknown>");
     }
 
-    @NonNull
-    public static String getSectionName(@Nullable String musicTitle) {
-        String musicMediaTitle = musicTitle;
-        if (TextUtils.isEmpty(musicMediaTitle)) return "";
-        musicMediaTitle = musicMediaTitle.trim().toLowerCase();
-        if (musicMediaTitle.startsWith("the ")) {
-            musicMediaTitle = musicMediaTitle.substring(4);
-        } else if (musicMediaTitle.startsWith("a ")) {
-            musicMediaTitle = musicMediaTitle.substring(2);
+    private static final String[] ASCII_SECTION_NAMES = new String[128];
+
+    static {
+        for (char c = 0; c < ASCII_SECTION_NAMES.length; c++) {
+            ASCII_SECTION_NAMES[c] = String.valueOf(c);
         }
-        if (musicMediaTitle.isEmpty()) return "";
-        return String.valueOf(musicMediaTitle.charAt(0)).toUpperCase();
     }
-    @Nullable
-    public static String getLyrics(Song song) {
-        String lyrics = null;
-
-        File file = new File(song.data);
 
-        try {
-            lyrics = AudioFileIO.read(file).getTagOrCreateDefault().getFirst(FieldKey.LYRICS);
-        } catch (Exception e) {
-            e.printStackTrace();
+    /**
+     * First letter of the title, ignoring a leading "the " or "a ".
+     * ASCII results are shared instances, so building a section index does not allocate per item.
+     */
+    @NonNull
+    public static String getSectionName(@Nullable String musicTitle) {
+        if (TextUtils.isEmpty(musicTitle)) return "";
+        int start = 0;
+        int end = musicTitle.length();
+        while (start < end && Character.isWhitespace(musicTitle.charAt(start))) start++;
+        while (end > start && Character.isWhitespace(musicTitle.charAt(end - 1))) end--;
+
+        if (musicTitle.regionMatches(true, start, "the ", 0, 4) && start + 4 <= end) {
+            start += 4;
+        } else if (musicTitle.regionMatches(true, start, "a ", 0, 2) && start + 2 <= end) {
+            start += 2;
         }
+        if (start >= end) return "";
 
-        if (lyrics == null || lyrics.trim().isEmpty() || !AbsSynchronizedLyrics.isSynchronized(lyrics)) {
-            File dir = file.getAbsoluteFile().getParentFile();
-
-            if (dir != null && dir.exists() && dir.isDirectory()) {
-                String format = ".*%s.*\\.(lrc|txt)";
-                String filename = Pattern.quote(FileUtil.stripExtension(file.getName()));
-                String songtitle = Pattern.quote(song.title);
-
-                final ArrayList<Pattern> patterns = new ArrayList<>();
-                patterns.add(Pattern.compile(String.format(format, filename), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE));
-                patterns.add(Pattern.compile(String.format(format, songtitle), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE));
-
-                File[] files = dir.listFiles(f -> {
-                    for (Pattern pattern : patterns) {
-                        if (pattern.matcher(f.getName()).matches()) return true;
-                    }
-                    return false;
-                });
-
-                if (files != null && files.length > 0) {
-                    for (File f : files) {
-                        try {
-                            String newLyrics = FileUtil.read(f);
-                            if (newLyrics != null && !newLyrics.trim().isEmpty()) {
-                                if (AbsSynchronizedLyrics.isSynchronized(newLyrics)) {
-                                    return newLyrics;
-                                }
-                                lyrics = newLyrics;
-                            }
-                        } catch (Exception e) {
-                            e.printStackTrace();
-                        }
-                    }
-                }
-            }
-        }
+        char c = Character.toUpperCase(Character.toLowerCase(musicTitle.charAt(start)));
+        return c < ASCII_SECTION_NAMES.length ? ASCII_SECTION_NAMES[c] : String.valueOf(c);
+    }
 
-        return lyrics;
+    /**
+     * Read the lyrics of the song, see {@link LyricsProvider}. Blocks on the tag and lyric files,
+     * the UI should use {@link LyricsProvider#load} instead.
+     */
+    @WorkerThread
+    @Nullable
+    public static String getLyrics(Song song) {
+        Lyrics lyrics = LyricsProvider.getInstance().loadNow(song);
+        return lyrics == null ? null : lyrics.data;
     }
 
     public static List<Song> getPlaylistSongList(@NonNull Context context, Playlist list, String sortOrder) {
@@ -0,0 +1,474 @@
+package com.ldt.musicr.util;
+
+import android.content.ContentProviderOperation;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.MediaStore;
+import android.util.Log;
+import android.util.SparseIntArray;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import com.ldt.musicr.loader.medialoader.HiddenSongScanner;
+import com.ldt.musicr.model.PlaylistSong;
+import com.ldt.musicr.model.Song;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+
+/**
+ * Edits of one playlist, made in memory and written back by {@link #commit()} in one
+ * {@link android.content.ContentResolver#applyBatch} instead of one provider call per added,
+ * removed or moved song. It is meant for edits of many rows on a worker thread: imports, multi
+ * selection removals, drags. A single add or remove from the UI thread is cheaper as one direct
+ * provider call, opening a session reads every member row.
+ * <p>
+ * The member rows are read once when the session is opened. Adds, removes and moves only change
+ * the in-memory order, {@link #preview()} returns it, and {@link #contains(int)} checks for
+ * duplicates against an in-memory count of the song ids. On commit the removed rows are deleted,
+ * then the PLAY_ORDER of the rows that moved is rewritten and the new rows are inserted with
+ * theirs, all in one transaction.
+ * <p>
+ * When that is too many operations for one transaction, the playlist is rebuilt instead: its rows
+ * are deleted and inserted again in order, over several transactions. Writing the whole playlist
+ * gives the same result however much of a failed attempt was applied, so a rebuild is retried,
+ * and a session whose commit failed can be committed again. A session is not thread safe.
+ */
+public final class PlaylistEditSession {
+    private static final String TAG = "PlaylistEditSession";
+
+    /* Keeps "_id IN (?, ...)" under the SQLite limit of 999 arguments */
+    private static final int MAX_SELECTION_ARGS = 500;
+
+    /* Keeps one applyBatch transaction under the binder transaction size */
+    private static final int MAX_BATCH_OPERATIONS = 2000;
+
+    private static final int MAX_REBUILD_ATTEMPTS = 2;
+
+    private static final long NEW_MEMBER = -1;
+
+    private final Context mContext;
+    private final int mPlaylistId;
+    private final Uri mMembersUri;
+
+    /* The playlist in its edited order: member row id (NEW_MEMBER if not inserted yet), song id
+       and the PLAY_ORDER the row was read with */
+    private long[] mMemberIds;
+    private int[] mSongIds;
+    private int[] mPlayOrders;
+    private int mSize;
+
+    /* song id -> number of times it is in the edited playlist */
+    private final SparseIntArray mSongCounts = new SparseIntArray();
+
+    private long[] mRemovedMemberIds = new long[0];
+    private int mRemovedCount = 0;
+
+    private boolean mMoved = false;
+    private boolean mCommitted = false;
+
+    /* A rebuild was started, the member rows read by the session may not exist any more */
+    private boolean mRebuilding = false;
+
+    private PlaylistEditSession(Context context, int playlistId) {
+        mContext = context.getApplicationContext();
+        mPlaylistId = playlistId;
+        mMembersUri = MediaStore.Audio.Playlists.Members.getContentUri("external", playlistId);
+    }
+
+    /**
+     * Read the playlist members and start editing them.
+     */
+    @WorkerThread
+    @NonNull
+    public static PlaylistEditSession open(@NonNull Context context, int playlistId) {
+        PlaylistEditSession session = new PlaylistEditSession(context, playlistId);
+        session.load();
+        return session;
+    }
+
+    private void load() {
+        Cursor cursor = null;
+        try {
+            cursor = mContext.getContentResolver().query(mMembersUri,
+                    new String[]{
+                            MediaStore.Audio.Playlists.Members._ID,
+                            MediaStore.Audio.Playlists.Members.AUDIO_ID,
+                            MediaStore.Audio.Playlists.Members.PLAY_ORDER
+                    }, null, null, MediaStore.Audio.Playlists.Members.DEFAULT_SORT_ORDER);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        final int count = cursor == null ? 0 : cursor.getCount();
+        mMemberIds = new long[count];
+        mSongIds = new int[count];
+        mPlayOrders = new int[count];
+        if (cursor == null) return;
+        try {
+            while (cursor.moveToNext() && mSize < count) {
+                mMemberIds[mSize] = cursor.getLong(0);
+                mSongIds[mSize] = cursor.getInt(1);
+                mPlayOrders[mSize] = cursor.getInt(2);
+                incrementCount(mSongIds[mSize], 1);
+                mSize++;
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public int getPlaylistId() {
+        return mPlaylistId;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public int getSongId(int position) {
+        checkPosition(position, mSize);
+        return mSongIds[position];
+    }
+
+    public boolean contains(int songId) {
+        return mSongCounts.get(songId) > 0;
+    }
+
+    public boolean hasChanges() {
+        if (mRemovedCount > 0 || mMoved) return true;
+        for (int i = 0; i < mSize; i++) {
+            if (mMemberIds[i] == NEW_MEMBER) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Append songs to the playlist. Hidden songs are left out, they are not in the media store.
+     *
+     * @param skipDuplicates don't add the songs that are already in the playlist, or earlier in
+     *                       {@code songs}
+     * @return the number of songs added
+     */
+    public int add(@NonNull Collection<? extends Song> songs, boolean skipDuplicates) {
+        return add(mSize, songs, skipDuplicates);
+    }
+
+    public int add(int position, @NonNull Collection<? extends Song> songs, boolean skipDuplicates) {
+        int[] songIds = new int[songs.size()];
+        int i = 0;
+        for (Song song : songs) {
+            songIds[i++] = song.id;
+        }
+        return add(position, songIds, i, skipDuplicates);
+    }
+
+    /**
+     * Append songs by id, e.g. entries resolved by a playlist import.
+     *
+     * @return the number of songs added
+     */
+    public int add(@NonNull int[] songIds, int count, boolean skipDuplicates) {
+        return add(mSize, songIds, count, skipDuplicates);
+    }
+
+    private int add(int position, int[] songIds, int songCount, boolean skipDuplicates) {
+        checkEditable();
+        checkPosition(position, mSize + 1);
+
+        int[] added = new int[songCount];
+        int count = 0;
+        for (int i = 0; i < songCount; i++) {
+            final int songId = songIds[i];
+            if (HiddenSongScanner.isHiddenSongId(songId)) continue;
+            if (skipDuplicates && contains(songId)) continue;
+            added[count++] = songId;
+            incrementCount(songId, 1);
+        }
+        if (count == 0) return 0;
+
+        ensureCapacity(mSize + count);
+        final int tail = mSize - position;
+        System.arraycopy(mMemberIds, position, mMemberIds, position + count, tail);
+        System.arraycopy(mSongIds, position, mSongIds, position + count, tail);
+        System.arraycopy(mPlayOrders, position, mPlayOrders, position + count, tail);
+        Arrays.fill(mMemberIds, position, position + count, NEW_MEMBER);
+        System.arraycopy(added, 0, mSongIds, position, count);
+        Arrays.fill(mPlayOrders, position, position + count, -1);
+        mSize += count;
+
+        // songs inserted before existing rows shift them
+        if (tail > 0) mMoved = true;
+        return count;
+    }
+
+    public void remove(int position) {
+        checkEditable();
+        checkPosition(position, mSize);
+        removeAt(position);
+        final int tail = mSize - position - 1;
+        System.arraycopy(mMemberIds, position + 1, mMemberIds, position, tail);
+        System.arraycopy(mSongIds, position + 1, mSongIds, position, tail);
+        System.arraycopy(mPlayOrders, position + 1, mPlayOrders, position, tail);
+        mSize--;
+    }
+
+    /**
+     * Remove every occurrence of a song.
+     *
+     * @return the number of rows removed
+     */
+    public int removeSong(int songId) {
+        checkEditable();
+        if (!contains(songId)) return 0;
+
+        int to = 0;
+        for (int from = 0; from < mSize; from++) {
+            if (mSongIds[from] == songId) {
+                removeAt(from);
+            } else {
+                copy(from, to++);
+            }
+        }
+        final int removed = mSize - to;
+        mSize = to;
+        return removed;
+    }
+
+    /**
+     * Remove the rows of these playlist songs, e.g. a multi selection of the playlist.
+     *
+     * @return the number of rows removed
+     */
+    public int removeMembers(@NonNull Collection<? extends PlaylistSong> songs) {
+        checkEditable();
+        HashSet<Long> memberIds = new HashSet<>(songs.size() * 2);
+        for (PlaylistSong song : songs) {
+            if (song.playlistId == mPlaylistId) memberIds.add((long) song.idInPlayList);
+        }
+        if (memberIds.isEmpty()) return 0;
+
+        int to = 0;
+        for (int from = 0; from < mSize; from++) {
+            if (mMemberIds[from] != NEW_MEMBER && memberIds.contains(mMemberIds[from])) {
+                removeAt(from);
+            } else {
+                copy(from, to++);
+            }
+        }
+        final int removed = mSize - to;
+        mSize = to;
+        return removed;
+    }
+
+    public void move(int from, int to) {
+        checkEditable();
+        checkPosition(from, mSize);
+        checkPosition(to, mSize);
+        if (from == to) return;
+
+        final long memberId = mMemberIds[from];
+        final int songId = mSongIds[from];
+        final int playOrder = mPlayOrders[from];
+        if (from < to) {
+            System.arraycopy(mMemberIds, from + 1, mMemberIds, from, to - from);
+            System.arraycopy(mSongIds, from + 1, mSongIds, from, to - from);
+            System.arraycopy(mPlayOrders, from + 1, mPlayOrders, from, to - from);
+        } else {
+            System.arraycopy(mMemberIds, to, mMemberIds, to + 1, from - to);
+            System.arraycopy(mSongIds, to, mSongIds, to + 1, from - to);
+            System.arraycopy(mPlayOrders, to, mPlayOrders, to + 1, from - to);
+        }
+        mMemberIds[to] = memberId;
+        mSongIds[to] = songId;
+        mPlayOrders[to] = playOrder;
+        mMoved = true;
+    }
+
+    /**
+     * The song ids of the playlist as it will be after {@link #commit()}, in play order.
+     */
+    @NonNull
+    public int[] preview() {
+        return Arrays.copyOf(mSongIds, mSize);
+    }
+
+    /**
+     * Write the edits to the media store.
+     *
+     * @return the number of songs added, or -1 if the edits could not be written. The session can
+     * then be committed again.
+     */
+    @WorkerThread
+    public int commit() {
+        checkEditable();
+        mCommitted = true;
+
+        int added = 0;
+        for (int i = 0; i < mSize; i++) {
+            if (mMemberIds[i] == NEW_MEMBER) added++;
+        }
+
+        if (!mRebuilding) {
+            final ArrayList<ContentProviderOperation> operations = makeEditOperations();
+            if (operations.isEmpty()) return 0;
+            if (operations.size() <= MAX_BATCH_OPERATIONS) {
+                try {
+                    mContext.getContentResolver().applyBatch(MediaStore.AUTHORITY, operations);
+                    return added;
+                } catch (Exception e) {
+                    // nothing was applied, the same edits can be committed again
+                    Log.w(TAG, "Could not write the edits of playlist " + mPlaylistId, e);
+                    mCommitted = false;
+                    return -1;
+                }
+            }
+        }
+
+        mRebuilding = true;
+        for (int attempt = 1; attempt <= MAX_REBUILD_ATTEMPTS; attempt++) {
+            try {
+                rebuild();
+                return added;
+            } catch (Exception e) {
+                Log.w(TAG, "Could not rebuild playlist " + mPlaylistId + ", attempt " + attempt, e);
+            }
+        }
+        mCommitted = false;
+        return -1;
+    }
+
+    /**
+     * The deletes, updates and inserts from the rows read by the session to the edited playlist
+     */
+    @NonNull
+    private ArrayList<ContentProviderOperation> makeEditOperations() {
+        final int[] playOrders = computePlayOrders();
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        for (int offset = 0; offset < mRemovedCount; offset += MAX_SELECTION_ARGS) {
+            final int count = Math.min(MAX_SELECTION_ARGS, mRemovedCount - offset);
+            String[] selectionArgs = new String[count];
+            StringBuilder selection = new StringBuilder(MediaStore.Audio.Playlists.Members._ID + " IN (");
+            for (int i = 0; i < count; i++) {
+                selectionArgs[i] = String.valueOf(mRemovedMemberIds[offset + i]);
+                selection.append(i == 0 ? "?" : ",?");
+            }
+            selection.append(')');
+            operations.add(ContentProviderOperation.newDelete(mMembersUri)
+                    .withSelection(selection.toString(), selectionArgs)
+                    .build());
+        }
+
+        for (int i = 0; i < mSize; i++) {
+            if (mMemberIds[i] == NEW_MEMBER) {
+                operations.add(makeInsert(i, playOrders[i]));
+            } else if (playOrders[i] != mPlayOrders[i]) {
+                operations.add(ContentProviderOperation.newUpdate(mMembersUri)
+                        .withSelection(MediaStore.Audio.Playlists.Members._ID + "=?", new String[]{String.valueOf(mMemberIds[i])})
+                        .withValue(MediaStore.Audio.Playlists.Members.PLAY_ORDER, playOrders[i])
+                        .build());
+            }
+        }
+        return operations;
+    }
+
+    /**
+     * Delete every row of the playlist and insert the edited playlist, numbered from 1. The delete
+     * is in the same transaction as the first rows, so the playlist is never left empty.
+     */
+    private void rebuild() throws Exception {
+        ArrayList<ContentProviderOperation> batch = new ArrayList<>(Math.min(mSize + 1, MAX_BATCH_OPERATIONS));
+        batch.add(ContentProviderOperation.newDelete(mMembersUri).build());
+        for (int i = 0; i < mSize; i++) {
+            if (batch.size() == MAX_BATCH_OPERATIONS) {
+                mContext.getContentResolver().applyBatch(MediaStore.AUTHORITY, batch);
+                batch = new ArrayList<>(Math.min(mSize - i, MAX_BATCH_OPERATIONS));
+            }
+            batch.add(makeInsert(i, i + 1));
+        }
+        mContext.getContentResolver().applyBatch(MediaStore.AUTHORITY, batch);
+    }
+
+    @NonNull
+    private ContentProviderOperation makeInsert(int position, int playOrder) {
+        return ContentProviderOperation.newInsert(mMembersUri)
+                .withValue(MediaStore.Audio.Playlists.Members.AUDIO_ID, mSongIds[position])
+                .withValue(MediaStore.Audio.Playlists.Members.PLAY_ORDER, playOrder)
+                .build();
+    }
+
+    /**
+     * The PLAY_ORDER of every row after the edits. If only rows were removed and appended, the
+     * rows that stay keep theirs, so removing a song does not rewrite the whole playlist.
+     * Otherwise the playlist is numbered again from 1.
+     */
+    @NonNull
+    private int[] computePlayOrders() {
+        int[] playOrders = new int[mSize];
+        boolean keep = true;
+        int last = 0;
+        for (int i = 0; i < mSize && keep; i++) {
+            if (mMemberIds[i] == NEW_MEMBER) {
+                playOrders[i] = ++last;
+            } else if (mPlayOrders[i] > last) {
+                playOrders[i] = last = mPlayOrders[i];
+            } else {
+                keep = false;
+            }
+        }
+        if (keep) return playOrders;
+
+        for (int i = 0; i < mSize; i++) {
+            playOrders[i] = i + 1;
+        }
+        return playOrders;
+    }
+
+    private void removeAt(int position) {
+        incrementCount(mSongIds[position], -1);
+        if (mMemberIds[position] == NEW_MEMBER) return;
+
+        if (mRemovedCount == mRemovedMemberIds.length) {
+            mRemovedMemberIds = Arrays.copyOf(mRemovedMemberIds, Math.max(16, mRemovedCount * 2));
+        }
+        mRemovedMemberIds[mRemovedCount++] = mMemberIds[position];
+    }
+
+    private void copy(int from, int to) {
+        if (from == to) return;
+        mMemberIds[to] = mMemberIds[from];
+        mSongIds[to] = mSongIds[from];
+        mPlayOrders[to] = mPlayOrders[from];
+    }
+
+    private void incrementCount(int songId, int delta) {
+        final int count = mSongCounts.get(songId) + delta;
+        if (count > 0) {
+            mSongCounts.put(songId, count);
+        } else {
+            mSongCounts.delete(songId);
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= mSongIds.length) return;
+        final int newCapacity = Math.max(capacity, mSongIds.length * 3 / 2);
+        mMemberIds = Arrays.copyOf(mMemberIds, newCapacity);
+        mSongIds = Arrays.copyOf(mSongIds, newCapacity);
+        mPlayOrders = Arrays.copyOf(mPlayOrders, newCapacity);
+    }
+
+    private void checkEditable() {
+        if (mCommitted) throw new IllegalStateException("The session was already committed");
+    }
+
+    private static void checkPosition(int position, int size) {
+        if (position < 0 || position >= size) {
+            throw new IndexOutOfBoundsException("Position " + position + ", size " + size);
+        }
+    }
+}
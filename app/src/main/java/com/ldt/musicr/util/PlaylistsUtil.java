@@ -10,10 +10,14 @@ import android.provider.BaseColumns;
 import android.provider.MediaStore;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
 import android.widget.Toast;
 
 import com.ldt.musicr.R;
+import com.ldt.musicr.helper.M3UConstants;
+import com.ldt.musicr.helper.M3UReader;
 import com.ldt.musicr.helper.M3UWriter;
+import com.ldt.musicr.loader.medialoader.HiddenSongScanner;
 import com.ldt.musicr.model.Playlist;
 import com.ldt.musicr.model.PlaylistSong;
 import com.ldt.musicr.model.Song;
@@ -105,7 +109,16 @@ public class PlaylistsUtil {
         addToPlaylist(context, helperList, playlistId, showToastOnFinish);
     }
 
-    public static void addToPlaylist(@NonNull final Context context, @NonNull final List<Song> songs, final int playlistId, final boolean showToastOnFinish) {
+    /**
+     * Append songs with one max(PLAY_ORDER) query and a bulk insert. Edits that read or reorder
+     * the playlist go through a {@link PlaylistEditSession} instead. Hidden songs are left out,
+     * they are not in the media store.
+     */
+    public static void addToPlaylist(@NonNull final Context context, @NonNull final List<Song> allSongs, final int playlistId, final boolean showToastOnFinish) {
+        final List<Song> songs = new ArrayList<>(allSongs.size());
+        for (Song song : allSongs) {
+            if (!HiddenSongScanner.isHiddenSongId(song.id)) songs.add(song);
+        }
         final int size = songs.size();
         final ContentResolver resolver = context.getContentResolver();
         final String[] projection = new String[]{
@@ -169,24 +182,15 @@ public class PlaylistsUtil {
         }
     }
 
+    /**
+     * Remove the rows of a multi selection of one playlist in a {@link PlaylistEditSession}, which
+     * also keeps the deletes under the SQLite limit of selection args.
+     */
+    @WorkerThread
     public static void removeFromPlaylist(@NonNull final Context context, @NonNull final List<PlaylistSong> songs) {
-        final int playlistId = songs.get(0).playlistId;
-        Uri uri = MediaStore.Audio.Playlists.Members.getContentUri(
-                "external", playlistId);
-        String[] selectionArgs = new String[songs.size()];
-        for (int i = 0; i < selectionArgs.length; i++) {
-            selectionArgs[i] = String.valueOf(songs.get(i).idInPlayList);
-        }
-        StringBuilder selection = new StringBuilder(MediaStore.Audio.Playlists.Members._ID + " in (");
-        //noinspection unused
-        for (String selectionArg : selectionArgs) selection.append("?, ");
-        selection = new StringBuilder(selection.substring(0, selection.length() - 2) + ")");
-
-        try {
-            context.getContentResolver().delete(uri, selection.toString(), selectionArgs);
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        if (songs.isEmpty()) return;
+        final PlaylistEditSession session = PlaylistEditSession.open(context, songs.get(0).playlistId);
+        if (session.removeMembers(songs) > 0) session.commit();
     }
 
     public static boolean doPlaylistContains(@NonNull final Context context, final long playlistId, final int songId) {
@@ -208,6 +212,10 @@ public class PlaylistsUtil {
         return false;
     }
 
+    /**
+     * Move one song. A drag that moves several steps should use one {@link PlaylistEditSession}
+     * and commit it on drop instead.
+     */
     public static boolean moveItem(@NonNull final Context context, int playlistId, int from, int to) {
         return MediaStore.Audio.Playlists.Members.moveItem(context.getContentResolver(),
                 playlistId, from, to);
@@ -250,7 +258,41 @@ public class PlaylistsUtil {
     }
 
     public static File savePlaylist(Context context, Playlist playlist) throws IOException {
-        return M3UWriter.write(context, new File(Environment.getExternalStorageDirectory(), "Playlists"), playlist);
+        return M3UWriter.write(context, getPlaylistsDir(), playlist);
+    }
+
+    /**
+     * The file {@link #savePlaylist} writes for this playlist, or an M3U8 one with the same name.
+     *
+     * @return null if there is neither
+     */
+    @Nullable
+    public static File findSavedPlaylist(@NonNull Playlist playlist) {
+        for (String extension : new String[]{M3UConstants.EXTENSION, M3UConstants.EXTENSION_UTF8}) {
+            File file = new File(getPlaylistsDir(), playlist.name.concat("." + extension));
+            if (file.isFile()) return file;
+        }
+        return null;
+    }
+
+    /**
+     * Append the songs of an M3U or M3U8 file to a playlist, on a background thread.
+     *
+     * @param skipDuplicates don't add the songs that are already in the playlist, e.g. when the
+     *                       file was saved from the same playlist
+     */
+    @WorkerThread
+    public static M3UReader.Result importPlaylist(Context context, File file, int playlistId, boolean skipDuplicates) throws IOException {
+        M3UReader.Result result = M3UReader.importInto(context, file, playlistId, skipDuplicates);
+        if (result.added > 0) {
+            // Necessary because somehow the MediaStoreObserver is not notified when editing a playlist
+            context.getContentResolver().notifyChange(Uri.parse("content://media"), null);
+        }
+        return result;
+    }
+
+    private static File getPlaylistsDir() {
+        return new File(Environment.getExternalStorageDirectory(), "Playlists");
     }
 
     private static boolean doesPlaylistExist(@NonNull Context context, @NonNull final String selection, @NonNull final String[] values) {
@@ -6,6 +6,10 @@ import android.content.SharedPreferences;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 import android.preference.PreferenceManager;
+import android.util.Log;
+import android.view.Choreographer;
+
+import androidx.annotation.MainThread;
 import androidx.annotation.NonNull;
 
 import com.ldt.musicr.App;
@@ -13,8 +17,21 @@ import com.ldt.musicr.R;
 
 
 import java.io.File;
-
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Typed access to the app preferences.
+ * <p>
+ * Reads never touch SharedPreferences: every value is parsed once into an immutable
+ * {@link Snapshot}, which a getter reaches with a single volatile load. The snapshot is rebuilt
+ * as a whole when a preference changes, before the change listeners are called for writes made
+ * through this class. Writes go through {@link #edit()} and are applied asynchronously.
+ */
 public final class PreferenceUtil {
+    private static final String TAG = "PreferenceUtil";
+
     private static final String SONG_CHILD_SORT_ORDER = "song_child_sort_order";
     public static final String GENERAL_THEME = "general_theme";
     public static final String REMEMBER_LAST_TAB = "remember_last_tab";
@@ -53,6 +70,8 @@ public final class PreferenceUtil {
 
     public static final String AUDIO_DUCKING = "audio_ducking";
     public static final String GAPLESS_PLAYBACK = "gapless_playback";
+    public static final String VOLUME_NORMALIZATION = "volume_normalization";
+    public static final String CROSSFADE_DURATION = "crossfade_duration";
 
     public static final String LAST_ADDED_CUTOFF = "last_added_interval";
     public static final String RECENTLY_PLAYED_CUTOFF = "recently_played_interval";
@@ -77,17 +96,19 @@ public final class PreferenceUtil {
 
     public static final String INITIALIZED_BLACKLIST = "initialized_blacklist";
 
+    public static final String HIDDEN_SONGS = "hidden_songs";
+
     public static final String LIBRARY_CATEGORIES = "library_categories";
 
     private static final String REMEMBER_SHUFFLE = "remember_shuffle";
 
     private static final String USE_ARTIST_IMAGE_AS_BACKGROUND = "use_artist_image_as_bg";
     public static final String IN_APP_VOLUME = "in_app_volume";
-    private static final String AUDIO_MIN_DURATION = "audio_min_duration";
+    public static final String AUDIO_MIN_DURATION = "audio_min_duration";
     public static final String BALANCE_VALUE = "balance_value";
     public static final String THREAD_NUMBER = "thread_number";
 
-    private static PreferenceUtil sInstance;
+    private static volatile PreferenceUtil sInstance;
 
     public boolean isFirstTime() {
         return isFirstTime;
@@ -101,21 +122,45 @@ public final class PreferenceUtil {
 
     private final SharedPreferences mPreferences;
 
+    private volatile Snapshot mSnapshot;
+
+    /* Rebuilds the snapshot for writes made outside this class, held here since preferences keep listeners weakly */
+    private final SharedPreferences.OnSharedPreferenceChangeListener mSnapshotUpdater = (sharedPreferences, key) -> {
+        synchronized (this) {
+            mSnapshot = new Snapshot(sharedPreferences.getAll());
+        }
+    };
+
     private PreferenceUtil(@NonNull final Context context) {
         mPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+        mSnapshot = new Snapshot(mPreferences.getAll());
+        mPreferences.registerOnSharedPreferenceChangeListener(mSnapshotUpdater);
     }
 
     public static PreferenceUtil getInstance(final Context context) {
-        if (sInstance == null) {
-            sInstance = new PreferenceUtil(App.getInstance().getApplicationContext());
-        }
-        return sInstance;
+        return getInstance();
     }
+
     public static PreferenceUtil getInstance() {
-        if (sInstance == null) {
-            sInstance = new PreferenceUtil(App.getInstance().getApplicationContext());
+        PreferenceUtil instance = sInstance;
+        if (instance == null) {
+            synchronized (PreferenceUtil.class) {
+                if (sInstance == null) {
+                    sInstance = new PreferenceUtil(App.getInstance().getApplicationContext());
+                }
+                instance = sInstance;
+            }
         }
-        return sInstance;
+        return instance;
+    }
+
+    /**
+     * The current values, to read several of them consistently
+     */
+    @NonNull
+    public Snapshot getSnapshot() {
+        if (mTracingReads) mReadCount.incrementAndGet();
+        return mSnapshot;
     }
 
     public static boolean isAllowedToDownloadMetadata(final Context context) {
@@ -140,172 +185,272 @@ public final class PreferenceUtil {
         mPreferences.unregisterOnSharedPreferenceChangeListener(sharedPreferenceChangeListener);
     }
 
+    /**
+     * Start a batch of writes, stored with a single apply
+     */
+    @NonNull
+    public Editor edit() {
+        return new Editor();
+    }
+
+    public final class Editor {
+        private final HashMap<String, Object> mValues = new HashMap<>();
+
+        private Editor() {
+        }
+
+        public Editor putBoolean(String key, boolean value) {
+            mValues.put(key, value);
+            return this;
+        }
+
+        public Editor putInt(String key, int value) {
+            mValues.put(key, value);
+            return this;
+        }
+
+        public Editor putLong(String key, long value) {
+            mValues.put(key, value);
+            return this;
+        }
+
+        public Editor putFloat(String key, float value) {
+            mValues.put(key, value);
+            return this;
+        }
+
+        public Editor putString(String key, String value) {
+            mValues.put(key, value);
+            return this;
+        }
+
+        public void apply() {
+            write(mValues, false);
+        }
+
+        /**
+         * Write synchronously, only for values that must be on disk before going on
+         */
+        public boolean commit() {
+            return write(mValues, true);
+        }
+    }
+
+    private synchronized boolean write(Map<String, Object> values, boolean commit) {
+        if (values.isEmpty()) return true;
+
+        // publish the new snapshot first, the change listeners may read it
+        final HashMap<String, Object> all = new HashMap<>(mPreferences.getAll());
+        all.putAll(values);
+        mSnapshot = new Snapshot(all);
 
-    public void setGeneralTheme(String theme) {
         final SharedPreferences.Editor editor = mPreferences.edit();
-        editor.putString(GENERAL_THEME, theme);
-        editor.commit();
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            final Object value = entry.getValue();
+            if (value instanceof Boolean) editor.putBoolean(entry.getKey(), (Boolean) value);
+            else if (value instanceof Integer) editor.putInt(entry.getKey(), (Integer) value);
+            else if (value instanceof Long) editor.putLong(entry.getKey(), (Long) value);
+            else if (value instanceof Float) editor.putFloat(entry.getKey(), (Float) value);
+            else editor.putString(entry.getKey(), (String) value);
+        }
+        if (commit) return editor.commit();
+        editor.apply();
+        return true;
+    }
+
+
+    public void setGeneralTheme(String theme) {
+        edit().putString(GENERAL_THEME, theme).apply();
     }
 
 
     public final boolean rememberLastTab() {
-        return mPreferences.getBoolean(REMEMBER_LAST_TAB, true);
+        return getSnapshot().rememberLastTab;
     }
 
     public void setLastPage(final int value) {
-        final SharedPreferences.Editor editor = mPreferences.edit();
-        editor.putInt(LAST_PAGE, value);
-        editor.apply();
+        edit().putInt(LAST_PAGE, value).apply();
     }
 
     public final int getLastPage() {
-        return mPreferences.getInt(LAST_PAGE, 0);
+        return getSnapshot().lastPage;
     }
 
     public void setLastMusicChooser(final int value) {
-        final SharedPreferences.Editor editor = mPreferences.edit();
-        editor.putInt(LAST_MUSIC_CHOOSER, value);
-        editor.apply();
+        edit().putInt(LAST_MUSIC_CHOOSER, value).apply();
     }
 
     public final int getLastMusicChooser() {
-        return mPreferences.getInt(LAST_MUSIC_CHOOSER, 0);
+        return getSnapshot().lastMusicChooser;
     }
 
 
 
     public final boolean coloredNotification() {
-        return mPreferences.getBoolean(COLORED_NOTIFICATION, true);
+        return getSnapshot().coloredNotification;
     }
 
     public final boolean classicNotification() {
-        return mPreferences.getBoolean(CLASSIC_NOTIFICATION, false);
+        return getSnapshot().classicNotification;
     }
 
     public void setColoredNotification(final boolean value) {
-        final SharedPreferences.Editor editor = mPreferences.edit();
-        editor.putBoolean(COLORED_NOTIFICATION, value);
-        editor.apply();
+        edit().putBoolean(COLORED_NOTIFICATION, value).apply();
     }
 
     public void setClassicNotification(final boolean value) {
-        final SharedPreferences.Editor editor = mPreferences.edit();
-        editor.putBoolean(CLASSIC_NOTIFICATION, value);
-        editor.apply();
+        edit().putBoolean(CLASSIC_NOTIFICATION, value).apply();
     }
 
     public void setColoredAppShortcuts(final boolean value) {
-        final SharedPreferences.Editor editor = mPreferences.edit();
-        editor.putBoolean(COLORED_APP_SHORTCUTS, value);
-        editor.apply();
+        edit().putBoolean(COLORED_APP_SHORTCUTS, value).apply();
     }
 
     public final boolean coloredAppShortcuts() {
-        return mPreferences.getBoolean(COLORED_APP_SHORTCUTS, true);
+        return getSnapshot().coloredAppShortcuts;
     }
 
     public final boolean gaplessPlayback() {
-        return mPreferences.getBoolean(GAPLESS_PLAYBACK, false);
+        return getSnapshot().gaplessPlayback;
+    }
+
+    public final boolean volumeNormalization() {
+        return getSnapshot().volumeNormalization;
+    }
+
+    public void setVolumeNormalization(final boolean value) {
+        edit().putBoolean(VOLUME_NORMALIZATION, value).apply();
+    }
+
+    /**
+     * @return how long the end of a track overlaps the next one in milliseconds, 0 when off
+     */
+    public final int crossfadeDuration() {
+        return getSnapshot().crossfadeDuration;
+    }
+
+    public void setCrossfadeDuration(final int millis) {
+        edit().putInt(CROSSFADE_DURATION, millis).apply();
     }
 
     public final boolean audioDucking() {
-        return mPreferences.getBoolean(AUDIO_DUCKING, true);
+        return getSnapshot().audioDucking;
     }
 
     public final boolean albumArtOnLockscreen() {
-        return mPreferences.getBoolean(ALBUM_ART_ON_LOCKSCREEN, true);
+        return getSnapshot().albumArtOnLockscreen;
     }
 
     public final boolean blurredAlbumArt() {
-        return mPreferences.getBoolean(BLURRED_ALBUM_ART, false);
+        return getSnapshot().blurredAlbumArt;
     }
 
     public final boolean ignoreMediaStoreArtwork() {
-        return mPreferences.getBoolean(IGNORE_MEDIA_STORE_ARTWORK, false);
+        return getSnapshot().ignoreMediaStoreArtwork;
     }
 
     public final String getArtistSortOrder() {
-        return mPreferences.getString(ARTIST_SORT_ORDER, SortOrder.ArtistSortOrder.ARTIST_A_Z);
+        return getSnapshot().artistSortOrder;
     }
 
     public void setArtistSortOrder(final String sortOrder) {
-        final SharedPreferences.Editor editor = mPreferences.edit();
-        editor.putString(ARTIST_SORT_ORDER, sortOrder);
-        editor.commit();
+        edit().putString(ARTIST_SORT_ORDER, sortOrder).apply();
     }
 
     public final String getArtistSongSortOrder() {
-        return mPreferences.getString(ARTIST_SONG_SORT_ORDER, SortOrder.ArtistSongSortOrder.SONG_A_Z);
+        return getSnapshot().artistSongSortOrder;
     }
 
     public final String getArtistAlbumSortOrder() {
-        return mPreferences.getString(ARTIST_ALBUM_SORT_ORDER, SortOrder.ArtistAlbumSortOrder.ALBUM_YEAR);
+        return getSnapshot().artistAlbumSortOrder;
     }
 
     public final String getAlbumSortOrder() {
-        return mPreferences.getString(ALBUM_SORT_ORDER, SortOrder.AlbumSortOrder.ALBUM_A_Z);
+        return getSnapshot().albumSortOrder;
     }
 
     public void setAlbumSortOrder(final String sortOrder) {
-        final SharedPreferences.Editor editor = mPreferences.edit();
-        editor.putString(ALBUM_SORT_ORDER, sortOrder);
-        editor.commit();
+        edit().putString(ALBUM_SORT_ORDER, sortOrder).apply();
     }
 
     public final String getAlbumSongSortOrder() {
-        return mPreferences.getString(ALBUM_SONG_SORT_ORDER, SortOrder.AlbumSongSortOrder.SONG_TRACK_LIST);
+        return getSnapshot().albumSongSortOrder;
     }
 
     public final String getSongSortOrder() {
-        return mPreferences.getString(SONG_SORT_ORDER, SortOrder.SongSortOrder.SONG_A_Z);
+        return getSnapshot().songSortOrder;
     }
 
     public void setSongSortOrder(final String sortOrder) {
-        final SharedPreferences.Editor editor = mPreferences.edit();
-        editor.putString(SONG_SORT_ORDER, sortOrder);
-        editor.commit();
+        edit().putString(SONG_SORT_ORDER, sortOrder).apply();
     }
 
     public final String getGenreSortOrder() {
-        return mPreferences.getString(GENRE_SORT_ORDER, SortOrder.GenreSortOrder.GENRE_A_Z);
+        return getSnapshot().genreSortOrder;
     }
 
     // The last added cutoff time is compared against the Android media store timestamps, which is seconds based.
     public long getLastAddedCutoffTimeSecs() {
-        return getCutoffTimeMillis(LAST_ADDED_CUTOFF) / 1000;
+        return getCutoffTimeMillis(getSnapshot().lastAddedCutoff) / 1000;
     }
 
     // The recently played cutoff time is compared against the internal (private) database timestamps, which is milliseconds based.
     public long getRecentlyPlayedCutoffTimeMillis() {
-        return getCutoffTimeMillis(RECENTLY_PLAYED_CUTOFF);
+        return getCutoffTimeMillis(getSnapshot().recentlyPlayedCutoff);
+    }
+
+    private static final int CUTOFF_TODAY = 0;
+    private static final int CUTOFF_THIS_WEEK = 1;
+    private static final int CUTOFF_PAST_SEVEN_DAYS = 2;
+    private static final int CUTOFF_PAST_THREE_MONTHS = 3;
+    private static final int CUTOFF_THIS_YEAR = 4;
+    private static final int CUTOFF_THIS_MONTH = 5;
+
+    private static int parseCutoff(final Object value) {
+        if (!(value instanceof String)) return CUTOFF_THIS_MONTH;
+        switch ((String) value) {
+            case "today":
+                return CUTOFF_TODAY;
+            case "this_week":
+                return CUTOFF_THIS_WEEK;
+            case "past_seven_days":
+                return CUTOFF_PAST_SEVEN_DAYS;
+            case "past_three_months":
+                return CUTOFF_PAST_THREE_MONTHS;
+            case "this_year":
+                return CUTOFF_THIS_YEAR;
+            case "this_month":
+            default:
+                return CUTOFF_THIS_MONTH;
+        }
     }
 
-    private long getCutoffTimeMillis(final String cutoff) {
+    private long getCutoffTimeMillis(final int cutoff) {
         final CalendarUtil calendarUtil = new CalendarUtil();
         long interval;
 
-        switch (mPreferences.getString(cutoff, "")) {
-            case "today":
+        switch (cutoff) {
+            case CUTOFF_TODAY:
                 interval = calendarUtil.getElapsedToday();
                 break;
 
-            case "this_week":
+            case CUTOFF_THIS_WEEK:
                 interval = calendarUtil.getElapsedWeek();
                 break;
 
-             case "past_seven_days":
+            case CUTOFF_PAST_SEVEN_DAYS:
                 interval = calendarUtil.getElapsedDays(7);
                 break;
 
-            case "past_three_months":
+            case CUTOFF_PAST_THREE_MONTHS:
                 interval = calendarUtil.getElapsedMonths(3);
                 break;
 
-            case "this_year":
+            case CUTOFF_THIS_YEAR:
                 interval = calendarUtil.getElapsedYear();
                 break;
 
-            case "this_month":
+            case CUTOFF_THIS_MONTH:
             default:
                 interval = calendarUtil.getElapsedMonth();
                 break;
@@ -315,98 +460,90 @@ public final class PreferenceUtil {
     }
 
     public String getLastAddedCutoffText(Context context) {
-        return getCutoffText(LAST_ADDED_CUTOFF, context);
+        return getCutoffText(getSnapshot().lastAddedCutoff, context);
     }
 
     public String getRecentlyPlayedCutoffText(Context context) {
-        return getCutoffText(RECENTLY_PLAYED_CUTOFF, context);
+        return getCutoffText(getSnapshot().recentlyPlayedCutoff, context);
     }
 
-    private String getCutoffText(final String cutoff, Context context) {
-        switch (mPreferences.getString(cutoff, "")) {
-            case "today":
+    private String getCutoffText(final int cutoff, Context context) {
+        switch (cutoff) {
+            case CUTOFF_TODAY:
                 return context.getString(R.string.today);
 
-            case "this_week":
+            case CUTOFF_THIS_WEEK:
                 return context.getString(R.string.this_week);
 
-             case "past_seven_days":
-                 return context.getString(R.string.past_seven_days);
+            case CUTOFF_PAST_SEVEN_DAYS:
+                return context.getString(R.string.past_seven_days);
 
-            case "past_three_months":
+            case CUTOFF_PAST_THREE_MONTHS:
                 return context.getString(R.string.past_three_months);
 
-            case "this_year":
+            case CUTOFF_THIS_YEAR:
                 return context.getString(R.string.this_year);
 
-            case "this_month":
+            case CUTOFF_THIS_MONTH:
             default:
                 return context.getString(R.string.this_month);
         }
     }
 
     public int getLastSleepTimerValue() {
-        return mPreferences.getInt(LAST_SLEEP_TIMER_VALUE, 30);
+        return getSnapshot().lastSleepTimerValue;
     }
 
     public void setLastSleepTimerValue(final int value) {
-        final SharedPreferences.Editor editor = mPreferences.edit();
-        editor.putInt(LAST_SLEEP_TIMER_VALUE, value);
-        editor.apply();
+        edit().putInt(LAST_SLEEP_TIMER_VALUE, value).apply();
     }
 
     public long getNextSleepTimerElapsedRealTime() {
-        return mPreferences.getLong(NEXT_SLEEP_TIMER_ELAPSED_REALTIME, -1);
+        return getSnapshot().nextSleepTimerElapsedRealTime;
     }
 
     public void setNextSleepTimerElapsedRealtime(final long value) {
-        final SharedPreferences.Editor editor = mPreferences.edit();
-        editor.putLong(NEXT_SLEEP_TIMER_ELAPSED_REALTIME, value);
-        editor.apply();
+        edit().putLong(NEXT_SLEEP_TIMER_ELAPSED_REALTIME, value).apply();
     }
 
     public boolean getSleepTimerFinishMusic() {
-        return mPreferences.getBoolean(SLEEP_TIMER_FINISH_SONG, false);
+        return getSnapshot().sleepTimerFinishMusic;
     }
 
     public void setSleepTimerFinishMusic(final boolean value) {
-        final SharedPreferences.Editor editor = mPreferences.edit();
-        editor.putBoolean(SLEEP_TIMER_FINISH_SONG, value);
-        editor.apply();
+        edit().putBoolean(SLEEP_TIMER_FINISH_SONG, value).apply();
     }
 
     public void setAlbumGridSize(final int gridSize) {
-        final SharedPreferences.Editor editor = mPreferences.edit();
-        editor.putInt(ALBUM_GRID_SIZE, gridSize);
-        editor.apply();
+        edit().putInt(ALBUM_GRID_SIZE, gridSize).apply();
     }
 
 
 
     public void setLastChangeLogVersion(int version) {
-        mPreferences.edit().putInt(LAST_CHANGELOG_VERSION, version).apply();
+        edit().putInt(LAST_CHANGELOG_VERSION, version).apply();
     }
 
     public final int getLastChangelogVersion() {
-        return mPreferences.getInt(LAST_CHANGELOG_VERSION, -1);
+        return getSnapshot().lastChangelogVersion;
     }
 
     @SuppressLint("CommitPrefEdits")
     public void setIntroShown() {
         // don't use apply here
-        mPreferences.edit().putBoolean(INTRO_SHOWN, true).commit();
+        edit().putBoolean(INTRO_SHOWN, true).commit();
     }
 
     public final boolean introShown() {
-        return mPreferences.getBoolean(INTRO_SHOWN, false);
+        return getSnapshot().introShown;
     }
 
     public final boolean rememberShuffle() {
-        return mPreferences.getBoolean(REMEMBER_SHUFFLE, true);
+        return getSnapshot().rememberShuffle;
     }
 
     public final String autoDownloadImagesPolicy() {
-        return mPreferences.getString(AUTO_DOWNLOAD_IMAGES_POLICY, "only_wifi");
+        return getSnapshot().autoDownloadImagesPolicy;
     }
 
  /*
@@ -415,67 +552,67 @@ public final class PreferenceUtil {
     }
 */
     public void setStartDirectory(File file) {
-        final SharedPreferences.Editor editor = mPreferences.edit();
-        editor.putString(START_DIRECTORY, FileUtil.safeGetCanonicalPath(file));
-        editor.apply();
+        edit().putString(START_DIRECTORY, FileUtil.safeGetCanonicalPath(file)).apply();
     }
 
     public final boolean synchronizedLyricsShow() {
-        return mPreferences.getBoolean(SYNCHRONIZED_LYRICS_SHOW, true);
+        return getSnapshot().synchronizedLyricsShow;
     }
 
     public void setInitializedBlacklist() {
-        final SharedPreferences.Editor editor = mPreferences.edit();
-        editor.putBoolean(INITIALIZED_BLACKLIST, true);
-        editor.apply();
+        edit().putBoolean(INITIALIZED_BLACKLIST, true).apply();
     }
 
     public final boolean initializedBlacklist() {
-        return mPreferences.getBoolean(INITIALIZED_BLACKLIST, false);
+        return getSnapshot().initializedBlacklist;
+    }
+
+    /**
+     * Whether the library also has the songs in folders with a .nomedia file, off by default. A
+     * change applies from the next load of the library.
+     */
+    public final boolean hiddenSongs() {
+        return getSnapshot().hiddenSongs;
+    }
+
+    public void setHiddenSongs(final boolean value) {
+        edit().putBoolean(HIDDEN_SONGS, value).apply();
     }
 
 
     public final int getSongChildSortOrder() {
-        return mPreferences.getInt(SONG_CHILD_SORT_ORDER,1);
+        return getSnapshot().songChildSortOrder;
     }
 
     public final void setSongChildSortOrder(int value) {
-        final SharedPreferences.Editor editor = mPreferences.edit();
-        editor.putInt(SONG_CHILD_SORT_ORDER, value);
-        editor.apply();
+        edit().putInt(SONG_CHILD_SORT_ORDER, value).apply();
     }
 
     public final void setIsUsingArtistImageAsBackground(boolean value) {
-        final SharedPreferences.Editor editor = mPreferences.edit();
-        editor.putBoolean(USE_ARTIST_IMAGE_AS_BACKGROUND,value);
-        editor.apply();
+        edit().putBoolean(USE_ARTIST_IMAGE_AS_BACKGROUND, value).apply();
     }
 
     public final boolean isUsingArtistImageAsBackground() {
-        return mPreferences.getBoolean(USE_ARTIST_IMAGE_AS_BACKGROUND,true);
+        return getSnapshot().usingArtistImageAsBackground;
     }
 
     public final void setInAppVolume(float value) {
         if(value<0) value = 0;
         else if(value>1) value = 1;
-        final SharedPreferences.Editor editor = mPreferences.edit();
-        editor.putFloat(IN_APP_VOLUME, value);
-        editor.apply();
+        edit().putFloat(IN_APP_VOLUME, value).apply();
     }
 
     public final float getInAppVolume() {
-        return mPreferences.getFloat(IN_APP_VOLUME,1);
+        return getSnapshot().inAppVolume;
     }
 
     public final void setMinDuration(int value) {
         if(value<0) value = 0;
-        final SharedPreferences.Editor editor = mPreferences.edit();
-        editor.putFloat(AUDIO_MIN_DURATION, value);
-        editor.apply();
+        edit().putInt(AUDIO_MIN_DURATION, value).apply();
     }
 
     public final int getMinDuration() {
-        return mPreferences.getInt(AUDIO_MIN_DURATION,10000);
+        return getSnapshot().minDuration;
     }
 
     public SharedPreferences getSharePreferences() {
@@ -487,25 +624,199 @@ public final class PreferenceUtil {
     }
 
     public float getBalanceValue() {
-        return mPreferences.getFloat(BALANCE_VALUE,0.5f);
+        return getSnapshot().balanceValue;
     }
 
     public final void setBalanceValue(float value) {
         if(value<0) value = 0;
         else if(value>1) value = 1;
-        final SharedPreferences.Editor editor = mPreferences.edit();
-        editor.putFloat(BALANCE_VALUE, value);
-        editor.apply();
+        edit().putFloat(BALANCE_VALUE, value).apply();
     }
 
     public final void setThreadNumber(int value) {
         if(value<=0) return;
-        final SharedPreferences.Editor editor = mPreferences.edit();
-        editor.putFloat(THREAD_NUMBER,value);
-        editor.apply();
+        edit().putInt(THREAD_NUMBER, value).apply();
     }
 
     public final int getThreadNumber() {
-        return mPreferences.getInt(THREAD_NUMBER,6);
+        return getSnapshot().threadNumber;
+    }
+
+    /**
+     * Every value read by the getters, parsed once. Sort orders are the ready to use SQL order
+     * clauses, cutoffs are parsed to their interval.
+     */
+    public static final class Snapshot {
+        public final boolean rememberLastTab;
+        public final int lastPage;
+        public final int lastMusicChooser;
+
+        public final boolean coloredNotification;
+        public final boolean classicNotification;
+        public final boolean coloredAppShortcuts;
+
+        public final boolean gaplessPlayback;
+        public final boolean volumeNormalization;
+        public final int crossfadeDuration;
+        public final boolean audioDucking;
+        public final boolean albumArtOnLockscreen;
+        public final boolean blurredAlbumArt;
+        public final boolean ignoreMediaStoreArtwork;
+
+        @NonNull public final String artistSortOrder;
+        @NonNull public final String artistSongSortOrder;
+        @NonNull public final String artistAlbumSortOrder;
+        @NonNull public final String albumSortOrder;
+        @NonNull public final String albumSongSortOrder;
+        @NonNull public final String songSortOrder;
+        @NonNull public final String genreSortOrder;
+        public final int songChildSortOrder;
+
+        final int lastAddedCutoff;
+        final int recentlyPlayedCutoff;
+
+        public final int lastSleepTimerValue;
+        public final long nextSleepTimerElapsedRealTime;
+        public final boolean sleepTimerFinishMusic;
+
+        public final int lastChangelogVersion;
+        public final boolean introShown;
+        public final boolean rememberShuffle;
+        @NonNull public final String autoDownloadImagesPolicy;
+        public final boolean synchronizedLyricsShow;
+        public final boolean initializedBlacklist;
+        public final boolean hiddenSongs;
+        public final boolean usingArtistImageAsBackground;
+
+        public final float inAppVolume;
+        public final float balanceValue;
+        public final int minDuration;
+        public final int threadNumber;
+
+        Snapshot(@NonNull Map<String, ?> values) {
+            rememberLastTab = getBoolean(values, REMEMBER_LAST_TAB, true);
+            lastPage = getInt(values, LAST_PAGE, 0);
+            lastMusicChooser = getInt(values, LAST_MUSIC_CHOOSER, 0);
+
+            coloredNotification = getBoolean(values, COLORED_NOTIFICATION, true);
+            classicNotification = getBoolean(values, CLASSIC_NOTIFICATION, false);
+            coloredAppShortcuts = getBoolean(values, COLORED_APP_SHORTCUTS, true);
+
+            gaplessPlayback = getBoolean(values, GAPLESS_PLAYBACK, false);
+            volumeNormalization = getBoolean(values, VOLUME_NORMALIZATION, true);
+            crossfadeDuration = getInt(values, CROSSFADE_DURATION, 0);
+            audioDucking = getBoolean(values, AUDIO_DUCKING, true);
+            albumArtOnLockscreen = getBoolean(values, ALBUM_ART_ON_LOCKSCREEN, true);
+            blurredAlbumArt = getBoolean(values, BLURRED_ALBUM_ART, false);
+            ignoreMediaStoreArtwork = getBoolean(values, IGNORE_MEDIA_STORE_ARTWORK, false);
+
+            artistSortOrder = getString(values, ARTIST_SORT_ORDER, SortOrder.ArtistSortOrder.ARTIST_A_Z);
+            artistSongSortOrder = getString(values, ARTIST_SONG_SORT_ORDER, SortOrder.ArtistSongSortOrder.SONG_A_Z);
+            artistAlbumSortOrder = getString(values, ARTIST_ALBUM_SORT_ORDER, SortOrder.ArtistAlbumSortOrder.ALBUM_YEAR);
+            albumSortOrder = getString(values, ALBUM_SORT_ORDER, SortOrder.AlbumSortOrder.ALBUM_A_Z);
+            albumSongSortOrder = getString(values, ALBUM_SONG_SORT_ORDER, SortOrder.AlbumSongSortOrder.SONG_TRACK_LIST);
+            songSortOrder = getString(values, SONG_SORT_ORDER, SortOrder.SongSortOrder.SONG_A_Z);
+            genreSortOrder = getString(values, GENRE_SORT_ORDER, SortOrder.GenreSortOrder.GENRE_A_Z);
+            songChildSortOrder = getInt(values, SONG_CHILD_SORT_ORDER, 1);
+
+            lastAddedCutoff = parseCutoff(values.get(LAST_ADDED_CUTOFF));
+            recentlyPlayedCutoff = parseCutoff(values.get(RECENTLY_PLAYED_CUTOFF));
+
+            lastSleepTimerValue = getInt(values, LAST_SLEEP_TIMER_VALUE, 30);
+            nextSleepTimerElapsedRealTime = getLong(values, NEXT_SLEEP_TIMER_ELAPSED_REALTIME, -1);
+            sleepTimerFinishMusic = getBoolean(values, SLEEP_TIMER_FINISH_SONG, false);
+
+            lastChangelogVersion = getInt(values, LAST_CHANGELOG_VERSION, -1);
+            introShown = getBoolean(values, INTRO_SHOWN, false);
+            rememberShuffle = getBoolean(values, REMEMBER_SHUFFLE, true);
+            autoDownloadImagesPolicy = getString(values, AUTO_DOWNLOAD_IMAGES_POLICY, "only_wifi");
+            synchronizedLyricsShow = getBoolean(values, SYNCHRONIZED_LYRICS_SHOW, true);
+            initializedBlacklist = getBoolean(values, INITIALIZED_BLACKLIST, false);
+            hiddenSongs = getBoolean(values, HIDDEN_SONGS, false);
+            usingArtistImageAsBackground = getBoolean(values, USE_ARTIST_IMAGE_AS_BACKGROUND, true);
+
+            inAppVolume = getFloat(values, IN_APP_VOLUME, 1);
+            balanceValue = getFloat(values, BALANCE_VALUE, 0.5f);
+            minDuration = getInt(values, AUDIO_MIN_DURATION, 10000);
+            threadNumber = getInt(values, THREAD_NUMBER, 6);
+        }
+
+        private static boolean getBoolean(Map<String, ?> values, String key, boolean defaultValue) {
+            final Object value = values.get(key);
+            return value instanceof Boolean ? (Boolean) value : defaultValue;
+        }
+
+        // numbers are read whatever their stored type, older versions stored some ints as floats
+        private static int getInt(Map<String, ?> values, String key, int defaultValue) {
+            final Object value = values.get(key);
+            return value instanceof Number ? ((Number) value).intValue() : defaultValue;
+        }
+
+        private static long getLong(Map<String, ?> values, String key, long defaultValue) {
+            final Object value = values.get(key);
+            return value instanceof Number ? ((Number) value).longValue() : defaultValue;
+        }
+
+        private static float getFloat(Map<String, ?> values, String key, float defaultValue) {
+            final Object value = values.get(key);
+            return value instanceof Number ? ((Number) value).floatValue() : defaultValue;
+        }
+
+        @NonNull
+        private static String getString(Map<String, ?> values, String key, @NonNull String defaultValue) {
+            final Object value = values.get(key);
+            return value instanceof String ? (String) value : defaultValue;
+        }
+    }
+
+    /* Read tracing: reads are only counted while tracing */
+    private volatile boolean mTracingReads = false;
+    private final AtomicLong mReadCount = new AtomicLong();
+    private long mTracedFrames = 0;
+    private long mTracedReads = 0;
+    private long mMaxReadsPerFrame = 0;
+
+    private final Choreographer.FrameCallback mReadTracer = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (!mTracingReads) return;
+            final long reads = mReadCount.getAndSet(0);
+            mTracedFrames++;
+            mTracedReads += reads;
+            if (reads > mMaxReadsPerFrame) mMaxReadsPerFrame = reads;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    };
+
+    /**
+     * Count the preference reads of every frame, until {@link #stopReadTracing()}
+     */
+    @MainThread
+    public void startReadTracing() {
+        if (mTracingReads) return;
+        mTracedFrames = 0;
+        mTracedReads = 0;
+        mMaxReadsPerFrame = 0;
+        mReadCount.set(0);
+        mTracingReads = true;
+        Choreographer.getInstance().postFrameCallback(mReadTracer);
+    }
+
+    @MainThread
+    public void stopReadTracing() {
+        mTracingReads = false;
+        Choreographer.getInstance().removeFrameCallback(mReadTracer);
+    }
+
+    @NonNull
+    public String getReadMetrics() {
+        return "frames " + mTracedFrames
+                + ", reads " + mTracedReads
+                + ", avg reads per frame " + (mTracedFrames == 0 ? 0 : (float) mTracedReads / mTracedFrames)
+                + ", max reads per frame " + mMaxReadsPerFrame;
+    }
+
+    public void dumpReadMetrics() {
+        Log.d(TAG, getReadMetrics());
     }
 }
@@ -1,7 +1,10 @@
 package com.ldt.musicr.utils
 
+import com.ldt.musicr.interactors.CancellationToken
 import com.ldt.musicr.model.core.Entity
-import java.util.*
+import com.ldt.musicr.model.core.SearchResults
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.RecursiveTask
 
 /**
  * Utils class handles search functionality
@@ -20,17 +23,79 @@ object SearchUtils {
     private const val matchAccentBonusValue = 4000
     private const val matchAccentBonusEnabled = true
 
+    /* Lists shorter than this are scored on the calling thread */
+    private const val parallelThreshold = 4096
+    private const val chunkSize = 1024
+
+    /* One pool for the whole process, created on the first long search. ForkJoinPool.commonPool()
+       only exists from API 24, and the workers of this pool end by themselves once idle */
+    private val searchPool by lazy { ForkJoinPool(Runtime.getRuntime().availableProcessors()) }
+
+    /* Scratch buffers of the scoring, one set per thread */
+    private val scratches = ThreadLocal<Scratch>()
+
     /**
-     * Note: desList must be an empty list or you will need to check dup final desList
+     * Score every entity of [srcList] against [keyword]. Nothing is written into the entities, so
+     * the same list can be searched from several threads at once.
+     *
+     * Long lists are split in chunks scored in parallel on a fork/join pool, each chunk keeps its
+     * best [limit] hits in a bounded heap and the chunks are merged the same way.
+     *
+     * @param srcList a list with fast random access
+     * @param limit the number of best hits to return
+     * @param parallel false to score the whole list on the calling thread
+     * @return the matched entities by their index in [srcList], best first
      */
     @JvmStatic
-    fun <T> filterTopHitEntities(srcList: List<T>, desList: MutableList<T>, keyword: String, @SearchConstant.MatchFlag flags: Int = 0) where T : Entity {
-        srcList.forEach {
-            val matchScore = retrieveMatchScore(keyword, it.displayName, null, null, it, it.spanPosList, flags)
-            it.searchScore = matchScore
-            if(matchScore > 0) {
-                desList.add(it)
+    @JvmOverloads
+    fun <T> filterTopHitEntities(srcList: List<T>, keyword: String, @SearchConstant.MatchFlag flags: Int = 0,
+                                 limit: Int = Int.MAX_VALUE, token: CancellationToken? = null, parallel: Boolean = true): SearchResults where T : Entity {
+        val preparedKey = prepareKey(keyword, flags)
+        val results = if (!parallel || srcList.size < parallelThreshold) {
+            scoreRange(srcList, 0, srcList.size, keyword, preparedKey, flags, limit, token)
+        } else {
+            searchPool.invoke(ScoreTask(srcList, 0, srcList.size, keyword, preparedKey, flags, limit, token))
+        }
+        return results.build()
+    }
+
+    private fun <T : Entity> scoreRange(srcList: List<T>, from: Int, to: Int, keyword: String, preparedKey: PreparedKey,
+                                        @SearchConstant.MatchFlag flags: Int, limit: Int, token: CancellationToken?): SearchResults.Builder {
+        val results = SearchResults.Builder(limit)
+        val scratch = scratches.get() ?: Scratch().also { scratches.set(it) }
+        // the spans of an entity are copied into the results only when it matches
+        val spanPosList = scratch.spanPosList
+        for (index in from until to) {
+            if (token != null && (index - from) % chunkSize == 0) token.throwIfCancelled()
+            val entity = srcList[index]
+            val matchScore = retrieveMatchScore(keyword, entity.displayName, null, null, entity, spanPosList, flags, preparedKey, scratch)
+            if (matchScore > 0) {
+                results.add(index, matchScore, spanPosList)
+            }
+        }
+        return results
+    }
+
+    private class ScoreTask<T : Entity>(
+        private val srcList: List<T>,
+        private val from: Int,
+        private val to: Int,
+        private val keyword: String,
+        private val preparedKey: PreparedKey,
+        private val flags: Int,
+        private val limit: Int,
+        private val token: CancellationToken?
+    ) : RecursiveTask<SearchResults.Builder>() {
+        override fun compute(): SearchResults.Builder {
+            if (to - from <= chunkSize) {
+                return scoreRange(srcList, from, to, keyword, preparedKey, flags, limit, token)
             }
+            val middle = (from + to) ushr 1
+            val left = ScoreTask(srcList, from, middle, keyword, preparedKey, flags, limit, token)
+            left.fork()
+            val results = ScoreTask(srcList, middle, to, keyword, preparedKey, flags, limit, token).compute()
+            results.addAll(left.join())
+            return results
         }
     }
 
@@ -42,6 +107,43 @@ object SearchUtils {
         return Utils.hasFlags(flags, flagsNeedToCheck)
     }
 
+    /**
+     * The words of a keyword, prepared once for all the entities of a search
+     */
+    private fun prepareKey(key: String, @SearchConstant.MatchFlag flags: Int): PreparedKey {
+        // keywords will be transform to lowercase by default
+        val arrayKeyWord = if (hasFlags(flags, SearchConstant.SEARCH_FLAG_SEARCH_NBS)) SearchPreProcessingProvider.get(
+            key,
+            (SearchConstant.SEARCH_FLAG_PREPROCESS_TYPE_KEY_NBS or SearchConstant.SEARCH_FLAG_TO_LOW_CASE
+                    or (if (splitWordExtendTypeKeyEnabled) SearchConstant.SEARCH_FLAG_PREPROCESS_SPLIT_WORD_EXTEND else 0)
+                    or (if (splitWordEnhancedTypeKeyEnabled) SearchConstant.SEARCH_FLAG_PREPROCESS_SPLIT_WORD_ENHANCED else 0))
+        ).arrayWords else SearchPreProcessingProvider.get(
+            key,
+            (SearchConstant.SEARCH_FLAG_PREPROCESS_TYPE_KEY or SearchConstant.SEARCH_FLAG_TO_LOW_CASE
+                    or (if (splitWordExtendTypeKeyEnabled) SearchConstant.SEARCH_FLAG_PREPROCESS_SPLIT_WORD_EXTEND else 0)
+                    or (if (splitWordEnhancedTypeKeyEnabled) SearchConstant.SEARCH_FLAG_PREPROCESS_SPLIT_WORD_ENHANCED else 0))
+        ).arrayWords
+        val arrayKeyWordKeepAccents = if (hasFlags(flags, SearchConstant.SEARCH_FLAG_SEARCH_NBS)) SearchPreProcessingProvider.get(
+            key, (SearchConstant.SEARCH_FLAG_PREPROCESS_TYPE_KEY_NBS or SearchConstant.SEARCH_FLAG_TO_LOW_CASE
+                    or (if (splitWordExtendTypeKeyEnabled) SearchConstant.SEARCH_FLAG_PREPROCESS_SPLIT_WORD_EXTEND else 0)
+                    or (if (splitWordEnhancedTypeKeyEnabled) SearchConstant.SEARCH_FLAG_PREPROCESS_SPLIT_WORD_ENHANCED else 0)
+                    or SearchConstant.SEARCH_FLAG_PREPROCESS_KEEP_ACCENTS)
+        ).arrayWords else SearchPreProcessingProvider.get(
+            key,
+            (SearchConstant.SEARCH_FLAG_PREPROCESS_KEEP_ACCENTS or SearchConstant.SEARCH_FLAG_TO_LOW_CASE
+                    or (if (splitWordExtendTypeKeyEnabled) SearchConstant.SEARCH_FLAG_PREPROCESS_SPLIT_WORD_EXTEND else 0)
+                    or (if (splitWordEnhancedTypeKeyEnabled) SearchConstant.SEARCH_FLAG_PREPROCESS_SPLIT_WORD_ENHANCED else 0)
+                    or SearchConstant.SEARCH_FLAG_PREPROCESS_KEEP_ACCENTS)
+        ).arrayWords
+
+        // the old way
+        // arrKey = hasFlags(flags, SEARCH_FLAG_VALID_SEARCH_USERNAME) ? preprocessKeyStrForUserName(key) : preprocessKeyStr(key);
+
+        // sorted as a copy, the array is shared by the cache of SearchPreProcessingProvider
+        return PreparedKey(arrayKeyWord, arrayKeyWordKeepAccents.sortedBy { it.length }.toTypedArray(),
+            arrayKeyWordKeepAccents.size == arrayKeyWord.size)
+    }
+
     @JvmStatic
     private fun retrieveMatchScore(
         key: String?,
@@ -50,7 +152,9 @@ object SearchUtils {
         paramArrayItemWord: Array<String>?,
         entity: Entity,
         spanPosArray: MutableList<Int>,
-        @SearchConstant.MatchFlag flags: Int = 0
+        @SearchConstant.MatchFlag flags: Int = 0,
+        preparedKey: PreparedKey? = null,
+        scratch: Scratch = Scratch()
     ): Float {
         var matchScore = 0f
 
@@ -64,7 +168,7 @@ object SearchUtils {
         var fullMatchAccentsBonusChecking = matchAccentBonusEnabled
         fullMatchAccentsBonusEnabled = fullMatchAccentsBonusChecking
         val lowerDpn = ""
-        val arrListPostStartEndMatch: MutableMap<Int, ArrayList<Int>?> = HashMap()
+        val matchedRanges = scratch.matchedRanges
 
         val arrayItemWordKeepAccents: Array<String>
         val arrayItemWordOrg: Array<String> = when {
@@ -132,39 +236,14 @@ object SearchUtils {
                 arrayKeyWordKeepAccents = emptyArray()
                 paramArrayKeyWord
             }
-            key != null -> {
-                // keywords will be transform to lowercase by default
-                val arrayKeyWord = if (hasFlags(flags, SearchConstant.SEARCH_FLAG_SEARCH_NBS)) SearchPreProcessingProvider.get(
-                    key,
-                    (SearchConstant.SEARCH_FLAG_PREPROCESS_TYPE_KEY_NBS or SearchConstant.SEARCH_FLAG_TO_LOW_CASE
-                            or (if (splitWordExtendTypeKeyEnabled) SearchConstant.SEARCH_FLAG_PREPROCESS_SPLIT_WORD_EXTEND else 0)
-                            or (if (splitWordEnhancedTypeKeyEnabled) SearchConstant.SEARCH_FLAG_PREPROCESS_SPLIT_WORD_ENHANCED else 0))
-                ).arrayWords else SearchPreProcessingProvider.get(
-                    key,
-                    (SearchConstant.SEARCH_FLAG_PREPROCESS_TYPE_KEY or SearchConstant.SEARCH_FLAG_TO_LOW_CASE
-                            or (if (splitWordExtendTypeKeyEnabled) SearchConstant.SEARCH_FLAG_PREPROCESS_SPLIT_WORD_EXTEND else 0)
-                            or (if (splitWordEnhancedTypeKeyEnabled) SearchConstant.SEARCH_FLAG_PREPROCESS_SPLIT_WORD_ENHANCED else 0))
-                ).arrayWords
-                arrayKeyWordKeepAccents = if (hasFlags(flags, SearchConstant.SEARCH_FLAG_SEARCH_NBS)) SearchPreProcessingProvider.get(
-                    key, (SearchConstant.SEARCH_FLAG_PREPROCESS_TYPE_KEY_NBS or SearchConstant.SEARCH_FLAG_TO_LOW_CASE
-                            or (if (splitWordExtendTypeKeyEnabled) SearchConstant.SEARCH_FLAG_PREPROCESS_SPLIT_WORD_EXTEND else 0)
-                            or (if (splitWordEnhancedTypeKeyEnabled) SearchConstant.SEARCH_FLAG_PREPROCESS_SPLIT_WORD_ENHANCED else 0)
-                            or SearchConstant.SEARCH_FLAG_PREPROCESS_KEEP_ACCENTS)
-                ).arrayWords else SearchPreProcessingProvider.get(
-                    key,
-                    (SearchConstant.SEARCH_FLAG_PREPROCESS_KEEP_ACCENTS or SearchConstant.SEARCH_FLAG_TO_LOW_CASE
-                            or (if (splitWordExtendTypeKeyEnabled) SearchConstant.SEARCH_FLAG_PREPROCESS_SPLIT_WORD_EXTEND else 0)
-                            or (if (splitWordEnhancedTypeKeyEnabled) SearchConstant.SEARCH_FLAG_PREPROCESS_SPLIT_WORD_ENHANCED else 0)
-                            or SearchConstant.SEARCH_FLAG_PREPROCESS_KEEP_ACCENTS)
-                ).arrayWords
-                if (arrayKeyWordKeepAccents.size != arrayKeyWord.size) {
+            preparedKey != null || key != null -> {
+                val prepared = preparedKey ?: prepareKey(key!!, flags)
+                if (!prepared.sameSize) {
                     // something wrong, two arrays must have the same size
                     fullMatchAccentsBonusChecking = false
                 }
-
-                // the old way
-                // arrKey = hasFlags(flags, SEARCH_FLAG_VALID_SEARCH_USERNAME) ? preprocessKeyStrForUserName(key) : preprocessKeyStr(key);
-                arrayKeyWord
+                arrayKeyWordKeepAccents = prepared.wordsKeepAccents
+                prepared.words
             }
             else -> {
                 // no way to retrieve the array key words, so return
@@ -172,8 +251,8 @@ object SearchUtils {
             }
         }
         val sizeDpnElement = arrayItemWordLowercase.size
-        val dpnAlreadyMatch = IntArray(sizeDpnElement)
-        Arrays.fill(dpnAlreadyMatch, -2)
+        val dpnAlreadyMatch = scratch.alreadyMatch(sizeDpnElement)
+        matchedRanges.reset(sizeDpnElement)
         var matchCount = 0
 
         spanPosArray.clear()
@@ -182,9 +261,6 @@ object SearchUtils {
         if (arrayKeyWord.size > 1) {
             arrayKeyWord.sortedBy { it.length }
         }
-        if (!arrayKeyWordKeepAccents.isNullOrEmpty()) {
-            arrayKeyWordKeepAccents.sortBy { it.length }
-        }
         var hasContainFullMatch = false
         var hasStartWithMatch = false
         var hasContainAccentsInKey = false
@@ -229,11 +305,11 @@ object SearchUtils {
                         }
                         if (match) {
                             try {
-                                if (arrListPostStartEndMatch[t] != null && arrListPostStartEndMatch[t]!!.size > 0) {
+                                if (matchedRanges.size(t) > 0) {
                                     var needToBreak = false
                                     var l = 0
-                                    while (l < arrListPostStartEndMatch[t]!!.size - 1) {
-                                        if (index >= arrListPostStartEndMatch[t]!![l] && index < arrListPostStartEndMatch[t]!![l + 1]) {
+                                    while (l < matchedRanges.size(t) - 1) {
+                                        if (index >= matchedRanges.get(t, l) && index < matchedRanges.get(t, l + 1)) {
                                             needToBreak = true
                                             countLoopToFind++
                                             index = arrayItemWordLowercase[t].indexOf((arrayKeyWord[i]), index + (arrayKeyWord[i].length) /*dpnAlreadyMatch[t]*/)
@@ -316,10 +392,7 @@ object SearchUtils {
                     if (arrayKeyWord[i].length != arrayItemWordLowercase[bestPos].length) {
                         indexStartMatch = arrayItemWordLowercase[bestPos].indexOf((arrayKeyWord[i]), startMatchPos)
                         indexEndMatch = indexStartMatch + arrayKeyWord[i].length
-                        if (arrListPostStartEndMatch.containsKey(bestPos) && arrListPostStartEndMatch[bestPos] != null) {
-                            arrListPostStartEndMatch[bestPos]!!.add(indexStartMatch)
-                            arrListPostStartEndMatch[bestPos]!!.add(indexEndMatch)
-                        } else arrListPostStartEndMatch[bestPos] = ArrayList(Arrays.asList(indexStartMatch, indexEndMatch))
+                        matchedRanges.add(bestPos, indexStartMatch, indexEndMatch)
                     }
                     if (percent == 1f) {
                         hasContainFullMatch = true
@@ -411,8 +484,62 @@ object SearchUtils {
     private fun filterTopHitSample() {
         val srcList = mutableListOf<Entity>()
         val desList = mutableListOf<Entity>()
+        val spanPosList = mutableListOf<Int>()
         srcList.forEach {
-            val matchScore = retrieveMatchScore(null, null, emptyArray(), emptyArray(), it, it.spanPosList, SearchConstant.SEARCH_FLAG_TO_LOW_CASE)
+            val matchScore = retrieveMatchScore(null, null, emptyArray(), emptyArray(), it, spanPosList, SearchConstant.SEARCH_FLAG_TO_LOW_CASE)
+        }
+    }
+
+    private class PreparedKey(
+        val words: Array<String>,
+        /* sorted by length */
+        val wordsKeepAccents: Array<String>,
+        val sameSize: Boolean
+    )
+
+    /**
+     * What the scoring of one entity needs, reused for the next one
+     */
+    private class Scratch {
+        val spanPosList = ArrayList<Int>()
+        val matchedRanges = MatchedRanges()
+        private var alreadyMatch = IntArray(16)
+
+        fun alreadyMatch(size: Int): IntArray {
+            if (size > alreadyMatch.size) alreadyMatch = IntArray(maxOf(size, alreadyMatch.size * 2))
+            alreadyMatch.fill(-2, 0, size)
+            return alreadyMatch
+        }
+    }
+
+    /**
+     * The start and end offsets already matched in every word of a display name, by pairs
+     */
+    private class MatchedRanges {
+        private var ranges = arrayOfNulls<IntArray>(16)
+        private var sizes = IntArray(16)
+
+        fun reset(words: Int) {
+            if (words > sizes.size) {
+                ranges = ranges.copyOf(maxOf(words, sizes.size * 2))
+                sizes = IntArray(ranges.size)
+            } else {
+                sizes.fill(0, 0, words)
+            }
+        }
+
+        fun size(word: Int): Int = sizes[word]
+
+        fun get(word: Int, i: Int): Int = ranges[word]!![i]
+
+        fun add(word: Int, start: Int, end: Int) {
+            var range = ranges[word]
+            if (range == null || sizes[word] + 2 > range.size) {
+                range = range?.copyOf(range.size * 2) ?: IntArray(4)
+                ranges[word] = range
+            }
+            range[sizes[word]++] = start
+            range[sizes[word]++] = end
         }
     }
 
@@ -6,6 +6,7 @@ import android.text.Spannable
 import android.text.SpannableString
 import android.text.Spanned
 import android.text.style.ForegroundColorSpan
+import com.ldt.musicr.model.core.SearchResults
 import com.ldt.musicr.provider.ColorProvider
 import com.ldt.musicr.ui.widget.CustomTypefaceSpan
 
@@ -60,15 +61,31 @@ object ViewUtils {
         }
     }
 
-    fun getHighlightedText(orgText: CharSequence, spanPosArray: MutableList<Int>, foregroundColor: Int = ColorProvider.baseColor, typefaceValue: Int = NOT_SET): CharSequence {
+    /**
+     * @param spanPosArray start and end offsets of the parts to highlight, by pairs, from [from] until [to]
+     */
+    fun getHighlightedText(orgText: CharSequence, spanPosArray: IntArray, from: Int = 0, to: Int = spanPosArray.size, foregroundColor: Int = ColorProvider.baseColor, typefaceValue: Int = NOT_SET): CharSequence {
+        return getHighlightedText(orgText, from, to, foregroundColor, typefaceValue) { spanPosArray[it] }
+    }
+
+    /**
+     * Highlight the parts of [orgText] matched by hit [hit] of [results]
+     */
+    fun getHighlightedText(orgText: CharSequence, results: SearchResults, hit: Int, foregroundColor: Int = ColorProvider.baseColor, typefaceValue: Int = NOT_SET): CharSequence {
+        return getHighlightedText(orgText, results.getSpanStart(hit), results.getSpanEnd(hit), foregroundColor, typefaceValue) { results.getSpan(it) }
+    }
+
+    private inline fun getHighlightedText(orgText: CharSequence, from: Int, to: Int, foregroundColor: Int, typefaceValue: Int, spanPos: (Int) -> Int): CharSequence {
         val spannable: Spannable = SpannableString(orgText)
         try {
-            var i = 0
-            while (i < spanPosArray.size - 1) {
-                if (spanPosArray[i] >= 0 && spanPosArray[i + 1] > spanPosArray[i]) {
+            var i = from
+            while (i < to - 1) {
+                val start = spanPos(i)
+                val end = spanPos(i + 1)
+                if (start >= 0 && end > start) {
                     setSpanToHighlightPositions(spannable,
-                        spanPosArray[i],
-                        spanPosArray[i + 1],
+                        start,
+                        end,
                         foregroundColor,
                         typefaceValue,
                         Spannable.SPAN_EXCLUSIVE_EXCLUSIVE
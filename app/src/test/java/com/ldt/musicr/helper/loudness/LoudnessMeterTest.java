@@ -0,0 +1,100 @@
+package com.ldt.musicr.helper.loudness;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Measures generated sines with {@link LoudnessMeter} and checks the volume
+ * {@link LoudnessAnalyzer#toVolume(float)} plays them at.
+ */
+public class LoudnessMeterTest {
+    private static final int SAMPLE_RATE = 44100;
+    private static final float TOLERANCE_DB = 0.05f;
+
+    @Test
+    public void measure_sineIsAtItsPowerLevel() {
+        LoudnessMeter meter = new LoudnessMeter(SAMPLE_RATE, 2);
+        addSine(meter, 2, 0.25, 10);
+
+        float[] result = meter.measure();
+        assertNotNull(result);
+        // a sine of amplitude 1/4 is 12 dB below a full scale sine
+        assertEquals(-12.04f, result[0], TOLERANCE_DB);
+        assertEquals(-12.04f, result[1], TOLERANCE_DB);
+        // brought down from -12 dB to -18 dB
+        assertEquals(Math.pow(10, -5.96 / 20), LoudnessAnalyzer.toVolume(result[0]), 0.01);
+    }
+
+    @Test
+    public void measure_monoIsAsLoudAsTheSameStereo() {
+        LoudnessMeter mono = new LoudnessMeter(SAMPLE_RATE, 1);
+        addSine(mono, 1, 0.25, 10);
+        LoudnessMeter stereo = new LoudnessMeter(SAMPLE_RATE, 2);
+        addSine(stereo, 2, 0.25, 10);
+
+        assertEquals(stereo.measure()[0], mono.measure()[0], TOLERANCE_DB);
+    }
+
+    @Test
+    public void measure_leavesOutSilenceAndQuietPassages() {
+        LoudnessMeter meter = new LoudnessMeter(SAMPLE_RATE, 2);
+        addSine(meter, 2, 0.25, 10);
+        addSine(meter, 2, 0, 10);
+        // 30 dB below the rest, under the relative gate
+        addSine(meter, 2, 0.25 / 31.6, 10);
+
+        float[] result = meter.measure();
+        assertNotNull(result);
+        assertEquals(-12.04f, result[0], TOLERANCE_DB);
+    }
+
+    @Test
+    public void measure_silenceCannotBeMeasured() {
+        LoudnessMeter meter = new LoudnessMeter(SAMPLE_RATE, 2);
+        addSine(meter, 2, 0, 10);
+        assertNull(meter.measure());
+    }
+
+    @Test
+    public void measure_partialBlocksOfAWindowAreDropped() {
+        LoudnessMeter meter = new LoudnessMeter(SAMPLE_RATE, 2);
+        // less than a block of a loud sine, then a window of a quiet one
+        addSine(meter, 2, 1, 0.3);
+        meter.endWindow();
+        addSine(meter, 2, 0.25, 10);
+
+        float[] result = meter.measure();
+        assertNotNull(result);
+        assertEquals(-12.04f, result[0], TOLERANCE_DB);
+    }
+
+    @Test
+    public void toVolume_neverAmplifiesNorCutsMoreThan15Db() {
+        assertEquals(1f, LoudnessAnalyzer.toVolume(-30f), 0f);
+        assertEquals(1f, LoudnessAnalyzer.toVolume(LoudnessAnalyzer.TARGET_LOUDNESS_DB), 0f);
+        assertEquals(Math.pow(10, -15.0 / 20), LoudnessAnalyzer.toVolume(0f), 0.001);
+    }
+
+    /**
+     * Add a 1 kHz sine, the same on every channel, in chunks of 4096 samples like a decoder.
+     */
+    private static void addSine(LoudnessMeter meter, int channels, double amplitude, double seconds) {
+        final int frames = (int) (seconds * SAMPLE_RATE);
+        final short[] chunk = new short[4096 * channels];
+        int count = 0;
+        for (int i = 0; i < frames; i++) {
+            final short sample = (short) Math.round(amplitude * 32767 * Math.sin(2 * Math.PI * 1000 * i / SAMPLE_RATE));
+            for (int c = 0; c < channels; c++) {
+                chunk[count++] = sample;
+            }
+            if (count == chunk.length) {
+                meter.add(chunk, count);
+                count = 0;
+            }
+        }
+        meter.add(chunk, count);
+    }
+}
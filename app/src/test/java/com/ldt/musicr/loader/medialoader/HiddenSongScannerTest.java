@@ -0,0 +1,142 @@
+package com.ldt.musicr.loader.medialoader;
+
+import com.ldt.musicr.model.Song;
+import com.ldt.musicr.model.SongTags;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Scans a generated tree with {@link HiddenSongScanner}, with a tag reader that counts its reads
+ * instead of parsing the files.
+ */
+public class HiddenSongScannerTest {
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private File mRoot;
+    private File mCacheFile;
+    private final AtomicInteger mTagReads = new AtomicInteger();
+
+    private final HiddenSongScanner.TagReader mTagReader = path -> {
+        mTagReads.incrementAndGet();
+        if (!path.endsWith("tagged.mp3")) return null;
+        return new SongTags(path, new File(path).lastModified(), "Tagged", "Artist", "Album", "", 2020, 3, 1000,
+                null, false, null, SongTags.NO_REPLAY_GAIN, SongTags.NO_REPLAY_GAIN);
+    };
+
+    @Before
+    public void setUp() throws IOException {
+        mRoot = mFolder.newFolder("storage");
+        mCacheFile = new File(mFolder.getRoot(), "hidden_songs.cache");
+
+        create("Music/visible.mp3");
+        create("Hidden/.nomedia");
+        create("Hidden/tagged.mp3");
+        create("Hidden/notes.txt");
+        create("Hidden/Live/untagged.flac");
+        create(".thumbs/.nomedia");
+        create(".thumbs/dot_folder.mp3");
+        create("Android/data/.nomedia");
+        create("Android/data/app_private.mp3");
+    }
+
+    @Test
+    public void scan_findsTheSongsBelowNoMediaFolders() {
+        List<Song> songs = new HiddenSongScanner(mRoot, mCacheFile, mTagReader).scan();
+
+        Map<String, Song> byPath = byPath(songs);
+        assertEquals(new HashSet<>(Arrays.asList(path("Hidden/tagged.mp3"), path("Hidden/Live/untagged.flac"))), byPath.keySet());
+        assertEquals("Tagged", byPath.get(path("Hidden/tagged.mp3")).title);
+        assertEquals(2020, byPath.get(path("Hidden/tagged.mp3")).year);
+        assertEquals("untagged", byPath.get(path("Hidden/Live/untagged.flac")).title);
+        assertEquals(2, mTagReads.get());
+
+        for (Song song : songs) {
+            assertTrue(HiddenSongScanner.isHiddenSongId(song.id));
+            assertNotEquals(Song.EMPTY_SONG.id, song.id);
+        }
+        assertNotEquals(songs.get(0).id, songs.get(1).id);
+    }
+
+    @Test
+    public void scan_readsOnlyNewFilesAgain() throws IOException {
+        List<Song> first = new HiddenSongScanner(mRoot, mCacheFile, mTagReader).scan();
+        assertEquals(2, mTagReads.get());
+
+        // a new scanner starts from the cache file
+        List<Song> second = new HiddenSongScanner(mRoot, mCacheFile, mTagReader).scan();
+        assertEquals(2, mTagReads.get());
+        assertEquals(ids(first), ids(second));
+
+        final File hidden = new File(mRoot, "Hidden");
+        final long lastModified = hidden.lastModified();
+        create("Hidden/new.mp3");
+        assertTrue(hidden.setLastModified(lastModified + 2000));
+
+        List<Song> third = new HiddenSongScanner(mRoot, mCacheFile, mTagReader).scan();
+        assertEquals(3, mTagReads.get());
+        assertEquals(3, third.size());
+        assertEquals(byPath(first).get(path("Hidden/tagged.mp3")).id, byPath(third).get(path("Hidden/tagged.mp3")).id);
+    }
+
+    @Test
+    public void makeId_movesCollidingPathsToFreeIds() {
+        // "Aa" and "BB" have the same hash code
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+
+        HashSet<Integer> usedIds = new HashSet<>();
+        final int first = HiddenSongScanner.makeId("Aa", usedIds);
+        final int second = HiddenSongScanner.makeId("BB", usedIds);
+        assertNotEquals(first, second);
+        assertTrue(first < -1);
+        assertTrue(second < -1);
+
+        // same paths in the same order, same ids
+        usedIds.clear();
+        assertEquals(first, HiddenSongScanner.makeId("Aa", usedIds));
+        assertEquals(second, HiddenSongScanner.makeId("BB", usedIds));
+    }
+
+    private void create(String relativePath) throws IOException {
+        File file = new File(mRoot, relativePath);
+        assertTrue(file.getParentFile().isDirectory() || file.getParentFile().mkdirs());
+        assertTrue(file.createNewFile());
+    }
+
+    private String path(String relativePath) {
+        return new File(mRoot, relativePath).getPath();
+    }
+
+    private static Map<String, Song> byPath(List<Song> songs) {
+        HashMap<String, Song> map = new HashMap<>();
+        for (Song song : songs) {
+            map.put(song.data, song);
+        }
+        return map;
+    }
+
+    private static List<Integer> ids(List<Song> songs) {
+        ArrayList<Integer> ids = new ArrayList<>();
+        for (Song song : songs) {
+            ids.add(song.id);
+        }
+        return ids;
+    }
+}
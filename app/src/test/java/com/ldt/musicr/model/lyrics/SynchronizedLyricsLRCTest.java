@@ -0,0 +1,211 @@
+package com.ldt.musicr.model.lyrics;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Parses enhanced LRC lyrics with {@link SynchronizedLyricsLRC}: word times, lines with several
+ * times, the offset attribute, and generated karaoke files checked against the regex parser it
+ * replaced. How long both parsers take is printed by a benchmark left out of the default run.
+ */
+public class SynchronizedLyricsLRCTest {
+    private static final int RUNS = 20;
+
+    private static final Pattern LRC_LINE_PATTERN = Pattern.compile("((?:\\[.*?])+)(.*)");
+    private static final Pattern LRC_TIME_PATTERN = Pattern.compile("\\[(\\d+):(\\d{2}(?:\\.\\d+)?)]");
+    private static final Pattern LRC_ATTRIBUTE_PATTERN = Pattern.compile("\\[(\\D+):(.+)]");
+    private static final Pattern LRC_WORD_TIME_PATTERN = Pattern.compile("<\\d+:\\d{2}(?:\\.\\d+)?>");
+
+    private static final String ENHANCED = "[ti:Words]\n"
+            + "[offset:+200]\n"
+            + "[00:01.00]<00:01.00>Hello <00:01.50>big <00:02.25>world<00:03.00>\r\n"
+            + "[00:10.00][00:20.00]<00:10.00>Again <00:10.40>twice<00:11.00>\n"
+            + "\n"
+            + "[00:05.00]Plain <b>line</b>\n";
+
+    @Test
+    public void parse_wordTimesAreTakenOutOfTheText() {
+        SynchronizedLyricsLRC lyrics = parse(ENHANCED);
+        assertEquals(4, lyrics.getLineCount());
+        assertEquals(1000, lyrics.getLineTime(0));
+        assertEquals("Hello big world", lyrics.getLineText(0));
+        // tags that are not times stay in the text
+        assertEquals(5000, lyrics.getLineTime(1));
+        assertEquals("Plain <b>line</b>", lyrics.getLineText(1));
+    }
+
+    @Test
+    public void getSungLength_followsTheWordTimes() {
+        SynchronizedLyricsLRC lyrics = parse(ENHANCED);
+        // the offset of +200 ms brings every time 200 ms earlier
+        assertEquals(0, lyrics.getSungLength(0, 799));
+        assertEquals("Hello ".length(), lyrics.getSungLength(0, 800));
+        assertEquals("Hello ".length(), lyrics.getSungLength(0, 1299));
+        assertEquals("Hello big ".length(), lyrics.getSungLength(0, 1300));
+        assertEquals("Hello big world".length(), lyrics.getSungLength(0, 2050));
+        assertEquals("Hello big world".length(), lyrics.getSungLength(0, 2800));
+
+        // a line without word times is sung all at once
+        assertEquals(0, lyrics.getSungLength(1, 4799));
+        assertEquals("Plain <b>line</b>".length(), lyrics.getSungLength(1, 4800));
+    }
+
+    @Test
+    public void getSungLength_lineWithSeveralTimesHasTheWordsAtEachTime() {
+        SynchronizedLyricsLRC lyrics = parse(ENHANCED);
+        assertEquals(10000, lyrics.getLineTime(2));
+        assertEquals(20000, lyrics.getLineTime(3));
+        assertEquals("Again twice", lyrics.getLineText(2));
+        assertEquals("Again twice", lyrics.getLineText(3));
+
+        // the word times are relative to each time of the line
+        assertEquals("Again ".length(), lyrics.getSungLength(2, 10199));
+        assertEquals("Again twice".length(), lyrics.getSungLength(2, 10200));
+        assertEquals(0, lyrics.getSungLength(3, 19799));
+        assertEquals("Again ".length(), lyrics.getSungLength(3, 19800));
+        assertEquals("Again twice".length(), lyrics.getSungLength(3, 20200));
+    }
+
+    @Test
+    public void getLineIndex_appliesTheOffset() {
+        SynchronizedLyricsLRC lyrics = parse(ENHANCED);
+        // lines are shown 500 ms early, plus the 200 ms of the offset
+        assertEquals(0, lyrics.getLineIndex(0));
+        assertEquals(0, lyrics.getLineIndex(4299));
+        assertEquals(1, lyrics.getLineIndex(4300));
+        assertEquals(2, lyrics.getLineIndex(9300));
+        assertEquals(3, lyrics.getLineIndex(60000));
+
+        SynchronizedLyricsLRC negative = parse("[offset:-300]\n[00:05.00]Line\n[00:06.00]Next\n");
+        assertEquals(0, negative.getLineIndex(5799));
+        assertEquals(1, negative.getLineIndex(5800));
+    }
+
+    @Test
+    public void parse_findsTheSameLinesAsTheRegexParser() {
+        for (int lineCount : new int[]{1, 100, 1000, 10000}) {
+            final String data = generate(lineCount);
+            SynchronizedLyricsLRC lyrics = new SynchronizedLyricsLRC();
+            lyrics.setData(null, data).parse(false);
+            TreeMap<Integer, String> expected = parseWithRegex(data);
+
+            assertEquals(lineCount + " lines", expected.size(), lyrics.getLineCount());
+            int i = 0;
+            for (Map.Entry<Integer, String> line : expected.entrySet()) {
+                // the regex parser rounds the float seconds down, it can be one milli early
+                assertTrue("time of line " + i + " of " + lineCount, Math.abs(lyrics.getLineTime(i) - line.getKey()) <= 1);
+                // its texts still have the word times
+                assertEquals("text of line " + i + " of " + lineCount,
+                        LRC_WORD_TIME_PATTERN.matcher(line.getValue()).replaceAll(""), lyrics.getLineText(i));
+                i++;
+            }
+        }
+    }
+
+    @Ignore("benchmark, run by hand")
+    @Test
+    public void parse_timing() {
+        StringBuilder builder = new StringBuilder();
+        for (int lineCount : new int[]{100, 1000, 10000}) {
+            final String data = generate(lineCount);
+            // warm up both parsers
+            new SynchronizedLyricsLRC().setData(null, data).parse(false);
+            parseWithRegex(data);
+
+            long parserNanos = 0;
+            long regexNanos = 0;
+            for (int run = 0; run < RUNS; run++) {
+                long start = System.nanoTime();
+                new SynchronizedLyricsLRC().setData(null, data).parse(false);
+                parserNanos += System.nanoTime() - start;
+
+                start = System.nanoTime();
+                parseWithRegex(data);
+                regexNanos += System.nanoTime() - start;
+            }
+            builder.append(lineCount).append(" lines (").append(data.length() / 1024).append(" KB): parser ")
+                    .append(parserNanos / RUNS / 1000).append(" us, regex ").append(regexNanos / RUNS / 1000).append(" us\n");
+        }
+        System.out.print(builder);
+    }
+
+    private static SynchronizedLyricsLRC parse(String data) {
+        SynchronizedLyricsLRC lyrics = new SynchronizedLyricsLRC();
+        lyrics.setData(null, data).parse(false);
+        return lyrics;
+    }
+
+    /**
+     * An enhanced LRC file: attributes, then lines of timed words, some of them repeated.
+     */
+    private static String generate(int lineCount) {
+        final Random rnd = new Random(lineCount);
+        final StringBuilder sb = new StringBuilder();
+        sb.append("[ti:Benchmark]\n[ar:Nobody]\n[offset:+120]\n\n");
+
+        int time = 1000;
+        for (int i = 0; i < lineCount; i++) {
+            appendTime(sb, '[', time, ']');
+            if (i % 10 == 9) appendTime(sb, '[', time + lineCount * 4000, ']');
+
+            int words = 3 + rnd.nextInt(6);
+            for (int w = 0; w < words; w++) {
+                appendTime(sb, '<', time, '>');
+                sb.append("word").append(rnd.nextInt(1000)).append(' ');
+                time += 150 + rnd.nextInt(400);
+            }
+            appendTime(sb, '<', time, '>');
+            sb.append(i % 7 == 0 ? "\r\n\r\n" : "\r\n");
+            time += 500;
+        }
+        return sb.toString();
+    }
+
+    private static void appendTime(StringBuilder sb, char open, int millis, char close) {
+        int minutes = millis / 60000;
+        int seconds = millis / 1000 % 60;
+        int hundredths = millis / 10 % 100;
+        sb.append(open);
+        if (minutes < 10) sb.append('0');
+        sb.append(minutes).append(':');
+        if (seconds < 10) sb.append('0');
+        sb.append(seconds).append('.');
+        if (hundredths < 10) sb.append('0');
+        sb.append(hundredths).append(close);
+    }
+
+    /* The former SynchronizedLyricsLRC.parse, with a sorted map instead of a SparseArray */
+    private static TreeMap<Integer, String> parseWithRegex(String data) {
+        final TreeMap<Integer, String> result = new TreeMap<>();
+        for (String line : data.split("\r?\n")) {
+            line = line.trim();
+            if (line.isEmpty()) continue;
+
+            Matcher attrMatcher = LRC_ATTRIBUTE_PATTERN.matcher(line);
+            if (attrMatcher.find()) continue;
+
+            Matcher matcher = LRC_LINE_PATTERN.matcher(line);
+            if (matcher.find()) {
+                String time = matcher.group(1);
+                String text = matcher.group(2);
+
+                Matcher timeMatcher = LRC_TIME_PATTERN.matcher(time);
+                while (timeMatcher.find()) {
+                    int m = Integer.parseInt(timeMatcher.group(1));
+                    float s = Float.parseFloat(timeMatcher.group(2));
+                    result.put((int) (s * 1000f) + m * 60000, text);
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,150 @@
+package com.ldt.musicr.provider;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Matches paths against compiled blacklists, and times the matching of a library against 0, 10
+ * and 100 blacklisted folders.
+ */
+public class BlacklistFilterTest {
+    private static final int LIBRARY_SIZE = 50_000;
+    private static final int RUNS = 20;
+
+    @Test
+    public void compile_emptyOrBlankPathsGiveTheEmptyFilter() {
+        assertSame(BlacklistFilter.EMPTY, BlacklistFilter.compile(Collections.emptyList()));
+        assertSame(BlacklistFilter.EMPTY, BlacklistFilter.compile(Arrays.asList("", null)));
+        assertFalse(BlacklistFilter.EMPTY.isBlacklisted("/storage/emulated/0/Music/a.mp3"));
+        assertEquals("", BlacklistFilter.EMPTY.appendSelection(null));
+    }
+
+    @Test
+    public void compile_dropsNestedAndRepeatedFolders() {
+        BlacklistFilter filter = BlacklistFilter.compile(Arrays.asList(
+                "/sdcard/Music/Podcasts/Old/",
+                "/sdcard/Music/Podcasts/",
+                "/sdcard/Music/Podcasts/",
+                "/sdcard/Ringtones/"));
+        assertEquals(2, filter.size());
+        assertTrue(filter.isBlacklisted("/sdcard/Music/Podcasts/Old/episode.mp3"));
+        assertTrue(filter.isBlacklisted("/sdcard/Music/Podcasts/episode.mp3"));
+        assertFalse(filter.isBlacklisted("/sdcard/Music/song.mp3"));
+    }
+
+    @Test
+    public void isBlacklisted_overlappingPrefixes() {
+        // "/sdcard/Music" and "/sdcard/Music2" are not nested, but one is a prefix of the other
+        BlacklistFilter filter = BlacklistFilter.compile(Arrays.asList("/sdcard/Music2", "/sdcard/Music"));
+        assertEquals(1, filter.size());
+        assertTrue(filter.isBlacklisted("/sdcard/Music/a.mp3"));
+        assertTrue(filter.isBlacklisted("/sdcard/Music2/a.mp3"));
+        assertTrue(filter.isBlacklisted("/sdcard/Musical/a.mp3"));
+        assertFalse(filter.isBlacklisted("/sdcard/Movies/a.mp3"));
+
+        // between two prefixes, the greatest one before the path does not match it
+        filter = BlacklistFilter.compile(Arrays.asList("/sdcard/A/", "/sdcard/C/"));
+        assertFalse(filter.isBlacklisted("/sdcard/B/a.mp3"));
+        assertFalse(filter.isBlacklisted("/sdcard/A"));
+        assertFalse(filter.isBlacklisted("/sdcard/"));
+        assertFalse(filter.isBlacklisted("/sdcard/D/a.mp3"));
+    }
+
+    @Test
+    public void isBlacklisted_trailingSeparatorOnlyMatchesTheFolder() {
+        BlacklistFilter filter = BlacklistFilter.compile(Collections.singletonList("/sdcard/Music/"));
+        assertTrue(filter.isBlacklisted("/sdcard/Music/a.mp3"));
+        assertFalse(filter.isBlacklisted("/sdcard/Music2/a.mp3"));
+        assertFalse(filter.isBlacklisted("/sdcard/Music"));
+    }
+
+    @Test
+    public void isBlacklisted_pathEqualToAPrefix() {
+        BlacklistFilter filter = BlacklistFilter.compile(Arrays.asList("/sdcard/Music/a.mp3", "/sdcard/Ringtones/"));
+        assertTrue(filter.isBlacklisted("/sdcard/Music/a.mp3"));
+        assertTrue(filter.isBlacklisted("/sdcard/Ringtones/"));
+        assertFalse(filter.isBlacklisted("/sdcard/Music/b.mp3"));
+        assertFalse(filter.isBlacklisted(null));
+    }
+
+    @Test
+    public void isBlacklisted_ignoresTheCaseOfAsciiLetters() {
+        BlacklistFilter filter = BlacklistFilter.compile(Arrays.asList("/sdcard/WhatsApp/Media/", "/sdcard/Ghi Âm/"));
+        assertTrue(filter.isBlacklisted("/sdcard/whatsapp/media/note.opus"));
+        assertTrue(filter.isBlacklisted("/SDCARD/WHATSAPP/MEDIA/note.opus"));
+        assertTrue(filter.isBlacklisted("/sdcard/GHI Âm/a.mp3"));
+        // like SQL LIKE, other letters keep their case
+        assertFalse(filter.isBlacklisted("/sdcard/Ghi âm/a.mp3"));
+    }
+
+    @Test
+    public void selection_rangeOfEveryPrefixInLowerCase() {
+        BlacklistFilter filter = BlacklistFilter.compile(Arrays.asList("/sdcard/B/", "/sdcard/a/"));
+        assertEquals("(lower(_data) < ? OR lower(_data) >= ?) AND (lower(_data) < ? OR lower(_data) >= ?)", filter.getSelection());
+        assertArrayEquals(new String[]{"/sdcard/a/", "/sdcard/a/\uffff", "/sdcard/b/", "/sdcard/b/\uffff"}, filter.getSelectionArgs());
+
+        assertEquals("is_music=1 AND " + filter.getSelection(), filter.appendSelection("is_music=1"));
+        String[] args = filter.appendSelectionArgs(new String[]{"x"});
+        assertEquals(5, args.length);
+        assertEquals("x", args[0]);
+    }
+
+    @Ignore("benchmark, run by hand")
+    @Test
+    public void isBlacklisted_timing() {
+        final List<String> library = generateLibrary();
+        StringBuilder builder = new StringBuilder();
+        for (int folderCount : new int[]{0, 10, 100}) {
+            BlacklistFilter filter = BlacklistFilter.compile(generateFolders(folderCount));
+            // warm up
+            int blacklisted = count(filter, library);
+
+            final long start = System.nanoTime();
+            for (int run = 0; run < RUNS; run++) {
+                count(filter, library);
+            }
+            final long nanos = (System.nanoTime() - start) / RUNS;
+            builder.append(folderCount).append(" folders: ").append(blacklisted).append(" of ").append(library.size())
+                    .append(" paths blacklisted in ").append(nanos / 1000).append(" us, ")
+                    .append(nanos / library.size()).append(" ns per path\n");
+        }
+        System.out.print(builder);
+    }
+
+    private static int count(BlacklistFilter filter, List<String> paths) {
+        int count = 0;
+        for (String path : paths) {
+            if (filter.isBlacklisted(path)) count++;
+        }
+        return count;
+    }
+
+    private static List<String> generateFolders(int count) {
+        ArrayList<String> folders = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            folders.add("/storage/emulated/0/Folder" + (i * 7) + "/");
+        }
+        return folders;
+    }
+
+    private static List<String> generateLibrary() {
+        final Random rnd = new Random(LIBRARY_SIZE);
+        ArrayList<String> paths = new ArrayList<>(LIBRARY_SIZE);
+        for (int i = 0; i < LIBRARY_SIZE; i++) {
+            paths.add("/storage/emulated/0/Folder" + rnd.nextInt(1000) + "/Album " + rnd.nextInt(50) + "/" + i + ".mp3");
+        }
+        return paths;
+    }
+}
@@ -0,0 +1,103 @@
+package com.ldt.musicr.service;
+
+import com.ldt.musicr.model.Song;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Restores saved queues of which a song was deleted since they were saved.
+ */
+public class PlayingQueueTest {
+    private static final int SIZE = 6;
+
+    @Test
+    public void restore_plainQueueWithADeletedSong() {
+        final Song[] saved = songs(SIZE);
+        final Song playing = saved[4];
+        saved[1] = null;
+
+        PlayingQueue queue = new PlayingQueue();
+        final int position = queue.restore(saved, null, 4);
+
+        assertFalse(queue.isShuffled());
+        assertEquals(SIZE - 1, queue.size());
+        assertEquals(playing, queue.get(position));
+        assertEquals(ids(1, 3, 4, 5, 6), ids(queue.asList()));
+    }
+
+    @Test
+    public void restore_shuffledQueueWithADeletedSong() {
+        final Song[] saved = songs(SIZE);
+        final int[] order = {3, 0, 5, 1, 4, 2};
+        // playing the fifth song of the shuffled order
+        final Song playing = saved[order[4]];
+        saved[5] = null;
+
+        PlayingQueue queue = new PlayingQueue();
+        final int position = queue.restore(saved, order, 4);
+
+        assertTrue(queue.isShuffled());
+        assertEquals(SIZE - 1, queue.size());
+        assertEquals(playing, queue.get(position));
+        // same order without the deleted song
+        assertEquals(ids(4, 1, 2, 5, 3), ids(queue.asList()));
+        // unshuffling gives the original order back
+        assertEquals(playing, queue.get(queue.unshuffle(position)));
+        assertEquals(ids(1, 2, 3, 4, 5), ids(queue.asList()));
+    }
+
+    @Test
+    public void restore_deletedPlayingSongGoesToTheNextOne() {
+        final Song[] saved = songs(SIZE);
+        final int[] order = {3, 0, 5, 1, 4, 2};
+        final Song next = saved[order[3]];
+        saved[order[2]] = null;
+
+        PlayingQueue queue = new PlayingQueue();
+        assertEquals(next, queue.get(queue.restore(saved, order, 2)));
+
+        final Song[] plain = songs(SIZE);
+        plain[SIZE - 1] = null;
+        assertEquals(plain[SIZE - 2], queue.get(queue.restore(plain, null, SIZE - 1)));
+    }
+
+    @Test
+    public void restore_everySongDeleted() {
+        PlayingQueue queue = new PlayingQueue();
+        assertEquals(-1, queue.restore(new Song[SIZE], new int[]{0, 1, 2, 3, 4, 5}, 2));
+        assertTrue(queue.isEmpty());
+    }
+
+    private static Song[] songs(int count) {
+        Song[] songs = new Song[count];
+        for (int i = 0; i < count; i++) {
+            final int id = i + 1;
+            songs[i] = new Song(id, "Song " + id, id, 2020, 1000, "/music/" + id + ".mp3", 0, 1, "Album", 1, "Artist");
+        }
+        return songs;
+    }
+
+    private static List<Integer> ids(int... ids) {
+        ArrayList<Integer> list = new ArrayList<>();
+        for (int id : ids) {
+            list.add(id);
+        }
+        return list;
+    }
+
+    private static List<Integer> ids(List<Song> songs) {
+        ArrayList<Integer> list = new ArrayList<>();
+        for (Song song : songs) {
+            list.add(song.id);
+        }
+        return list;
+    }
+}
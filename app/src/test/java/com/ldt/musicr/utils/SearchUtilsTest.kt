@@ -0,0 +1,131 @@
+package com.ldt.musicr.utils
+
+import com.ldt.musicr.model.core.Entity
+import com.ldt.musicr.model.core.SearchResults
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Ignore
+import org.junit.Test
+import java.util.Random
+
+/**
+ * Searches generated libraries of titles, some of them accented, with [SearchUtils.filterTopHitEntities]
+ * and checks that the parallel and the top hits searches find the same hits as the sequential one.
+ * How long the three searches take is printed by a benchmark left out of the default run.
+ */
+class SearchUtilsTest {
+    @After
+    fun tearDown() {
+        SearchPreProcessingProvider.clear()
+    }
+
+    @Test
+    fun filterTopHitEntities_parallelFindsTheSameHits() {
+        for (count in intArrayOf(100, 10_000, 50_000)) {
+            val titles = generate(count)
+            for (keyword in KEYWORDS) {
+                val sequential = SearchUtils.filterTopHitEntities(titles, keyword, parallel = false)
+                val parallel = SearchUtils.filterTopHitEntities(titles, keyword)
+                assertSameHits("\"$keyword\" in $count titles", sequential, parallel, sequential.size)
+            }
+        }
+    }
+
+    @Test
+    fun filterTopHitEntities_topHitsAreTheBestOfAllHits() {
+        for (count in intArrayOf(100, 10_000, 50_000)) {
+            val titles = generate(count)
+            for (keyword in KEYWORDS) {
+                val sequential = SearchUtils.filterTopHitEntities(titles, keyword, parallel = false)
+                val top = SearchUtils.filterTopHitEntities(titles, keyword, limit = TOP_HITS)
+                assertSameHits("\"$keyword\" in $count titles", sequential, top, minOf(TOP_HITS, sequential.size))
+            }
+        }
+    }
+
+    @Ignore("benchmark, run by hand")
+    @Test
+    fun filterTopHitEntities_timing() {
+        val builder = StringBuilder()
+        for (count in intArrayOf(10_000, 50_000, 100_000)) {
+            val titles = generate(count)
+            // the first search fills the preprocessing cache of the titles, it is not measured
+            for (keyword in KEYWORDS) {
+                SearchUtils.filterTopHitEntities(titles, keyword, parallel = false)
+            }
+
+            var sequentialNanos = 0L
+            var parallelNanos = 0L
+            var topNanos = 0L
+            var hits = 0
+            for (run in 0 until RUNS) {
+                for (keyword in KEYWORDS) {
+                    var start = System.nanoTime()
+                    hits += SearchUtils.filterTopHitEntities(titles, keyword, parallel = false).size
+                    sequentialNanos += System.nanoTime() - start
+
+                    start = System.nanoTime()
+                    SearchUtils.filterTopHitEntities(titles, keyword)
+                    parallelNanos += System.nanoTime() - start
+
+                    start = System.nanoTime()
+                    SearchUtils.filterTopHitEntities(titles, keyword, limit = TOP_HITS)
+                    topNanos += System.nanoTime() - start
+                }
+            }
+            SearchPreProcessingProvider.clear()
+
+            val searches = RUNS * KEYWORDS.size
+            builder.append(count).append(" titles, ").append(hits / searches).append(" hits per search: sequential ")
+                .append(sequentialNanos / searches / 1000).append(" us, parallel ").append(parallelNanos / searches / 1000)
+                .append(" us, parallel top ").append(TOP_HITS).append(' ').append(topNanos / searches / 1000).append(" us\n")
+        }
+        print(builder)
+    }
+
+    private fun assertSameHits(message: String, expected: SearchResults, actual: SearchResults, size: Int) {
+        assertEquals("$message, hits", size, actual.size)
+        for (i in 0 until size) {
+            assertEquals("$message, index of hit $i", expected.getIndex(i), actual.getIndex(i))
+            assertEquals("$message, score of hit $i", expected.getScore(i), actual.getScore(i), 0f)
+            val length = expected.getSpanEnd(i) - expected.getSpanStart(i)
+            assertEquals("$message, spans of hit $i", length, actual.getSpanEnd(i) - actual.getSpanStart(i))
+            for (s in 0 until length) {
+                assertEquals("$message, span $s of hit $i",
+                    expected.getSpan(expected.getSpanStart(i) + s), actual.getSpan(actual.getSpanStart(i) + s))
+            }
+        }
+    }
+
+    /**
+     * Titles of two to five words, every one different
+     */
+    private fun generate(titleCount: Int): List<Title> {
+        val rnd = Random(titleCount.toLong())
+        return List(titleCount) { i ->
+            val words = 2 + rnd.nextInt(4)
+            val name = StringBuilder()
+            for (w in 0 until words) {
+                if (w > 0) name.append(' ')
+                name.append(WORDS[rnd.nextInt(WORDS.size)])
+            }
+            name.append(' ').append(i)
+            Title("title_$i", name.toString())
+        }
+    }
+
+    private class Title(override val uid: String, override val displayName: String) : Entity
+
+    companion object {
+        private const val RUNS = 5
+        private const val TOP_HITS = 50
+
+        private val WORDS = arrayOf(
+            "Người", "Yêu", "Em", "Anh", "Mùa", "Thu", "Hà", "Nội", "Sài", "Gòn", "Đêm", "Nắng", "Mưa", "Trăng",
+            "Biển", "Nhớ", "Quên", "Tình", "Đời", "Xuân", "Love", "You", "Night", "Summer", "Rain", "Heart",
+            "Dreams", "Forever", "Café", "Señorita", "Déjà", "Vu", "Über", "Noël", "LeMinh", "ThanhTung"
+        )
+
+        private val KEYWORDS = arrayOf("nguoi", "người yêu", "mua thu", "love", "deja vu", "em", "xyz")
+    }
+}